@@ -26,6 +26,8 @@ delete from GROUPMENU;
 delete from USER;
 delete from MENUITEM;
 delete from USERGROUP;
+delete from SEQUENCES;
+delete from OPD_DAILY_COUNT;
 delete from OPD;
 delete from LABORATORYROW;
 delete from LABORATORY;
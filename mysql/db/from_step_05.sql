@@ -61,3 +61,9 @@ source step_64_operations_in_opd.sql;
 source step_65_daily_worksheet_for_services.sql;
 source step_66_lot_information_at_the_wards_level.sql;
 source step_67_add_patient_photo_table.sql;
+source step_68_lot_main_store_quantity.sql;
+source step_69_patient_last_modified_date_index.sql;
+source step_70_opd_daily_count.sql;
+source step_71_prices_list_item_index.sql;
+source step_72_dicom_patient_series_index.sql;
+source step_73_sequences.sql;
@@ -0,0 +1,14 @@
+-- adding the running main store balance (LT_QTY) to MEDICALDSRLOT
+ALTER TABLE MEDICALDSRLOT ADD COLUMN LT_QTY INT(11) NOT NULL DEFAULT 0 AFTER LT_COST;
+
+-- populating new field (LT_QTY) from the movements history
+UPDATE MEDICALDSRLOT
+       JOIN (SELECT MMV_LT_ID_A, SUM(IF(MMVT_TYPE LIKE '%+%', MMV_QTY, -MMV_QTY)) AS QTY
+             FROM MEDICALDSRSTOCKMOV
+             JOIN MEDICALDSRSTOCKMOVTYPE ON MMV_MMVT_ID_A = MMVT_ID_A
+             GROUP BY MMV_LT_ID_A) MOV
+       ON MEDICALDSRLOT.LT_ID_A = MOV.MMV_LT_ID_A
+SET MEDICALDSRLOT.LT_QTY = MOV.QTY;
+
+-- available lots of a medical are read by due date
+ALTER TABLE MEDICALDSRLOT ADD INDEX MEDICALDSRLOT_MDSR_DUE_DATE_idx (LT_MDSR_ID ASC, LT_DUE_DATE ASC);
@@ -0,0 +1,2 @@
+-- the patient search index reads the patients modified since its last refresh
+ALTER TABLE PATIENT ADD INDEX PATIENT_LAST_MODIFIED_DATE_idx (PAT_LAST_MODIFIED_DATE ASC);
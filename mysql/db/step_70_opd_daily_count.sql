@@ -0,0 +1,17 @@
+-- OPD visits counted per day, disease, sex, new patient and age (used when OPDROLLUP=yes)
+CREATE TABLE OPD_DAILY_COUNT (
+  ODC_DATE date NOT NULL,
+  ODC_DIS_ID_A varchar(10) NOT NULL,
+  ODC_SEX char(1) NOT NULL,
+  ODC_NEW_PAT char(1) NOT NULL,
+  ODC_AGE int(11) NOT NULL,
+  ODC_COUNT int(11) NOT NULL DEFAULT 0,
+  PRIMARY KEY (ODC_DATE, ODC_DIS_ID_A, ODC_SEX, ODC_NEW_PAT, ODC_AGE),
+  KEY FK_OPD_DAILY_COUNT_DISEASE_idx (ODC_DIS_ID_A),
+  CONSTRAINT FK_OPD_DAILY_COUNT_DISEASE FOREIGN KEY (ODC_DIS_ID_A) REFERENCES DISEASE (DIS_ID_A)
+) ENGINE=InnoDB;
+
+INSERT INTO OPD_DAILY_COUNT (ODC_DATE, ODC_DIS_ID_A, ODC_SEX, ODC_NEW_PAT, ODC_AGE, ODC_COUNT)
+SELECT CAST(OPD_DATE_VIS AS DATE), OPD_DIS_ID_A, OPD_SEX, OPD_NEW_PAT, OPD_AGE, COUNT(*) FROM OPD
+WHERE OPD_DIS_ID_A IS NOT NULL
+GROUP BY CAST(OPD_DATE_VIS AS DATE), OPD_DIS_ID_A, OPD_SEX, OPD_NEW_PAT, OPD_AGE;
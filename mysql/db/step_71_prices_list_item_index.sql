@@ -0,0 +1,2 @@
+-- the prices of a list are looked up and merged by list, group and item
+ALTER TABLE PRICES ADD INDEX PRICES_LST_GRP_ITEM_idx (PRC_LST_ID, PRC_GRP, PRC_ITEM);
@@ -0,0 +1,2 @@
+-- the DICOM series of a patient are listed by grouping its files by series
+ALTER TABLE DICOM ADD INDEX DICOM_PAT_SER_INST_UID_idx (DM_PAT_ID, DM_FILE_SER_INST_UID);
@@ -0,0 +1,9 @@
+-- last progressive numbers reserved per domain (OPD, ADMISSION, PATIENT_VACCINE), ward and year;
+-- a sequence starts from the max number stored the first time it is used
+CREATE TABLE SEQUENCES (
+  SEQ_DOMAIN varchar(20) NOT NULL,
+  SEQ_WRD_ID_A char(1) NOT NULL DEFAULT '',
+  SEQ_YEAR int(11) NOT NULL,
+  SEQ_LAST int(11) NOT NULL DEFAULT 0,
+  PRIMARY KEY (SEQ_DOMAIN, SEQ_WRD_ID_A, SEQ_YEAR)
+) ENGINE=InnoDB;
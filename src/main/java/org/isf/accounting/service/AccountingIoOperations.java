@@ -35,7 +35,9 @@ import org.springframework.transaction.annotation.Transactional;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -172,6 +174,8 @@ public class AccountingIoOperations {
 
 	/**
 	 * Stores a list of {@link BillItems} associated to a {@link Bill}.
+	 * Only the differences with the stored items are written: items no longer in the list are deleted,
+	 * new items are inserted and existing items are updated only if changed.
 	 * @param bill the bill.
 	 * @param billItems the bill items to store.
 	 * @return <code>true</code> if the {@link BillItems} have been store, <code>false</code> otherwise.
@@ -184,7 +188,7 @@ public class AccountingIoOperations {
 		boolean result = true;
 		
 		
-		result = _deleteBillsInsideBillItems(bill.getId());
+		result = _deleteBillsInsideBillItems(bill.getId(), billItems);
 		
 		result &= _insertNewBillInsideBillItems(bill, billItems);
 
@@ -192,12 +196,25 @@ public class AccountingIoOperations {
 	}
 	
 	private boolean _deleteBillsInsideBillItems(
-			int id) throws OHServiceException 
+			int id,
+			ArrayList<BillItems> billItems) throws OHServiceException 
     {	
 		boolean result = true;
+		Map<Integer, BillItems> removedItems = new HashMap<Integer, BillItems>();
         		
 		
-		billItemsRepository.deleteWhereId(id);
+		for (BillItems storedItem : billItemsRepository.findByBill_idOrderByIdAsc(id)) 
+		{
+			removedItems.put(storedItem.getId(), storedItem);
+		}
+		for (BillItems item : billItems) 
+		{
+			removedItems.remove(item.getId());
+		}
+		if (!removedItems.isEmpty()) 
+		{
+			billItemsRepository.deleteInBatch(removedItems.values());
+		}
 		
         return result;
     }
@@ -212,14 +229,17 @@ public class AccountingIoOperations {
 		for (BillItems item : billItems) 
 		{
 			item.setBill(bill);
-			billItemsRepository.save(item);
 		}
+		// unchanged items are already in the persistence context and are not written again
+		billItemsRepository.save(billItems);
 		
 		return result;
     }
 	
 	/**
 	 * Stores a list of {@link BillPayments} associated to a {@link Bill}.
+	 * Only the differences with the stored payments are written: payments no longer in the list are deleted,
+	 * new payments are inserted and existing payments are updated only if changed.
 	 * @param bill the bill.
 	 * @param payItems the bill payments.
 	 * @return <code>true</code> if the payment have stored, <code>false</code> otherwise.
@@ -232,7 +252,7 @@ public class AccountingIoOperations {
 		boolean result = true;
 		
 		
-		result = _deleteBillsInsideBillPayments(bill.getId());
+		result = _deleteBillsInsideBillPayments(bill.getId(), payItems);
 		
 		result &= _insertNewBillInsideBillPayments(bill, payItems);
 
@@ -240,12 +260,25 @@ public class AccountingIoOperations {
 	}
 	
 	private boolean _deleteBillsInsideBillPayments(
-			int id) throws OHServiceException 
+			int id,
+			ArrayList<BillPayments> billPayments) throws OHServiceException 
     {	
 		boolean result = true;
+		Map<Integer, BillPayments> removedPayments = new HashMap<Integer, BillPayments>();
         		
 		
-		billPaymentRepository.deleteWhereId(id);
+		for (BillPayments storedPayment : billPaymentRepository.findAllWherBillIdByOrderByBillAndDate(id)) 
+		{
+			removedPayments.put(storedPayment.getId(), storedPayment);
+		}
+		for (BillPayments payment : billPayments) 
+		{
+			removedPayments.remove(payment.getId());
+		}
+		if (!removedPayments.isEmpty()) 
+		{
+			billPaymentRepository.deleteInBatch(removedPayments.values());
+		}
 		
         return result;
     }
@@ -261,8 +294,9 @@ public class AccountingIoOperations {
 		for (BillPayments payment : billPayments) 
 		{
 			payment.setBill(bill);
-			billPaymentRepository.save(payment);
 		}
+		// unchanged payments are already in the persistence context and are not written again
+		billPaymentRepository.save(billPayments);
 		
 		return result;
     }
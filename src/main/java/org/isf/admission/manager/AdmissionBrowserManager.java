@@ -29,11 +29,13 @@ import org.isf.disctype.model.DischargeType;
 import org.isf.generaldata.GeneralData;
 import org.isf.generaldata.MessageBundle;
 import org.isf.patient.model.Patient;
+import org.isf.sequence.manager.SequenceManager;
 import org.isf.utils.exception.OHDataValidationException;
 import org.isf.utils.exception.OHServiceException;
 import org.isf.utils.exception.model.OHExceptionMessage;
 import org.isf.utils.exception.model.OHSeverityLevel;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Component;
 
 import java.text.DateFormat;
@@ -49,6 +51,9 @@ public class AdmissionBrowserManager {
 	@Autowired
 	private AdmissionIoOperations ioOperations;
 
+	@Autowired
+	private SequenceManager sequenceManager;
+
 	/**
 	 * Returns all patients with ward in which they are admitted.
 	 * @return the patient list with associated ward or <code>null</code> if the operation fails.
@@ -67,6 +72,17 @@ public class AdmissionBrowserManager {
 	public ArrayList<AdmittedPatient> getAdmittedPatients(String searchTerms) throws OHServiceException{
         return new ArrayList<>(ioOperations.getAdmittedPatients(searchTerms));
 	}
+
+	/**
+	 * Returns a page of the patients with ward in which they are admitted filtering the list using the passed search term.
+	 * @param searchTerms the search terms to use for filter the patient list, <code>null</code> if no filter have to be applied.
+	 * @param pageable the page to read.
+	 * @return the filtered patient list.
+	 * @throws OHServiceException 
+	 */
+	public ArrayList<AdmittedPatient> getAdmittedPatients(String searchTerms, Pageable pageable) throws OHServiceException{
+        return new ArrayList<>(ioOperations.getAdmittedPatients(searchTerms, pageable));
+	}
 	
 	/**
 	 * Returns all patients based on the applied filters.
@@ -81,6 +97,20 @@ public class AdmissionBrowserManager {
 		return new ArrayList<>(ioOperations.getAdmittedPatients(searchTerms, admissionRange, dischargeRange));
 	}
 
+	/**
+	 * Returns a page of the patients based on the applied filters.
+	 * @param admissionRange the patient admission range
+	 * @param dischargeRange the patient discharge range
+	 * @param searchTerms the search terms to use for filter the patient list, <code>null</code> if no filter have to be applied.
+	 * @param pageable the page to read.
+	 * @return the filtered patient list.
+	 * @throws OHServiceException if an error occurs during database request.
+	 */
+	public ArrayList<AdmittedPatient> getAdmittedPatients(GregorianCalendar[] admissionRange, //
+			GregorianCalendar[] dischargeRange, String searchTerms, Pageable pageable) throws OHServiceException{
+		return new ArrayList<>(ioOperations.getAdmittedPatients(searchTerms, admissionRange, dischargeRange, pageable));
+	}
+
 	public AdmittedPatient loadAdmittedPatients(final Integer patientId) {
 		return ioOperations.loadAdmittedPatient(patientId);
 	}
@@ -116,13 +146,16 @@ public class AdmissionBrowserManager {
 	}
 
 	/**
-	 * Returns the next prog in the year for a certain ward.
+	 * Returns the next prog in the year for a certain ward, to be shown before the admission is saved
+	 * (the year restarts on 1st July for the maternity ward with MATERNITYRESTARTINJUNE).
+	 * The prog is not taken: an admission inserted with prog <code>0</code> gets the next one when saved.
 	 * @param wardId the ward id.
 	 * @return the next prog
 	 * @throws OHServiceException 
 	 */
 	public int getNextYProg(String wardId) throws OHServiceException{
-        return ioOperations.getNextYProg(wardId);
+        int year = AdmissionIoOperations.getYProgYear(wardId, new GregorianCalendar());
+        return sequenceManager.peek(SequenceManager.ADMISSION, wardId, year, () -> ioOperations.getNextYProg(wardId, year) - 1);
 	}
 
 	/**
@@ -144,27 +177,44 @@ public class AdmissionBrowserManager {
 	}
 
 	/**
-	 * Inserts a new admission.
+	 * Inserts a new admission, with the next prog in the year of its ward if its prog is <code>0</code>.
 	 * @param admission the admission to insert.
 	 * @return <code>true</code> if the admission has been successfully inserted, <code>false</code> otherwise.
 	 * @throws OHServiceException 
 	 */
 	public boolean newAdmission(Admission admission) throws OHServiceException{
         validateAdmission(admission, true);
+        setNextYProg(admission);
         return ioOperations.newAdmission(admission);
 	}
 
 	/**
-	 * Inserts a new {@link Admission} and the returns the generated id.
+	 * Inserts a new {@link Admission}, with the next prog in the year of its ward if its prog is <code>0</code>,
+	 * and the returns the generated id.
 	 * @param admission the admission to insert.
 	 * @return the generated id or <code>null</code> if the operation fails.
 	 * @throws OHServiceException 
 	 */
 	public int newAdmissionReturnKey(Admission admission) throws OHServiceException{
 		validateAdmission(admission, true);
+		setNextYProg(admission);
         return ioOperations.newAdmissionReturnKey(admission);
 	}
 
+	/**
+	 * Takes the next prog of the ward in the year of the admission date, never returned before, if none is set.
+	 * @param admission the admission to insert.
+	 * @throws OHServiceException 
+	 */
+	private void setNextYProg(Admission admission) throws OHServiceException {
+		if (admission.getYProg() != 0) {
+			return;
+		}
+		String wardId = admission.getWard().getCode();
+		int year = AdmissionIoOperations.getYProgYear(wardId, admission.getAdmDate());
+		admission.setYProg(sequenceManager.next(SequenceManager.ADMISSION, wardId, year, () -> ioOperations.getNextYProg(wardId, year) - 1));
+	}
+
 	/**
 	 * Updates the specified {@link Admission} object.
 	 * @param admission the admission object to update.
@@ -49,6 +49,12 @@ public interface AdmissionIoOperationRepository extends JpaRepository<Admission,
             @Param("ward") String ward, @Param("dateFrom") GregorianCalendar dateFrom,
             @Param("dateTo") GregorianCalendar dateTo);
 
+	@Query(value = "select max(a.yProg) FROM Admission a " +
+			"WHERE a.ward.code =:ward AND a.admDate >= :dateFrom AND a.admDate <= :dateTo AND a.deleted ='N'")
+    Integer findMaxYProgWhereWardAndDates(
+            @Param("ward") String ward, @Param("dateFrom") GregorianCalendar dateFrom,
+            @Param("dateTo") GregorianCalendar dateTo);
+
 	@Query(value = "select a FROM Admission a WHERE a.admitted =1 and a.ward.code = :ward and a.deleted = 'N'")
 	List<Admission> findAllWhereWardIn(@Param("ward") String ward);
 }
\ No newline at end of file
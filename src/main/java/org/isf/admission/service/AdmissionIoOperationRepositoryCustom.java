@@ -25,14 +25,33 @@ import org.isf.admission.model.Admission;
 import org.isf.patient.model.Patient;
 
 import java.util.GregorianCalendar;
+import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Pageable;
+
 
 public interface AdmissionIoOperationRepositoryCustom {
 
 	Optional<Admission> findOneByPatientAndDateRanges(Patient patient, GregorianCalendar[] admissionRange,
 													  GregorianCalendar[] dischargeRange);
 
+	/**
+	 * @param patientCodes the patients to look for, <code>null</code> for all the patients.
+	 * @return the current admissions of the patients, with their patient and ward.
+	 */
+	List<Admission> findAllCurrentWherePatientIn(List<Integer> patientCodes);
+
+	/**
+	 * @param patientCodes the patients to look for, <code>null</code> for all the patients.
+	 * @param admissionRange the admission date range, <code>null</code> if not filtered.
+	 * @param dischargeRange the discharge date range, <code>null</code> if not filtered.
+	 * @param pageable the page to read, <code>null</code> for all the patients.
+	 * @return the last admission of each patient within the date ranges, with its patient and ward, by patient code descending.
+	 */
+	List<Admission> findAllLastWherePatientInAndDateRanges(List<Integer> patientCodes, GregorianCalendar[] admissionRange,
+														   GregorianCalendar[] dischargeRange, Pageable pageable);
+
 
 	class PatientAdmission {
 		/**
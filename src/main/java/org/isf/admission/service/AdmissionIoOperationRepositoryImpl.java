@@ -32,14 +32,18 @@ import java.util.Optional;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Join;
+import javax.persistence.criteria.JoinType;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Subquery;
 
 import org.isf.admission.model.Admission;
 import org.isf.patient.model.Patient;
+import org.springframework.data.domain.Pageable;
 import org.springframework.transaction.annotation.Transactional;
 
 
@@ -58,6 +62,81 @@ public class AdmissionIoOperationRepositoryImpl implements AdmissionIoOperationR
 			.findFirst();
 	}
 
+	@Override
+	public List<Admission> findAllCurrentWherePatientIn(List<Integer> patientCodes) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Admission> query = cb.createQuery(Admission.class);
+		Root<Admission> admissionRoot = query.from(Admission.class);
+		List<Predicate> where = new ArrayList<Predicate>();
+
+		query.select(admissionRoot);
+		fetchAdmittedPatientGraph(admissionRoot);
+		where.add(cb.equal(admissionRoot.get("deleted"), "N"));
+		where.add(cb.equal(admissionRoot.get("admitted"), 1));
+		if (patientCodes != null) {
+			where.add(admissionRoot.get("patient").get("code").in(patientCodes));
+		}
+		query.where(cb.and(where.toArray(new Predicate[where.size()])));
+
+		return this.entityManager.createQuery(query).getResultList();
+	}
+
+	@Override
+	public List<Admission> findAllLastWherePatientInAndDateRanges(List<Integer> patientCodes, GregorianCalendar[] admissionRange,
+																  GregorianCalendar[] dischargeRange, Pageable pageable) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Admission> query = cb.createQuery(Admission.class);
+		Root<Admission> admissionRoot = query.from(Admission.class);
+
+		query.select(admissionRoot);
+		fetchAdmittedPatientGraph(admissionRoot);
+		query.where(admissionRoot.get("id").in(createSubqueryOfLastAdmissionsInDateRanges(query, patientCodes, admissionRange, dischargeRange)));
+		query.orderBy(cb.desc(admissionRoot.get("patient").get("code")));
+
+		TypedQuery<Admission> typedQuery = this.entityManager.createQuery(query);
+		if (pageable != null) {
+			typedQuery.setFirstResult(pageable.getOffset());
+			typedQuery.setMaxResults(pageable.getPageSize());
+		}
+		return typedQuery.getResultList();
+	}
+
+	private Subquery<Integer> createSubqueryOfLastAdmissionsInDateRanges(CriteriaQuery<Admission> query, List<Integer> patientCodes,
+																		  GregorianCalendar[] admissionRange, GregorianCalendar[] dischargeRange) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		Subquery<Integer> subquery = query.subquery(Integer.class);
+		Root<Admission> admissionRoot = subquery.from(Admission.class);
+		List<Predicate> where = new ArrayList<Predicate>();
+
+		where.add(admissionNotDeletedPredicate(cb, admissionRoot));
+		Join<Admission, Patient> patientJoin = admissionRoot.join("patient");
+		where.add(patientNotDeletedPredicate(cb, patientJoin));
+		if (patientCodes != null) {
+			where.add(patientJoin.get("code").in(patientCodes));
+		}
+		where.addAll(dateRangePredicates(cb, admissionRoot, admissionRange, dischargeRange));
+		subquery.select(cb.max(admissionRoot.<Integer>get("id")));
+		subquery.where(cb.and(where.toArray(new Predicate[where.size()])));
+		subquery.groupBy(patientJoin.get("code"));
+
+		return subquery;
+	}
+
+	private void fetchAdmittedPatientGraph(Root<Admission> admissionRoot) {
+		admissionRoot.fetch("patient");
+		admissionRoot.fetch("ward");
+		admissionRoot.fetch("admissionType", JoinType.LEFT);
+		admissionRoot.fetch("diseaseIn", JoinType.LEFT);
+		admissionRoot.fetch("diseaseOut1", JoinType.LEFT);
+		admissionRoot.fetch("diseaseOut2", JoinType.LEFT);
+		admissionRoot.fetch("diseaseOut3", JoinType.LEFT);
+		admissionRoot.fetch("operation", JoinType.LEFT);
+		admissionRoot.fetch("disType", JoinType.LEFT);
+		admissionRoot.fetch("pregTreatmentType", JoinType.LEFT);
+		admissionRoot.fetch("deliveryType", JoinType.LEFT);
+		admissionRoot.fetch("deliveryResult", JoinType.LEFT);
+	}
+
 	private CriteriaQuery<Admission> createQueryToSearchByPatientAndDates(Patient patient, GregorianCalendar[] admissionRange, GregorianCalendar[] dischargeRange) {
 		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
 		CriteriaQuery<Admission> query = cb.createQuery(Admission.class);
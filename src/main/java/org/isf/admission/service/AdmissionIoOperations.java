@@ -46,16 +46,22 @@ import org.isf.disctype.service.DischargeTypeIoOperationRepository;
 import org.isf.generaldata.GeneralData;
 import org.isf.patient.model.Patient;
 import org.isf.patient.service.PatientIoOperationRepository;
+import org.isf.patient.service.PatientSearchIndex;
 import org.isf.utils.db.TranslateOHServiceException;
 import org.isf.utils.exception.OHServiceException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
@@ -71,6 +77,10 @@ public class AdmissionIoOperations
 	private DischargeTypeIoOperationRepository dischargeRepository;
 	@Autowired
 	private PatientIoOperationRepository patientRepository;
+	@Autowired
+	private PatientSearchIndex patientSearchIndex;
+
+	private static final int MAX_PATIENT_CODES_IN_QUERY = 1000;
 	
 	/**
 	 * Returns all patients with ward in which they are admitted.
@@ -88,8 +98,34 @@ public class AdmissionIoOperations
 	 * @throws OHServiceException if an error occurs during database request.
 	 */
 	public List<AdmittedPatient> getAdmittedPatients(String searchTerms) throws OHServiceException {
-		return patientRepository.findByFieldsContainingWordsFromLiteral(searchTerms).stream()
-			.map(patient -> new AdmittedPatient(patient, repository.findOneWherePatientIn(patient.getCode())))
+		return getAdmittedPatients(searchTerms, (Pageable) null);
+	}
+
+	/**
+	 * Returns a page of the patients with ward in which they are admitted filtering the list using the passed search term.
+	 * @param searchTerms the search terms to use for filter the patient list, <code>null</code> if no filter have to be applied.
+	 * @param pageable the page to read, <code>null</code> for the whole list.
+	 * @return the filtered patient list.
+	 * @throws OHServiceException if an error occurs during database request.
+	 */
+	public List<AdmittedPatient> getAdmittedPatients(String searchTerms, Pageable pageable) throws OHServiceException {
+		List<Patient> patients = pageable == null
+				? patientRepository.findByFieldsContainingWordsFromLiteral(searchTerms)
+				: patientRepository.findByFieldsContainingWordsFromLiteral(searchTerms, pageable);
+		if (patients.isEmpty()) {
+			return new ArrayList<AdmittedPatient>();
+		}
+		// the patients currently admitted are few: for long lists it is cheaper to read them all than to pass every code
+		List<Integer> patientCodes = null;
+		if (patients.size() <= MAX_PATIENT_CODES_IN_QUERY) {
+			patientCodes = patients.stream().map(Patient::getCode).collect(Collectors.toList());
+		}
+		Map<Integer, Admission> currentAdmissions = new HashMap<Integer, Admission>();
+		for (Admission admission : repository.findAllCurrentWherePatientIn(patientCodes)) {
+			currentAdmissions.put(admission.getPatient().getCode(), admission);
+		}
+		return patients.stream()
+			.map(patient -> new AdmittedPatient(patient, currentAdmissions.get(patient.getCode())))
 			.collect(Collectors.toList());
 	}
 
@@ -104,9 +140,64 @@ public class AdmissionIoOperations
 	public List<AdmittedPatient> getAdmittedPatients(
 			String searchTerms, GregorianCalendar[] admissionRange,
 			GregorianCalendar[] dischargeRange) throws OHServiceException {
+		return getAdmittedPatients(searchTerms, admissionRange, dischargeRange, null);
+	}
+
+	/**
+	 * Returns a page of the patients based on the applied filters, by patient code descending.
+	 * @param searchTerms the search terms to use for filter the patient list, <code>null</code> if no filter have to be applied.
+	 * @param admissionRange the patient admission range
+	 * @param dischargeRange the patient discharge range
+	 * @param pageable the page to read, <code>null</code> for the whole list.
+	 * @return the filtered patient list.
+	 * @throws OHServiceException if an error occurs during database request.
+	 */
+	public List<AdmittedPatient> getAdmittedPatients(
+			String searchTerms, GregorianCalendar[] admissionRange,
+			GregorianCalendar[] dischargeRange, Pageable pageable) throws OHServiceException {
+		List<Integer> patientCodes = findPatientCodes(searchTerms);
+		List<Admission> admissions;
+		if (patientCodes == null || patientCodes.size() <= MAX_PATIENT_CODES_IN_QUERY) {
+			admissions = patientCodes != null && patientCodes.isEmpty()
+					? new ArrayList<Admission>()
+					: repository.findAllLastWherePatientInAndDateRanges(patientCodes, admissionRange, dischargeRange, pageable);
+		} else {
+			// codes read in chunks by code descending, so that the chunks follow each other in the order of the page
+			Collections.sort(patientCodes, Collections.reverseOrder());
+			int skip = pageable == null ? 0 : pageable.getOffset();
+			int limit = pageable == null ? Integer.MAX_VALUE : pageable.getPageSize();
+			admissions = new ArrayList<Admission>();
+			for (int from = 0; from < patientCodes.size() && admissions.size() < limit; from += MAX_PATIENT_CODES_IN_QUERY) {
+				List<Integer> chunk = new ArrayList<Integer>(patientCodes.subList(from, Math.min(from + MAX_PATIENT_CODES_IN_QUERY, patientCodes.size())));
+				for (Admission admission : repository.findAllLastWherePatientInAndDateRanges(chunk, admissionRange, dischargeRange, null)) {
+					if (skip > 0) {
+						skip--;
+					} else if (admissions.size() < limit) {
+						admissions.add(admission);
+					}
+				}
+			}
+		}
+		return admissions.stream()
+			.map(admission -> new AdmittedPatient(admission.getPatient(), admission))
+			.collect(Collectors.toList());
+	}
+
+	/**
+	 * Returns the codes of the patients matching the search terms.
+	 * @param searchTerms the search terms, <code>null</code> or blank for all the patients.
+	 * @return the codes of the matching patients, <code>null</code> for all the patients.
+	 */
+	private List<Integer> findPatientCodes(String searchTerms) {
+		if (searchTerms == null || searchTerms.trim().isEmpty()) {
+			return null;
+		}
+		if (PatientSearchIndex.tokenize(searchTerms).length > 0) {
+			return new ArrayList<Integer>(patientSearchIndex.search(searchTerms, 0, Integer.MAX_VALUE));
+		}
+		// no letters nor digits (punctuation only): matched with LIKE, as the patient search does
 		return patientRepository.findByFieldsContainingWordsFromLiteral(searchTerms).stream()
-			.map(patient -> new AdmittedPatient(patient, repository.findOneByPatientAndDateRanges(patient, admissionRange, dischargeRange).orElse(null)))
-			.filter(admittedPatient -> admittedPatient.getPatient()!= null && admittedPatient.getAdmission() != null)
+			.map(Patient::getCode)
 			.collect(Collectors.toList());
 	}
 
@@ -208,6 +299,7 @@ public class AdmissionIoOperations
 	 * @return the admission types.
 	 * @throws OHServiceException 
 	 */
+	@Cacheable(cacheNames = "admissionTypes", key = "#root.targetClass.simpleName")
 	public ArrayList<AdmissionType> getAdmissionType() throws OHServiceException 
 	{
 		ArrayList<AdmissionType> padmissiontype = (ArrayList<AdmissionType>) typeRepository.findAll();
@@ -221,6 +313,7 @@ public class AdmissionIoOperations
 	 * @return the discharge types.
 	 * @throws OHServiceException 
 	 */
+	@Cacheable(cacheNames = "dischargeTypes", key = "#root.targetClass.simpleName")
 	public ArrayList<DischargeType> getDischargeType() throws OHServiceException 
 	{
 		ArrayList<DischargeType> dischargeTypes = (ArrayList<DischargeType>) dischargeRepository.findAll();
@@ -230,7 +323,7 @@ public class AdmissionIoOperations
 
     
 	/**
-	 * Returns the next prog in the year for a certain ward.
+	 * Returns the next prog in the year for a certain ward, after the highest one stored.
 	 * @param wardId the ward id.
 	 * @return the next prog.
 	 * @throws OHServiceException if an error occurs retrieving the value.
@@ -238,38 +331,55 @@ public class AdmissionIoOperations
 	public int getNextYProg(
 			String wardId) throws OHServiceException 
 	{
-		int next = 1;
-		GregorianCalendar now = new GregorianCalendar();
+		return getNextYProg(wardId, getYProgYear(wardId, new GregorianCalendar()));
+	}
+
+	/**
+	 * Returns the next prog in the year for a certain ward, after the highest one stored in that year.
+	 * @param wardId the ward id.
+	 * @param year the year of the progs, as given by {@link #getYProgYear(String, Calendar)}.
+	 * @return the next prog.
+	 * @throws OHServiceException if an error occurs retrieving the value.
+	 */
+	public int getNextYProg(
+			String wardId, 
+			int year) throws OHServiceException 
+	{
 		GregorianCalendar first = null;
 		GregorianCalendar last = null;
 		
 		if (wardId.equalsIgnoreCase("M") && GeneralData.MATERNITYRESTARTINJUNE) 
 		{
-			if (now.get(Calendar.MONTH) < 6) 
-			{
-				first = new GregorianCalendar(now.get(Calendar.YEAR) - 1, Calendar.JULY, 1);
-				last = new GregorianCalendar(now.get(Calendar.YEAR), Calendar.JUNE, 30);
-			} 
-			else 
-			{
-				first = new GregorianCalendar(now.get(Calendar.YEAR), Calendar.JULY, 1);
-				last = new GregorianCalendar(now.get(Calendar.YEAR) + 1, Calendar.JUNE, 30);
-			}
-
+			first = new GregorianCalendar(year, Calendar.JULY, 1);
+			last = new GregorianCalendar(year + 1, Calendar.JUNE, 30);
 		} 
 		else 
 		{
-			first = new GregorianCalendar(now.get(Calendar.YEAR), 0, 1);
-			last = new GregorianCalendar(now.get(Calendar.YEAR), 11, 31);
+			first = new GregorianCalendar(year, 0, 1);
+			last = new GregorianCalendar(year, 11, 31);
 		}
 		
-		List<Admission> admissions = repository.findAllWhereWardAndDates(wardId, first, last);
-		if (!admissions.isEmpty())
+		Integer max = repository.findMaxYProgWhereWardAndDates(wardId, first, last);
+		return max == null ? 1 : max + 1;
+	}
+
+	/**
+	 * Returns the year in which the progs of a ward restarted before a date: the year of the date or,
+	 * for the maternity ward with MATERNITYRESTARTINJUNE, the year of the last 1st of July.
+	 * @param wardId the ward id.
+	 * @param date the date.
+	 * @return the year of the progs.
+	 */
+	public static int getYProgYear(
+			String wardId, 
+			Calendar date) 
+	{
+		int year = date.get(Calendar.YEAR);
+		if (wardId.equalsIgnoreCase("M") && GeneralData.MATERNITYRESTARTINJUNE && date.get(Calendar.MONTH) < Calendar.JULY) 
 		{
-			next = admissions.get(0).getYProg() + 1; 		
-		} 
-		
-		return next;
+			return year - 1;
+		}
+		return year;
 	}
 
 	/**
@@ -27,6 +27,8 @@ import org.isf.admtype.model.AdmissionType;
 import org.isf.utils.db.TranslateOHServiceException;
 import org.isf.utils.exception.OHServiceException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -47,6 +49,7 @@ public class AdmissionTypeIoOperation
 	 * @return a list of admission types.
 	 * @throws OHServiceException if an error occurs.
 	 */
+	@Cacheable(cacheNames = "admissionTypes", key = "#root.targetClass.simpleName")
 	public ArrayList<AdmissionType> getAdmissionType() throws OHServiceException 
 	{
 		return new ArrayList<AdmissionType>(repository.findAllByOrderByDescriptionAsc());
@@ -58,6 +61,7 @@ public class AdmissionTypeIoOperation
 	 * @return <code>true</code> if the admission type has been updated, <code>false</code> otherwise.
 	 * @throws OHServiceException if an error occurs during the update.
 	 */
+	@CacheEvict(cacheNames = "admissionTypes", allEntries = true)
 	public boolean updateAdmissionType(
 			AdmissionType admissionType) throws OHServiceException 
 	{
@@ -76,6 +80,7 @@ public class AdmissionTypeIoOperation
 	 * @return <code>true</code> if the admission type has been stored, <code>false</code> otherwise.
 	 * @throws OHServiceException if an error occurs during the storing operation.
 	 */
+	@CacheEvict(cacheNames = "admissionTypes", allEntries = true)
 	public boolean newAdmissionType(
 			AdmissionType admissionType) throws OHServiceException 
 	{
@@ -94,6 +99,7 @@ public class AdmissionTypeIoOperation
 	 * @return <code>true</code> if the admission type has been deleted, <code>false</code> otherwise.
 	 * @throws OHServiceException if an error occurs during the delete operation.
 	 */
+	@CacheEvict(cacheNames = "admissionTypes", allEntries = true)
 	public boolean deleteAdmissionType(
 			AdmissionType admissionType) throws OHServiceException 
 	{
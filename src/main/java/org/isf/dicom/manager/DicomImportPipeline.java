@@ -0,0 +1,285 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.dicom.manager;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.isf.dicom.model.FileDicom;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Import of the files of a DICOM folder in stages connected by bounded queues:
+ * <ol>
+ * <li>scan: the folder and its subfolders are walked, files in name order, on the calling thread;</li>
+ * <li>parse: image and metadata of each file are read, on a pool of workers;</li>
+ * <li>thumbnail: the thumbnail is scaled from the image, on a pool of workers;</li>
+ * <li>persist: the file is saved, on a single thread and in scan order, so that
+ * the ids given by the {@link DicomManagerInterface} follow the order of the slices.</li>
+ * </ol>
+ * At most {@link #MAX_IN_FLIGHT_PER_WORKER} files per worker are held in memory at the same time.
+ * Each file gets its own copy of the metadata entered by the user; the first error stops the import
+ * and is thrown by {@link #importFiles(File)}.
+ */
+public class DicomImportPipeline {
+
+	private static final Logger logger = LoggerFactory.getLogger(DicomImportPipeline.class);
+
+	/** files being imported at the same time (and so decoded images in memory), per worker */
+	static final int MAX_IN_FLIGHT_PER_WORKER = 4;
+
+	private static final Slice END_OF_SLICES = new Slice(-1, null);
+
+	private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+	private final FileDicom fileDicom;
+	private final int patient;
+	private final DicomManagerInterface manager;
+	private final int workers;
+	private final AbstractDicomLoader dicomLoader;
+
+	private final Semaphore inFlight;
+	private final BlockingQueue<Slice> scanned;
+	private final BlockingQueue<Slice> parsed;
+	private final BlockingQueue<Slice> thumbnails;
+
+	private final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+	private final AtomicInteger filesLoaded = new AtomicInteger();
+
+	/**
+	 * @param fileDicom - the metadata entered by the user, applied to all the files
+	 * @param patient - the patient code
+	 * @param manager - the manager saving the files
+	 * @param workers - the number of threads for each of the parse and thumbnail stages
+	 * @param dicomLoader - the progress component, notified after each file (can be <code>null</code>)
+	 */
+	public DicomImportPipeline(FileDicom fileDicom, int patient, DicomManagerInterface manager, int workers, AbstractDicomLoader dicomLoader) {
+		this.fileDicom = fileDicom;
+		this.patient = patient;
+		this.manager = manager;
+		this.workers = Math.max(1, workers);
+		this.dicomLoader = dicomLoader;
+		int capacity = this.workers * MAX_IN_FLIGHT_PER_WORKER;
+		this.inFlight = new Semaphore(capacity);
+		this.scanned = new ArrayBlockingQueue<Slice>(capacity + this.workers);
+		this.parsed = new ArrayBlockingQueue<Slice>(capacity + this.workers);
+		this.thumbnails = new ArrayBlockingQueue<Slice>(capacity + 1);
+	}
+
+	/**
+	 * Imports all the files of a folder and of its subfolders
+	 *
+	 * @param sourceFile - the folder
+	 * @return the number of files loaded
+	 * @throws Exception the first error met
+	 */
+	public int importFiles(File sourceFile) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(2 * workers + 1, runnable -> {
+			Thread thread = new Thread(runnable, "dicom-import-" + THREAD_NUMBER.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		long start = System.currentTimeMillis();
+		try {
+			AtomicInteger parsers = new AtomicInteger(workers);
+			AtomicInteger scalers = new AtomicInteger(workers);
+			for (int i = 0; i < workers; i++) {
+				executor.execute(() -> _stage(scanned, parsed, parsers, workers, this::_parse));
+				executor.execute(() -> _stage(parsed, thumbnails, scalers, 1, this::_thumbnail));
+			}
+			Future<?> persisting = executor.submit(this::_persist);
+			try {
+				_scan(sourceFile, 0);
+			} catch (InterruptedException e) {
+				_fail(e);
+			}
+			for (int i = 0; i < workers; i++) {
+				scanned.put(END_OF_SLICES);
+			}
+			persisting.get();
+		} finally {
+			executor.shutdownNow();
+		}
+		Exception exception = failure.get();
+		if (exception != null) {
+			throw exception;
+		}
+		logger.debug("{} DICOM files imported in {} ms", filesLoaded.get(), System.currentTimeMillis() - start);
+		return filesLoaded.get();
+	}
+
+	/**
+	 * @return the number of files loaded so far
+	 */
+	public int getLoaded() {
+		return filesLoaded.get();
+	}
+
+	private int _scan(File folder, int sequence) throws InterruptedException {
+		File[] files = folder.listFiles();
+		if (files == null)
+			return sequence;
+		Arrays.sort(files);
+		for (File file : files) {
+			if (failure.get() != null)
+				break;
+			if (!file.isDirectory()) {
+				inFlight.acquire();
+				scanned.put(new Slice(sequence++, file));
+			} else if (!".".equals(file.getName()) && !"..".equals(file.getName()))
+				sequence = _scan(file, sequence);
+		}
+		return sequence;
+	}
+
+	private void _parse(Slice slice) throws Exception {
+		slice.fileDicom = _copyOf(fileDicom);
+		slice.image = SourceFiles.readDicom(slice.fileDicom, slice.file, patient);
+		slice.skipped = slice.image == null;
+	}
+
+	private void _thumbnail(Slice slice) {
+		if (!slice.skipped)
+			SourceFiles.createThumbnail(slice.fileDicom, slice.image);
+		slice.image = null;
+	}
+
+	/**
+	 * Runs a parse or thumbnail worker; after an error the slices are just forwarded,
+	 * so that the stages downstream (and the scan waiting for room) can end.
+	 */
+	private void _stage(BlockingQueue<Slice> input, BlockingQueue<Slice> output, AtomicInteger running, int endMarkers, SliceOperation operation) {
+		try {
+			for (Slice slice = input.take(); slice != END_OF_SLICES; slice = input.take()) {
+				if (failure.get() == null) {
+					try {
+						operation.apply(slice);
+					} catch (Exception e) {
+						_fail(e);
+					}
+				}
+				output.put(slice);
+			}
+			if (running.decrementAndGet() == 0) {
+				for (int i = 0; i < endMarkers; i++) {
+					output.put(END_OF_SLICES);
+				}
+			}
+		} catch (InterruptedException e) {
+			_fail(e);
+		}
+	}
+
+	private void _persist() {
+		Map<Integer, Slice> pending = new HashMap<Integer, Slice>();
+		int next = 0;
+		try {
+			for (Slice slice = thumbnails.take(); slice != END_OF_SLICES; slice = thumbnails.take()) {
+				pending.put(slice.sequence, slice);
+				for (Slice ready = pending.remove(next); ready != null; ready = pending.remove(++next)) {
+					if (failure.get() == null) {
+						try {
+							if (!ready.skipped)
+								SourceFiles.saveDicom(manager, ready.fileDicom);
+							int loaded = filesLoaded.incrementAndGet();
+							if (dicomLoader != null)
+								dicomLoader.setLoaded(loaded);
+						} catch (Exception e) {
+							_fail(e);
+						}
+					}
+					inFlight.release();
+				}
+			}
+		} catch (InterruptedException e) {
+			_fail(e);
+		}
+	}
+
+	private void _fail(Exception exception) {
+		if (!failure.compareAndSet(null, exception)) {
+			logger.debug("DICOM import already failed, also: {}", exception.getMessage());
+		}
+	}
+
+	private static FileDicom _copyOf(FileDicom fileDicom) {
+		FileDicom copy = new FileDicom();
+		copy.setPatId(fileDicom.getPatId());
+		copy.setDicomAccessionNumber(fileDicom.getDicomAccessionNumber());
+		copy.setDicomInstitutionName(fileDicom.getDicomInstitutionName());
+		copy.setDicomPatientID(fileDicom.getDicomPatientID());
+		copy.setDicomPatientName(fileDicom.getDicomPatientName());
+		copy.setDicomPatientAddress(fileDicom.getDicomPatientAddress());
+		copy.setDicomPatientAge(fileDicom.getDicomPatientAge());
+		copy.setDicomPatientSex(fileDicom.getDicomPatientSex());
+		copy.setDicomPatientBirthDate(fileDicom.getDicomPatientBirthDate());
+		copy.setDicomStudyId(fileDicom.getDicomStudyId());
+		copy.setDicomStudyDate(fileDicom.getDicomStudyDate());
+		copy.setDicomStudyDescription(fileDicom.getDicomStudyDescription());
+		copy.setDicomSeriesUID(fileDicom.getDicomSeriesUID());
+		copy.setDicomSeriesInstanceUID(fileDicom.getDicomSeriesInstanceUID());
+		copy.setDicomSeriesNumber(fileDicom.getDicomSeriesNumber());
+		copy.setDicomSeriesDescriptionCodeSequence(fileDicom.getDicomSeriesDescriptionCodeSequence());
+		copy.setDicomSeriesDate(fileDicom.getDicomSeriesDate());
+		copy.setDicomSeriesDescription(fileDicom.getDicomSeriesDescription());
+		copy.setDicomInstanceUID(fileDicom.getDicomInstanceUID());
+		copy.setModality(fileDicom.getModality());
+		copy.setDicomType(fileDicom.getDicomType());
+		copy.setFrameCount(fileDicom.getFrameCount());
+		return copy;
+	}
+
+	@FunctionalInterface
+	private interface SliceOperation {
+
+		void apply(Slice slice) throws Exception;
+	}
+
+	/**
+	 * A file moving through the stages
+	 */
+	private static final class Slice {
+
+		private final int sequence;
+		private final File file;
+		private FileDicom fileDicom;
+		private BufferedImage image;
+		private boolean skipped;
+
+		Slice(int sequence, File file) {
+			this.sequence = sequence;
+			this.file = file;
+		}
+	}
+}
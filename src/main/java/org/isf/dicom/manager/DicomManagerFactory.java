@@ -49,6 +49,8 @@ public class DicomManagerFactory {
 
 	private static Properties props = new Properties();
 
+	private static DicomThumbnailCache thumbnailCache = null;
+
 	public static String getMaxDicomSize() {
 		return props.getProperty("dicom.max.size", "4M");
 	}
@@ -65,6 +67,40 @@ public class DicomManagerFactory {
 		return sizeLong;
 	}
 
+	/**
+	 * Return the number of threads reading and scaling the images of the imported DICOM files
+	 * ({@code dicom.import.threads}, by default the number of processors)
+	 */
+	public static int getImportThreads() {
+		int defaultThreads = Runtime.getRuntime().availableProcessors();
+		try {
+			return Math.max(1, Integer.parseInt(props.getProperty("dicom.import.threads", String.valueOf(defaultThreads)).trim()));
+		} catch (NumberFormatException e) {
+			logger.warn("Invalid dicom.import.threads, using {}", defaultThreads);
+			return defaultThreads;
+		}
+	}
+
+	/**
+	 * Return the cache of the thumbnails shared by the managers, holding at most
+	 * {@code dicom.thumbnail.cache.size} bytes (by default 16M) and prefetching the thumbnails
+	 * of the opened patient unless {@code dicom.thumbnail.prefetch} is <code>false</code>
+	 */
+	public static synchronized DicomThumbnailCache getThumbnailCache() {
+		if (thumbnailCache == null) {
+			String sizeHumanReadable = props.getProperty("dicom.thumbnail.cache.size", "16M");
+			long size = 16777216L; // default for 16M
+			try {
+				size = FileTools.humanReadableByteCountParse(sizeHumanReadable);
+			} catch (OHException e) {
+				logger.warn("Invalid dicom.thumbnail.cache.size, using 16M");
+			}
+			boolean prefetch = Boolean.parseBoolean(props.getProperty("dicom.thumbnail.prefetch", "true").trim());
+			thumbnailCache = new DicomThumbnailCache(size, prefetch);
+		}
+		return thumbnailCache;
+	}
+
 	/**
 	 * Return the manager for DICOM acquired files
 	 *
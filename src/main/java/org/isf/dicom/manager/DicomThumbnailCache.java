@@ -0,0 +1,359 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.dicom.manager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Blob;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.isf.dicom.model.FileDicom;
+import org.isf.dicom.model.StreamBlob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of the DICOM thumbnails, keyed by patient, series and file id, holding at most a given number of bytes
+ * and dropping the least recently used thumbnails.
+ * <p>
+ * The managers give out the thumbnails of {@link DicomManagerInterface#loadPatientFiles(int)} through {@link #cached},
+ * so that refreshing the thumbnail view or reopening the patient reads them from memory,
+ * and {@link #prefetch} them in the background, in the order of the series, as soon as the patient is opened;
+ * opening another patient stops the prefetch of the previous one.
+ * The thumbnails of a series are dropped when the series is deleted.
+ */
+public class DicomThumbnailCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(DicomThumbnailCache.class);
+
+	private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+	private final long maxBytes;
+	private final boolean prefetching;
+	private final Map<Key, byte[]> store = new LinkedHashMap<Key, byte[]>(16, 0.75f, true);
+	private long bytes;
+
+	private final AtomicLong generation = new AtomicLong();
+	private volatile ExecutorService prefetcher;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder prefetched = new LongAdder();
+
+	/**
+	 * @param maxBytes - the maximum size of the thumbnails held, in bytes
+	 * @param prefetching - <code>true</code> to prefetch the thumbnails of the opened patient
+	 */
+	public DicomThumbnailCache(long maxBytes, boolean prefetching) {
+		this.maxBytes = maxBytes;
+		this.prefetching = prefetching;
+	}
+
+	/**
+	 * Returns a thumbnail read through the cache
+	 *
+	 * @param patientId - the patient code
+	 * @param serie - the series number
+	 * @param idFile - the id of the file
+	 * @param thumbnail - the stored thumbnail, read on a miss
+	 * @return the {@link Blob} reading the thumbnail from the cache
+	 */
+	public Blob cached(int patientId, String serie, long idFile, Blob thumbnail) {
+		if (thumbnail == null || thumbnail instanceof CachedThumbnail) {
+			return thumbnail;
+		}
+		return new CachedThumbnail(new Key(patientId, serie, idFile), thumbnail);
+	}
+
+	/**
+	 * Reads the thumbnails of a patient in the background, in the given order, unless already cached
+	 *
+	 * @param dicoms - the files of {@link DicomManagerInterface#loadPatientFiles(int)}, with the thumbnails of {@link #cached}
+	 * @return the {@link Future} of the prefetch, or <code>null</code> if prefetching is disabled
+	 */
+	public Future<?> prefetch(FileDicom[] dicoms) {
+		if (!prefetching) {
+			return null;
+		}
+		final long current = generation.incrementAndGet();
+		final List<FileDicom> toPrefetch = Arrays.asList(dicoms.clone());
+		return _getPrefetcher().submit(() -> {
+			for (FileDicom dicom : toPrefetch) {
+				if (generation.get() != current) {
+					return;
+				}
+				if (dicom != null && dicom.getDicomThumbnail() instanceof CachedThumbnail) {
+					CachedThumbnail thumbnail = (CachedThumbnail) dicom.getDicomThumbnail();
+					try {
+						if (_load(thumbnail, current)) {
+							prefetched.increment();
+						}
+					} catch (SQLException | IOException | RuntimeException e) {
+						logger.debug("DICOM thumbnail {} not prefetched: {}", thumbnail.key, e.getMessage());
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Drops the thumbnails of a series, and stops the prefetch going on
+	 *
+	 * @param patientId - the patient code
+	 * @param serie - the series number
+	 */
+	public void evictSerie(int patientId, String serie) {
+		generation.incrementAndGet();
+		synchronized (store) {
+			for (Iterator<Map.Entry<Key, byte[]>> entries = store.entrySet().iterator(); entries.hasNext();) {
+				Map.Entry<Key, byte[]> entry = entries.next();
+				if (entry.getKey().patientId == patientId && Objects.equals(entry.getKey().serie, serie)) {
+					bytes -= entry.getValue().length;
+					entries.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drops all the thumbnails
+	 */
+	public void clear() {
+		generation.incrementAndGet();
+		synchronized (store) {
+			store.clear();
+			bytes = 0;
+		}
+	}
+
+	/**
+	 * @return the number of thumbnails held
+	 */
+	public int getSize() {
+		synchronized (store) {
+			return store.size();
+		}
+	}
+
+	/**
+	 * @return the size of the thumbnails held, in bytes
+	 */
+	public long getBytes() {
+		synchronized (store) {
+			return bytes;
+		}
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * @return the number of reads answered by the cache
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return the number of reads that went to the storage
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return the number of thumbnails dropped to stay within the maximum size
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * @return the number of thumbnails read in the background
+	 */
+	public long getPrefetched() {
+		return prefetched.sum();
+	}
+
+	/**
+	 * @return the ratio of the reads answered by the cache, <code>0</code> before any read
+	 */
+	public double getHitRatio() {
+		long hits = getHits();
+		long reads = hits + getMisses();
+		return reads == 0 ? 0 : (double) hits / reads;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("DICOM thumbnails: %d entries, %d/%d bytes, %d hits, %d misses, %d evictions, %d prefetched",
+				getSize(), getBytes(), maxBytes, getHits(), getMisses(), getEvictions(), getPrefetched());
+	}
+
+	private byte[] _get(CachedThumbnail thumbnail) throws SQLException {
+		byte[] content;
+		synchronized (store) {
+			content = store.get(thumbnail.key);
+		}
+		if (content != null) {
+			hits.increment();
+			return content;
+		}
+		misses.increment();
+		try {
+			content = _read(thumbnail.stored);
+		} catch (IOException e) {
+			throw new SQLException(e);
+		}
+		_put(thumbnail.key, content);
+		return content;
+	}
+
+	/**
+	 * @return <code>true</code> if the thumbnail has been read, <code>false</code> if already cached or no more to prefetch
+	 */
+	private boolean _load(CachedThumbnail thumbnail, long current) throws SQLException, IOException {
+		synchronized (store) {
+			if (store.containsKey(thumbnail.key)) {
+				return false;
+			}
+		}
+		byte[] content = _read(thumbnail.stored);
+		synchronized (store) {
+			// a series deleted meanwhile must not come back
+			if (generation.get() != current) {
+				return false;
+			}
+			_put(thumbnail.key, content);
+		}
+		return true;
+	}
+
+	private void _put(Key key, byte[] content) {
+		if (content.length == 0 || content.length > maxBytes) {
+			return;
+		}
+		synchronized (store) {
+			byte[] replaced = store.put(key, content);
+			bytes += content.length - (replaced == null ? 0 : replaced.length);
+			for (Iterator<byte[]> eldest = store.values().iterator(); bytes > maxBytes && eldest.hasNext();) {
+				bytes -= eldest.next().length;
+				eldest.remove();
+				evictions.increment();
+			}
+		}
+	}
+
+	private static byte[] _read(Blob blob) throws SQLException, IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		StreamBlob.copy(blob, out);
+		return out.toByteArray();
+	}
+
+	private ExecutorService _getPrefetcher() {
+		if (prefetcher == null) {
+			synchronized (this) {
+				if (prefetcher == null) {
+					prefetcher = Executors.newSingleThreadExecutor(runnable -> {
+						Thread thread = new Thread(runnable, "dicom-thumbnails-" + THREAD_NUMBER.incrementAndGet());
+						thread.setDaemon(true);
+						thread.setPriority(Thread.MIN_PRIORITY);
+						return thread;
+					});
+				}
+			}
+		}
+		return prefetcher;
+	}
+
+	/**
+	 * A thumbnail read through the cache
+	 */
+	private final class CachedThumbnail extends StreamBlob {
+
+		private final Key key;
+		private final Blob stored;
+
+		CachedThumbnail(Key key, Blob stored) {
+			this.key = key;
+			this.stored = stored;
+		}
+
+		@Override
+		public long length() throws SQLException {
+			return _get(this).length;
+		}
+
+		@Override
+		public InputStream getBinaryStream() throws SQLException {
+			return new ByteArrayInputStream(_get(this));
+		}
+	}
+
+	private static final class Key {
+
+		private final int patientId;
+		private final String serie;
+		private final long idFile;
+
+		Key(int patientId, String serie, long idFile) {
+			this.patientId = patientId;
+			this.serie = serie;
+			this.idFile = idFile;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) obj;
+			return patientId == key.patientId && idFile == key.idFile && Objects.equals(serie, key.serie);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(patientId, serie, idFile);
+		}
+
+		@Override
+		public String toString() {
+			return patientId + "/" + serie + "/" + idFile;
+		}
+	}
+}
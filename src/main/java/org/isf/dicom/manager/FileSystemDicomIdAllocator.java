@@ -0,0 +1,147 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.dicom.manager;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocator of the ids of the files stored by {@link FileSystemDicomManager}.
+ * <p>
+ * Ids are handed out from blocks of {@link #BLOCK_SIZE} reserved in memory, without locking.
+ * Reserving a block persists its last id (the high-water mark) in {@code dicom.storage}:
+ * the new mark is written to a temporary file, synced and atomically renamed over the old one,
+ * under a file lock, so that neither a crash nor other processes sharing the storage
+ * can lead to the same id twice; a crash only leaves the rest of the block unused.
+ */
+public class FileSystemDicomIdAllocator {
+
+	/** ids reserved at each write of the high-water mark */
+	public static final int BLOCK_SIZE = 100;
+
+	private static final String STORAGE_FILE = "dicom.storage";
+
+	private static final ConcurrentMap<File, FileSystemDicomIdAllocator> allocators = new ConcurrentHashMap<File, FileSystemDicomIdAllocator>();
+
+	private final File storage;
+	private final File temporaryStorage;
+	private final File lockFile;
+
+	private volatile Block block = new Block(1, 0);
+
+	/**
+	 * Returns the allocator shared by all the managers storing into a directory
+	 *
+	 * @param dir - the root directory of the storage
+	 * @return the allocator
+	 * @throws IOException
+	 */
+	public static FileSystemDicomIdAllocator forDirectory(File dir) throws IOException {
+		return allocators.computeIfAbsent(dir.getCanonicalFile(), FileSystemDicomIdAllocator::new);
+	}
+
+	/**
+	 * Creates an allocator on its own, as after a restart; managers share the one of {@link #forDirectory(File)}
+	 *
+	 * @param dir - the root directory of the storage
+	 */
+	public FileSystemDicomIdAllocator(File dir) {
+		this.storage = new File(dir, STORAGE_FILE);
+		this.temporaryStorage = new File(dir, STORAGE_FILE + ".tmp");
+		this.lockFile = new File(dir, STORAGE_FILE + ".lock");
+	}
+
+	/**
+	 * @return a new id, never returned before for the same storage
+	 * @throws IOException if the high-water mark cannot be read or written
+	 */
+	public long nextId() throws IOException {
+		while (true) {
+			Block current = block;
+			long id = current.next.getAndIncrement();
+			if (id <= current.last) {
+				return id;
+			}
+			synchronized (this) {
+				if (block == current) {
+					block = _reserveBlock();
+				}
+			}
+		}
+	}
+
+	private Block _reserveBlock() throws IOException {
+		storage.getParentFile().mkdirs();
+		try (FileChannel channel = FileChannel.open(lockFile.toPath(), CREATE, WRITE)) {
+			// released when the channel is closed
+			channel.lock();
+			long highWaterMark = _readHighWaterMark();
+			Block reserved = new Block(highWaterMark + 1, highWaterMark + BLOCK_SIZE);
+			_writeHighWaterMark(reserved.last);
+			return reserved;
+		}
+	}
+
+	private long _readHighWaterMark() throws IOException {
+		if (!storage.exists()) {
+			return 0;
+		}
+		try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(storage))) {
+			return ois.readLong();
+		}
+	}
+
+	private void _writeHighWaterMark(long highWaterMark) throws IOException {
+		try (FileOutputStream fos = new FileOutputStream(temporaryStorage);
+				ObjectOutputStream oos = new ObjectOutputStream(fos)) {
+			oos.writeLong(highWaterMark);
+			oos.flush();
+			fos.getFD().sync();
+		}
+		Files.move(temporaryStorage.toPath(), storage.toPath(), ATOMIC_MOVE, REPLACE_EXISTING);
+	}
+
+	private static final class Block {
+
+		private final AtomicLong next;
+		private final long last;
+
+		Block(long first, long last) {
+			this.next = new AtomicLong(first);
+			this.last = last;
+		}
+	}
+}
@@ -22,19 +22,17 @@
 package org.isf.dicom.manager;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.PrintStream;
 import java.sql.Blob;
 import java.sql.SQLException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
@@ -42,10 +40,9 @@ import java.util.Locale;
 import java.util.Properties;
 import java.util.Vector;
 
-import javax.sql.rowset.serial.SerialBlob;
-import javax.sql.rowset.serial.SerialException;
 
 import org.isf.dicom.model.FileDicom;
+import org.isf.dicom.model.StreamBlob;
 import org.isf.generaldata.MessageBundle;
 import org.isf.utils.exception.OHDicomException;
 import org.isf.utils.exception.OHServiceException;
@@ -168,7 +165,11 @@ public class FileSystemDicomManager implements DicomManagerInterface {
 				deleted = deleted && file.delete();
 				// System.out.println(f[i].getAbsolutePath()+" del "+dl);
 			}
-			return deleted && deleteFolder.delete();
+			deleted = deleted && deleteFolder.delete();
+			DicomManagerFactory.getThumbnailCache().evictSerie(patientId, seriesNumber);
+			if (deleted)
+				getSeriesIndex(patientId).removeSerie(seriesNumber);
+			return deleted;
 
 		} catch (Exception exc) {
 			throw new OHDicomException(exc, new OHExceptionMessage(MessageBundle.getMessage("angal.hospital"), 
@@ -212,7 +213,8 @@ public class FileSystemDicomManager implements DicomManagerInterface {
 	}
 
 	/**
-	 * load metadata from DICOM files fo the patient
+	 * load metadata from DICOM files fo the patient, one file per series, as recorded in the index of the patient;
+	 * the thumbnails are read through the {@link DicomThumbnailCache}
 	 * 
 	 * @param patientId
 	 * @return
@@ -220,16 +222,16 @@ public class FileSystemDicomManager implements DicomManagerInterface {
 	 */
 	public FileDicom[] loadPatientFiles(int patientId) throws OHDicomException {
 		try {
-			File df = getPatientDir(patientId);
-			File[] series = df.listFiles();
-			FileDicom[] db = new FileDicom[series.length];
+			Collection<FileSystemDicomSeriesIndex.Serie> series = getSeriesIndex(patientId).getSeries();
+			FileDicom[] db = new FileDicom[series.size()];
 
-			for (int i = 0; i < series.length; i++) {
-				long idFile = getFirst(series[i]);
-				db[i] = loadMetadata(idFile, patientId, series[i].getName());
+			int i = 0;
+			for (FileSystemDicomSeriesIndex.Serie serie : series) {
+				db[i++] = loadMetadata(serie, patientId);
 			}
 
 			db = compact(db);
+			DicomManagerFactory.getThumbnailCache().prefetch(db);
 			return db;
 
 		} catch (Exception exc) {
@@ -303,15 +305,11 @@ public class FileSystemDicomManager implements DicomManagerInterface {
 			fos.close();
 
 			File data = new File(df, idFile + ".data");
-			Blob blob = dicom.getDicomData();
-			int blobLength = (int) blob.length();
-			byte[] blobAsBytes = blob.getBytes(1, blobLength);
-			save(data, blobAsBytes);
+			save(data, dicom.getDicomData());
 			File thumn = new File(df, idFile + ".thumn");
-			blob = dicom.getDicomThumbnail();
-			blobLength = (int) blob.length();
-			blobAsBytes = blob.getBytes(1, blobLength);
-			save(thumn, blobAsBytes);
+			save(thumn, dicom.getDicomThumbnail());
+
+			getSeriesIndex(patId).addFile(seriesNumber, idFile);
 
 		} catch (Exception exc) {
 			throw new OHDicomException(exc, new OHExceptionMessage(MessageBundle.getMessage("angal.hospital"), 
@@ -320,25 +318,30 @@ public class FileSystemDicomManager implements DicomManagerInterface {
 	}
 
 	/*
-	* load DICOM data + Thumbnail
+	* load DICOM data + Thumbnail of the first file of a series
 	*/
-	private FileDicom loadMetadata(long idFile, int patientId, String series) throws SerialException, IOException, SQLException {
+	private FileDicom loadMetadata(FileSystemDicomSeriesIndex.Serie serie, int patientId) throws IOException {
 		// Series must exists, so we need to check it and return null in case
+		String series = serie.getName();
 		if (series == null || series.trim().length() == 0 || series.equalsIgnoreCase("null")) 
 			return null;
 
 		FileDicom rv = new FileDicom();
 		File sd = getSerieDir(patientId, series, false);
-		rv.setFrameCount(getFramesCount(patientId, series));
-		parseDicomProperties(idFile, rv, sd);
-		rv.setDicomThumbnail(loadThumbnail(sd, idFile));
+		rv.setFrameCount(serie.getFrameCount());
+		if (serie.getMetadata().isEmpty())
+			parseDicomProperties(serie.getFirstFile(), rv, sd);
+		else
+			setDicomProperties(serie.getMetadata(), rv);
+		rv.setDicomThumbnail(DicomManagerFactory.getThumbnailCache().cached(patientId, series, serie.getFirstFile(), 
+				loadThumbnail(sd, serie.getFirstFile())));
 		return rv;
 	}
 
 	/*
 	* load DICOM data + Image
 	*/
-	private FileDicom loadData(long idFile, int patientId, String series) throws IOException, SerialException, SQLException, OHDicomException  {
+	private FileDicom loadData(long idFile, int patientId, String series) throws IOException {
 		// Series must exists, so we need to check it and return null in case
 		if (series == null || series.trim().length() == 0 || series.equalsIgnoreCase("null")) 
 			return null;
@@ -351,7 +354,10 @@ public class FileSystemDicomManager implements DicomManagerInterface {
 	}
 
 	private void parseDicomProperties(long idFile, FileDicom rv, File sd) throws IOException {
-		Properties p = loadMetadata(sd, idFile);
+		setDicomProperties(loadMetadata(sd, idFile), rv);
+	}
+
+	private void setDicomProperties(Properties p, FileDicom rv) {
 		try {
 			rv.setIdFile(Long.parseLong(p.getProperty("idFile")));
 		} catch (Exception e) {
@@ -395,35 +401,21 @@ public class FileSystemDicomManager implements DicomManagerInterface {
 	}
 
 	/**
-	 * load image for thumbnail
-	 * @throws SQLException 
-	 * @throws SerialException 
+	 * image for thumbnail, read when its stream is opened
 	 */
-	private Blob loadThumbnail(File sd, long idFile) throws IOException, SerialException, SQLException {
+	private Blob loadThumbnail(File sd, long idFile) {
 		// System.out.println("loadThumbnail "+sd.getAbsolutePath()+","+idFile);
 			File fdc = new File(sd, idFile + ".thumn");
-			FileInputStream fis = new FileInputStream(fdc);
-			byte[] byteArray = new byte[fis.available()];
-			fis.read(byteArray);
-			fis.close();
-			Blob blob = new SerialBlob(byteArray);
-			return blob;
+			return StreamBlob.of(fdc);
 	}
 
 	/**
-	 * load DICOM image
-	 * @throws SQLException 
-	 * @throws SerialException 
+	 * DICOM image, read when its stream is opened
 	 */
-	private Blob loadDicomData(File sd, long idFile) throws IOException, SerialException, SQLException {
+	private Blob loadDicomData(File sd, long idFile) {
 		// System.out.println("loadDicomData "+sd.getAbsolutePath()+","+idFile);
 			File fdc = new File(sd, idFile + ".data");
-			FileInputStream fis = new FileInputStream(fdc);
-			byte[] byteArray = new byte[fis.available()];
-			fis.read(byteArray);
-			fis.close();
-			Blob blob = new SerialBlob(byteArray);
-			return blob;
+			return StreamBlob.of(fdc);
 	}
 
 	public boolean exist(FileDicom dicom) throws OHDicomException {
@@ -477,49 +469,17 @@ public class FileSystemDicomManager implements DicomManagerInterface {
 	}
 
 	/**
-	 * frames counter
+	 * index of the patient's series
 	 */
-	private int getFramesCount(int patID, String serieNumber) throws IOException {
-		File df = getSerieDir(patID, serieNumber, false);
-		File[] files = df.listFiles(dsf);
-		return files.length;
+	private FileSystemDicomSeriesIndex getSeriesIndex(int patId) throws IOException {
+		return new FileSystemDicomSeriesIndex(getPatientDir(patId));
 	}
 
 	/**
 	 * emulate SQL sequence on filesystem
 	 */
-	private synchronized long nextId() throws IOException {
-		long rv = 0;
-
-		try {
-
-			File i = new File(dir, "dicom.storage");
-			if (i.exists()) {
-				FileInputStream fis = new FileInputStream(i);
-				ObjectInputStream ois = new ObjectInputStream(fis);
-				rv = ois.readLong();
-				ois.close();
-				fis.close();
-			}
-
-			i.delete();
-
-			i = new File(dir, "dicom.storage");
-
-			rv++;
-
-			FileOutputStream fos = new FileOutputStream(i);
-			ObjectOutputStream oos = new ObjectOutputStream(fos);
-			oos.writeLong(rv);
-			oos.flush();
-			fos.flush();
-			oos.close();
-			fos.close();
-
-		} catch (Exception exc) {
-
-		}
-		return rv;
+	private long nextId() throws IOException {
+		return FileSystemDicomIdAllocator.forDirectory(dir).nextId();
 	}
 
 	/**
@@ -570,35 +530,11 @@ public class FileSystemDicomManager implements DicomManagerInterface {
 	 * @param outFile - the file to write into
 	 * @param content - byte vector to write
 	 */
-	private void save(File outFile, byte[] content) throws IOException {
+	private void save(File outFile, Blob content) throws IOException, SQLException {
 		// System.out.println("FileSystemDicomManager: create "+outFile.getAbsolutePath());
-		FileOutputStream fos = new FileOutputStream(outFile);
-		fos.write(content);
-		fos.flush();
-		fos.close();
-	}
-
-	/**
-	 * return first idFile in the serie
-	 */
-	private long getFirst(File df) {
-		File[] files = df.listFiles(dsf);
-
-		long[] _longs = new long[files.length];
-
-		for (int i = 0; i < _longs.length; i++) {
-			try {
-				_longs[i] = Long.parseLong(files[i].getName().substring(0, files[i].getName().indexOf(".")));
-			} catch (Exception e) {
-			}
+		try (FileOutputStream fos = new FileOutputStream(outFile)) {
+			StreamBlob.copy(content, fos);
 		}
-
-		Arrays.sort(_longs);
-
-		if (_longs.length > 0)
-			return _longs[0];
-		else
-			return -1;
 	}
 
 	private FileDicom[] compact(FileDicom[] db) {
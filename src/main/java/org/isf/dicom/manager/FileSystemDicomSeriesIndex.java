@@ -0,0 +1,355 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.dicom.manager;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Index of the series of a patient stored by {@link FileSystemDicomManager}, kept in the patient folder,
+ * so that listing the series reads a single file instead of scanning the folder of each series.
+ * <p>
+ * For each series the index holds the id of its first file, the number of files and the metadata of the first file.
+ * Changes are appended as lines under a file lock, so that other processes sharing the storage see them;
+ * when more than half of the lines are outdated the index is rewritten (temporary file, atomic rename).
+ * A missing index, as in a storage written by a previous version, or an index with a line that cannot be read,
+ * as the last one after a crash while appending it, is rebuilt from the folders.
+ */
+public class FileSystemDicomSeriesIndex {
+
+	static final String INDEX_FILE = "series.index";
+
+	private static final String SERIE = "S";
+	private static final String FILE = "F";
+	private static final String DELETED = "D";
+	private static final String SEPARATOR = "\t";
+
+	private final File patientDir;
+	private final File index;
+	private final File temporaryIndex;
+	private final File lockFile;
+
+	/**
+	 * @param patientDir - the folder of the patient
+	 */
+	public FileSystemDicomSeriesIndex(File patientDir) {
+		this.patientDir = patientDir;
+		this.index = new File(patientDir, INDEX_FILE);
+		this.temporaryIndex = new File(patientDir, INDEX_FILE + ".tmp");
+		this.lockFile = new File(patientDir, INDEX_FILE + ".lock");
+	}
+
+	/**
+	 * @return the series of the patient, in the order they were first stored
+	 * @throws IOException
+	 */
+	public Collection<Serie> getSeries() throws IOException {
+		try (FileChannel channel = _open()) {
+			channel.lock();
+			List<String> lines = new ArrayList<String>();
+			Map<String, Serie> series = _read(lines);
+			if (series == null) {
+				return _rebuild().values();
+			}
+			if (_isOutdated(lines, series)) {
+				_write(series);
+			}
+			return series.values();
+		}
+	}
+
+	/**
+	 * Records a file stored in a series, once its files are written.
+	 * <p>
+	 * Whether the file is the first of the series, and so the one whose metadata is recorded,
+	 * is decided from the index read under the same lock as it is written, as other files of the series can be stored meanwhile.
+	 * The index is rewritten here too when outdated, so that storing many files keeps it short.
+	 *
+	 * @param serie - the series number (the name of its folder)
+	 * @param idFile - the id of the file
+	 * @throws IOException
+	 */
+	public void addFile(String serie, long idFile) throws IOException {
+		try (FileChannel channel = _open()) {
+			channel.lock();
+			List<String> lines = new ArrayList<String>();
+			Map<String, Serie> series = _read(lines);
+			if (series == null) {
+				// the folders already hold the file
+				_rebuild();
+				return;
+			}
+			StringBuilder line = new StringBuilder(FILE).append(SEPARATOR).append(_encode(serie)).append(SEPARATOR).append(idFile);
+			Serie stored = series.get(serie);
+			if (stored == null || stored.firstFile < 0 || idFile < stored.firstFile) {
+				Properties metadata = new Properties();
+				try (FileReader reader = new FileReader(new File(new File(patientDir, serie), idFile + ".properties"))) {
+					metadata.load(reader);
+				}
+				for (String name : metadata.stringPropertyNames()) {
+					line.append(SEPARATOR).append(_encode(name)).append('=').append(_encode(metadata.getProperty(name)));
+				}
+			}
+			lines.add(line.toString());
+			_apply(series, line.toString());
+			if (_isOutdated(lines, series)) {
+				_write(series);
+			} else {
+				_append(line.toString());
+			}
+		}
+	}
+
+	/**
+	 * Records the deletion of a series
+	 *
+	 * @param serie - the series number
+	 * @throws IOException
+	 */
+	public void removeSerie(String serie) throws IOException {
+		try (FileChannel channel = _open()) {
+			channel.lock();
+			if (index.exists()) {
+				_append(DELETED + SEPARATOR + _encode(serie));
+			}
+		}
+	}
+
+	/**
+	 * @return the channel of the lock file, to be locked; the lock is released when the channel is closed
+	 */
+	private FileChannel _open() throws IOException {
+		patientDir.mkdirs();
+		return FileChannel.open(lockFile.toPath(), CREATE, WRITE);
+	}
+
+	/**
+	 * @return the series in the index, <code>null</code> if it is missing or has a line that cannot be read
+	 */
+	private Map<String, Serie> _read(List<String> lines) throws IOException {
+		if (!index.exists() || !_endsWithNewLine()) {
+			return null;
+		}
+		Map<String, Serie> series = new LinkedHashMap<String, Serie>();
+		try (BufferedReader reader = new BufferedReader(new FileReader(index))) {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				lines.add(line);
+				try {
+					_apply(series, line);
+				} catch (RuntimeException e) {
+					return null;
+				}
+			}
+		}
+		return series;
+	}
+
+	/**
+	 * @return <code>false</code> if the last line has been cut, as by a crash while appending it
+	 */
+	private boolean _endsWithNewLine() throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(index, "r")) {
+			if (file.length() == 0) {
+				return true;
+			}
+			file.seek(file.length() - 1);
+			return file.read() == '\n';
+		}
+	}
+
+	private static void _apply(Map<String, Serie> series, String line) throws IOException {
+		String[] fields = line.split(SEPARATOR);
+		String name = _decode(fields[1]);
+		if (DELETED.equals(fields[0])) {
+			series.remove(name);
+			return;
+		}
+		if (!SERIE.equals(fields[0]) && !FILE.equals(fields[0])) {
+			throw new IllegalArgumentException(line);
+		}
+		long idFile = Long.parseLong(fields[2]);
+		Serie serie = series.get(name);
+		if (serie == null) {
+			serie = new Serie(name);
+			series.put(name, serie);
+		}
+		int metadataStart = 3;
+		if (SERIE.equals(fields[0])) {
+			serie.frameCount = Integer.parseInt(fields[3]);
+			serie.firstFile = idFile;
+			metadataStart = 4;
+		} else {
+			serie.frameCount++;
+			serie.firstFile = serie.firstFile < 0 ? idFile : Math.min(serie.firstFile, idFile);
+		}
+		if (metadataStart < fields.length) {
+			// only the first file of the series is recorded with its metadata
+			serie.metadata.clear();
+		}
+		for (int i = metadataStart; i < fields.length; i++) {
+			int equals = fields[i].indexOf('=');
+			serie.metadata.setProperty(_decode(fields[i].substring(0, equals)), _decode(fields[i].substring(equals + 1)));
+		}
+	}
+
+	private static boolean _isOutdated(List<String> lines, Map<String, Serie> series) {
+		return lines.size() > 2 * series.size() + 16;
+	}
+
+	private void _append(String line) throws IOException {
+		try (FileChannel channel = FileChannel.open(index.toPath(), WRITE, APPEND)) {
+			ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(UTF_8));
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+	}
+
+	private Map<String, Serie> _rebuild() throws IOException {
+		Map<String, Serie> series = new LinkedHashMap<String, Serie>();
+		File[] folders = patientDir.listFiles(File::isDirectory);
+		if (folders != null) {
+			for (File folder : folders) {
+				Serie serie = _scan(folder);
+				if (serie.frameCount > 0) {
+					series.put(serie.name, serie);
+				}
+			}
+		}
+		_write(series);
+		return series;
+	}
+
+	/**
+	 * @return the series as stored in its folder, with the metadata of its first file
+	 */
+	private Serie _scan(File folder) throws IOException {
+		Serie serie = new Serie(folder.getName());
+		File[] thumbnails = folder.listFiles((dir, name) -> name.endsWith(".thumn"));
+		for (File thumbnail : thumbnails == null ? new File[0] : thumbnails) {
+			try {
+				long idFile = Long.parseLong(thumbnail.getName().substring(0, thumbnail.getName().indexOf(".")));
+				serie.firstFile = serie.firstFile < 0 ? idFile : Math.min(serie.firstFile, idFile);
+				serie.frameCount++;
+			} catch (NumberFormatException e) {
+				// not a stored file
+			}
+		}
+		if (serie.frameCount > 0) {
+			try (FileReader reader = new FileReader(new File(folder, serie.firstFile + ".properties"))) {
+				serie.metadata.load(reader);
+			}
+		}
+		return serie;
+	}
+
+	private void _write(Map<String, Serie> series) throws IOException {
+		try (FileOutputStream fos = new FileOutputStream(temporaryIndex);
+				Writer writer = new OutputStreamWriter(fos, UTF_8)) {
+			for (Serie serie : series.values()) {
+				writer.write(SERIE + SEPARATOR + _encode(serie.name) + SEPARATOR + serie.firstFile + SEPARATOR + serie.frameCount);
+				for (String name : serie.metadata.stringPropertyNames()) {
+					writer.write(SEPARATOR + _encode(name) + '=' + _encode(serie.metadata.getProperty(name)));
+				}
+				writer.write('\n');
+			}
+			writer.flush();
+			fos.getFD().sync();
+		}
+		Files.move(temporaryIndex.toPath(), index.toPath(), ATOMIC_MOVE, REPLACE_EXISTING);
+	}
+
+	private static String _encode(String value) throws IOException {
+		return URLEncoder.encode(value, UTF_8.name());
+	}
+
+	private static String _decode(String value) throws IOException {
+		return URLDecoder.decode(value, UTF_8.name());
+	}
+
+	/**
+	 * A series in the index
+	 */
+	public static final class Serie {
+
+		private final String name;
+		private long firstFile = -1;
+		private int frameCount;
+		private final Properties metadata = new Properties();
+
+		Serie(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * @return the series number (the name of its folder)
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the id of the first file of the series
+		 */
+		public long getFirstFile() {
+			return firstFile;
+		}
+
+		/**
+		 * @return the number of files of the series
+		 */
+		public int getFrameCount() {
+			return frameCount;
+		}
+
+		/**
+		 * @return the metadata of the first file, as in its <code>.properties</code> file (empty if not recorded)
+		 */
+		public Properties getMetadata() {
+			return metadata;
+		}
+	}
+}
@@ -67,7 +67,7 @@ public class SourceFiles extends Thread {
 	private FileDicom fileDicom = null;
 	private int patient = 0;
 	private int filesCount = 0;
-	private int filesLoaded = 0;
+	private volatile DicomImportPipeline pipeline = null;
 	private AbstractDicomLoader dicomLoader = null;
 	private AbstractThumbnailViewGui thumbnail = null;
 
@@ -93,13 +93,11 @@ public class SourceFiles extends Thread {
 	}
 
 	/**
-	 * Load a DICOM directory
+	 * Load a DICOM directory through a {@link DicomImportPipeline}
 	 *
 	 * @throws Exception
 	 */
 	private void loadDicomDir(FileDicom fileDicom, File sourceFile, int patient) throws Exception {
-		// installLibs();
-		File[] files = sourceFile.listFiles();
 		String seriesNumber = fileDicom.getDicomSeriesNumber();
 		if (seriesNumber == null || seriesNumber.isEmpty()) {
 			try {
@@ -109,24 +107,9 @@ public class SourceFiles extends Thread {
 				seriesNumber = "";
 			}
 		}
-		for (File value : files) {
-
-			try {
-				Thread.sleep(10);
-			} catch (Exception e) {
-			}
-
-			if (!value.isDirectory()) {
-				try {
-					loadDicom(fileDicom, value, patient);
-				} catch (Exception e) {
-					throw e;
-				}
-				filesLoaded++;
-				dicomLoader.setLoaded(filesLoaded);
-			} else if (!".".equals(value.getName()) && !"..".equals(value.getName()))
-				loadDicomDir(fileDicom, value, patient);
-		}
+		pipeline = new DicomImportPipeline(fileDicom, patient, DicomManagerFactory.getManager(),
+				DicomManagerFactory.getImportThreads(), dicomLoader);
+		pipeline.importFiles(sourceFile);
 	}
 
 	public static boolean checkSize(File sourceFile) throws OHDicomException {
@@ -155,11 +138,12 @@ public class SourceFiles extends Thread {
 	}
 
 	public boolean working() {
-		return (filesLoaded < filesCount);
+		return (getLoaded() < filesCount);
 	}
 
 	public int getLoaded() {
-		return filesLoaded;
+		DicomImportPipeline current = pipeline;
+		return current == null ? 0 : current.getLoaded();
 	}
 
 	/**
@@ -233,14 +217,41 @@ public class SourceFiles extends Thread {
 	 * @param patient
 	 * @throws Exception
 	 */
-	@SuppressWarnings("unused")
-	public static synchronized void loadDicom(FileDicom dicomFileDetail, File sourceFile, int patient) throws Exception {
-		// installLibs();
+	public static void loadDicom(FileDicom dicomFileDetail, File sourceFile, int patient) throws Exception {
+		loadDicom(dicomFileDetail, sourceFile, patient, DicomManagerFactory.getManager());
+	}
 
-		//System.out.println("File "+sourceFile.getName());
+	/**
+	 * Load dicom file through the given manager
+	 *
+	 * @param dicomFileDetail
+	 * @param sourceFile
+	 * @param patient
+	 * @param manager
+	 * @throws Exception
+	 */
+	public static void loadDicom(FileDicom dicomFileDetail, File sourceFile, int patient, DicomManagerInterface manager) throws Exception {
+		BufferedImage originalImage = readDicom(dicomFileDetail, sourceFile, patient);
+		if (originalImage == null)
+			return;
+
+		createThumbnail(dicomFileDetail, originalImage);
+		saveDicom(manager, dicomFileDetail);
+	}
 
+	/**
+	 * Read the image and the metadata of a dicom file, the latter into dicomFileDetail
+	 *
+	 * @param dicomFileDetail
+	 * @param sourceFile
+	 * @param patient
+	 * @return the image read or <code>null</code> if the file has to be skipped
+	 * @throws Exception
+	 */
+	@SuppressWarnings("unused")
+	static BufferedImage readDicom(FileDicom dicomFileDetail, File sourceFile, int patient) throws Exception {
 		if (".DS_Store".equals(sourceFile.getName()))
-			return;
+			return null;
 
 		try {
 			boolean isJpeg = sourceFile.getName().toLowerCase().endsWith(".jpg") ||
@@ -253,7 +264,7 @@ public class SourceFiles extends Thread {
 			Iterator<?> iter = null;
 			if (isJpeg) {
 				iter = ImageIO.getImageReadersByFormatName("jpeg");
-				reader = (ImageReader) new com.sun.imageio.plugins.jpeg.JPEGImageReader(null);
+				reader = (ImageReader) iter.next();
 				//JPEGImageReadParam jpgParam = new JPEGImageReadParam();
 
 				ImageInputStream imageInputStream = ImageIO.createImageInputStream(sourceFile);
@@ -308,8 +319,6 @@ public class SourceFiles extends Thread {
 				throw new OHDicomException(new OHExceptionMessage("", "format not supported", OHSeverityLevel.ERROR));
 			}
 
-			BufferedImage scaled = Scalr.resize(originalImage, 100);
-
 			String accessionNumber = dicomFileDetail.getDicomAccessionNumber();
 			String instanceUID = dicomFileDetail.getDicomInstanceUID();
 			String institutionName = dicomFileDetail.getDicomInstitutionName();
@@ -434,25 +443,46 @@ public class SourceFiles extends Thread {
 				dicomFileDetail.setDicomStudyId(studyUID);
 			if (patient != 0)
 				dicomFileDetail.setPatId(patient);
-			if (scaled != null)
-				dicomFileDetail.setDicomThumbnail(scaled);
 			if (modality != null)
 				dicomFileDetail.setModality(modality);
-			dicomFileDetail.setIdFile(0); //it trigger the DB save with SqlDicomManager
-			try {
-				DicomManagerFactory.getManager().saveFile(dicomFileDetail);
-				//dicomFileDetail.setDicomSeriesNumber(dicom.getDicomSeriesNumber()); //series number could be generated if missing.
-			} catch (OHServiceException ex) {
-				if (ex.getMessages() != null) {
-					throw new OHDicomException(ex.getCause(), ex.getMessages());
-				}
-			}
+			return originalImage;
 
 		} catch (OHDicomException ecc) {
 			throw ecc;
 		}
 	}
 
+	/**
+	 * Create the thumbnail of a dicom file from its image
+	 *
+	 * @param dicomFileDetail
+	 * @param originalImage
+	 */
+	static void createThumbnail(FileDicom dicomFileDetail, BufferedImage originalImage) {
+		BufferedImage scaled = Scalr.resize(originalImage, 100);
+		if (scaled != null)
+			dicomFileDetail.setDicomThumbnail(scaled);
+	}
+
+	/**
+	 * Save a dicom file read with {@link #readDicom(FileDicom, File, int)}
+	 *
+	 * @param manager
+	 * @param dicomFileDetail
+	 * @throws OHDicomException
+	 */
+	static void saveDicom(DicomManagerInterface manager, FileDicom dicomFileDetail) throws OHDicomException {
+		dicomFileDetail.setIdFile(0); //it trigger the DB save with SqlDicomManager
+		try {
+			manager.saveFile(dicomFileDetail);
+			//dicomFileDetail.setDicomSeriesNumber(dicom.getDicomSeriesNumber()); //series number could be generated if missing.
+		} catch (OHServiceException ex) {
+			if (ex.getMessages() != null) {
+				throw new OHDicomException(ex.getCause(), ex.getMessages());
+			}
+		}
+	}
+
 	public static int checkOrientation(File sourceFile) throws ImageProcessingException, IOException {
 		Metadata metadata = ImageMetadataReader.readMetadata(sourceFile);
 		ExifIFD0Directory exifIFD0Directory = metadata.getFirstDirectoryOfType(ExifIFD0Directory.class);
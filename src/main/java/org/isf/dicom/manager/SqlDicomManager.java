@@ -64,7 +64,9 @@ public class SqlDicomManager implements DicomManagerInterface{
      */
     public boolean deleteSerie(int patientID, String seriesNumber) throws OHServiceException 
     {
-    	return ioOperations.deleteSerie(patientID, seriesNumber);
+    	boolean deleted = ioOperations.deleteSerie(patientID, seriesNumber);
+    	DicomManagerFactory.getThumbnailCache().evictSerie(patientID, seriesNumber);
+    	return deleted;
     }
     
     /**
@@ -117,14 +119,19 @@ public class SqlDicomManager implements DicomManagerInterface{
     }
 
     /**
-     * load metadata from DICOM files of the patient
+     * load metadata from DICOM files of the patient, with the thumbnails read through the {@link DicomThumbnailCache}
      * @param patientID
      * @return
      * @throws OHServiceException 
      */
     public FileDicom[] loadPatientFiles(int patientID) throws OHServiceException
     {
-    	return  ioOperations.loadPatientFiles(patientID);
+    	FileDicom[] dicoms = ioOperations.loadPatientFiles(patientID);
+    	DicomThumbnailCache thumbnailCache = DicomManagerFactory.getThumbnailCache();
+    	for (FileDicom dicom : dicoms)
+    		dicom.setDicomThumbnail(thumbnailCache.cached(patientID, dicom.getDicomSeriesNumber(), dicom.getIdFile(), dicom.getDicomThumbnail()));
+    	thumbnailCache.prefetch(dicoms);
+    	return dicoms;
     }
 
     /**
@@ -24,7 +24,7 @@ package org.isf.dicom.model;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.InputStream;
 import java.sql.Blob;
 import java.util.Date;
 
@@ -38,7 +38,6 @@ import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
-import javax.persistence.Lob;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 import javax.persistence.Transient;
@@ -81,8 +80,11 @@ public class FileDicom extends Auditable<String>
 	@Column(name = "DM_FILE_ID")
 	private long idFile;
 	
-	@Column(name = "DM_DATA")
-	@Lob
+	/**
+	 * DM_DATA, not mapped: written and read as a stream apart from the metadata
+	 * (see {@link org.isf.dicom.service.DicomIoOperationRepositoryCustom})
+	 */
+	@Transient
 	private Blob dicomData;
 
 	@NotNull
@@ -154,8 +156,11 @@ public class FileDicom extends Auditable<String>
 	@Column(name = "DM_FILE_MODALIITY")
 	private String modality = "";
 
-	@Column(name = "DM_THUMBNAIL")
-	@Lob
+	/**
+	 * DM_THUMBNAIL, not mapped: written and read as a stream apart from the metadata
+	 * (see {@link org.isf.dicom.service.DicomIoOperationRepositoryCustom})
+	 */
+	@Transient
 	private Blob dicomThumbnail;
 	
 	@Transient
@@ -241,6 +246,9 @@ public class FileDicom extends Auditable<String>
 	}
 	
 	/**
+	 * For a loaded file, each stream opened on the data holds a pooled connection
+	 * until it is closed or read to the end: close it (e.g. with try-with-resources).
+	 *
 	 * @return the dicomData
 	 */
 	public Blob getDicomData() {
@@ -256,24 +264,13 @@ public class FileDicom extends Auditable<String>
 	}
 
 	/**
-	 * Load bytes of DICOM file and store it in a Blob type
+	 * Set the DICOM file as data, read only when the data is saved
 	 * 
 	 * @param dicomFile
 	 *            the dicomFile to set
 	 */
 	public void setDicomData(File dicomFile) {
-		try {
-
-			FileInputStream fis = new FileInputStream(dicomFile);
-			byte[] byteArray = new byte[fis.available()];
-			fis.read(byteArray);
-			fis.close();
-			Blob blob = new SerialBlob(byteArray);
-			this.dicomData = blob;
-
-		} catch (Exception ecc) {
-			ecc.printStackTrace();
-		}
+		this.dicomData = StreamBlob.of(dicomFile);
 	}
 
 	/**
@@ -592,6 +589,9 @@ public class FileDicom extends Auditable<String>
 	}
 
 	/**
+	 * For a loaded file, each stream opened on the thumbnail holds a pooled connection
+	 * until it is closed or read to the end: close it (e.g. with try-with-resources).
+	 *
 	 * @return the dicomThumbnail
 	 */
 	public Blob getDicomThumbnail() {
@@ -650,8 +650,8 @@ public class FileDicom extends Auditable<String>
 	public BufferedImage getDicomThumbnailAsImage() {
 
 		BufferedImage bi = null;
-		try {
-			bi = ImageIO.read(dicomThumbnail.getBinaryStream());
+		try (InputStream stream = dicomThumbnail.getBinaryStream()) {
+			bi = ImageIO.read(stream);
 		} catch (Exception ecc) {
 			ecc.printStackTrace();
 		}
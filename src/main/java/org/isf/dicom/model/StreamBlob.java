@@ -0,0 +1,153 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.dicom.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Blob;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+
+/**
+ * Read-only {@link Blob} whose content is not held in memory
+ * but read from a stream opened at each {@link #getBinaryStream()}.
+ * <p>
+ * The streams must be closed by the caller.
+ */
+public abstract class StreamBlob implements Blob {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Returns a {@link StreamBlob} reading a file
+	 *
+	 * @param file - the file
+	 * @return the {@link StreamBlob}
+	 */
+	public static StreamBlob of(final File file) {
+		return new StreamBlob() {
+
+			@Override
+			public long length() {
+				return file.length();
+			}
+
+			@Override
+			public InputStream getBinaryStream() throws SQLException {
+				try {
+					return new FileInputStream(file);
+				} catch (IOException e) {
+					throw new SQLException("Cannot read " + file, e);
+				}
+			}
+		};
+	}
+
+	@Override
+	public byte[] getBytes(long pos, int length) throws SQLException {
+		if (pos < 1 || length < 0) {
+			throw new SQLException("Invalid position " + pos + " or length " + length);
+		}
+		try (InputStream stream = getBinaryStream()) {
+			long toSkip = pos - 1;
+			while (toSkip > 0) {
+				long skipped = stream.skip(toSkip);
+				if (skipped <= 0) {
+					return new byte[0];
+				}
+				toSkip -= skipped;
+			}
+			byte[] buffer = new byte[length];
+			int read = 0;
+			for (int count; read < length && (count = stream.read(buffer, read, length - read)) > 0; read += count) {
+			}
+			if (read < length) {
+				byte[] bytes = new byte[read];
+				System.arraycopy(buffer, 0, bytes, 0, read);
+				return bytes;
+			}
+			return buffer;
+		} catch (IOException e) {
+			throw new SQLException(e);
+		}
+	}
+
+	@Override
+	public InputStream getBinaryStream(long pos, long length) throws SQLException {
+		return new ByteArrayInputStream(getBytes(pos, (int) length));
+	}
+
+	/**
+	 * Copies the content into a stream
+	 *
+	 * @param blob - the {@link Blob} to copy
+	 * @param out - the stream to write to
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	public static void copy(Blob blob, OutputStream out) throws SQLException, IOException {
+		try (InputStream in = blob.getBinaryStream()) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			for (int count; (count = in.read(buffer)) > 0;) {
+				out.write(buffer, 0, count);
+			}
+		}
+	}
+
+	@Override
+	public long position(byte[] pattern, long start) throws SQLException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public long position(Blob pattern, long start) throws SQLException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public int setBytes(long pos, byte[] bytes) throws SQLException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public int setBytes(long pos, byte[] bytes, int offset, int len) throws SQLException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public OutputStream setBinaryStream(long pos) throws SQLException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public void truncate(long len) throws SQLException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public void free() {
+	}
+}
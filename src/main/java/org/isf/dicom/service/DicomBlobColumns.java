@@ -0,0 +1,73 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.dicom.service;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Adds the DM_DATA and DM_THUMBNAIL columns to the DICOM table when the schema is generated
+ * from the entities (<code>hibernate.hbm2ddl.auto</code>, as in the tests): they are not mapped
+ * by {@link org.isf.dicom.model.FileDicom}, being streamed by {@link DicomIoOperationRepositoryCustom}.
+ * The databases created by the scripts in <code>mysql/db</code> already have them.
+ */
+@Component
+public class DicomBlobColumns implements InitializingBean {
+
+	private static final String[][] COLUMNS = { { "DM_DATA", "LONGBLOB" }, { "DM_THUMBNAIL", "BLOB" } };
+
+	@Value("${hibernate.hbm2ddl.auto:false}")
+	private String hbm2ddl;
+
+	/** the schema is generated when the factory is created */
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Override
+	public void afterPropertiesSet() throws SQLException {
+		if (!hbm2ddl.equals("update") && !hbm2ddl.startsWith("create")) {
+			return;
+		}
+		try (Connection connection = dataSource.getConnection();
+				Statement statement = connection.createStatement()) {
+			for (String[] column : COLUMNS) {
+				try {
+					statement.executeQuery("SELECT " + column[0] + " FROM DICOM WHERE 1 = 0").close();
+				} catch (SQLException e) {
+					statement.executeUpdate("ALTER TABLE DICOM ADD COLUMN " + column[0] + " " + column[1]);
+				}
+			}
+		}
+	}
+}
@@ -32,14 +32,17 @@ import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
 @Repository
-public interface DicomIoOperationRepository extends JpaRepository<FileDicom, Long> {
+public interface DicomIoOperationRepository extends JpaRepository<FileDicom, Long>, DicomIoOperationRepositoryCustom {
     List<FileDicom> findAllByOrderByFileNameAsc();
 
 	@Query(value = "select f from FileDicom f WHERE f.patId = :id AND f.dicomSeriesNumber = :file order by f.fileName")
 	List<FileDicom> findAllWhereIdAndNumberByOrderNameAsc(@Param("id") int id, @Param("file") String file);
 
-	@Query(value = "select f from FileDicom f WHERE f.patId = :id group by f.dicomInstanceUID")
-    List<FileDicom> findAllWhereIdGroupByUid(@Param("id") int id);
+	@Query(value = "select f, (select count(g) from FileDicom g WHERE g.patId = f.patId AND g.dicomSeriesInstanceUID = f.dicomSeriesInstanceUID) "
+			+ "from FileDicom f left join fetch f.dicomType WHERE f.patId = :id AND f.idFile in "
+			+ "(select min(h.idFile) from FileDicom h WHERE h.patId = :id group by h.dicomSeriesInstanceUID) "
+			+ "order by f.dicomStudyDate desc, f.idFile")
+	List<Object[]> findFirstOfSeriesWithFrameCountWhereId(@Param("id") int id);
 
 	@Query(value = "select f from FileDicom f WHERE f.patId = :id AND f.dicomSeriesNumber = :file AND f.dicomInstanceUID = :uid")
 	List<FileDicom> findAllWhereIdAndFileAndUid(@Param("id") int id, @Param("file") String file, @Param("uid") String uid);
@@ -49,9 +52,6 @@ public interface DicomIoOperationRepository extends JpaRepository<FileDicom, Lon
 	@Query("delete from FileDicom fd WHERE fd.patId = :id AND fd.dicomSeriesNumber = :file")
 	void deleteByIdAndNumber(@Param("id") int id, @Param("file") String file);
 
-	@Query(value = "SELECT * FROM DICOM WHERE DM_FILE_SER_NUMBER = :dicomSeriesNumber", nativeQuery= true)
-	List<FileDicom> findAllWhereDicomSeriesNumber(@Param("dicomSeriesNumber") String dicomSeriesNumber);
-
-	@Query(value = "SELECT COUNT(*) FROM DICOM WHERE DM_FILE_SER_INST_UID = :dicomSeriesNumberId", nativeQuery=true)
-	int countFramesinSeries(@Param("dicomSeriesNumberId") String dicomSeriesInstanceUID);
+	@Query(value = "select count(f) from FileDicom f WHERE f.dicomSeriesNumber = :dicomSeriesNumber")
+	long countWhereDicomSeriesNumber(@Param("dicomSeriesNumber") String dicomSeriesNumber);
 }
\ No newline at end of file
@@ -0,0 +1,55 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.dicom.service;
+
+import java.sql.Blob;
+
+public interface DicomIoOperationRepositoryCustom {
+
+	/**
+	 * Streams the data and the thumbnail of a saved file into the database;
+	 * a <code>null</code> or already stored {@link Blob} is left untouched.
+	 *
+	 * @param idFile - the id of the file
+	 * @param dicomData - the DICOM data
+	 * @param dicomThumbnail - the thumbnail
+	 */
+	void updateData(long idFile, Blob dicomData, Blob dicomThumbnail);
+
+	/**
+	 * Each stream opened on the returned {@link Blob} holds a pooled connection
+	 * until it is closed or read to the end: callers must close it.
+	 *
+	 * @param idFile - the id of the file
+	 * @return a {@link Blob} streaming the DICOM data from the database at each read
+	 */
+	Blob getData(long idFile);
+
+	/**
+	 * Each stream opened on the returned {@link Blob} holds a pooled connection
+	 * until it is closed or read to the end: callers must close it.
+	 *
+	 * @param idFile - the id of the file
+	 * @return a {@link Blob} streaming the thumbnail from the database at each read
+	 */
+	Blob getThumbnail(long idFile);
+}
@@ -0,0 +1,242 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.dicom.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Blob;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.sql.DataSource;
+
+import org.hibernate.Session;
+import org.isf.dicom.model.StreamBlob;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Transactional;
+
+@Transactional
+public class DicomIoOperationRepositoryImpl implements DicomIoOperationRepositoryCustom {
+
+	private static final String DATA_COLUMN = "DM_DATA";
+	private static final String THUMBNAIL_COLUMN = "DM_THUMBNAIL";
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Override
+	public void updateData(final long idFile, Blob dicomData, Blob dicomThumbnail) {
+		final List<String> columns = new ArrayList<String>();
+		final List<Blob> blobs = new ArrayList<Blob>();
+		if (_isToStore(dicomData, idFile)) {
+			columns.add(DATA_COLUMN);
+			blobs.add(dicomData);
+		}
+		if (_isToStore(dicomThumbnail, idFile)) {
+			columns.add(THUMBNAIL_COLUMN);
+			blobs.add(dicomThumbnail);
+		}
+		if (columns.isEmpty()) {
+			return;
+		}
+		entityManager.unwrap(Session.class).doWork(connection -> {
+			StringBuilder sql = new StringBuilder("UPDATE DICOM SET ");
+			for (int i = 0; i < columns.size(); i++) {
+				sql.append(i == 0 ? "" : ", ").append(columns.get(i)).append(" = ?");
+			}
+			sql.append(" WHERE DM_FILE_ID = ?");
+			List<InputStream> streams = new ArrayList<InputStream>();
+			try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+				for (int i = 0; i < blobs.size(); i++) {
+					InputStream stream = blobs.get(i).getBinaryStream();
+					streams.add(stream);
+					statement.setBinaryStream(i + 1, stream, blobs.get(i).length());
+				}
+				statement.setLong(blobs.size() + 1, idFile);
+				statement.executeUpdate();
+			} finally {
+				for (InputStream stream : streams) {
+					try {
+						stream.close();
+					} catch (IOException e) {
+						// nothing to do
+					}
+				}
+			}
+		});
+	}
+
+	@Override
+	public Blob getData(long idFile) {
+		return new StoredBlob(dataSource, DATA_COLUMN, idFile);
+	}
+
+	@Override
+	public Blob getThumbnail(long idFile) {
+		return new StoredBlob(dataSource, THUMBNAIL_COLUMN, idFile);
+	}
+
+	private boolean _isToStore(Blob blob, long idFile) {
+		return blob != null && !(blob instanceof StoredBlob && ((StoredBlob) blob).idFile == idFile);
+	}
+
+	/**
+	 * A column of a DICOM row, read from the database only when its stream is read:
+	 * the stream reads it in chunks, each with a connection of its own,
+	 * so that neither the whole column is held in memory nor a connection is held between two reads.
+	 */
+	private static final class StoredBlob extends StreamBlob {
+
+		private static final int CHUNK_SIZE = 1024 * 1024;
+
+		private final DataSource dataSource;
+		private final String column;
+		private final long idFile;
+		private volatile long length = -1;
+
+		StoredBlob(DataSource dataSource, String column, long idFile) {
+			this.dataSource = dataSource;
+			this.column = column;
+			this.idFile = idFile;
+		}
+
+		@Override
+		public long length() throws SQLException {
+			if (length < 0) {
+				// the size computed by the database, without reading the column (LENGTH is OCTET_LENGTH in MySQL, and the bytes of a BLOB in H2 too)
+				try (Connection connection = dataSource.getConnection();
+						PreparedStatement statement = connection.prepareStatement("SELECT LENGTH(" + column + ") FROM DICOM WHERE DM_FILE_ID = ?")) {
+					statement.setLong(1, idFile);
+					try (ResultSet resultSet = statement.executeQuery()) {
+						length = resultSet.next() ? resultSet.getLong(1) : 0;
+					}
+				}
+			}
+			return length;
+		}
+
+		@Override
+		public InputStream getBinaryStream() throws SQLException {
+			return new InputStream() {
+
+				/** the position in the column of the first byte of the next chunk, from 1 */
+				private long position = 1;
+				private byte[] chunk = new byte[0];
+				private int index;
+				private boolean last;
+
+				@Override
+				public int read() throws IOException {
+					return _fill() ? chunk[index++] & 0xff : -1;
+				}
+
+				@Override
+				public int read(byte[] bytes, int offset, int count) throws IOException {
+					if (count == 0) {
+						return 0;
+					}
+					if (!_fill()) {
+						return -1;
+					}
+					int read = Math.min(count, chunk.length - index);
+					System.arraycopy(chunk, index, bytes, offset, read);
+					index += read;
+					return read;
+				}
+
+				@Override
+				public long skip(long count) throws IOException {
+					if (count <= 0) {
+						return 0;
+					}
+					long inChunk = Math.min(count, chunk.length - index);
+					index += inChunk;
+					if (inChunk == count || last) {
+						return inChunk;
+					}
+					// the bytes after the chunk are not read
+					long skipped = Math.min(count - inChunk, Math.max(0, length() - position + 1));
+					position += skipped;
+					return inChunk + skipped;
+				}
+
+				@Override
+				public void close() {
+					chunk = new byte[0];
+					index = 0;
+					last = true;
+				}
+
+				/**
+				 * @return <code>false</code> at the end of the column
+				 */
+				private boolean _fill() throws IOException {
+					if (index < chunk.length) {
+						return true;
+					}
+					if (last) {
+						return false;
+					}
+					try {
+						chunk = _readChunk(position);
+					} catch (SQLException e) {
+						throw new IOException(e);
+					}
+					index = 0;
+					position += chunk.length;
+					last = chunk.length < CHUNK_SIZE;
+					return chunk.length > 0;
+				}
+
+				private long length() throws IOException {
+					try {
+						return StoredBlob.this.length();
+					} catch (SQLException e) {
+						throw new IOException(e);
+					}
+				}
+			};
+		}
+
+		private byte[] _readChunk(long position) throws SQLException {
+			try (Connection connection = dataSource.getConnection();
+					PreparedStatement statement = connection.prepareStatement("SELECT SUBSTRING(" + column + ", ?, ?) FROM DICOM WHERE DM_FILE_ID = ?")) {
+				statement.setLong(1, position);
+				statement.setInt(2, CHUNK_SIZE);
+				statement.setLong(3, idFile);
+				try (ResultSet resultSet = statement.executeQuery()) {
+					byte[] bytes = resultSet.next() ? resultSet.getBytes(1) : null;
+					return bytes == null ? new byte[0] : bytes;
+				}
+			}
+		}
+	}
+}
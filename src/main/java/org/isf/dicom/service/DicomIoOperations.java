@@ -117,7 +117,7 @@ public class DicomIoOperations
 	}
 
 	/**
-	 * Load the Detail of DICOM
+	 * Load the Detail of DICOM; data and thumbnail are read from the database only when their streams are opened
 	 * 
 	 * @param idFile
 	 * @param patientID
@@ -131,12 +131,19 @@ public class DicomIoOperations
 			String seriesNumber) throws OHServiceException
 	{
 		FileDicom dicom = repository.findOne(idFile);
-				
+		if (dicom != null)
+		{
+			dicom.setDicomData(repository.getData(idFile));
+			dicom.setDicomThumbnail(repository.getThumbnail(idFile));
+		}
+		
 		return dicom;
 	}
 
 	/**
-	 * load metadata from DICOM files stored in database fot the patient
+	 * load metadata from DICOM files stored in database fot the patient, one file per series
+	 * (the first one, with the number of files of its series) read by a single query;
+	 * the thumbnails are read from the database only when their streams are opened
 	 * 
 	 * @param patientID
 	 * @return FileDicom array
@@ -145,14 +152,14 @@ public class DicomIoOperations
 	public FileDicom[] loadPatientFiles(
 			int patientID) throws OHServiceException
 	{
-		List<FileDicom> dicomList = repository.findAllWhereIdGroupByUid(patientID);
+		List<Object[]> series = repository.findFirstOfSeriesWithFrameCountWhereId(patientID);
 
-		FileDicom[] dicoms = new FileDicom[dicomList.size()];	
-		for (int i=0; i<dicomList.size(); i++)
+		FileDicom[] dicoms = new FileDicom[series.size()];	
+		for (int i=0; i<series.size(); i++)
 		{
-			int count = repository.countFramesinSeries(dicomList.get(i).getDicomSeriesInstanceUID());
-			dicoms[i] = dicomList.get(i);
-			dicoms[i].setFrameCount(count);
+			dicoms[i] = (FileDicom) series.get(i)[0];
+			dicoms[i].setFrameCount(((Number) series.get(i)[1]).intValue());
+			dicoms[i].setDicomThumbnail(repository.getThumbnail(dicoms[i].getIdFile()));
 		}
 		
 		return dicoms;
@@ -174,7 +181,7 @@ public class DicomIoOperations
 	}
 
 	/**
-	 * save the DICOM file and metadata in the database
+	 * save the DICOM file and metadata in the database, data and thumbnail streamed after the metadata
 	 * 
 	 * @param dicom
 	 * @throws OHServiceException 
@@ -182,7 +189,8 @@ public class DicomIoOperations
 	public void saveFile(
 			FileDicom dicom) throws OHServiceException 
 	{
-		repository.save(dicom);
+		FileDicom savedDicom = repository.saveAndFlush(dicom);
+		repository.updateData(savedDicom.getIdFile(), dicom.getDicomData(), dicom.getDicomThumbnail());
 		
 		return;
 	}
@@ -214,11 +222,6 @@ public class DicomIoOperations
 	 */
 	public boolean isSeriePresent(String dicomSeriesNumber) throws OHServiceException
 	{
-		List<FileDicom> result;
-
-
-		result = repository.findAllWhereDicomSeriesNumber(dicomSeriesNumber);
-
-		return !result.isEmpty();
+		return repository.countWhereDicomSeriesNumber(dicomSeriesNumber) > 0;
 	}
 }
@@ -27,6 +27,8 @@ import org.isf.disctype.model.DischargeType;
 import org.isf.utils.db.TranslateOHServiceException;
 import org.isf.utils.exception.OHServiceException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -44,6 +46,7 @@ public class DischargeTypeIoOperation {
 	 * @return the list of all DischargeTypes
 	 * @throws OHServiceException
 	 */
+	@Cacheable(cacheNames = "dischargeTypes", key = "#root.targetClass.simpleName")
 	public ArrayList<DischargeType> getDischargeType() throws OHServiceException 
 	{
 		return new ArrayList<DischargeType>(repository.findAllByOrderByDescriptionAsc());
@@ -56,6 +59,7 @@ public class DischargeTypeIoOperation {
 	 * @return true - if the existing DischargeType has been updated
 	 * @throws OHServiceException
 	 */
+	@CacheEvict(cacheNames = "dischargeTypes", allEntries = true)
 	public boolean updateDischargeType(
 			DischargeType dischargeType) throws OHServiceException 
 	{
@@ -75,6 +79,7 @@ public class DischargeTypeIoOperation {
 	 * @return true - if the new DischargeType has been inserted
 	 * @throws OHServiceException
 	 */
+	@CacheEvict(cacheNames = "dischargeTypes", allEntries = true)
 	public boolean newDischargeType(
 			DischargeType dischargeType) throws OHServiceException 
 	{
@@ -94,6 +99,7 @@ public class DischargeTypeIoOperation {
 	 * @return true - if the DischargeType has been deleted
 	 * @throws OHServiceException
 	 */
+	@CacheEvict(cacheNames = "dischargeTypes", allEntries = true)
 	public boolean deleteDischargeType(
 			DischargeType dischargeType) throws OHServiceException
 	{
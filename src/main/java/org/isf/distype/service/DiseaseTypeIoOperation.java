@@ -27,6 +27,8 @@ import org.isf.distype.model.DiseaseType;
 import org.isf.utils.db.TranslateOHServiceException;
 import org.isf.utils.exception.OHServiceException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -46,6 +48,7 @@ public class DiseaseTypeIoOperation {
 	 * @return a list of disease type.
 	 * @throws OHServiceException if an error occurs retrieving the diseases list.
 	 */
+	@Cacheable("diseaseTypes")
 	public ArrayList<DiseaseType> getDiseaseTypes() throws OHServiceException 
 	{
 		return new ArrayList<DiseaseType>(repository.findAllByOrderByDescriptionAsc());
@@ -57,6 +60,7 @@ public class DiseaseTypeIoOperation {
 	 * @return <code>true</code> if the disease type has been updated, false otherwise.
 	 * @throws OHServiceException if an error occurs during the update operation.
 	 */
+	@CacheEvict(cacheNames = "diseaseTypes", allEntries = true)
 	public boolean updateDiseaseType(
 			DiseaseType diseaseType) throws OHServiceException 
 	{
@@ -75,6 +79,7 @@ public class DiseaseTypeIoOperation {
 	 * @return <code>true</code> if the {@link DiseaseType} has been stored, <code>false</code> otherwise.
 	 * @throws OHServiceException if an error occurs during the store operation.
 	 */
+	@CacheEvict(cacheNames = "diseaseTypes", allEntries = true)
 	public boolean newDiseaseType(
 			DiseaseType diseaseType) throws OHServiceException 
 	{
@@ -93,6 +98,7 @@ public class DiseaseTypeIoOperation {
 	 * @return <code>true</code> if the disease has been removed, <code>false</code> otherwise.
 	 * @throws OHServiceException if an error occurs during the delete procedure.
 	 */
+	@CacheEvict(cacheNames = "diseaseTypes", allEntries = true)
 	public boolean deleteDiseaseType(
 			DiseaseType diseaseType) throws OHServiceException 
 	{
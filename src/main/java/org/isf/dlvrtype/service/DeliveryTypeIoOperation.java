@@ -27,6 +27,8 @@ import org.isf.dlvrtype.model.DeliveryType;
 import org.isf.utils.db.TranslateOHServiceException;
 import org.isf.utils.exception.OHServiceException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -46,6 +48,7 @@ public class DeliveryTypeIoOperation {
 	 * @return all stored delivery types.
 	 * @throws OHServiceException if an error occurs retrieving the delivery types. 
 	 */
+	@Cacheable("deliveryTypes")
 	public ArrayList<DeliveryType> getDeliveryType() throws OHServiceException 
 	{
 		return new ArrayList<DeliveryType>(repository.findAll());
@@ -57,6 +60,7 @@ public class DeliveryTypeIoOperation {
 	 * @return <code>true</code> if the delivery type has been update.
 	 * @throws OHServiceException if an error occurs during the update operation.
 	 */
+	@CacheEvict(cacheNames = "deliveryTypes", allEntries = true)
 	public boolean updateDeliveryType(
 			DeliveryType deliveryType) throws OHServiceException 
 	{
@@ -75,6 +79,7 @@ public class DeliveryTypeIoOperation {
 	 * @return <code>true</code> if the delivery type has been stored, <code>false</code> otherwise.
 	 * @throws OHServiceException if an error occurred during the store operation.
 	 */
+	@CacheEvict(cacheNames = "deliveryTypes", allEntries = true)
 	public boolean newDeliveryType(
 			DeliveryType deliveryType) throws OHServiceException 
 	{
@@ -93,6 +98,7 @@ public class DeliveryTypeIoOperation {
 	 * @return <code>true</code> if the delivery type has been deleted, <code>false</code> otherwise.
 	 * @throws OHServiceException if an error occurred during the delete operation.
 	 */
+	@CacheEvict(cacheNames = "deliveryTypes", allEntries = true)
 	public boolean deleteDeliveryType(
 			DeliveryType deliveryType) throws OHServiceException 
 	{
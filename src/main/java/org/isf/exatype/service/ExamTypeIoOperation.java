@@ -27,6 +27,8 @@ import org.isf.exatype.model.ExamType;
 import org.isf.utils.db.TranslateOHServiceException;
 import org.isf.utils.exception.OHServiceException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -43,6 +45,7 @@ public class ExamTypeIoOperation {
 	 * @return the list of {@link ExamType}s.
 	 * @throws OHServiceException
 	 */
+	@Cacheable("examTypes")
 	public ArrayList<ExamType> getExamType() throws OHServiceException 
 	{
 		return new ArrayList<ExamType>(repository.findAllByOrderByDescriptionAsc()); 	
@@ -54,6 +57,7 @@ public class ExamTypeIoOperation {
 	 * @return <code>true</code> if the examType has been updated, <code>false</code> otherwise.
 	 * @throws OHServiceException
 	 */
+	@CacheEvict(cacheNames = "examTypes", allEntries = true)
 	public boolean updateExamType(
 			ExamType examType) throws OHServiceException 
 	{
@@ -72,6 +76,7 @@ public class ExamTypeIoOperation {
 	 * @return <code>true</code> if the examType has been inserted, <code>false</code> otherwise.
 	 * @throws OHServiceException
 	 */
+	@CacheEvict(cacheNames = "examTypes", allEntries = true)
 	public boolean newExamType(
 			ExamType examType) throws OHServiceException 
 	{
@@ -89,6 +94,7 @@ public class ExamTypeIoOperation {
 	 * @return <code>true</code> if the examType has been deleted, <code>false</code> otherwise.
 	 * @throws OHServiceException
 	 */
+	@CacheEvict(cacheNames = "examTypes", allEntries = true)
 	public boolean deleteExamType(
 			ExamType examType) throws OHServiceException 
 	{
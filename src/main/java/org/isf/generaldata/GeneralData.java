@@ -68,6 +68,7 @@ public class GeneralData {
 	public static String PHARMACEUTICALAMC;
 	public static boolean PATIENTEXTENDED;
 	public static boolean OPDEXTENDED;
+	public static boolean OPDROLLUP;
 	public static boolean MATERNITYRESTARTINJUNE;
 	public static boolean LABEXTENDED;
 	public static boolean INTERNALVIEWER;
@@ -112,6 +113,7 @@ public class GeneralData {
 	private static String DEFAULT_PHARMACEUTICALAMC = "PharmaceuticalAMC";
 	private static boolean DEFAULT_PATIENTEXTENDED = false;
 	private static boolean DEFAULT_OPDEXTENDED = false;
+	private static boolean DEFAULT_OPDROLLUP = false;
 	private static boolean DEFAULT_MATERNITYRESTARTINJUNE = false;
 	private static boolean DEFAULT_LABEXTENDED = false;
 	private static boolean DEFAULT_INTERNALVIEWER = true;
@@ -163,6 +165,7 @@ public class GeneralData {
 			PHARMACEUTICALAMC = myGetProperty("PHARMACEUTICALAMC", DEFAULT_PHARMACEUTICALAMC);
 			PATIENTEXTENDED = myGetProperty("PATIENTEXTENDED", DEFAULT_PATIENTEXTENDED);
 			OPDEXTENDED = myGetProperty("OPDEXTENDED", DEFAULT_OPDEXTENDED);
+			OPDROLLUP = myGetProperty("OPDROLLUP", DEFAULT_OPDROLLUP);
 			MATERNITYRESTARTINJUNE = myGetProperty("MATERNITYRESTARTINJUNE", DEFAULT_MATERNITYRESTARTINJUNE);
 			LABEXTENDED = myGetProperty("LABEXTENDED", DEFAULT_LABEXTENDED);
 			LABMULTIPLEINSERT = myGetProperty("LABMULTIPLEINSERT", DEFAULT_LABMULTIPLEINSERT);
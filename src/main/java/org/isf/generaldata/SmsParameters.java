@@ -48,6 +48,18 @@ public class SmsParameters {
     public static String ICC;
     private static String DEFAULT_ICC = "";
     
+    public static int WORKERS;
+    private static int DEFAULT_WORKERS = 4;
+    
+    public static int RATE;
+    private static int DEFAULT_RATE = 10;
+    
+    public static int RETRIES;
+    private static int DEFAULT_RETRIES = 5;
+    
+    public static int BACKOFF;
+    private static int DEFAULT_BACKOFF = 1000;
+    
     private static SmsParameters mySingleData;
 	private Properties p;
 
@@ -61,6 +73,10 @@ public class SmsParameters {
 			TIMEOUT = myGetProperty("TIMEOUT", DEFAULT_TIMEOUT);
 			LOOP = myGetProperty("LOOP", DEFAULT_LOOP);
 			ICC = myGetProperty("ICC", DEFAULT_ICC);
+			WORKERS = myGetProperty("WORKERS", DEFAULT_WORKERS);
+			RATE = myGetProperty("RATE", DEFAULT_RATE);
+			RETRIES = myGetProperty("RETRIES", DEFAULT_RETRIES);
+			BACKOFF = myGetProperty("BACKOFF", DEFAULT_BACKOFF);
 			
     	} catch (Exception e) {//no file
     		logger.error(">> " + FILE_PROPERTIES + " file not found.");
@@ -33,6 +33,7 @@ import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.isf.generaldata.GeneralData;
 import org.isf.generaldata.MessageBundle;
@@ -304,11 +305,22 @@ public class LabManager {
 			throw new OHDataValidationException(new OHExceptionMessage("labRowNullOrEmptyError", 
 		    		MessageBundle.getMessage("angal.labnew.someexamswithoutresultpleasecheck"), 
 		    		OHSeverityLevel.ERROR));
-		boolean result = true;
+		ArrayList<ArrayList<LaboratoryRow>> rowsList = new ArrayList<ArrayList<LaboratoryRow>>();
 		for (int i = 0; i < labList.size(); i++) {
-			result = result && newLaboratory(labList.get(i), labRowList.get(i));
+			Laboratory laboratory = labList.get(i);
+			validateLaboratory(laboratory);
+			validateProcedure(laboratory, labRowList.get(i), false);
+			ArrayList<LaboratoryRow> rows = new ArrayList<LaboratoryRow>();
+			if (laboratory.getExam().getProcedure() == 2) {
+				for (String labRow : labRowList.get(i)) {
+					LaboratoryRow row = new LaboratoryRow();
+					row.setDescription(labRow);
+					rows.add(row);
+				}
+			}
+			rowsList.add(rows);
 		}
-		return result;
+		return ioOperations.newLaboratories(labList, rowsList);
 	}
         
         /**
@@ -328,11 +340,33 @@ public class LabManager {
 			throw new OHDataValidationException(new OHExceptionMessage("labRowNullOrEmptyError", 
 		    		MessageBundle.getMessage("angal.labnew.someexamswithoutresultpleasecheck"), 
 		    		OHSeverityLevel.ERROR));
-		boolean result = true;
+		ArrayList<ArrayList<LaboratoryRow>> rowsList = new ArrayList<ArrayList<LaboratoryRow>>();
 		for (int i = 0; i < labList.size(); i++) {
-			result = result && newLaboratory2(labList.get(i), labRowList.get(i));
+			Laboratory laboratory = labList.get(i);
+			validateLaboratory(laboratory);
+			validateProcedure(laboratory, labRowList.get(i), true);
+			rowsList.add(laboratory.getExam().getProcedure() == 2 ? labRowList.get(i) : new ArrayList<LaboratoryRow>());
 		}
-		return result;
+		return ioOperations.newLaboratories(labList, rowsList);
+	}
+
+	/**
+	 * Verify that the exam procedure is known and that the results are given for Procedure Two
+	 * @param laboratory - the {@link Laboratory}
+	 * @param labRow - the list of results (Procedure 2) - it can be <code>null</code>
+	 * @param thirdProcedure - <code>true</code> if Procedure Three is allowed
+	 * @throws OHDataValidationException 
+	 */
+	private void validateProcedure(Laboratory laboratory, List<?> labRow, boolean thirdProcedure) throws OHDataValidationException {
+		int procedure = laboratory.getExam().getProcedure();
+		if (procedure == 2 && (labRow == null || labRow.isEmpty()))
+			throw new OHDataValidationException(new OHExceptionMessage("labRowNullOrEmptyError", 
+	        		MessageBundle.getMessage("angal.labnew.someexamswithoutresultpleasecheck"), 
+	        		OHSeverityLevel.ERROR));
+		if (procedure != 1 && procedure != 2 && !(procedure == 3 && thirdProcedure))
+			throw new OHDataValidationException(new OHExceptionMessage("unknownProcedureError", 
+	        		MessageBundle.getMessage("angal.lab.unknownprocedure"), 
+	        		OHSeverityLevel.ERROR));
 	}
 	
 	/**
@@ -397,10 +431,22 @@ public class LabManager {
 		
 		List<LaboratoryRow> rows = null;
 		
+		// the results of all the exams at once
+		List<Integer> codes = new ArrayList<Integer>();
+		for (LaboratoryForPrint lab : labs) {
+			if (lab.getResult().equalsIgnoreCase(MessageBundle.getMessage("angal.lab.multipleresults"))) {
+				codes.add(lab.getCode());
+			}
+		}
+		Map<Integer, List<LaboratoryRow>> rowsByCode = new HashMap<Integer, List<LaboratoryRow>>();
+		for (LaboratoryRow row : ioOperations.getLabRows(codes)) {
+			rowsByCode.computeIfAbsent(row.getLabId().getCode(), code -> new ArrayList<LaboratoryRow>()).add(row);
+		}
+		
 		for (LaboratoryForPrint lab : labs) {
 			String labResult = lab.getResult();
 			if (labResult.equalsIgnoreCase(MessageBundle.getMessage("angal.lab.multipleresults"))) {
-				rows = ioOperations.getLabRow(lab.getCode());
+				rows = rowsByCode.get(lab.getCode());
 				
 				if (rows == null || rows.size() == 0) {
 					lab.setResult(MessageBundle.getMessage("angal.lab.allnegative"));
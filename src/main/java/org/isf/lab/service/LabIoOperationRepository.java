@@ -26,27 +26,43 @@ import java.util.List;
 
 import org.isf.lab.model.Laboratory;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface LabIoOperationRepository extends JpaRepository<Laboratory, Integer> {
 
+    /*
+     * the listings fetch exam, exam type and patient with the laboratories, instead of a select for each of them
+     */
+    String FETCH_LABORATORY = "select l from Laboratory l join fetch l.exam e left join fetch e.examtype t left join fetch l.patient p ";
+
+    @Query(FETCH_LABORATORY + "where l.examDate between :dateFrom and :dateTo "
+            + "order by l.examDate desc, l.registrationDate desc")
     List<Laboratory> findByExamDateBetweenOrderByExamDateDescRegistrationDateDesc(
-            GregorianCalendar dateFrom,
-            GregorianCalendar dateTo);
+            @Param("dateFrom") GregorianCalendar dateFrom,
+            @Param("dateTo") GregorianCalendar dateTo);
 
+    @Query(FETCH_LABORATORY + "where l.examDate between :dateFrom and :dateTo and e.description = :exam "
+            + "order by l.examDate desc, l.registrationDate desc")
     List<Laboratory> findByExamDateBetweenAndExam_DescriptionOrderByExamDateDescRegistrationDateDesc(
-            GregorianCalendar dateFrom,
-            GregorianCalendar dateTo,
-            String exam);
+            @Param("dateFrom") GregorianCalendar dateFrom,
+            @Param("dateTo") GregorianCalendar dateTo,
+            @Param("exam") String exam);
 
-    List<Laboratory> findByPatient_CodeOrderByRegistrationDate(Integer patient);
+    @Query(FETCH_LABORATORY + "where p.code = :patient order by l.registrationDate")
+    List<Laboratory> findByPatient_CodeOrderByRegistrationDate(@Param("patient") Integer patient);
 
+    @Query(FETCH_LABORATORY + "where l.examDate between :dateFrom and :dateTo "
+            + "order by t.description desc")
     List<Laboratory> findByExamDateBetweenOrderByExam_Examtype_DescriptionDesc(
-            GregorianCalendar dateFrom,
-            GregorianCalendar dateTo);
+            @Param("dateFrom") GregorianCalendar dateFrom,
+            @Param("dateTo") GregorianCalendar dateTo);
 
+    @Query(FETCH_LABORATORY + "where l.examDate between :dateFrom and :dateTo and e.description like concat('%', :exam, '%') "
+            + "order by t.description desc")
     List<Laboratory> findByExamDateBetweenAndExam_DescriptionContainingOrderByExam_Examtype_DescriptionDesc(
-            GregorianCalendar dateFrom,
-            GregorianCalendar dateTo,
-            String exam);
+            @Param("dateFrom") GregorianCalendar dateFrom,
+            @Param("dateTo") GregorianCalendar dateTo,
+            @Param("exam") String exam);
 
-}
\ No newline at end of file
+}
@@ -38,7 +38,10 @@ package org.isf.lab.service;
  *------------------------------------------*/
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.GregorianCalendar;
+import java.util.List;
 
 import org.isf.lab.model.Laboratory;
 import org.isf.lab.model.LaboratoryForPrint;
@@ -55,6 +58,8 @@ import org.springframework.transaction.annotation.Transactional;
 @TranslateOHServiceException
 public class LabIoOperations {
 
+	private static final int MAX_CODES_PER_QUERY = 1000;
+
 	@Autowired
 	private LabIoOperationRepository repository;
         
@@ -71,6 +76,22 @@ public class LabIoOperations {
 		return rowRepository.findByLaboratory_Code(code);
 	}
 
+	/**
+	 * Return the results ({@link LaboratoryRow}s) of several lab entries, read with their entries
+	 * by a single query (for each {@value #MAX_CODES_PER_QUERY} entries).
+	 * @param codes - the {@link Laboratory} record IDs.
+	 * @return the list of {@link LaboratoryRow}s, ordered by {@link Laboratory} and then as inserted. It could be <code>empty</code>
+	 * @throws OHServiceException
+	 */
+	public ArrayList<LaboratoryRow> getLabRows(Collection<Integer> codes) throws OHServiceException	{
+		ArrayList<LaboratoryRow> rows = new ArrayList<LaboratoryRow>();
+		List<Integer> codeList = new ArrayList<Integer>(codes);
+		for (int first = 0; first < codeList.size(); first += MAX_CODES_PER_QUERY) {
+			rows.addAll(rowRepository.findByLaboratory_CodeIn(codeList.subList(first, Math.min(codeList.size(), first + MAX_CODES_PER_QUERY))));
+		}
+		return rows;
+	}
+
 	/*
 	 * NO LONGER USED
 	 * 
@@ -216,51 +237,55 @@ public class LabIoOperations {
 	 * @throws OHServiceException
 	 */
 	public boolean newLabSecondProcedure(Laboratory laboratory,	ArrayList<String> labRow) throws OHServiceException {
-		boolean result = true;
-		
-		
-		int newCode = newLaboratory(laboratory);
-		if (newCode > 0) 
-		{
-			for (String aLabRow : labRow) {
-				LaboratoryRow laboratoryRow = new LaboratoryRow();
-				laboratoryRow.setLabId(laboratory);
-				laboratoryRow.setDescription(aLabRow);	
-
-				LaboratoryRow savedLaboratoryRow = rowRepository.save(laboratoryRow);
-				result = result && (savedLaboratoryRow != null);
-			}
-		}
-		
-		return result;
+		return newLabSecondProcedure2(laboratory, _toRows(labRow));
 	}
         
         /**
 	 * Inserts one Laboratory exam {@link Laboratory} with multiple results (Procedure Two) 
 	 * @param laboratory - the {@link Laboratory} to insert
-	 * @param labRow - the list of results ({@link String}s)
+	 * @param labRow - the list of results ({@link LaboratoryRow}s)
 	 * @return <code>true</code> if the exam has been inserted with all its results, <code>false</code> otherwise
 	 * @throws OHServiceException
 	 */
 	public boolean newLabSecondProcedure2(Laboratory laboratory,
 			ArrayList<LaboratoryRow> labRow) throws OHServiceException {
-		boolean result = true;
-		
-		
-		int newCode = newLaboratory(laboratory);
-		if (newCode > 0) 
-		{
-			laboratory = repository.getOne(newCode);
-			for (LaboratoryRow aLabRow : labRow) {
-				aLabRow.setLabId(laboratory);
-				//laboratoryRow.setDescription(aLabRow);	
+		return newLaboratories(Collections.singletonList(laboratory), Collections.singletonList(labRow));
+	}
 
-				LaboratoryRow savedLaboratoryRow = rowRepository.save(aLabRow);
-				result = result && (savedLaboratoryRow != null);
+	/**
+	 * Inserts several Laboratory exams {@link Laboratory}s with their results, if any (all Procedures);
+	 * the results of all the exams are inserted with JDBC batches.
+	 * @param laboratories - the {@link Laboratory}s to insert
+	 * @param labRows - for each {@link Laboratory}, the list of results ({@link LaboratoryRow}s), empty for Procedure One and Three
+	 * @return <code>true</code> if the exams have been inserted with all their results, <code>false</code> otherwise
+	 * @throws OHServiceException
+	 */
+	public boolean newLaboratories(List<Laboratory> laboratories,
+			List<? extends List<LaboratoryRow>> labRows) throws OHServiceException {
+		List<LaboratoryRow> rows = new ArrayList<LaboratoryRow>();
+		for (int i = 0; i < laboratories.size(); i++) {
+			Laboratory savedLaboratory = repository.save(laboratories.get(i));
+			if (savedLaboratory.getCode() <= 0) {
+				return false;
+			}
+			for (LaboratoryRow aLabRow : labRows.get(i)) {
+				aLabRow.setLabId(savedLaboratory);
+				rows.add(aLabRow);
 			}
 		}
+		rowRepository.insertRows(rows);
 		
-		return result;
+		return true;
+	}
+
+	private ArrayList<LaboratoryRow> _toRows(List<String> labRow) {
+		ArrayList<LaboratoryRow> rows = new ArrayList<LaboratoryRow>();
+		for (String aLabRow : labRow) {
+			LaboratoryRow laboratoryRow = new LaboratoryRow();
+			laboratoryRow.setDescription(aLabRow);
+			rows.add(laboratoryRow);
+		}
+		return rows;
 	}
 	
 	/**
@@ -303,12 +328,11 @@ public class LabIoOperations {
 		
 		
 		if (result)	{
-			for (String aLabRow : labRow) {
-				LaboratoryRow laboratoryRow = new LaboratoryRow();
+			List<LaboratoryRow> rows = _toRows(labRow);
+			for (LaboratoryRow laboratoryRow : rows) {
 				laboratoryRow.setLabId(laboratory);
-				laboratoryRow.setDescription(aLabRow);	
-				rowRepository.save(laboratoryRow);
 			}
+			rowRepository.insertRows(rows);
 		}
 		
 		return result;
@@ -24,11 +24,19 @@ package org.isf.lab.service;
 import org.isf.lab.model.LaboratoryRow;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
-public interface LabRowIoOperationRepository extends JpaRepository<LaboratoryRow, Integer> {
+public interface LabRowIoOperationRepository extends JpaRepository<LaboratoryRow, Integer>, LabRowIoOperationRepositoryCustom {
 	@Modifying
   void deleteByLaboratory_Code(Integer code);
   ArrayList<LaboratoryRow> findByLaboratory_Code(Integer id);
+
+  @Query("select r from LaboratoryRow r join fetch r.laboratory l join fetch l.exam e left join fetch e.examtype left join fetch l.patient "
+		  + "where l.code in (:codes) order by l.code, r.code")
+  List<LaboratoryRow> findByLaboratory_CodeIn(@Param("codes") Collection<Integer> codes);
 }
\ No newline at end of file
@@ -0,0 +1,98 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.lab.service;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.isf.lab.model.LaboratoryRow;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * LABR_ID is an identity column, so Hibernate inserts the results one statement at a time:
+ * they are inserted here with a JDBC batch of <code>hibernate.jdbc.batch_size</code> rows instead.
+ */
+@Transactional
+public class LabRowIoOperationRepositoryImpl implements LabRowIoOperationRepositoryCustom {
+
+	private static final String INSERT = "INSERT INTO LABORATORYROW (LABR_LAB_ID, LABR_DESC, "
+			+ "LABR_CREATED_BY, LABR_CREATED_DATE, LABR_LAST_MODIFIED_BY, LABR_LAST_MODIFIED_DATE, LABR_ACTIVE) "
+			+ "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Autowired
+	private AuditorAware<String> auditorAware;
+
+	@Override
+	public void insertRows(final List<LaboratoryRow> rows) {
+		if (rows.isEmpty()) {
+			return;
+		}
+		final String auditor = auditorAware.getCurrentAuditor();
+		final Date now = new Date();
+		Session session = entityManager.unwrap(Session.class);
+		// the laboratories must be written first
+		session.flush();
+		int batchSize = ((SessionFactoryImplementor) session.getSessionFactory()).getSettings().getJdbcBatchSize();
+		final int rowsPerBatch = Math.max(1, batchSize);
+		session.doWork(connection -> {
+			try (PreparedStatement statement = connection.prepareStatement(INSERT, Statement.RETURN_GENERATED_KEYS)) {
+				for (int first = 0; first < rows.size(); first += rowsPerBatch) {
+					List<LaboratoryRow> batch = rows.subList(first, Math.min(rows.size(), first + rowsPerBatch));
+					for (LaboratoryRow row : batch) {
+						row.setCreatedBy(auditor);
+						row.setCreatedDate(now);
+						row.setLastModifiedBy(auditor);
+						row.setLastModifiedDate(now);
+						statement.setInt(1, row.getLabId().getCode());
+						statement.setString(2, row.getDescription());
+						statement.setString(3, auditor);
+						statement.setTimestamp(4, new Timestamp(now.getTime()));
+						statement.setString(5, auditor);
+						statement.setTimestamp(6, new Timestamp(now.getTime()));
+						statement.setInt(7, row.getActive());
+						statement.addBatch();
+					}
+					statement.executeBatch();
+					try (ResultSet keys = statement.getGeneratedKeys()) {
+						for (int i = 0; i < batch.size() && keys.next(); i++) {
+							batch.get(i).setCode(keys.getInt(1));
+						}
+					}
+				}
+			}
+		});
+	}
+}
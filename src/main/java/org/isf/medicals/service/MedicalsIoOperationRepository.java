@@ -22,10 +22,12 @@
 package org.isf.medicals.service;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.isf.medicals.model.Medical;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -75,5 +77,18 @@ public interface MedicalsIoOperationRepository extends JpaRepository<Medical, In
     ArrayList<Medical> findAllWhereTypeOrderBySmartCodeAndDescription(@Param("type") String type);
     @Query(value = "SELECT m FROM Medical m ORDER BY LENGTH(m.prod_code), m.prod_code, m.description")
     ArrayList<Medical> findAllOrderBySmartCodeAndDescription();
+
+    @Modifying
+    @Query(value = "UPDATE Medical m SET m.inqty = m.inqty + :quantity, m.lock = m.lock + 1 WHERE m.code = :code")
+    int updateInQuantity(@Param("quantity") double quantity, @Param("code") Integer code);
+    @Modifying
+    @Query(value = "UPDATE Medical m SET m.outqty = m.outqty + :quantity, m.lock = m.lock + 1 WHERE m.code = :code")
+    int updateOutQuantity(@Param("quantity") double quantity, @Param("code") Integer code);
+    @Modifying
+    @Query(value = "UPDATE Medical m SET m.inqty = m.inqty + :inQuantity, m.outqty = m.outqty + :outQuantity, m.lock = m.lock + 1 WHERE m.code = :code")
+    int updateQuantities(@Param("inQuantity") double inQuantity, @Param("outQuantity") double outQuantity, @Param("code") Integer code);
+
+    @Query(value = "SELECT m FROM Medical m JOIN FETCH m.type WHERE m.code IN (:codes)")
+    List<Medical> findAllWhereCodeIn(@Param("codes") Collection<Integer> codes);
 	
 }
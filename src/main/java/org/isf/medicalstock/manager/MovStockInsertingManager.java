@@ -23,8 +23,16 @@ package org.isf.medicalstock.manager;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.isf.generaldata.GeneralData;
 import org.isf.generaldata.MessageBundle;
@@ -32,6 +40,7 @@ import org.isf.medicals.model.Medical;
 import org.isf.medicals.service.MedicalsIoOperations;
 import org.isf.medicalstock.model.Lot;
 import org.isf.medicalstock.model.Movement;
+import org.isf.medicalstock.model.MovementPostingResult;
 import org.isf.medicalstock.service.MedicalStockIoOperations;
 import org.isf.utils.exception.OHDataValidationException;
 import org.isf.utils.exception.OHServiceException;
@@ -56,101 +65,16 @@ public class MovStockInsertingManager {
 	public MovStockInsertingManager() {}
 	
 	/**
-	 * Verify if the object is valid for CRUD and return a list of errors, if any
+	 * Verify if the object is valid for CRUD, as a movement of a posted document
+	 * (see {@link #checkMovement(Movement, PostingContext)}), and throw the list of errors, if any
 	 * @param movement - the movement to validate
-	 * @param checkReference - if {@code true} it will use {@link #checkReferenceNumber(String) checkReferenceNumber}
+	 * @param checkReference - if {@code true} the reference number is checked as by {@link #checkReferenceNumber(String) checkReferenceNumber}
 	 * @throws OHServiceException 
 	 */
 	protected void validateMovement(Movement movement, boolean checkReference) throws OHServiceException  {
-		List<OHExceptionMessage> errors = new ArrayList<OHExceptionMessage>();
-		
-		// Check the Date
-		GregorianCalendar today = new GregorianCalendar();
-		GregorianCalendar movDate = movement.getDate();
-		GregorianCalendar lastDate = getLastMovementDate();
-		if (movDate.after(today)) {
-			errors.add(new OHExceptionMessage("movementDateInFutureError",
-					MessageBundle.getMessage("angal.medicalstock.multiplecharging.futuredatenotallowed"), //$NON-NLS-1$
-					OHSeverityLevel.ERROR));
-		}
-		if (lastDate != null && movDate.compareTo(lastDate) < 0) {
-			errors.add(new OHExceptionMessage("movementDateBeforeLastDateError",
-					MessageBundle.getMessage("angal.medicalstock.multiplecharging.datebeforelastmovement"), //$NON-NLS-1$
-					OHSeverityLevel.ERROR));
-		}
-		
-		// Check the RefNo
-		if (checkReference) {
-			String refNo = movement.getRefNo();
-			errors.addAll(checkReferenceNumber(refNo));
-		}
-		
-		// Check supplier
-		if (movement.getType().getType().contains("+")) {
-			Object supplier = movement.getSupplier();
-			if (supplier == null || supplier instanceof String) {
-				errors.add(new OHExceptionMessage("emptyOrNullSupplierError",
-						MessageBundle.getMessage("angal.medicalstock.multiplecharging.pleaseselectasupplier"), //$NON-NLS-1$
-						OHSeverityLevel.ERROR));
-			}
-		} else {
-			Object ward = movement.getWard();
-			if (ward == null || ward instanceof String) {
-				errors.add(new OHExceptionMessage("emptyOrNullWardError",
-						MessageBundle.getMessage("angal.medicalstock.multipledischarging.pleaseselectaward"), //$NON-NLS-1$
-						OHSeverityLevel.ERROR));
-			}
-		}
-		
-		// Check quantity
-		if (movement.getQuantity() == 0) {
-			errors.add(new OHExceptionMessage("zeroQuantityError",
-					MessageBundle.getMessage("angal.medicalstock.thequantitymustnotbezero"), //$NON-NLS-1$
-					OHSeverityLevel.ERROR));
-		}
-
-		// Check Medical
-		if (movement.getMedical() == null) {
-			errors.add(new OHExceptionMessage("emptyOrNullMedicalError",
-					MessageBundle.getMessage("angal.medicalstock.chooseamedical"), //$NON-NLS-1$
-					OHSeverityLevel.ERROR));
-		}
-
-		// Check Movement Type
-		if (movement.getType() == null) {
-			errors.add(new OHExceptionMessage("emptyOrNullMovementTypeError",
-					MessageBundle.getMessage("angal.medicalstock.chooseatype"), //$NON-NLS-1$
-					OHSeverityLevel.ERROR));
-		}
-		
-		// Check Lot
-		if (!isAutomaticLot_Out()) {
-			Lot lot = movement.getLot();
-			{
-				errors.addAll(validateLot(lot));
-				
-				if ((movement.getType().getType().contains("-")) && (movement.getQuantity() > lot.getQuantity())) {
-					errors.add(new OHExceptionMessage("quantityGreaterThanLotError",
-							MessageBundle.getMessage("angal.medicalstock.movementquantityisgreaterthanthequantityof"), //$NON-NLS-1$
-							OHSeverityLevel.ERROR));
-				}
-				
-				List<Integer> medicalIds = ioOperations.getMedicalsFromLot(lot.getCode());
-				if (!(medicalIds.size() == 0 || (medicalIds.size() == 1 && medicalIds.get(0).intValue() == movement.getMedical().getCode().intValue()))) {
-					errors.add(new OHExceptionMessage("sharedLotError",
-							MessageBundle.getMessage("angal.medicalstock.thislotreferstoanothermedical"), //$NON-NLS-1$
-							OHSeverityLevel.ERROR));
-				}
-				if (GeneralData.LOTWITHCOST) {
-					BigDecimal cost = lot.getCost();
-					if (cost == null || cost.doubleValue() <= 0.) {
-						errors.add(new OHExceptionMessage("zeroLotCostError",
-								MessageBundle.getMessage("angal.medicalstock.multiplecharging.zerocostsnotallowed"), //$NON-NLS-1$
-								OHSeverityLevel.ERROR));
-					}
-				}
-			}
-		}
+		boolean charging = movement.getType() != null && movement.getType().getType().contains("+");
+		List<OHExceptionMessage> errors = checkMovement(movement, 
+				readPostingContext(Collections.singletonList(movement), checkReference, charging));
 		
 		if (!errors.isEmpty()){
 	        throw new OHDataValidationException(errors);
@@ -424,4 +348,323 @@ public class MovStockInsertingManager {
 			throw e;
 		}
 	}
+
+	/**
+	 * Posts a list of charging {@link Movement}s and the related {@link Lot}s as a whole:
+	 * all the lines are validated first, reading the lots, the medicals and the reference numbers
+	 * with one query each, then, if no line has errors, they are stored with batched inserts
+	 * and one update of the stock quantities for each medical and lot.
+	 * 
+	 * @param movements - the list of {@link Movement}s
+	 * @param referenceNumber - the reference number to be set for all movements
+	 * 		   if {@link null}, each movements must have a different referenceNumber 
+	 * @return the result of each movement, in the same order; if any movement has errors, none is stored
+	 * @throws OHServiceException 
+	 */
+	@Transactional(rollbackFor=OHServiceException.class)
+	public List<MovementPostingResult> postMultipleChargingMovements(List<Movement> movements, String referenceNumber) throws OHServiceException {
+		return postMultipleMovements(movements, referenceNumber, true);
+	}
+
+	/**
+	 * Posts a list of discharging {@link Movement}s as a whole:
+	 * all the lines are validated first, reading the lots, the medicals and the reference numbers
+	 * with one query each, then, if no line has errors, they are stored with batched inserts
+	 * and one update of the stock quantities for each medical, lot and ward.
+	 * 
+	 * @param movements - the list of {@link Movement}s
+	 * @param referenceNumber - the reference number to be set for all movements
+	 * 		   if {@link null}, each movements must have a different referenceNumber 
+	 * @return the result of each movement, in the same order; if any movement has errors, none is stored
+	 * @throws OHServiceException 
+	 */
+	@Transactional(rollbackFor=OHServiceException.class)
+	public List<MovementPostingResult> postMultipleDischargingMovements(List<Movement> movements, String referenceNumber) throws OHServiceException {
+		return postMultipleMovements(movements, referenceNumber, false);
+	}
+
+	private List<MovementPostingResult> postMultipleMovements(List<Movement> movements, String referenceNumber, boolean charging) throws OHServiceException {
+		boolean checkReference = referenceNumber == null; // referenceNumber == null, each movement should have referenceNumber set
+		if (!checkReference) { 
+			// referenceNumber != null, all movement will have same referenceNumber, we check only once for all
+			List<OHExceptionMessage> errors = checkReferenceNumber(referenceNumber);
+            if(!errors.isEmpty()){
+                throw new OHDataValidationException(errors);
+            }
+		}
+		
+		PostingContext context = readPostingContext(movements, checkReference, charging);
+
+		List<MovementPostingResult> results = new ArrayList<MovementPostingResult>();
+		boolean valid = true;
+		for (Movement mov : movements) {
+			MovementPostingResult result = new MovementPostingResult(mov);
+			result.getErrors().addAll(checkMovement(mov, context));
+			if (!result.getErrors().isEmpty()) {
+				valid = false;
+				result.getErrors().add(new OHExceptionMessage("invalidMovement", 
+						mov.getMedical() == null ? null : mov.getMedical().getDescription(), 
+						OHSeverityLevel.INFO));
+			}
+			results.add(result);
+		}
+		if (!valid) {
+			return results;
+		}
+
+		List<Movement> toStore = new ArrayList<Movement>();
+		Map<String, Lot> newLots = new LinkedHashMap<String, Lot>();
+		if (charging) {
+			int generatedLots = 0;
+			for (Movement mov : movements) {
+				if (isAutomaticLot_In() || mov.getLot().getCode() == null || mov.getLot().getCode().isEmpty()) {
+					generatedLots++;
+				}
+			}
+			Iterator<String> generatedLotCodes = ioOperations.generateLotCodes(generatedLots).iterator();
+			for (MovementPostingResult result : results) {
+				Movement mov = result.getMovement();
+				Lot lot = mov.getLot();
+				if (isAutomaticLot_In() || lot.getCode() == null || lot.getCode().isEmpty()) {
+					lot.setCode(generatedLotCodes.next());
+				}
+				if (context.lots.containsKey(lot.getCode())) {
+					mov.setLot(context.lots.get(lot.getCode()));
+				} else if (newLots.containsKey(lot.getCode())) {
+					mov.setLot(newLots.get(lot.getCode()));
+				} else {
+					lot.setMedical(mov.getMedical());
+					newLots.put(lot.getCode(), lot);
+				}
+				result.getPostedMovements().add(mov);
+				toStore.add(mov);
+			}
+		} else {
+			for (MovementPostingResult result : results) {
+				Movement mov = result.getMovement();
+				if (isAutomaticLot_Out()) {
+					// the lots chosen by checkMovement
+					result.getPostedMovements().addAll(context.splitMovements.get(mov));
+				} else {
+					mov.setLot(context.lots.get(mov.getLot().getCode()));
+					result.getPostedMovements().add(mov);
+				}
+				toStore.addAll(result.getPostedMovements());
+			}
+		}
+		ioOperations.newMovements(toStore, newLots.values());
+		return results;
+	}
+
+	/**
+	 * Reads everything the validation of the movements of a document needs, at once
+	 * @param movements - the movements of the document
+	 * @param checkReference - if {@code true} the reference number of each movement is checked
+	 * @param charging - if {@code true} the movements are charging movements
+	 * @return the context for {@link #checkMovement(Movement, PostingContext)}
+	 * @throws OHServiceException 
+	 */
+	private PostingContext readPostingContext(List<Movement> movements, boolean checkReference, boolean charging) throws OHServiceException {
+		Set<String> lotCodes = new HashSet<String>();
+		Set<Integer> medicalCodes = new HashSet<Integer>();
+		Set<String> refNos = new HashSet<String>();
+		for (Movement mov : movements) {
+			if (mov.getLot() != null && mov.getLot().getCode() != null && !mov.getLot().getCode().isEmpty()) {
+				lotCodes.add(mov.getLot().getCode());
+			}
+			if (mov.getMedical() != null) {
+				medicalCodes.add(mov.getMedical().getCode());
+			}
+			if (checkReference && mov.getRefNo() != null && !mov.getRefNo().isEmpty()) {
+				refNos.add(mov.getRefNo());
+			}
+		}
+		PostingContext context = new PostingContext();
+		context.checkReference = checkReference;
+		context.lastDate = getLastMovementDate();
+		context.medicals = ioOperations.getMedicals(medicalCodes);
+		context.lots = ioOperations.getLots(lotCodes);
+		context.lotMedicals = isAutomaticLot_Out() ? new HashMap<String, List<Integer>>() : ioOperations.getMedicalsFromLots(lotCodes);
+		context.usedRefNos = checkReference ? ioOperations.getUsedRefNos(refNos) : new HashSet<String>();
+		context.availableLots = !charging && isAutomaticLot_Out() ? ioOperations.getLotsByMedicals(medicalCodes) : new HashMap<Integer, List<Lot>>();
+		return context;
+	}
+
+	/**
+	 * Verify if a movement of a document is valid, with the lots, medicals and reference numbers
+	 * read once for the whole document, and return the list of errors, if any
+	 * @param movement - the movement to validate
+	 * @param context - what has been read for the document, and the lines already validated
+	 * @return list of {@link OHExceptionMessage}
+	 */
+	private List<OHExceptionMessage> checkMovement(Movement movement, PostingContext context) {
+		List<OHExceptionMessage> errors = new ArrayList<OHExceptionMessage>();
+		
+		// Check the Date
+		GregorianCalendar today = new GregorianCalendar();
+		GregorianCalendar movDate = movement.getDate();
+		if (movDate.after(today)) {
+			errors.add(new OHExceptionMessage("movementDateInFutureError",
+					MessageBundle.getMessage("angal.medicalstock.multiplecharging.futuredatenotallowed"), //$NON-NLS-1$
+					OHSeverityLevel.ERROR));
+		}
+		if (context.lastDate != null && movDate.compareTo(context.lastDate) < 0) {
+			errors.add(new OHExceptionMessage("movementDateBeforeLastDateError",
+					MessageBundle.getMessage("angal.medicalstock.multiplecharging.datebeforelastmovement"), //$NON-NLS-1$
+					OHSeverityLevel.ERROR));
+		}
+		
+		// Check the RefNo, also against the previous lines
+		if (context.checkReference) {
+			String refNo = movement.getRefNo();
+			if (refNo == null || refNo.isEmpty()) {
+				errors.add(new OHExceptionMessage("emptyOrNullRefNumberError",
+						MessageBundle.getMessage("angal.medicalstock.multiplecharging.pleaseinsertareferencenumber"), //$NON-NLS-1$
+						OHSeverityLevel.ERROR));
+			} else if (context.usedRefNos.contains(refNo) || !context.documentRefNos.add(refNo)) {
+				errors.add(new OHExceptionMessage("existingRefNumberError",
+						MessageBundle.getMessage("angal.medicalstock.multiplecharging.theinsertedreferencenumberalreadyexists"), //$NON-NLS-1$
+						OHSeverityLevel.ERROR));
+			}
+		}
+		
+		// Check Movement Type
+		if (movement.getType() == null) {
+			errors.add(new OHExceptionMessage("emptyOrNullMovementTypeError",
+					MessageBundle.getMessage("angal.medicalstock.chooseatype"), //$NON-NLS-1$
+					OHSeverityLevel.ERROR));
+			return errors;
+		}
+		boolean charging = movement.getType().getType().contains("+");
+		
+		// Check supplier
+		if (charging) {
+			Object supplier = movement.getSupplier();
+			if (supplier == null || supplier instanceof String) {
+				errors.add(new OHExceptionMessage("emptyOrNullSupplierError",
+						MessageBundle.getMessage("angal.medicalstock.multiplecharging.pleaseselectasupplier"), //$NON-NLS-1$
+						OHSeverityLevel.ERROR));
+			}
+		} else {
+			Object ward = movement.getWard();
+			if (ward == null || ward instanceof String) {
+				errors.add(new OHExceptionMessage("emptyOrNullWardError",
+						MessageBundle.getMessage("angal.medicalstock.multipledischarging.pleaseselectaward"), //$NON-NLS-1$
+						OHSeverityLevel.ERROR));
+			}
+		}
+		
+		// Check quantity
+		if (movement.getQuantity() == 0) {
+			errors.add(new OHExceptionMessage("zeroQuantityError",
+					MessageBundle.getMessage("angal.medicalstock.thequantitymustnotbezero"), //$NON-NLS-1$
+					OHSeverityLevel.ERROR));
+		}
+
+		// Check Medical
+		if (movement.getMedical() == null || !context.medicals.containsKey(movement.getMedical().getCode())) {
+			errors.add(new OHExceptionMessage("emptyOrNullMedicalError",
+					MessageBundle.getMessage("angal.medicalstock.chooseamedical"), //$NON-NLS-1$
+					OHSeverityLevel.ERROR));
+			return errors;
+		}
+		
+		// Check Lot
+		Lot lot = movement.getLot();
+		if (charging && lot == null) {
+			errors.add(new OHExceptionMessage("invalidDueDateError",
+					MessageBundle.getMessage("angal.medicalstock.insertavalidduedate"), //$NON-NLS-1$
+					OHSeverityLevel.ERROR));
+		} else if (!charging && isAutomaticLot_Out()) {
+			List<Movement> splitMovements = splitMovement(movement, context);
+			if (splitMovements == null) {
+				errors.add(new OHExceptionMessage("quantityGreaterThanLotError",
+						MessageBundle.getMessage("angal.medicalstock.movementquantityisgreaterthanthequantityof"), //$NON-NLS-1$
+						OHSeverityLevel.ERROR));
+			} else {
+				context.splitMovements.put(movement, splitMovements);
+			}
+		} else if (!isAutomaticLot_Out()) {
+			Lot storedLot = lot == null ? null : context.lots.get(lot.getCode());
+			if (lot != null) {
+				errors.addAll(validateLot(lot));
+			}
+			
+			// against the balance left by the previous lines
+			if (!charging) {
+				int available = storedLot == null ? 0 : storedLot.getQuantity() - context.discharged.getOrDefault(storedLot.getCode(), 0);
+				if (movement.getQuantity() > available) {
+					errors.add(new OHExceptionMessage("quantityGreaterThanLotError",
+							MessageBundle.getMessage("angal.medicalstock.movementquantityisgreaterthanthequantityof"), //$NON-NLS-1$
+							OHSeverityLevel.ERROR));
+				} else {
+					context.discharged.merge(storedLot.getCode(), movement.getQuantity(), Integer::sum);
+				}
+			}
+			
+			List<Integer> medicalIds = lot == null ? null : context.lotMedicals.get(lot.getCode());
+			if (medicalIds != null && !(medicalIds.size() == 1 && medicalIds.get(0).intValue() == movement.getMedical().getCode().intValue())) {
+				errors.add(new OHExceptionMessage("sharedLotError",
+						MessageBundle.getMessage("angal.medicalstock.thislotreferstoanothermedical"), //$NON-NLS-1$
+						OHSeverityLevel.ERROR));
+			}
+			if (GeneralData.LOTWITHCOST && lot != null) {
+				BigDecimal cost = lot.getCost();
+				if (cost == null || cost.doubleValue() <= 0.) {
+					errors.add(new OHExceptionMessage("zeroLotCostError",
+							MessageBundle.getMessage("angal.medicalstock.multiplecharging.zerocostsnotallowed"), //$NON-NLS-1$
+							OHSeverityLevel.ERROR));
+				}
+			}
+		}
+		return errors;
+	}
+
+	/**
+	 * Splits a discharging movement over the oldest lots of its medical, as
+	 * {@link MedicalStockIoOperations#newAutomaticDischargingMovement(Movement)} does,
+	 * taking into account the quantities discharged by the previous lines
+	 * @return the movements, or <code>null</code> if the lots are not enough
+	 */
+	private List<Movement> splitMovement(Movement movement, PostingContext context) {
+		List<Movement> splitMovements = new ArrayList<Movement>();
+		Map<String, Integer> discharged = new HashMap<String, Integer>();
+		int qty = movement.getQuantity();
+		List<Lot> lots = context.availableLots.getOrDefault(movement.getMedical().getCode(), new ArrayList<Lot>());
+		for (Iterator<Lot> lotIterator = lots.iterator(); qty > 0 && lotIterator.hasNext();) {
+			Lot lot = lotIterator.next();
+			int qtLot = lot.getQuantity() - context.discharged.getOrDefault(lot.getCode(), 0);
+			if (qtLot <= 0) {
+				continue;
+			}
+			int splitQty = Math.min(qtLot, qty);
+			splitMovements.add(new Movement(movement.getMedical(), movement.getType(), movement.getWard(), lot,
+					movement.getDate(), splitQty, null, movement.getRefNo()));
+			discharged.put(lot.getCode(), splitQty);
+			qty -= splitQty;
+		}
+		if (qty > 0) {
+			return null;
+		}
+		for (Map.Entry<String, Integer> lot : discharged.entrySet()) {
+			context.discharged.merge(lot.getKey(), lot.getValue(), Integer::sum);
+		}
+		return splitMovements;
+	}
+
+	/**
+	 * What is read once for a whole document, and what the lines already validated take
+	 */
+	private static class PostingContext {
+		boolean checkReference;
+		GregorianCalendar lastDate;
+		Map<Integer, Medical> medicals;
+		Map<String, Lot> lots;
+		Map<String, List<Integer>> lotMedicals;
+		Set<String> usedRefNos;
+		Map<Integer, List<Lot>> availableLots;
+		Set<String> documentRefNos = new HashSet<String>();
+		Map<String, Integer> discharged = new HashMap<String, Integer>();
+		Map<Movement, List<Movement>> splitMovements = new IdentityHashMap<Movement, List<Movement>>();
+	}
 }
\ No newline at end of file
@@ -83,7 +83,11 @@ public class Lot extends Auditable<String>
 	@Column(name="LT_COST")
 	private BigDecimal cost;
 
-	@Transient
+	/**
+	 * Running main store balance, kept up to date by the stock movements.
+	 * It is never written by the entity update, only by the quantity deltas.
+	 */
+	@Column(name="LT_QTY", updatable=false)
 	private int quantity;
 
 	@Transient
@@ -120,7 +124,7 @@ public class Lot extends Auditable<String>
 		return quantity;
 	}
 
-	public int calculateQuantity(){ // TODO: this should replace getter logic, for now we are leaving transient field to avoid unnecessary changes in ui
+	public int calculateQuantity(){ // walks the whole history, getQuantity() returns the persisted balance
 		int quantity = 0;
 		for (Movement movement: movements) {
 			if (movement.getType().getType().equals("-")) {
@@ -0,0 +1,73 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.medicalstock.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.isf.utils.exception.model.OHExceptionMessage;
+
+/**
+ * The result of a line of a document posted by
+ * {@link org.isf.medicalstock.manager.MovStockInsertingManager#postMultipleChargingMovements(List, String)}
+ * or {@link org.isf.medicalstock.manager.MovStockInsertingManager#postMultipleDischargingMovements(List, String)}:
+ * the movements stored for the line (more than one when the lots are chosen automatically),
+ * or the errors found validating it.
+ */
+public class MovementPostingResult {
+
+	private final Movement movement;
+	private final List<Movement> postedMovements = new ArrayList<Movement>();
+	private final List<OHExceptionMessage> errors = new ArrayList<OHExceptionMessage>();
+
+	public MovementPostingResult(Movement movement) {
+		this.movement = movement;
+	}
+
+	/**
+	 * @return the line of the document
+	 */
+	public Movement getMovement() {
+		return movement;
+	}
+
+	/**
+	 * @return the movements stored for the line, with their codes, empty if nothing has been stored
+	 */
+	public List<Movement> getPostedMovements() {
+		return postedMovements;
+	}
+
+	/**
+	 * @return the errors found validating the line, empty if the line is valid
+	 */
+	public List<OHExceptionMessage> getErrors() {
+		return errors;
+	}
+
+	/**
+	 * @return <code>true</code> if the line has been stored, <code>false</code> otherwise
+	 */
+	public boolean isPosted() {
+		return !postedMovements.isEmpty();
+	}
+}
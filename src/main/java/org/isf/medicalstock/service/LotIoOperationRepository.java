@@ -21,13 +21,16 @@
  */
 package org.isf.medicalstock.service;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.isf.medicalstock.model.Lot;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 @Repository
 public interface LotIoOperationRepository extends JpaRepository<Lot, String> {
@@ -35,6 +38,20 @@ public interface LotIoOperationRepository extends JpaRepository<Lot, String> {
 	@Query("select l from Lot l left join l.movements m where m.medical.code = :medical group by l.code")
 	List<Lot> findByMovements_MedicalOrderByDueDate(@Param("medical") int medicalCode);
 
+	@Query("select l from Lot l where l.medical.code = :medical and l.quantity > 0 order by l.dueDate")
+	List<Lot> findAvailableWhereMedicalOrderByDueDate(@Param("medical") int medicalCode);
+
+	@Query("select l from Lot l left join fetch l.medical m left join fetch m.type where l.medical.code in (:medicals) and l.quantity > 0 order by l.dueDate")
+	List<Lot> findAvailableWhereMedicalInOrderByDueDate(@Param("medicals") Collection<Integer> medicalCodes);
+
+	@Query("select l from Lot l left join fetch l.medical m left join fetch m.type where l.code in (:codes)")
+	List<Lot> findAllWhereCodeIn(@Param("codes") Collection<String> codes);
+
+	@Modifying
+	@Transactional
+	@Query(value = "UPDATE MEDICALDSRLOT SET LT_QTY = LT_QTY + :quantity WHERE LT_ID_A = :lot AND LT_QTY + :quantity >= 0", nativeQuery = true)
+	int updateQuantity(@Param("quantity") int quantity, @Param("lot") String lot);
+
 	@Query(value = "select LT_ID_A,LT_PREP_DATE,LT_DUE_DATE,LT_COST,"
 			+ "SUM(IF(MMVT_TYPE LIKE '%+%',MMV_QTY,-MMV_QTY)) as quantity from "
 			+ "((MEDICALDSRLOT join MEDICALDSRSTOCKMOV on MMV_LT_ID_A=LT_ID_A) join MEDICALDSR on MMV_MDSR_ID=MDSR_ID)"
@@ -23,19 +23,28 @@ package org.isf.medicalstock.service;
 
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
 
 import org.isf.generaldata.GeneralData;
+import org.isf.generaldata.MessageBundle;
 import org.isf.medicals.model.Medical;
 import org.isf.medicals.service.MedicalsIoOperationRepository;
 import org.isf.medicalstock.model.Lot;
 import org.isf.medicalstock.model.Movement;
-import org.isf.medicalstockward.model.MedicalWard;
 import org.isf.medicalstockward.service.MedicalStockWardIoOperationRepository;
 import org.isf.utils.db.TranslateOHServiceException;
 import org.isf.utils.exception.OHServiceException;
+import org.isf.utils.exception.model.OHExceptionMessage;
+import org.isf.utils.exception.model.OHSeverityLevel;
 import org.isf.ward.model.Ward;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -53,6 +62,8 @@ import org.springframework.transaction.annotation.Transactional;
 @TranslateOHServiceException
 public class MedicalStockIoOperations {
 
+	private static final int MAX_CODES_PER_QUERY = 1000;
+
 	@Autowired
 	private MovementIoOperationRepository movRepository;
 	
@@ -91,6 +102,92 @@ public class MedicalStockIoOperations {
 		return medicalIds;
 	}
 	
+	/**
+	 * Retrieves the medicals referencing each of the specified lots, with a single query
+	 * (for each {@value #MAX_CODES_PER_QUERY} lots).
+	 * @param lotCodes the lot codes.
+	 * @return the ids of the medicals referencing each lot, by lot code; lots without movements are missing.
+	 * @throws OHServiceException if an error occurs retrieving the referencing medicals.
+	 */
+	public Map<String, List<Integer>> getMedicalsFromLots(
+			Collection<String> lotCodes) throws OHServiceException
+	{
+		Map<String, List<Integer>> medicalIds = new HashMap<String, List<Integer>>();
+		List<String> codes = new ArrayList<String>(lotCodes);
+		for (int first = 0; first < codes.size(); first += MAX_CODES_PER_QUERY) 
+		{
+			for (Object[] lotMedical : movRepository.findAllWhereLotIn(codes.subList(first, Math.min(codes.size(), first + MAX_CODES_PER_QUERY)))) 
+			{
+				medicalIds.computeIfAbsent((String) lotMedical[0], lot -> new ArrayList<Integer>()).add((Integer) lotMedical[1]);
+			}
+		}
+		return medicalIds;
+	}
+
+	/**
+	 * Retrieves the specified {@link Lot}s, with a single query (for each {@value #MAX_CODES_PER_QUERY} lots).
+	 * @param lotCodes the lot codes.
+	 * @return the stored lots, by code; lots not found are missing.
+	 * @throws OHServiceException if an error occurs retrieving the lots.
+	 */
+	public Map<String, Lot> getLots(
+			Collection<String> lotCodes) throws OHServiceException
+	{
+		Map<String, Lot> lots = new HashMap<String, Lot>();
+		List<String> codes = new ArrayList<String>(lotCodes);
+		for (int first = 0; first < codes.size(); first += MAX_CODES_PER_QUERY) 
+		{
+			for (Lot lot : lotRepository.findAllWhereCodeIn(codes.subList(first, Math.min(codes.size(), first + MAX_CODES_PER_QUERY)))) 
+			{
+				lots.put(lot.getCode(), lot);
+			}
+		}
+		return lots;
+	}
+
+	/**
+	 * Retrieves the {@link Lot}s still available in the main store for each of the specified medicals,
+	 * with a single query (for each {@value #MAX_CODES_PER_QUERY} medicals).
+	 * @param medicalCodes the medical codes.
+	 * @return the available lots ordered by due date, by medical code; medicals without lots are missing.
+	 * @throws OHServiceException if an error occurs retrieving the lots.
+	 */
+	public Map<Integer, List<Lot>> getLotsByMedicals(
+			Collection<Integer> medicalCodes) throws OHServiceException
+	{
+		Map<Integer, List<Lot>> lots = new HashMap<Integer, List<Lot>>();
+		List<Integer> codes = new ArrayList<Integer>(medicalCodes);
+		for (int first = 0; first < codes.size(); first += MAX_CODES_PER_QUERY) 
+		{
+			for (Lot lot : lotRepository.findAvailableWhereMedicalInOrderByDueDate(codes.subList(first, Math.min(codes.size(), first + MAX_CODES_PER_QUERY)))) 
+			{
+				lots.computeIfAbsent(lot.getMedical().getCode(), medical -> new ArrayList<Lot>()).add(lot);
+			}
+		}
+		return lots;
+	}
+
+	/**
+	 * Retrieves the specified {@link Medical}s, with a single query (for each {@value #MAX_CODES_PER_QUERY} medicals).
+	 * @param medicalCodes the medical codes.
+	 * @return the stored medicals, by code; medicals not found are missing.
+	 * @throws OHServiceException if an error occurs retrieving the medicals.
+	 */
+	public Map<Integer, Medical> getMedicals(
+			Collection<Integer> medicalCodes) throws OHServiceException
+	{
+		Map<Integer, Medical> medicals = new HashMap<Integer, Medical>();
+		List<Integer> codes = new ArrayList<Integer>(medicalCodes);
+		for (int first = 0; first < codes.size(); first += MAX_CODES_PER_QUERY) 
+		{
+			for (Medical medical : medicalRepository.findAllWhereCodeIn(codes.subList(first, Math.min(codes.size(), first + MAX_CODES_PER_QUERY)))) 
+			{
+				medicals.put(medical.getCode(), medical);
+			}
+		}
+		return medicals;
+	}
+
 	/**
 	 * Store the specified {@link Movement} by using automatically the most old lots
 	 * and splitting in more movements if required
@@ -207,6 +304,72 @@ public class MedicalStockIoOperations {
 		}
 	}
 	
+	/**
+	 * Stores the specified {@link Movement}s and new {@link Lot}s as a whole.
+	 * The lots and the movements are inserted with JDBC batches, then the stock quantities
+	 * are updated with one statement for each medical, lot and ward stock, adding up the movements.
+	 * @param movements - the movements to store, with their lots (existing or new) already set.
+	 * @param newLots - the lots to insert, with their codes and medicals already set.
+	 * @throws OHServiceException if an error occurs during the store operation, a medical no longer exists
+	 * or a lot has not enough quantity left, as after a concurrent discharge (the whole transaction is rolled back).
+	 */
+	public void newMovements(
+			List<Movement> movements, 
+			Collection<Lot> newLots) throws OHServiceException
+	{
+		// sorted, so that concurrent postings lock the same rows in the same order
+		Map<Integer, double[]> medicalQuantities = new TreeMap<Integer, double[]>();
+		Map<String, Integer> lotQuantities = new TreeMap<String, Integer>();
+		Map<WardLot, Integer> wardQuantities = new TreeMap<WardLot, Integer>();
+		for (Movement movement : movements) 
+		{
+			boolean charging = movement.getType().getType().contains("+");
+			int quantity = movement.getQuantity();
+			double[] quantities = medicalQuantities.computeIfAbsent(movement.getMedical().getCode(), medical -> new double[2]);
+			quantities[charging ? 0 : 1] += quantity;
+			if (movement.getLot() != null) 
+			{
+				lotQuantities.merge(movement.getLot().getCode(), charging ? quantity : -quantity, Integer::sum);
+				if (!charging && movement.getWard() != null) 
+				{
+					wardQuantities.merge(new WardLot(movement.getWard().getCode(), movement.getMedical().getCode(), movement.getLot().getCode()), 
+							quantity, Integer::sum);
+				}
+			}
+		}
+
+		// the new lots are inserted with their balance
+		Set<String> newLotCodes = new HashSet<String>();
+		for (Lot lot : newLots) 
+		{
+			Integer quantity = lotQuantities.remove(lot.getCode());
+			lot.setQuantity(quantity == null ? 0 : quantity);
+			newLotCodes.add(lot.getCode());
+		}
+		movRepository.insertMovements(movements, newLots);
+
+		for (Map.Entry<Integer, double[]> medical : medicalQuantities.entrySet()) 
+		{
+			if (medicalRepository.updateQuantities(medical.getValue()[0], medical.getValue()[1], medical.getKey()) == 0) 
+			{
+				throw new OHServiceException(new OHExceptionMessage("medicalNotFoundError", 
+						MessageBundle.getMessage("angal.medicalstock.chooseamedical"), OHSeverityLevel.ERROR));
+			}
+		}
+		for (Map.Entry<String, Integer> lot : lotQuantities.entrySet()) 
+		{
+			if (lot.getValue() != 0 && !newLotCodes.contains(lot.getKey())) 
+			{
+				updateLotQuantity(lot.getKey(), lot.getValue());
+			}
+		}
+		for (Map.Entry<WardLot, Integer> ward : wardQuantities.entrySet()) 
+		{
+			medicalStockRepository.insertOrUpdateInQuantity(ward.getKey().ward, ward.getKey().medical, 
+					(double) ward.getValue(), ward.getKey().lot);
+		}
+	}
+	
 	/**
 	 * Prepare the insert of the specified {@link Movement} (no commit)
 	 * @param movement - the movement to store.
@@ -296,6 +459,34 @@ public class MedicalStockIoOperations {
 		return String.valueOf(candidateCode);
 	}
 
+	/**
+	 * Creates new unique lot codes, checked with a single query.
+	 * @param count the number of codes.
+	 * @return the new unique codes.
+	 * @throws OHServiceException if an error occurs during the code generation.
+	 */
+	public List<String> generateLotCodes(
+			int count) throws OHServiceException
+	{
+		Random random = new Random();
+		Set<String> codes = new LinkedHashSet<String>();
+		while (codes.size() < count) 
+		{
+			Set<String> candidates = new LinkedHashSet<String>();
+			while (codes.size() + candidates.size() < count) 
+			{
+				String candidate = String.valueOf(Math.abs(random.nextLong()));
+				if (!codes.contains(candidate)) 
+				{
+					candidates.add(candidate);
+				}
+			}
+			candidates.removeAll(getLots(candidates).keySet());
+			codes.addAll(candidates);
+		}
+		return new ArrayList<String>(codes);
+	}
+
 	/**
 	 * Checks if the specified {@link Lot} exists.
 	 * @param lotCode the lot code.
@@ -335,6 +526,8 @@ public class MedicalStockIoOperations {
 		
 		lot.setCode(lotCode);
 		lot.setMedical(medical);
+		// the balance is built up by the movements
+		lot.setQuantity(0);
 		lotRepository.save(lot);
 		result = true; 
 		
@@ -355,6 +548,10 @@ public class MedicalStockIoOperations {
 			//incoming medical stock
 			Medical medical = movement.getMedical();
 			boolean updated = updateMedicalIncomingQuantity(medical.getCode(), movement.getQuantity());
+			if (updated)
+			{
+				updateLotQuantity(movement.getLot(), movement.getQuantity());
+			}
 			
 			return updated;
 		} 
@@ -369,6 +566,7 @@ public class MedicalStockIoOperations {
 			}
 			else 
 			{
+				updateLotQuantity(movement.getLot(), -movement.getQuantity());
 				Ward ward = movement.getWard();
 				if (ward != null) 
 				{
@@ -384,8 +582,44 @@ public class MedicalStockIoOperations {
 		}
 	}
 
+	/**
+	 * Updates the main store balance of the specified {@link Lot}.
+	 * @param lot the lot, if <code>null</code> nothing is done.
+	 * @param incrementQuantity the quantity to add (negative for outgoing movements).
+	 * @throws OHServiceException if an error occurs during the update, or the balance would become negative.
+	 */
+	protected void updateLotQuantity(
+			Lot lot, 
+			int incrementQuantity) throws OHServiceException
+	{
+		if (lot != null)
+		{
+			updateLotQuantity(lot.getCode(), incrementQuantity);
+		}
+	}
+
+	/**
+	 * Updates the main store balance of a lot, in the database, so that concurrent movements
+	 * validated against the same balance cannot take it below zero.
+	 * @param lotCode the lot code.
+	 * @param incrementQuantity the quantity to add (negative for outgoing movements).
+	 * @throws OHServiceException if the lot does not exist or its balance would become negative
+	 * (the whole transaction is rolled back).
+	 */
+	private void updateLotQuantity(
+			String lotCode, 
+			int incrementQuantity) throws OHServiceException
+	{
+		if (lotRepository.updateQuantity(incrementQuantity, lotCode) == 0) 
+		{
+			throw new OHServiceException(new OHExceptionMessage("quantityGreaterThanLotError", 
+					MessageBundle.getMessage("angal.medicalstock.movementquantityisgreaterthanthequantityof"), OHSeverityLevel.ERROR));
+		}
+	}
+
 	/**
 	 * Updates the incoming quantity for the specified medical.
+	 * The quantity is added by the database, so that concurrent movements of the same medical are never lost.
 	 * @param medicalCode the medical code.
 	 * @param incrementQuantity the quantity to add.
 	 * @return <code>true</code> if the quantity has been updated, <code>false</code> otherwise.
@@ -395,18 +629,12 @@ public class MedicalStockIoOperations {
 			int medicalCode, 
 			double incrementQuantity) throws OHServiceException
 	{
-		boolean result = true;
-				
-		
-		Medical medical = (Medical)medicalRepository.findOne(medicalCode); 
-		medical.setInqty(medical.getInqty()+incrementQuantity);
-		medicalRepository.save(medical);
-		
-		return result;
+		return medicalRepository.updateInQuantity(incrementQuantity, medicalCode) > 0;
 	}
 
 	/**
 	 * Updates the outcoming quantity for the specified medicinal.
+	 * The quantity is added by the database, so that concurrent movements of the same medical are never lost.
 	 * @param medicalCode the medical code.
 	 * @param incrementQuantity the quantity to add to the current outcoming quantity.
 	 * @return <code>true</code> if the outcoming quantity has been updated <code>false</code> otherwise.
@@ -416,45 +644,26 @@ public class MedicalStockIoOperations {
 			int medicalCode, 
 			double incrementQuantity) throws OHServiceException
 	{
-		boolean result = true;
-				
-
-		Medical medical = (Medical)medicalRepository.findOne(medicalCode); 
-		medical.setOutqty(medical.getOutqty()+incrementQuantity);
-		medicalRepository.save(medical);
-				
-		return result;
+		return medicalRepository.updateOutQuantity(incrementQuantity, medicalCode) > 0;
 	}
 
 	/**
 	 * Updates medical quantity for the specified ward.
+	 * The ward stock is inserted, or its quantity added, by a single statement,
+	 * so that concurrent movements to the same ward are never lost.
 	 * @param ward the ward.
 	 * @param medical the medical.
 	 * @param quantity the quantity to add to the current medical quantity.
 	 * @return <code>true</code> if the quantity has been updated/inserted, <code>false</code> otherwise.
 	 * @throws OHServiceException if an error occurs during the update.
 	 */
-	@SuppressWarnings("unchecked")
 	protected boolean updateMedicalWardQuantity(
 			Ward ward, 
 			Medical medical, 
 			int quantity,
 			Lot lot) throws OHServiceException
 	{
-		MedicalWard medicalWard = (MedicalWard)medicalStockRepository.findOneWhereCodeAndMedicalAndLot(ward.getCode(), medical.getCode() , lot.getCode());
-				
-		if (medicalWard != null)
-		{			
-			medicalWard.setInQuantity(medicalWard.getInQuantity()+quantity);
-			medicalStockRepository.save(medicalWard);
-		}
-		else
-		{
-			medicalWard = new MedicalWard(ward, medical, quantity, 0, lot);
-			Double  quan = (double) quantity;
-			medicalStockRepository.insertMedicalWard(ward.getCode(), medical.getCode(), quan, lot.getCode());
-		}
-		medicalStockRepository.save(medicalWard);
+		medicalStockRepository.insertOrUpdateInQuantity(ward.getCode(), medical.getCode(), (double) quantity, lot.getCode());
 		return true;
 	}
 
@@ -481,21 +690,7 @@ public class MedicalStockIoOperations {
 			GregorianCalendar dateFrom, 
 			GregorianCalendar dateTo) throws OHServiceException 
 	{
-		ArrayList<Integer> pMovementCode = null;
-		ArrayList<Movement> pMovement = new ArrayList<Movement>();
-		
-		
-		pMovementCode = new ArrayList<Integer>(movRepository.findMovementWhereDatesAndId(wardId, dateFrom, dateTo));
-		for (int i=0; i<pMovementCode.size(); i++)
-		{
-			Integer code = pMovementCode.get(i);
-			Movement movement = movRepository.findOne(code);
-			
-			
-			pMovement.add(i, movement);
-		}
-		
-		return pMovement;
+		return new ArrayList<Movement>(movRepository.findMovementWhereDatesAndId(wardId, dateFrom, dateTo));
 	}
 
 	/**
@@ -525,23 +720,9 @@ public class MedicalStockIoOperations {
 			GregorianCalendar lotDueFrom, 
 			GregorianCalendar lotDueTo) throws OHServiceException 
 	{
-		ArrayList<Integer> pMovementCode = null;
-		ArrayList<Movement> pMovement = new ArrayList<Movement>();
-		
-		
-		pMovementCode = new ArrayList<Integer>(movRepository.findMovementWhereData(
+		return new ArrayList<Movement>(movRepository.findMovementWhereData(
 				medicalCode, medicalType, wardId, movType, 
-				movFrom, movTo, lotPrepFrom, lotPrepTo, lotDueFrom, lotDueTo));			
-		for (int i=0; i<pMovementCode.size(); i++)
-		{
-			Integer code = pMovementCode.get(i);
-			Movement movement = movRepository.findOne(code);
-			
-			
-			pMovement.add(i, movement);
-		}
-		
-		return pMovement;	
+				movFrom, movTo, lotPrepFrom, lotPrepTo, lotDueFrom, lotDueTo));
 	}
 
 	/**
@@ -567,28 +748,13 @@ public class MedicalStockIoOperations {
 			String lotCode,
 			MovementOrder order) throws OHServiceException 
 	{
-
-		ArrayList<Integer> pMovementCode = null;
-		ArrayList<Movement> pMovement = new ArrayList<Movement>();
-		
-		
-		pMovementCode = new ArrayList<Integer>(movRepository.findMovementForPrint(
+		return new ArrayList<Movement>(movRepository.findMovementForPrint(
 				medicalDescription, medicalTypeCode, wardId, movType, 
-				movFrom, movTo, lotCode, order));			
-		for (int i=0; i<pMovementCode.size(); i++)
-		{
-			Integer code = pMovementCode.get(i);
-			Movement movement = movRepository.findOne(code);
-			
-			
-			pMovement.add(i, movement);
-		}
-		
-		return pMovement;	
+				movFrom, movTo, lotCode, order));
 	}
 
 	/**
-	 * Retrieves lot referred to the specified {@link Medical}.
+	 * Retrieves lot referred to the specified {@link Medical}, ordered by due date.
 	 * Lots with zero quantities will be stripped out
 	 * @param medical the medical.
 	 * @return a list of {@link Lot}.
@@ -597,16 +763,7 @@ public class MedicalStockIoOperations {
 	public ArrayList<Lot> getLotsByMedical(
 			Medical medical) throws OHServiceException
 	{
-		List<Lot> lots = lotRepository.findByMovements_MedicalOrderByDueDate(medical.getCode());
-
-		// remove empty lots
-		ArrayList<Lot> emptyLots = new ArrayList<Lot>();
-		for (Lot aLot : lots) {
-			aLot.setQuantity(aLot.calculateQuantity());
-			if (aLot.getQuantity() == 0)
-				emptyLots.add(aLot);
-		}
-		lots.removeAll(emptyLots);
+		List<Lot> lots = lotRepository.findAvailableWhereMedicalOrderByDueDate(medical.getCode());
 
 		return new ArrayList<Lot>(lots);
 	}
@@ -653,6 +810,24 @@ public class MedicalStockIoOperations {
 		return result;
 	}
 
+	/**
+	 * check which of the reference numbers are already used, with a single query
+	 * (for each {@value #MAX_CODES_PER_QUERY} reference numbers)
+	 * @return the reference numbers already used
+	 * @throws OHServiceException
+	 */
+	public Set<String> getUsedRefNos(
+			Collection<String> refNos) throws OHServiceException 
+	{
+		Set<String> usedRefNos = new HashSet<String>();
+		List<String> candidates = new ArrayList<String>(refNos);
+		for (int first = 0; first < candidates.size(); first += MAX_CODES_PER_QUERY) 
+		{
+			usedRefNos.addAll(movRepository.findAllWhereRefNoIn(candidates.subList(first, Math.min(candidates.size(), first + MAX_CODES_PER_QUERY))));
+		}
+		return usedRefNos;
+	}
+
 	/**
 	 * Retrieves all the movement associated to the specified reference number.
 	 * In case of error a message error is shown and a <code>null</code> value is returned.
@@ -668,4 +843,44 @@ public class MedicalStockIoOperations {
 		
 		return movements;
 	}
+
+	/**
+	 * The stock of a lot of a medical in a ward, ordered by ward, medical and lot
+	 */
+	private static final class WardLot implements Comparable<WardLot> 
+	{
+		private final String ward;
+		private final Integer medical;
+		private final String lot;
+
+		private WardLot(String ward, Integer medical, String lot) 
+		{
+			this.ward = ward;
+			this.medical = medical;
+			this.lot = lot;
+		}
+
+		@Override
+		public int compareTo(WardLot other) 
+		{
+			int compared = ward.compareTo(other.ward);
+			if (compared == 0) 
+			{
+				compared = medical.compareTo(other.medical);
+			}
+			return compared == 0 ? lot.compareTo(other.lot) : compared;
+		}
+
+		@Override
+		public boolean equals(Object other) 
+		{
+			return other instanceof WardLot && compareTo((WardLot) other) == 0;
+		}
+
+		@Override
+		public int hashCode() 
+		{
+			return (ward.hashCode() * 31 + medical.hashCode()) * 31 + lot.hashCode();
+		}
+	}
 }
@@ -21,22 +21,32 @@
  */
 package org.isf.medicalstock.service;
 
+import org.isf.medicalstock.model.Lot;
+import org.isf.medicalstock.model.Movement;
 import org.isf.medicalstock.service.MedicalStockIoOperations.MovementOrder;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.GregorianCalendar;
 import java.util.List;
 
 @Repository
 public interface MovementIoOperationRepositoryCustom {
 
-	List<Integer> findMovementWhereDatesAndId(String wardId, GregorianCalendar dateFrom, GregorianCalendar dateTo);
+	List<Movement> findMovementWhereDatesAndId(String wardId, GregorianCalendar dateFrom, GregorianCalendar dateTo);
 
-	List<Integer> findMovementWhereData(Integer medicalCode, String medicalType, String wardId, String movType,
+	List<Movement> findMovementWhereData(Integer medicalCode, String medicalType, String wardId, String movType,
 										GregorianCalendar movFrom, GregorianCalendar movTo, GregorianCalendar lotPrepFrom,
 										GregorianCalendar lotPrepTo, GregorianCalendar lotDueFrom, GregorianCalendar lotDueTo);
 
-	List<Integer> findMovementForPrint(String medicalDescription, String medicalTypeCode, String wardId,
+	List<Movement> findMovementForPrint(String medicalDescription, String medicalTypeCode, String wardId,
 									   String movType, GregorianCalendar movFrom, GregorianCalendar movTo, String lotCode, MovementOrder order);
+
+	/**
+	 * Inserts the new lots and the movements with JDBC batches, setting the codes of the movements
+	 * @param movements - the movements, with their lots set
+	 * @param newLots - the lots to insert, the other lots of the movements being already stored
+	 */
+	void insertMovements(List<Movement> movements, Collection<Lot> newLots);
 	
 }
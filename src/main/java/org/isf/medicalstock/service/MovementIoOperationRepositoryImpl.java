@@ -21,6 +21,8 @@
  */
 package org.isf.medicalstock.service;
 
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
 import org.isf.medicals.model.Medical;
 import org.isf.medicalstock.model.Lot;
 import org.isf.medicalstock.model.Movement;
@@ -28,17 +30,27 @@ import org.isf.medicalstock.service.MedicalStockIoOperations.MovementOrder;
 import org.isf.medstockmovtype.model.MovementType;
 import org.isf.medtype.model.MedicalType;
 import org.isf.ward.model.Ward;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.AuditorAware;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.JoinType;
 import javax.persistence.criteria.Order;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.List;
 
@@ -54,13 +66,22 @@ public class MovementIoOperationRepositoryImpl implements MovementIoOperationRep
 	private static final String LOT = "lot";
 	private static final String TYPE ="type";
 	private static final String DESCRIPTION = "description";
+	private static final String SUPPLIER = "supplier";
+
+	private static final String INSERT = "INSERT INTO MEDICALDSRSTOCKMOV (MMV_MDSR_ID, MMV_MMVT_ID_A, MMV_WRD_ID_A, MMV_LT_ID_A, "
+			+ "MMV_DATE, MMV_QTY, MMV_FROM, MMV_REFNO, "
+			+ "MMV_CREATED_BY, MMV_CREATED_DATE, MMV_LAST_MODIFIED_BY, MMV_LAST_MODIFIED_DATE, MMV_ACTIVE) "
+			+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
 	@PersistenceContext
 	private EntityManager entityManager;
 
+	@Autowired
+	private AuditorAware<String> auditorAware;
+
 	@SuppressWarnings("unchecked")	
 	@Override
-	public List<Integer> findMovementWhereDatesAndId(
+	public List<Movement> findMovementWhereDatesAndId(
 			String wardId, 
 			GregorianCalendar dateFrom, 
 			GregorianCalendar dateTo) {
@@ -69,7 +90,7 @@ public class MovementIoOperationRepositoryImpl implements MovementIoOperationRep
 
 	@SuppressWarnings("unchecked")	
 	@Override
-	public List<Integer> findMovementWhereData(
+	public List<Movement> findMovementWhereData(
 			Integer medicalCode,
 			String medicalType, 
 			String wardId, 
@@ -86,7 +107,7 @@ public class MovementIoOperationRepositoryImpl implements MovementIoOperationRep
 
 	@SuppressWarnings("unchecked")	
 	@Override
-	public List<Integer> findMovementForPrint(
+	public List<Movement> findMovementForPrint(
 			String medicalDescription,
 			String medicalTypeCode, 
 			String wardId, 
@@ -99,16 +120,76 @@ public class MovementIoOperationRepositoryImpl implements MovementIoOperationRep
 				lotCode, order);
 	}	
 
+
+	/**
+	 * The lots, having assigned codes, are persisted and batched by Hibernate.
+	 * MMV_ID is an identity column, so Hibernate would insert the movements one statement at a time:
+	 * they are inserted here with JDBC batches of <code>hibernate.jdbc.batch_size</code> movements instead.
+	 */
+	@Override
+	public void insertMovements(final List<Movement> movements, Collection<Lot> newLots) {
+		for (Lot lot : newLots) {
+			entityManager.persist(lot);
+		}
+		if (movements.isEmpty()) {
+			return;
+		}
+		final String auditor = auditorAware.getCurrentAuditor();
+		final Date now = new Date();
+		Session session = entityManager.unwrap(Session.class);
+		// the lots must be written first
+		session.flush();
+		int batchSize = ((SessionFactoryImplementor) session.getSessionFactory()).getSettings().getJdbcBatchSize();
+		final int movementsPerBatch = Math.max(1, batchSize);
+		session.doWork(connection -> {
+			try (PreparedStatement statement = connection.prepareStatement(INSERT, Statement.RETURN_GENERATED_KEYS)) {
+				for (int first = 0; first < movements.size(); first += movementsPerBatch) {
+					List<Movement> batch = movements.subList(first, Math.min(movements.size(), first + movementsPerBatch));
+					for (Movement movement : batch) {
+						movement.setCreatedBy(auditor);
+						movement.setCreatedDate(now);
+						movement.setLastModifiedBy(auditor);
+						movement.setLastModifiedDate(now);
+						statement.setInt(1, movement.getMedical().getCode());
+						statement.setString(2, movement.getType().getCode());
+						statement.setString(3, movement.getWard() == null ? null : movement.getWard().getCode());
+						statement.setString(4, movement.getLot() == null ? null : movement.getLot().getCode());
+						statement.setTimestamp(5, new Timestamp(movement.getDate().getTimeInMillis()));
+						statement.setInt(6, movement.getQuantity());
+						if (movement.getSupplier() == null) {
+							statement.setNull(7, Types.INTEGER);
+						} else {
+							statement.setInt(7, movement.getSupplier().getSupId());
+						}
+						statement.setString(8, movement.getRefNo());
+						statement.setString(9, auditor);
+						statement.setTimestamp(10, new Timestamp(now.getTime()));
+						statement.setString(11, auditor);
+						statement.setTimestamp(12, new Timestamp(now.getTime()));
+						statement.setInt(13, movement.getActive());
+						statement.addBatch();
+					}
+					statement.executeBatch();
+					try (ResultSet keys = statement.getGeneratedKeys()) {
+						for (int i = 0; i < batch.size() && keys.next(); i++) {
+							batch.get(i).setCode(keys.getInt(1));
+						}
+					}
+				}
+			}
+		});
+	}
 		
-	private List<Integer> _getMovementWhereDatesAndId(
+	private List<Movement> _getMovementWhereDatesAndId(
 			String wardId, 
 			GregorianCalendar dateFrom, 
 			GregorianCalendar dateTo)
 	{
 		CriteriaBuilder builder = entityManager.getCriteriaBuilder();
-		CriteriaQuery<Integer> query = builder.createQuery(Integer.class);
+		CriteriaQuery<Movement> query = builder.createQuery(Movement.class);
 		Root<Movement> root = query.from(Movement.class);
-		query.select(root.<Integer>get(CODE));
+		_fetchMovementGraph(root);
+		query.select(root);
 		List<Predicate> predicates = new ArrayList<Predicate>();
 
 		if ((dateFrom != null) && (dateTo != null))
@@ -127,7 +208,7 @@ public class MovementIoOperationRepositoryImpl implements MovementIoOperationRep
 		return entityManager.createQuery(query).getResultList();
 	}
 	
-	private List<Integer> _getMovementWhereData(
+	private List<Movement> _getMovementWhereData(
 			Integer medicalCode,
 			String medicalType, 
 			String wardId, 
@@ -139,9 +220,10 @@ public class MovementIoOperationRepositoryImpl implements MovementIoOperationRep
 			GregorianCalendar lotDueFrom, 
 			GregorianCalendar lotDueTo) {
 		CriteriaBuilder builder = entityManager.getCriteriaBuilder();
-		CriteriaQuery<Integer> query = builder.createQuery(Integer.class);
+		CriteriaQuery<Movement> query = builder.createQuery(Movement.class);
 		Root<Movement> root = query.from(Movement.class);
-		query.select(root.<Integer>get(CODE));
+		_fetchMovementGraph(root);
+		query.select(root);
 		List<Predicate> predicates = new ArrayList<Predicate>();
 
 		if (medicalCode != null) {
@@ -173,7 +255,7 @@ public class MovementIoOperationRepositoryImpl implements MovementIoOperationRep
 		return entityManager.createQuery(query).getResultList();
 	}	
 	
-	private List<Integer> _getMovementForPrint(
+	private List<Movement> _getMovementForPrint(
 			String medicalDescription,
 			String medicalTypeCode, 
 			String wardId, 
@@ -183,9 +265,10 @@ public class MovementIoOperationRepositoryImpl implements MovementIoOperationRep
 			String lotCode,
 			MovementOrder order) {
 		CriteriaBuilder builder = entityManager.getCriteriaBuilder();
-		CriteriaQuery<Integer> query = builder.createQuery(Integer.class);
+		CriteriaQuery<Movement> query = builder.createQuery(Movement.class);
 		Root<Movement> root = query.from(Movement.class);
-		query.select(root.<Integer>get(CODE));
+		_fetchMovementGraph(root);
+		query.select(root);
 		List<Predicate> predicates = new ArrayList<Predicate>();
 
 		if (medicalDescription != null) {
@@ -229,4 +312,19 @@ public class MovementIoOperationRepositoryImpl implements MovementIoOperationRep
 		query.where(predicates.toArray(new Predicate[]{})).orderBy(orderList);
 		return entityManager.createQuery(query).getResultList();
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Fetches all the associations needed by the callers together with the {@link Movement}s,
+	 * so that the whole graph is loaded by a single statement instead of one select per row.
+	 * @param root the movement root of the query.
+	 */
+	private void _fetchMovementGraph(
+			Root<Movement> root)
+	{
+		root.fetch(MEDICAL).fetch(TYPE);
+		root.fetch(TYPE);
+		root.fetch(WARD, JoinType.LEFT);
+		root.fetch(LOT, JoinType.LEFT);
+		root.fetch(SUPPLIER, JoinType.LEFT);
+	}
+}
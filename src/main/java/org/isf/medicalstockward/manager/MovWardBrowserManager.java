@@ -22,10 +22,12 @@
 package org.isf.medicalstockward.manager;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.Map;
 
 import org.isf.generaldata.MessageBundle;
 import org.isf.medicals.model.Medical;
@@ -212,6 +214,17 @@ public class MovWardBrowserManager {
 		return ioOperations.getCurrentQuantityInWard(ward, medical);
 	}
 
+	/**
+	 * Gets the current quantity of the specified {@link Medical}s in the whole hospital
+	 * (main store and all the wards).
+	 * @param medicalCodes the codes of the medicals.
+	 * @return the total quantity by medical code.
+	 * @throws OHServiceException
+	 */
+	public Map<Integer, Double> getStockQuantities(Collection<Integer> medicalCodes) throws OHServiceException {
+		return ioOperations.getStockQuantities(medicalCodes);
+	}
+
 	public ArrayList<MovementWardForPrint> convertMovementWardForPrint(ArrayList<MovementWard> wardOutcomes) {
 		ArrayList<MovementWardForPrint> movPrint = new ArrayList<MovementWardForPrint>();
 		for (MovementWard mov : wardOutcomes) {
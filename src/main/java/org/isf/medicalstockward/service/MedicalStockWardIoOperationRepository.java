@@ -69,6 +69,13 @@ public interface MedicalStockWardIoOperationRepository extends JpaRepository<Med
 			"VALUES (?, ?, ?, '0', ?)", nativeQuery = true)
 	void insertMedicalWard(@Param("ward") String ward, @Param("medical") int medical, @Param("quantity") Double quantity, @Param("lot") String lot);
 
+	@Modifying
+	@Transactional
+	@Query(value = "INSERT INTO MEDICALDSRWARD (MDSRWRD_WRD_ID_A, MDSRWRD_MDSR_ID, MDSRWRD_IN_QTI, MDSRWRD_OUT_QTI, MDSRWRD_LT_ID_A) " +
+			"VALUES (:ward, :medical, :quantity, '0', :lot) " +
+			"ON DUPLICATE KEY UPDATE MDSRWRD_IN_QTI = MDSRWRD_IN_QTI + :quantity", nativeQuery = true)
+	void insertOrUpdateInQuantity(@Param("ward") String ward, @Param("medical") int medical, @Param("quantity") Double quantity, @Param("lot") String lot);
+
 	@Query(value = "SELECT * FROM MEDICALDSRWARD WHERE MDSRWRD_WRD_ID_A = :ward", nativeQuery = true)
 	List<MedicalWard> findAllWhereWard(@Param("ward") char wardId);
 
@@ -21,14 +21,22 @@
  */
 package org.isf.medicalstockward.service;
 
+import org.isf.medicalstockward.model.MedicalWard;
+import org.isf.medicalstockward.model.MovementWard;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.Map;
 
 @Repository
 public interface MedicalStockWardIoOperationRepositoryCustom {
 
-	List<Integer> findAllWardMovement(String wardId, GregorianCalendar dateFrom, GregorianCalendar dateTo);
-	
+	List<MovementWard> findAllWardMovement(String wardId, GregorianCalendar dateFrom, GregorianCalendar dateTo);
+
+	List<MedicalWard> findTotalQuantityWhereWard(String wardId);
+
+	Map<Integer, Double> findStockQuantityWhereMedicals(Collection<Integer> medicalCodes);
+
 }
@@ -21,6 +21,8 @@
  */
 package org.isf.medicalstockward.service;
 
+import org.isf.medicals.model.Medical;
+import org.isf.medicalstockward.model.MedicalWard;
 import org.isf.medicalstockward.model.MovementWard;
 import org.isf.ward.model.Ward;
 import org.springframework.transaction.annotation.Transactional;
@@ -29,13 +31,17 @@ import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.JoinType;
 import javax.persistence.criteria.Order;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Transactional
 public class MedicalStockWardIoOperationRepositoryImpl implements MedicalStockWardIoOperationRepositoryCustom {
@@ -43,29 +49,72 @@ public class MedicalStockWardIoOperationRepositoryImpl implements MedicalStockWa
 	private static final String WARD = "ward";
 	private static final String DATE = "date";
 	private static final String CODE = "code";
+	private static final String WARD_TO = "wardTo";
+	private static final String WARD_FROM = "wardFrom";
+	private static final String MEDICAL = "medical";
+	private static final String TYPE = "type";
+	private static final String LOT = "lot";
+	private static final String PATIENT = "patient";
 
 	@PersistenceContext
 	private EntityManager entityManager;
 
 	@SuppressWarnings("unchecked")	
 	@Override
-	public List<Integer> findAllWardMovement(
+	public List<MovementWard> findAllWardMovement(
 			String wardId, 
 			GregorianCalendar dateFrom, 
 			GregorianCalendar dateTo) {
 		return _getWardMovementQuery(wardId, dateFrom, dateTo);
 	}	
+	
+	@Override
+	public List<MedicalWard> findTotalQuantityWhereWard(
+			String wardId) {
+		List<Object[]> totals = entityManager.createQuery(
+				"select medical, sum(medWard.in_quantity - medWard.out_quantity) from MedicalWard medWard " +
+				"join medWard.id.medical medical join fetch medical.type " +
+				"where medWard.id.ward.code = :ward and medWard.in_quantity <> medWard.out_quantity " +
+				"group by medical", Object[].class)
+				.setParameter(WARD, wardId)
+				.getResultList();
+		List<MedicalWard> medicalWards = new ArrayList<MedicalWard>(totals.size());
+		for (Object[] total : totals) {
+			medicalWards.add(new MedicalWard((Medical) total[0], ((Number) total[1]).doubleValue()));
+		}
+		return medicalWards;
+	}
+	
+	@Override
+	public Map<Integer, Double> findStockQuantityWhereMedicals(
+			Collection<Integer> medicalCodes) {
+		Map<Integer, Double> quantities = new HashMap<Integer, Double>();
+		if (medicalCodes.isEmpty()) {
+			return quantities;
+		}
+		List<Object[]> stocks = entityManager.createQuery(
+				"select medical.code, medical.initialqty + medical.inqty - medical.outqty, " +
+				"(select coalesce(sum(medWard.in_quantity - medWard.out_quantity), 0) from MedicalWard medWard where medWard.id.medical = medical) " +
+				"from Medical medical where medical.code in (:medicals)", Object[].class)
+				.setParameter("medicals", medicalCodes)
+				.getResultList();
+		for (Object[] stock : stocks) {
+			quantities.put((Integer) stock[0], ((Number) stock[1]).doubleValue() + ((Number) stock[2]).doubleValue());
+		}
+		return quantities;
+	}
 		
 
-	public List<Integer> _getWardMovementQuery(
+	public List<MovementWard> _getWardMovementQuery(
 			String wardId, 
 			GregorianCalendar dateFrom, 
 			GregorianCalendar dateTo)
 	{
 		CriteriaBuilder builder = entityManager.getCriteriaBuilder();
-		CriteriaQuery<Integer> query = builder.createQuery(Integer.class);
+		CriteriaQuery<MovementWard> query = builder.createQuery(MovementWard.class);
 		Root<MovementWard> root = query.from(MovementWard.class);
-		query.select(root.<Integer>get(CODE));
+		_fetchMovementWardGraph(root);
+		query.select(root);
 		List<Predicate> predicates = new ArrayList<Predicate>();
 
 		if (wardId != null && !wardId.equals("")) {
@@ -81,4 +130,20 @@ public class MedicalStockWardIoOperationRepositoryImpl implements MedicalStockWa
 		query.where(predicates.toArray(new Predicate[]{})).orderBy(orderList);
 		return entityManager.createQuery(query).getResultList();
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Fetches all the associations of the {@link MovementWard}s together with them,
+	 * so that the whole graph is loaded by a single statement instead of one select per row.
+	 * @param root the movement root of the query.
+	 */
+	private void _fetchMovementWardGraph(
+			Root<MovementWard> root)
+	{
+		root.fetch(WARD, JoinType.LEFT);
+		root.fetch(WARD_TO, JoinType.LEFT);
+		root.fetch(WARD_FROM, JoinType.LEFT);
+		root.fetch(MEDICAL, JoinType.LEFT).fetch(TYPE, JoinType.LEFT);
+		root.fetch(LOT, JoinType.LEFT);
+		root.fetch(PATIENT, JoinType.LEFT);
+	}
+}
@@ -34,8 +34,10 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author mwithi
@@ -64,19 +66,7 @@ public class MedicalStockWardIoOperations
 			GregorianCalendar dateFrom, 
 			GregorianCalendar dateTo) throws OHServiceException 
 	{
-		ArrayList<Integer> pMovementWardCode = null;
-		ArrayList<MovementWard> pMovementWard = new ArrayList<MovementWard>(); 
-		
-		
-		pMovementWardCode = new ArrayList<Integer>(repository.findAllWardMovement(wardId, dateFrom, dateTo));
-        for (Integer code : pMovementWardCode) {
-            MovementWard movementWard = movementRepository.findOne(code);
-
-
-            pMovementWard.add(movementWard);
-        }
-		
-		return pMovementWard;
+		return new ArrayList<MovementWard>(repository.findAllWardMovement(wardId, dateFrom, dateTo));
 	}
         
     /**
@@ -121,6 +111,19 @@ public class MedicalStockWardIoOperations
 		return (int) (mainQuantity != null ? mainQuantity : 0.0);	
 	}
 	
+	/**
+	 * Gets the current quantity of the specified {@link Medical}s in the whole hospital
+	 * (main store and all the wards), with a single query.
+	 * @param medicalCodes - the codes of the {@link Medical}s to check.
+	 * @return the total quantity by medical code; unknown codes are missing.
+	 * @throws OHServiceException if an error occurs retrieving the quantities.
+	 */
+	public Map<Integer, Double> getStockQuantities(
+			Collection<Integer> medicalCodes) throws OHServiceException 
+	{
+		return repository.findStockQuantityWhereMedicals(medicalCodes);
+	}
+	
 	/**
 	 * Stores the specified {@link Movement}.
 	 * @param movement the movement to store.
@@ -312,27 +315,14 @@ public class MedicalStockWardIoOperations
 
 	/**
 	 * Gets all the {@link MedicalWard}s associated to the specified ward summarized by lot
-	 * (total quantity, regardless the lot)
+	 * (total quantity, regardless the lot), computed by a single grouped query
 	 * @param wardId
-	 * @return the retrieved medicals.
+	 * @return the retrieved medicals, with their total quantity in {@link MedicalWard#getQty()}.
 	 * @throws OHServiceException
 	 */
 	public ArrayList<MedicalWard> getMedicalsWardTotalQuantity(
 			char wardId) throws OHServiceException
 	{
-		String WardID=String.valueOf(wardId);
-		ArrayList<MedicalWard> medicalWards = getMedicalsWard(wardId, true);
-
-		ArrayList<MedicalWard> medicalWardsQty = new ArrayList<MedicalWard>();
-
-		for (int i=0; i<medicalWards.size(); i++) {
-
-			 if (!medicalWardsQty.contains(medicalWards.get(i))) {
-				 Double qty = repository.findQuantityInWardWhereMedicalAndWard(medicalWards.get(i).getId().getMedical().getCode(),WardID);
-				 medicalWards.get(i).setQty(qty);
-				 medicalWardsQty.add(medicalWards.get(i));
-			 }
-		}
-		return medicalWardsQty;
+		return new ArrayList<MedicalWard>(repository.findTotalQuantityWhereWard(String.valueOf(wardId)));
 	}
 }
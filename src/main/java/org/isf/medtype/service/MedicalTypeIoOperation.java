@@ -25,6 +25,8 @@ import org.isf.medtype.model.MedicalType;
 import org.isf.utils.db.TranslateOHServiceException;
 import org.isf.utils.exception.OHServiceException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -46,6 +48,7 @@ public class MedicalTypeIoOperation {
 	 * @return the stored medical types.
 	 * @throws OHServiceException if an error occurs retrieving the medical types.
 	 */
+	@Cacheable("medicalTypes")
 	public ArrayList<MedicalType> getMedicalTypes() throws OHServiceException 
 	{
 		return new ArrayList<MedicalType>(repository.findAllByOrderByDescriptionAsc()); 
@@ -57,6 +60,7 @@ public class MedicalTypeIoOperation {
 	 * @return <code>true</code> if the medical type has been updated, <code>false</code> otherwise.
 	 * @throws OHServiceException if an error occurs updating the medical type.
 	 */
+	@CacheEvict(cacheNames = "medicalTypes", allEntries = true)
 	public boolean updateMedicalType(
 			MedicalType medicalType) throws OHServiceException 
 	{
@@ -75,6 +79,7 @@ public class MedicalTypeIoOperation {
 	 * @return <code>true</code> if the medical type has been stored, <code>false</code> otherwise.
 	 * @throws OHServiceException if an error occurs storing the new medical type.
 	 */
+	@CacheEvict(cacheNames = "medicalTypes", allEntries = true)
 	public boolean newMedicalType(
 			MedicalType medicalType) throws OHServiceException 
 	{
@@ -93,6 +98,7 @@ public class MedicalTypeIoOperation {
 	 * @return <code>true</code> if the medical type has been deleted, <code>false</code> otherwise.
 	 * @throws OHServiceException if an error occurs deleting the medical type.
 	 */
+	@CacheEvict(cacheNames = "medicalTypes", allEntries = true)
 	public boolean deleteMedicalType(
 			MedicalType medicalType) throws OHServiceException 
 	{
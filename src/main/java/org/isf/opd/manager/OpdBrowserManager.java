@@ -22,16 +22,21 @@
 package org.isf.opd.manager;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.List;
 
+import org.isf.agetype.model.AgeType;
 import org.isf.disease.model.Disease;
 import org.isf.generaldata.GeneralData;
 import org.isf.generaldata.MessageBundle;
 import org.isf.menu.manager.UserBrowsingManager;
 import org.isf.opd.model.Opd;
+import org.isf.opd.model.OpdCount;
+import org.isf.opd.model.OpdGrouping;
 import org.isf.opd.service.OpdIoOperations;
+import org.isf.sequence.manager.SequenceManager;
 import org.isf.utils.exception.OHServiceException;
 import org.isf.utils.exception.OHDataValidationException;
 import org.isf.utils.exception.model.OHExceptionMessage;
@@ -51,6 +56,9 @@ public class OpdBrowserManager {
 	
 	@Autowired
 	private OpdIoOperations ioOperations;
+
+	@Autowired
+	private SequenceManager sequenceManager;
 	
 	/**
 	 * Verify if the object is valid for CRUD and return a list of errors, if any
@@ -158,6 +166,56 @@ public class OpdBrowserManager {
 		return ioOperations.getOpdList(diseaseTypeCode,diseaseCode,dateFrom,dateTo,ageFrom,ageTo,sex,newPatient);
 	}
 	
+	/**
+	 * counts the Opds within specified dates, without loading them
+	 * 
+	 * @param diseaseTypeCode
+	 * @param diseaseCode
+	 * @param dateFrom
+	 * @param dateTo
+	 * @param ageFrom
+	 * @param ageTo
+	 * @param sex
+	 * @param newPatient
+	 * @param ageTypes - the age types to count {@link OpdGrouping#AGE} by, single ages if <code>null</code>
+	 * @param groupBy - the properties to count by, the total only if empty
+	 * @return the counts. It could be <code>empty</code>.
+	 * @throws OHServiceException 
+	 */
+	public List<OpdCount> getOpdCounts(String diseaseTypeCode, String diseaseCode, GregorianCalendar dateFrom, GregorianCalendar dateTo, int ageFrom, int ageTo, char sex, char newPatient, List<AgeType> ageTypes, Collection<OpdGrouping> groupBy) throws OHServiceException {
+		return ioOperations.getOpdCounts(diseaseTypeCode, diseaseCode, dateFrom, dateTo, ageFrom, ageTo, sex, newPatient, ageTypes, groupBy);
+	}
+	
+	/**
+	 * counts the Opds of whole days, from the daily counts if <code>GeneralData.OPDROLLUP</code> is enabled
+	 * 
+	 * @param diseaseTypeCode
+	 * @param diseaseCode
+	 * @param dayFrom - the first day
+	 * @param dayTo - the last day, included
+	 * @param ageFrom
+	 * @param ageTo
+	 * @param sex
+	 * @param newPatient
+	 * @param ageTypes - the age types to count {@link OpdGrouping#AGE} by, single ages if <code>null</code>
+	 * @param groupBy - the properties to count by, the total only if empty
+	 * @return the counts. It could be <code>empty</code>.
+	 * @throws OHServiceException 
+	 */
+	public List<OpdCount> getDailyOpdCounts(String diseaseTypeCode, String diseaseCode, GregorianCalendar dayFrom, GregorianCalendar dayTo, int ageFrom, int ageTo, char sex, char newPatient, List<AgeType> ageTypes, Collection<OpdGrouping> groupBy) throws OHServiceException {
+		return ioOperations.getDailyOpdCounts(diseaseTypeCode, diseaseCode, dayFrom, dayTo, ageFrom, ageTo, sex, newPatient, ageTypes, groupBy);
+	}
+	
+	/**
+	 * counts again all the Opds per day, to be used when <code>GeneralData.OPDROLLUP</code> gets enabled
+	 * 
+	 * @return the number of daily counts
+	 * @throws OHServiceException 
+	 */
+	public int rebuildDailyOpdCounts() throws OHServiceException {
+		return ioOperations.rebuildDailyOpdCounts();
+	}
+	
 	/**
 	 * returns all {@link Opd}s associated to specified patient ID
 	 * 
@@ -171,7 +229,7 @@ public class OpdBrowserManager {
 	}
 
 	/**
-	 * insert a new item in the db
+	 * insert a new item in the db, with a new progressive number in the year of its visit date if it has none (<code>0</code>)
 	 * 
 	 * @param opd an {@link Opd}
 	 * @return <code>true</code> if the item has been inserted
@@ -179,6 +237,9 @@ public class OpdBrowserManager {
 	 */
 	public boolean newOpd(Opd opd) throws OHServiceException {
 		validateOpd(opd, true);
+		if (opd.getProgYear() == 0) {
+			opd.setProgYear(getNextProgYear(opd.getVisitDate().get(GregorianCalendar.YEAR)));
+		}
 		return ioOperations.newOpd(opd);
 	}
 
@@ -210,10 +271,25 @@ public class OpdBrowserManager {
 	 * @param year
 	 * @return <code>int</code> - the progressive number in the year
 	 * @throws OHServiceException 
+	 * @deprecated the number after it can be taken by another client before the {@link Opd} is saved:
+	 * leave the progressive number <code>0</code> and {@link #newOpd(Opd)} assigns it.
 	 */
+	@Deprecated
 	public int getProgYear(int year) throws OHServiceException {
 		return ioOperations.getProgYear(year);
 	}
+
+	/**
+	 * Returns a new progressive number within specified year or, if <code>0</code>, a number never restarting,
+	 * following the max stored and never returned before.
+	 * 
+	 * @param year
+	 * @return <code>int</code> - the new progressive number in the year
+	 * @throws OHServiceException 
+	 */
+	public int getNextProgYear(int year) throws OHServiceException {
+		return sequenceManager.next(SequenceManager.OPD, SequenceManager.NO_WARD, year, () -> ioOperations.getProgYear(year));
+	}
 	
 	/**
 	 * return the last Opd in time associated with specified patient ID. 
@@ -0,0 +1,134 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.opd.model;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The number of {@link Opd}s sharing the same values of the {@link OpdGrouping}s they are counted by;
+ * the properties not counted by are <code>null</code>.
+ */
+public class OpdCount 
+{
+	private Date date;
+	
+	private String diseaseTypeCode;
+	
+	private String diseaseCode;
+	
+	private Integer age;
+	
+	private String ageTypeCode;
+	
+	private Character sex;
+	
+	private Character newPatient;
+	
+	private long count;
+
+	public OpdCount() {
+	}
+	
+	/**
+	 * @return the day of the visits
+	 */
+	public Date getDate() {
+		return date;
+	}
+
+	public void setDate(Date date) {
+		this.date = date;
+	}
+
+	public String getDiseaseTypeCode() {
+		return diseaseTypeCode;
+	}
+
+	public void setDiseaseTypeCode(String diseaseTypeCode) {
+		this.diseaseTypeCode = diseaseTypeCode;
+	}
+
+	public String getDiseaseCode() {
+		return diseaseCode;
+	}
+
+	public void setDiseaseCode(String diseaseCode) {
+		this.diseaseCode = diseaseCode;
+	}
+
+	public Integer getAge() {
+		return age;
+	}
+
+	public void setAge(Integer age) {
+		this.age = age;
+	}
+
+	/**
+	 * @return the code of the age type, when counted by age types
+	 */
+	public String getAgeTypeCode() {
+		return ageTypeCode;
+	}
+
+	public void setAgeTypeCode(String ageTypeCode) {
+		this.ageTypeCode = ageTypeCode;
+	}
+
+	public Character getSex() {
+		return sex;
+	}
+
+	public void setSex(Character sex) {
+		this.sex = sex;
+	}
+
+	public Character getNewPatient() {
+		return newPatient;
+	}
+
+	public void setNewPatient(Character newPatient) {
+		this.newPatient = newPatient;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public void setCount(long count) {
+		this.count = count;
+	}
+	
+	/**
+	 * @return the values this count is grouped by
+	 */
+	public List<Object> getKey() {
+		return Arrays.<Object>asList(date, diseaseTypeCode, diseaseCode, age, ageTypeCode, sex, newPatient);
+	}
+	
+	@Override
+	public String toString() {
+		return getKey() + "=" + count;
+	}
+}
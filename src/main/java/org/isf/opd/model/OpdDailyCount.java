@@ -0,0 +1,62 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.opd.model;
+
+import javax.persistence.Column;
+import javax.persistence.EmbeddedId;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+/**
+ * Number of {@link Opd}s per day of visit, disease, sex, new patient and age:
+ * kept up to date at each change of the OPDs when <code>GeneralData.OPDROLLUP</code> is enabled,
+ * it lets the periodic statistics be counted without reading the single visits.
+ */
+@Entity
+@Table(name="OPD_DAILY_COUNT")
+public class OpdDailyCount 
+{
+	@EmbeddedId
+	private OpdDailyCountId id;
+	
+	@Column(name="ODC_COUNT")
+	private int count;
+
+	public OpdDailyCount() {
+	}
+
+	public OpdDailyCountId getId() {
+		return id;
+	}
+
+	public void setId(OpdDailyCountId id) {
+		this.id = id;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public void setCount(int count) {
+		this.count = count;
+	}
+}
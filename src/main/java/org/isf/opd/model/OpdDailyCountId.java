@@ -0,0 +1,111 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.opd.model;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.validation.constraints.NotNull;
+
+import org.isf.disease.model.Disease;
+
+@SuppressWarnings("serial")
+@Embeddable
+public class OpdDailyCountId implements Serializable 
+{
+	@NotNull
+	@Temporal(TemporalType.DATE)
+	@Column(name="ODC_DATE")
+	private Date date;
+	
+	@NotNull
+	@ManyToOne
+	@JoinColumn(name="ODC_DIS_ID_A")
+	private Disease disease;
+	
+	@NotNull
+	@Column(name="ODC_SEX")
+	private char sex;
+	
+	@NotNull
+	@Column(name="ODC_NEW_PAT")
+	private char newPatient;
+	
+	@NotNull
+	@Column(name="ODC_AGE")
+	private int age;
+
+	public OpdDailyCountId() {
+	}
+
+	public Date getDate() {
+		return date;
+	}
+
+	public Disease getDisease() {
+		return disease;
+	}
+
+	public char getSex() {
+		return sex;
+	}
+
+	public char getNewPatient() {
+		return newPatient;
+	}
+
+	public int getAge() {
+		return age;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + (date == null ? 0 : date.hashCode());
+		result = prime * result + (disease == null ? 0 : disease.getCode().hashCode());
+		result = prime * result + sex;
+		result = prime * result + newPatient;
+		result = prime * result + age;
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof OpdDailyCountId)) {
+			return false;
+		}
+		OpdDailyCountId other = (OpdDailyCountId) obj;
+		return (date == null ? other.date == null : other.date != null && date.getTime() == other.date.getTime())
+				&& (disease == null ? other.disease == null : other.disease != null && disease.getCode().equals(other.disease.getCode()))
+				&& sex == other.sex && newPatient == other.newPatient && age == other.age;
+	}
+}
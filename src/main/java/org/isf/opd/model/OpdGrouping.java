@@ -0,0 +1,40 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.opd.model;
+
+/**
+ * The properties by which {@link Opd}s can be counted
+ */
+public enum OpdGrouping {
+	
+	/** the day of the visit */
+	DAY,
+	/** the type of the first disease */
+	DISEASE_TYPE,
+	/** the first disease */
+	DISEASE,
+	/** the age, or the age type when age types are given */
+	AGE,
+	SEX,
+	/** new patient or re-attendance */
+	NEW_PATIENT
+}
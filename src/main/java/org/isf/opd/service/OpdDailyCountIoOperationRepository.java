@@ -0,0 +1,58 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.opd.service;
+
+import java.util.Date;
+
+import org.isf.opd.model.OpdDailyCount;
+import org.isf.opd.model.OpdDailyCountId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface OpdDailyCountIoOperationRepository extends JpaRepository<OpdDailyCount, OpdDailyCountId> {
+	
+	@Modifying
+	@Query(value = "INSERT INTO OPD_DAILY_COUNT (ODC_DATE, ODC_DIS_ID_A, ODC_SEX, ODC_NEW_PAT, ODC_AGE, ODC_COUNT) " +
+			"VALUES (:date, :disease, :sex, :newPatient, :age, :quantity) " +
+			"ON DUPLICATE KEY UPDATE ODC_COUNT = ODC_COUNT + :quantity", nativeQuery = true)
+	void updateCount(@Param("date") Date date, @Param("disease") String disease, @Param("sex") String sex, 
+			@Param("newPatient") String newPatient, @Param("age") int age, @Param("quantity") int quantity);
+	
+	@Modifying
+	@Query(value = "DELETE FROM OPD_DAILY_COUNT WHERE ODC_DATE = :date AND ODC_DIS_ID_A = :disease AND ODC_SEX = :sex " +
+			"AND ODC_NEW_PAT = :newPatient AND ODC_AGE = :age AND ODC_COUNT <= 0", nativeQuery = true)
+	void deleteEmpty(@Param("date") Date date, @Param("disease") String disease, @Param("sex") String sex, 
+			@Param("newPatient") String newPatient, @Param("age") int age);
+	
+	@Modifying
+	@Query(value = "DELETE FROM OPD_DAILY_COUNT", nativeQuery = true)
+	void deleteAllCounts();
+	
+	@Modifying
+	@Query(value = "INSERT INTO OPD_DAILY_COUNT (ODC_DATE, ODC_DIS_ID_A, ODC_SEX, ODC_NEW_PAT, ODC_AGE, ODC_COUNT) " +
+			"SELECT CAST(OPD_DATE_VIS AS DATE), OPD_DIS_ID_A, OPD_SEX, OPD_NEW_PAT, OPD_AGE, COUNT(*) FROM OPD " +
+			"WHERE OPD_DIS_ID_A IS NOT NULL " +
+			"GROUP BY CAST(OPD_DATE_VIS AS DATE), OPD_DIS_ID_A, OPD_SEX, OPD_NEW_PAT, OPD_AGE", nativeQuery = true)
+	int insertAllCounts();
+}
@@ -22,7 +22,11 @@
 package org.isf.opd.service;
 
 import org.isf.opd.model.Opd;
+import org.isf.opd.model.OpdCount;
+import org.isf.opd.model.OpdGrouping;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.List;
 
@@ -31,4 +35,14 @@ public interface OpdIoOperationRepositoryCustom {
 	List<Opd> findAllOpdWhereParams(String diseaseTypeCode, String diseaseCode, GregorianCalendar dateFrom,
 									GregorianCalendar dateTo, int ageFrom, int ageTo, char sex, char newPatient);
 
+	List<OpdCount> countOpdWhereParams(String diseaseTypeCode, String diseaseCode, GregorianCalendar dateFrom,
+									GregorianCalendar dateTo, int ageFrom, int ageTo, char sex, char newPatient,
+									boolean withDiseaseOnly, Collection<OpdGrouping> groupBy);
+
+	List<OpdCount> countOpdDailyWhereParams(String diseaseTypeCode, String diseaseCode, Date dayFrom,
+									Date dayTo, int ageFrom, int ageTo, char sex, char newPatient,
+									Collection<OpdGrouping> groupBy);
+
+	OpdCount findStoredVisit(int code);
+
 }
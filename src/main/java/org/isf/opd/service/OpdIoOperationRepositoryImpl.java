@@ -22,20 +22,36 @@
 package org.isf.opd.service;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.Map;
 
 import javax.persistence.EntityManager;
+import javax.persistence.FlushModeType;
 import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
 
+import org.isf.disease.model.Disease;
 import org.isf.generaldata.MessageBundle;
 import org.isf.opd.model.Opd;
+import org.isf.opd.model.OpdCount;
+import org.isf.opd.model.OpdDailyCount;
+import org.isf.opd.model.OpdGrouping;
 import org.springframework.transaction.annotation.Transactional;
 
 @Transactional
@@ -108,4 +124,196 @@ public class OpdIoOperationRepositoryImpl implements OpdIoOperationRepositoryCus
 
 		return entityManager.createQuery(query);
 	}
-}
\ No newline at end of file
+
+	@Override
+	public List<OpdCount> countOpdWhereParams(
+			String diseaseTypeCode,
+			String diseaseCode, 
+			GregorianCalendar dateFrom,
+			GregorianCalendar dateTo,
+			int ageFrom, 
+			int ageTo,
+			char sex,
+			char newPatient,
+			boolean withDiseaseOnly,
+			Collection<OpdGrouping> groupBy) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Tuple> query = cb.createTupleQuery();
+		Root<Opd> opd = query.from(Opd.class);
+		Join<Opd, Disease> disease = opd.join("disease", withDiseaseOnly ? JoinType.INNER : JoinType.LEFT);
+		Map<OpdGrouping, Expression<?>> properties = new EnumMap<OpdGrouping, Expression<?>>(OpdGrouping.class);
+
+		properties.put(OpdGrouping.DAY, opd.get("visitDate").as(java.sql.Date.class));
+		properties.put(OpdGrouping.DISEASE_TYPE, disease.join("diseaseType", JoinType.LEFT).get("code"));
+		properties.put(OpdGrouping.DISEASE, disease.get("code"));
+		properties.put(OpdGrouping.AGE, opd.get("age"));
+		properties.put(OpdGrouping.SEX, opd.get("sex"));
+		properties.put(OpdGrouping.NEW_PATIENT, opd.get("newPatient"));
+		
+		return _count(
+				query, properties, cb.count(opd), 
+				cb.between(opd.<Date>get("visitDate"), dateFrom.getTime(), dateTo.getTime()), 
+				diseaseTypeCode, diseaseCode, ageFrom, ageTo, sex, newPatient, groupBy);
+	}
+
+	@Override
+	public List<OpdCount> countOpdDailyWhereParams(
+			String diseaseTypeCode,
+			String diseaseCode, 
+			Date dayFrom,
+			Date dayTo,
+			int ageFrom, 
+			int ageTo,
+			char sex,
+			char newPatient,
+			Collection<OpdGrouping> groupBy) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Tuple> query = cb.createTupleQuery();
+		Root<OpdDailyCount> opdDailyCount = query.from(OpdDailyCount.class);
+		Path<Object> id = opdDailyCount.get("id");
+		Path<Object> disease = id.get("disease");
+		Map<OpdGrouping, Expression<?>> properties = new EnumMap<OpdGrouping, Expression<?>>(OpdGrouping.class);
+
+		properties.put(OpdGrouping.DAY, id.get("date"));
+		properties.put(OpdGrouping.DISEASE_TYPE, disease.get("diseaseType").get("code"));
+		properties.put(OpdGrouping.DISEASE, disease.get("code"));
+		properties.put(OpdGrouping.AGE, id.get("age"));
+		properties.put(OpdGrouping.SEX, id.get("sex"));
+		properties.put(OpdGrouping.NEW_PATIENT, id.get("newPatient"));
+		
+		return _count(
+				query, properties, cb.sum(opdDailyCount.<Integer>get("count")), 
+				cb.between(id.<Date>get("date"), dayFrom, dayTo), 
+				diseaseTypeCode, diseaseCode, ageFrom, ageTo, sex, newPatient, groupBy);
+	}
+
+	/**
+	 * Reads the counted values of an {@link Opd} as stored in the database,
+	 * ignoring the changes made to the managed instance and not yet flushed
+	 * 
+	 * @param code - the code of the {@link Opd}
+	 * @return the visit as a count of 1, with the visit time as date, or <code>null</code> if not found or without disease
+	 */
+	@Override
+	public OpdCount findStoredVisit(int code) {
+		List<Tuple> rows = entityManager.createQuery(
+				"select o.visitDate, d.code, o.age, o.sex, o.newPatient from Opd o join o.disease d where o.code = :code",
+				Tuple.class)
+			.setParameter("code", code)
+			.setFlushMode(FlushModeType.COMMIT)
+			.getResultList();
+		if (rows.isEmpty() || rows.get(0).get(0) == null) {
+			return null;
+		}
+		Tuple row = rows.get(0);
+		OpdCount visit = new OpdCount();
+		visit.setDate(((GregorianCalendar) row.get(0)).getTime());
+		visit.setDiseaseCode((String) row.get(1));
+		visit.setAge((Integer) row.get(2));
+		visit.setSex((Character) row.get(3));
+		visit.setNewPatient((Character) row.get(4));
+		visit.setCount(1);
+		return visit;
+	}
+
+	/**
+	 * Counts in a single grouped query, filtering as {@link #findAllOpdWhereParams}
+	 * 
+	 * @param properties - the expression of each {@link OpdGrouping} in the query
+	 * @param count - the counting expression
+	 */
+	@SuppressWarnings("unchecked")
+	private List<OpdCount> _count(
+			CriteriaQuery<Tuple> query,
+			Map<OpdGrouping, Expression<?>> properties,
+			Expression<? extends Number> count,
+			Predicate dates,
+			String diseaseTypeCode,
+			String diseaseCode, 
+			int ageFrom, 
+			int ageTo,
+			char sex,
+			char newPatient,
+			Collection<OpdGrouping> groupBy) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		EnumSet<OpdGrouping> groupings = EnumSet.noneOf(OpdGrouping.class);
+		List<Selection<?>> selections = new ArrayList<Selection<?>>();
+		List<Expression<?>> groupExpressions = new ArrayList<Expression<?>>();
+		List<Order> orders = new ArrayList<Order>();
+		List<Predicate> predicates = new ArrayList<Predicate>();
+
+		groupings.addAll(groupBy);
+		for (OpdGrouping grouping : groupings) {
+			Expression<?> expression = properties.get(grouping);
+			selections.add(expression);
+			groupExpressions.add(expression);
+			orders.add(cb.asc(expression));
+		}
+		selections.add(count);
+		if (!(diseaseTypeCode.equals(MessageBundle.getMessage("angal.opd.alltype")))) {
+			predicates.add(
+				cb.equal(properties.get(OpdGrouping.DISEASE_TYPE), diseaseTypeCode)
+			);
+		}
+		if(!diseaseCode.equals(MessageBundle.getMessage("angal.opd.alldisease"))) {
+			predicates.add(
+				cb.equal(properties.get(OpdGrouping.DISEASE), diseaseCode)
+			);
+		}
+		if (ageFrom != 0 || ageTo != 0) {
+			predicates.add(
+				cb.between((Expression<Integer>) properties.get(OpdGrouping.AGE), ageFrom, ageTo)
+			);
+		}
+		if (sex != 'A') {
+			predicates.add(
+				cb.equal(properties.get(OpdGrouping.SEX), sex)
+			);
+		}
+		if (newPatient != 'A') {
+			predicates.add(
+				cb.equal(properties.get(OpdGrouping.NEW_PATIENT), newPatient)
+			);
+		}
+		predicates.add(dates);
+		query.multiselect(selections)
+			.where(cb.and(predicates.toArray(new Predicate[predicates.size()])))
+			.groupBy(groupExpressions)
+			.orderBy(orders);
+
+		List<OpdCount> counts = new ArrayList<OpdCount>();
+		for (Tuple row : entityManager.createQuery(query).getResultList()) {
+			OpdCount opdCount = new OpdCount();
+			int column = 0;
+			for (OpdGrouping grouping : groupings) {
+				Object value = row.get(column++);
+				switch (grouping) {
+				case DAY:
+					opdCount.setDate((Date) value);
+					break;
+				case DISEASE_TYPE:
+					opdCount.setDiseaseTypeCode((String) value);
+					break;
+				case DISEASE:
+					opdCount.setDiseaseCode((String) value);
+					break;
+				case AGE:
+					opdCount.setAge((Integer) value);
+					break;
+				case SEX:
+					opdCount.setSex((Character) value);
+					break;
+				case NEW_PATIENT:
+					opdCount.setNewPatient((Character) value);
+					break;
+				}
+			}
+			Number total = (Number) row.get(column);
+			opdCount.setCount(total == null ? 0 : total.longValue());
+			if (opdCount.getCount() > 0) {
+				counts.add(opdCount);
+			}
+		}
+		return counts;
+	}
+}
@@ -22,11 +22,18 @@
 package org.isf.opd.service;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.isf.agetype.model.AgeType;
+import org.isf.generaldata.GeneralData;
 import org.isf.generaldata.MessageBundle;
 import org.isf.opd.model.Opd;
+import org.isf.opd.model.OpdCount;
+import org.isf.opd.model.OpdGrouping;
 import org.isf.utils.db.TranslateOHServiceException;
 import org.isf.utils.exception.OHServiceException;
 import org.joda.time.DateTime;
@@ -60,6 +67,9 @@ public class OpdIoOperations {
 	@Autowired
 	private OpdIoOperationRepository repository;
 	
+	@Autowired
+	private OpdDailyCountIoOperationRepository dailyCountRepository;
+	
 	/**
 	 * return all Opds of today or one week ago
 	 * 
@@ -107,6 +117,91 @@ public class OpdIoOperations {
 				ageFrom, ageTo, sex, newPatient));			
 	}
 	
+	/**
+	 * counts the Opds within specified dates, grouped in the database
+	 * 
+	 * @param diseaseTypeCode
+	 * @param diseaseCode
+	 * @param dateFrom
+	 * @param dateTo
+	 * @param ageFrom
+	 * @param ageTo
+	 * @param sex
+	 * @param newPatient
+	 * @param ageTypes - the age types to count {@link OpdGrouping#AGE} by, single ages if <code>null</code>
+	 * @param groupBy - the properties to count by, the total only if empty
+	 * @return the counts, in the order of the properties. It could be <code>empty</code>.
+	 * @throws OHServiceException 
+	 */
+	public List<OpdCount> getOpdCounts(
+			String diseaseTypeCode,
+			String diseaseCode, 
+			GregorianCalendar dateFrom,
+			GregorianCalendar dateTo,
+			int ageFrom, 
+			int ageTo,
+			char sex,
+			char newPatient,
+			List<AgeType> ageTypes,
+			Collection<OpdGrouping> groupBy) throws OHServiceException {
+		return _groupByAgeType(repository.countOpdWhereParams(
+				diseaseTypeCode, diseaseCode, dateFrom, dateTo,
+				ageFrom, ageTo, sex, newPatient, false, groupBy), ageTypes);
+	}
+	
+	/**
+	 * counts the Opds of whole days, from the daily counts if <code>GeneralData.OPDROLLUP</code> is enabled;
+	 * the periodic statistics can sum the days grouping by {@link OpdGrouping#DAY}.
+	 * The Opds without a disease are not counted, as they are not in the daily counts
+	 * 
+	 * @param diseaseTypeCode
+	 * @param diseaseCode
+	 * @param dayFrom - the first day
+	 * @param dayTo - the last day, included
+	 * @param ageFrom
+	 * @param ageTo
+	 * @param sex
+	 * @param newPatient
+	 * @param ageTypes - the age types to count {@link OpdGrouping#AGE} by, single ages if <code>null</code>
+	 * @param groupBy - the properties to count by, the total only if empty
+	 * @return the counts, in the order of the properties. It could be <code>empty</code>.
+	 * @throws OHServiceException 
+	 */
+	public List<OpdCount> getDailyOpdCounts(
+			String diseaseTypeCode,
+			String diseaseCode, 
+			GregorianCalendar dayFrom,
+			GregorianCalendar dayTo,
+			int ageFrom, 
+			int ageTo,
+			char sex,
+			char newPatient,
+			List<AgeType> ageTypes,
+			Collection<OpdGrouping> groupBy) throws OHServiceException {
+		DateTime from = new DateTime(dayFrom).withTimeAtStartOfDay();
+		DateTime to = new DateTime(dayTo).withTimeAtStartOfDay();
+		List<OpdCount> counts = GeneralData.OPDROLLUP ?
+			repository.countOpdDailyWhereParams(
+					diseaseTypeCode, diseaseCode, from.toDate(), to.toDate(),
+					ageFrom, ageTo, sex, newPatient, groupBy) :
+			repository.countOpdWhereParams(
+					diseaseTypeCode, diseaseCode, from.toGregorianCalendar(), to.plusDays(1).minusMillis(1).toGregorianCalendar(),
+					ageFrom, ageTo, sex, newPatient, true, groupBy);
+
+		return _groupByAgeType(counts, ageTypes);
+	}
+	
+	/**
+	 * counts again all the Opds per day, to be used when <code>GeneralData.OPDROLLUP</code> gets enabled
+	 * 
+	 * @return the number of daily counts
+	 * @throws OHServiceException 
+	 */
+	public int rebuildDailyOpdCounts() throws OHServiceException {
+		dailyCountRepository.deleteAllCounts();
+		return dailyCountRepository.insertAllCounts();
+	}
+
 	/**
 	 * returns all {@link Opd}s associated to specified patient ID
 	 * 
@@ -129,7 +224,12 @@ public class OpdIoOperations {
 	 * @throws OHServiceException 
 	 */
 	public boolean newOpd(Opd opd) throws OHServiceException {
-		return repository.save(opd) != null;
+		Opd savedOpd = repository.save(opd);
+		
+		if (GeneralData.OPDROLLUP) {
+			_updateDailyCount(_getDailyCount(savedOpd), 1);
+		}
+		return savedOpd != null;
 	}
 	
 	/**
@@ -140,7 +240,18 @@ public class OpdIoOperations {
 	 * @throws OHServiceException 
 	 */
 	public Opd updateOpd(Opd opd) throws OHServiceException {
-		return repository.save(opd);
+		if (!GeneralData.OPDROLLUP) {
+			return repository.save(opd);
+		}
+		OpdCount previous = _getDailyCount(repository.findStoredVisit(opd.getCode()));
+		Opd updatedOpd = repository.save(opd);
+		OpdCount current = _getDailyCount(updatedOpd);
+		
+		if (previous == null || current == null || !previous.getKey().equals(current.getKey())) {
+			_updateDailyCount(previous, -1);
+			_updateDailyCount(current, 1);
+		}
+		return updatedOpd;
 	}
 	
 	/**
@@ -151,7 +262,10 @@ public class OpdIoOperations {
 	 * @throws OHServiceException 
 	 */
 	public boolean deleteOpd(Opd opd) throws OHServiceException {
+		OpdCount previous = GeneralData.OPDROLLUP ? _getDailyCount(repository.findStoredVisit(opd.getCode())) : null;
+		
 		repository.delete(opd);
+		_updateDailyCount(previous, -1);
 		return true;
 	}
 	
@@ -209,6 +323,76 @@ public class OpdIoOperations {
 		return !opds.isEmpty();
 	}
 
+	/**
+	 * @param visit - the stored visit, as read by {@link OpdIoOperationRepositoryCustom#findStoredVisit}
+	 * @return the daily count the visit is counted in, <code>null</code> if not counted
+	 */
+	private OpdCount _getDailyCount(OpdCount visit) {
+		if (visit != null) {
+			visit.setDate(new DateTime(visit.getDate()).withTimeAtStartOfDay().toDate());
+		}
+		return visit;
+	}
+
+	/**
+	 * @return the daily count the {@link Opd} is counted in, <code>null</code> if not counted
+	 */
+	private OpdCount _getDailyCount(Opd opd) {
+		if (opd == null || opd.getDisease() == null || opd.getVisitDate() == null) {
+			return null;
+		}
+		OpdCount count = new OpdCount();
+		count.setDate(new DateTime(opd.getVisitDate()).withTimeAtStartOfDay().toDate());
+		count.setDiseaseCode(opd.getDisease().getCode());
+		count.setAge(opd.getAge());
+		count.setSex(opd.getSex());
+		count.setNewPatient(opd.getNewPatient());
+		return count;
+	}
+	
+	private void _updateDailyCount(OpdCount count, int quantity) {
+		if (count == null) {
+			return;
+		}
+		dailyCountRepository.updateCount(
+				count.getDate(), count.getDiseaseCode(), String.valueOf(count.getSex()), 
+				String.valueOf(count.getNewPatient()), count.getAge(), quantity);
+		if (quantity < 0) {
+			dailyCountRepository.deleteEmpty(
+					count.getDate(), count.getDiseaseCode(), String.valueOf(count.getSex()), 
+					String.valueOf(count.getNewPatient()), count.getAge());
+		}
+	}
+	
+	/**
+	 * Merges the counts of the single ages into the counts of their age types
+	 */
+	private List<OpdCount> _groupByAgeType(List<OpdCount> counts, List<AgeType> ageTypes) {
+		if (ageTypes == null) {
+			return counts;
+		}
+		Map<List<Object>, OpdCount> ageTypeCounts = new LinkedHashMap<List<Object>, OpdCount>();
+		
+		for (OpdCount count : counts) {
+			if (count.getAge() != null) {
+				for (AgeType ageType : ageTypes) {
+					if (count.getAge() >= ageType.getFrom() && count.getAge() <= ageType.getTo()) {
+						count.setAgeTypeCode(ageType.getCode());
+						break;
+					}
+				}
+				count.setAge(null);
+			}
+			OpdCount ageTypeCount = ageTypeCounts.get(count.getKey());
+			if (ageTypeCount == null) {
+				ageTypeCounts.put(count.getKey(), count);
+			} else {
+				ageTypeCount.setCount(ageTypeCount.getCount() + count.getCount());
+			}
+		}
+		return new ArrayList<OpdCount>(ageTypeCounts.values());
+	}
+
 	private GregorianCalendar getBeginningOfYear(int year) {
 		return new DateTime().withYear(year).dayOfYear().withMinimumValue().withTimeAtStartOfDay().toGregorianCalendar();
 	}
@@ -22,11 +22,14 @@
 package org.isf.patient.service;
 
 import org.isf.patient.model.Patient;
+import org.springframework.data.domain.Pageable;
 
 import java.util.List;
 
 public interface PatientIoOperationRepositoryCustom {
 
 	List<Patient> findByFieldsContainingWordsFromLiteral(String regex);
+
+	List<Patient> findByFieldsContainingWordsFromLiteral(String regex, Pageable pageable);
 	
 }
@@ -22,7 +22,10 @@
 package org.isf.patient.service;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
@@ -32,23 +35,83 @@ import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
 import org.isf.patient.model.Patient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
 import org.springframework.transaction.annotation.Transactional;
 
 @Transactional
 public class PatientIoOperationRepositoryImpl implements PatientIoOperationRepositoryCustom {
 	
+	private static final int MAX_CODES_PER_QUERY = 1000;
+
 	@PersistenceContext
 	private EntityManager entityManager;
 
+	@Autowired
+	private PatientSearchIndex searchIndex;
+
 	
 	@SuppressWarnings("unchecked")	
 	@Override
 	public List<Patient> findByFieldsContainingWordsFromLiteral(String literal) {
+		if (PatientSearchIndex.tokenize(literal).length > 0) {
+			return findIndexedPatients(literal, 0, Integer.MAX_VALUE);
+		}
 		return this.entityManager.
 				createQuery(buildSearchQuery(literal)).
 					getResultList();
 	}	
 
+	@Override
+	public List<Patient> findByFieldsContainingWordsFromLiteral(String literal, Pageable pageable) {
+		if (PatientSearchIndex.tokenize(literal).length > 0) {
+			return findIndexedPatients(literal, pageable.getOffset(), pageable.getPageSize());
+		}
+		return this.entityManager.
+				createQuery(buildSearchQuery(literal)).
+					setFirstResult(pageable.getOffset()).
+					setMaxResults(pageable.getPageSize()).
+					getResultList();
+	}
+
+	private List<Patient> findIndexedPatients(String literal, int offset, int limit) {
+		List<Integer> codes;
+		List<Patient> patients;
+		// patients deleted in the meanwhile are dropped from the index and the page is read again
+		do {
+			codes = searchIndex.search(literal, offset, limit);
+			patients = findPatientsByCodesInGivenOrder(codes);
+		} while (patients.size() < codes.size());
+		return patients;
+	}
+
+	private List<Patient> findPatientsByCodesInGivenOrder(List<Integer> codes) {
+		if (codes.isEmpty()) {
+			return Collections.emptyList();
+		}
+		Map<Integer, Patient> patientsByCode = new HashMap<Integer, Patient>();
+		for (int first = 0; first < codes.size(); first += MAX_CODES_PER_QUERY) {
+			for (Patient patient : this.entityManager.
+					createQuery("select p from Patient p where p.code in :codes and (p.deleted = 'N' or p.deleted is null)", Patient.class).
+						setParameter("codes", codes.subList(first, Math.min(codes.size(), first + MAX_CODES_PER_QUERY))).
+						getResultList()) {
+				patientsByCode.put(patient.getCode(), patient);
+			}
+		}
+		List<Patient> patients = new ArrayList<Patient>(patientsByCode.size());
+		List<Integer> deletedCodes = new ArrayList<Integer>();
+		for (Integer code : codes) {
+			Patient patient = patientsByCode.get(code);
+			if (patient != null) {
+				patients.add(patient);
+			} else {
+				deletedCodes.add(code);
+			}
+		}
+		searchIndex.remove(deletedCodes);
+		return patients;
+	}
+
 	
 	private CriteriaQuery<Patient> buildSearchQuery(String regex) {
 		String[] words = getWordsToSearchForInPatientsRepository(regex);
@@ -62,6 +62,8 @@ public class PatientIoOperations
 	private PatientIoOperationRepository repository;
 	@Autowired
 	private ApplicationEventPublisher applicationEventPublisher;
+	@Autowired
+	private PatientSearchIndex searchIndex;
 
 	/**
 	 * method that returns the full list of Patients not logically deleted
@@ -94,6 +96,19 @@ public class PatientIoOperations
 		return new ArrayList<Patient>(repository.findByFieldsContainingWordsFromLiteral(regex));
 	}	
 
+	/**
+	 * method that returns a page of the Patients not logically deleted matching all the words of the regex,
+	 * best matches first (exact words, then word beginnings, then word parts)
+	 * 
+	 * @param regex
+	 * @param pageable
+	 * @return the requested page of matching Patients
+	 * @throws OHServiceException
+	 */
+	public ArrayList<Patient> getPatientsByOneOfFieldsLike(String regex, Pageable pageable) throws OHServiceException {
+		return new ArrayList<Patient>(repository.findByFieldsContainingWordsFromLiteral(regex, pageable));
+	}
+
 	/**
 	 * method that get a Patient by his/her name
 	 * 
@@ -150,7 +165,9 @@ public class PatientIoOperations
 	 * @return saved / updated patient
 	 */
 	public Patient savePatient(Patient patient) {
-		return repository.save(patient);
+		Patient savedPatient = repository.save(patient);
+		searchIndex.indexAfterCommit(savedPatient);
+		return savedPatient;
 	}
 
 	/**
@@ -162,7 +179,7 @@ public class PatientIoOperations
 	 * @throws OHServiceException
 	 */
 	public boolean updatePatient(Patient patient) throws OHServiceException {
-		repository.save(patient);
+		searchIndex.indexAfterCommit(repository.save(patient));
 		return true;
 	}
 
@@ -174,7 +191,11 @@ public class PatientIoOperations
 	 * @throws OHServiceException
 	 */
 	public boolean deletePatient(Patient patient) throws OHServiceException {
-		return repository.updateDeleted(patient.getCode()) > 0;
+		boolean deleted = repository.updateDeleted(patient.getCode()) > 0;
+		if (deleted) {
+			searchIndex.removeAfterCommit(patient.getCode());
+		}
+		return deleted;
 	}
 
 	/**
@@ -210,6 +231,7 @@ public class PatientIoOperations
 	@Transactional
 	public boolean mergePatientHistory(Patient mergedPatient, Patient obsoletePatient) throws OHServiceException {
 		repository.updateDeleted(obsoletePatient.getCode());
+		searchIndex.removeAfterCommit(obsoletePatient.getCode());
 		applicationEventPublisher.publishEvent(new PatientMergedEvent(obsoletePatient, mergedPatient));
 		
 		return true;
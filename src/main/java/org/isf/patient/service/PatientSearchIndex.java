@@ -0,0 +1,541 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.patient.service;
+
+import java.text.Normalizer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.isf.patient.model.Patient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * In-memory inverted index over the searchable fields of the patients
+ * (code, first name, second name, note and tax code).
+ * <p>
+ * Every field is lower-cased, stripped of its accents and split into tokens of letters and digits
+ * (of any alphabet); each token keeps the sorted list of the patients using it, so that a search word
+ * matches a token exactly or as a prefix with a range lookup. To match a word anywhere inside a token,
+ * as the <code>LIKE</code> search did, each pair of consecutive characters keeps the ids of the tokens
+ * containing it: the tokens having all the pairs of the word are then checked.
+ * A patient must match all the words of the query.
+ * <p>
+ * The index is built in the background at startup (a search coming earlier waits for it)
+ * and then kept in sync by {@link PatientIoOperations} after each commit; since more clients
+ * may share the same database, the searches also pick up the patients inserted or modified
+ * elsewhere, at most every <code>patient.search.refreshInterval</code> milliseconds
+ * (<code>database.properties</code>) and without waiting for a refresh already running.
+ */
+@Component
+public class PatientSearchIndex implements ApplicationListener<ContextRefreshedEvent> {
+
+	private final Logger logger = LoggerFactory.getLogger(PatientSearchIndex.class);
+
+	private static final int EXACT_SCORE = 3;
+	private static final int PREFIX_SCORE = 2;
+	private static final int INFIX_SCORE = 1;
+
+	private static final int BUILD_BATCH_SIZE = 5000;
+
+	/** the length of the n-grams of the tokens */
+	private static final int GRAM = 2;
+
+	/** overlap on the last modified dates, to tolerate clocks of other clients not perfectly aligned */
+	private static final long CLOCK_SKEW_MILLIS = 60000;
+
+	private static final String[] NO_TOKENS = new String[0];
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Value("${patient.search.refreshInterval:5000}")
+	private long refreshIntervalMillis;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final ReentrantLock refreshLock = new ReentrantLock();
+
+	private final TreeMap<String, Postings> postings = new TreeMap<String, Postings>();
+
+	/** the ids of the tokens containing each n-gram */
+	private final Map<String, Postings> grams = new HashMap<String, Postings>();
+
+	/** the tokens by id, <code>null</code> for the ids free to be reused */
+	private String[] tokensById = new String[1024];
+
+	private int tokenCount;
+
+	private final Deque<Integer> freeTokenIds = new ArrayDeque<Integer>();
+
+	private final Map<Integer, String[]> tokensByPatient = new HashMap<Integer, String[]>();
+
+	private volatile boolean built;
+
+	private boolean building;
+
+	private volatile int maxCode;
+
+	private Date lastRefresh;
+
+	private volatile long lastRefreshMillis;
+
+	/**
+	 * Builds the index in the background when the application starts.
+	 */
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		synchronized (this) {
+			if (built || building) {
+				return;
+			}
+			building = true;
+		}
+		Thread builder = new Thread(() -> {
+			try {
+				refresh();
+			} catch (RuntimeException e) {
+				// built at the first search instead
+				logger.warn("Patient search index not built at startup: {}", e.getMessage());
+			}
+		}, "patient-search-index");
+		builder.setDaemon(true);
+		builder.start();
+	}
+
+	/**
+	 * Returns the codes of the patients matching all the words of the literal,
+	 * best matches first and, with the same score, most recent patients first.
+	 *
+	 * @param literal - the words to search for
+	 * @param offset - the number of matches to skip
+	 * @param limit - the maximum number of codes to return
+	 * @return the codes of the matching patients
+	 */
+	public List<Integer> search(String literal, int offset, int limit) {
+		String[] words = tokenize(literal);
+		if (words.length == 0) {
+			return Collections.emptyList();
+		}
+		refresh();
+		Map<Integer, Integer> scores = null;
+		lock.readLock().lock();
+		try {
+			for (String word : words) {
+				Map<Integer, Integer> wordScores = _match(word);
+				scores = scores == null ? wordScores : _intersect(scores, wordScores);
+				if (scores.isEmpty()) {
+					return Collections.emptyList();
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		List<Map.Entry<Integer, Integer>> ranking = new ArrayList<Map.Entry<Integer, Integer>>(scores.entrySet());
+		Collections.sort(ranking, (a, b) -> {
+			int byScore = b.getValue().compareTo(a.getValue());
+			return byScore != 0 ? byScore : b.getKey().compareTo(a.getKey());
+		});
+		List<Integer> codes = new ArrayList<Integer>();
+		for (int i = offset; i < ranking.size() && codes.size() < limit; i++) {
+			codes.add(ranking.get(i).getKey());
+		}
+		return codes;
+	}
+
+	/**
+	 * (Re)indexes the patient once the current transaction, if any, has been committed.
+	 *
+	 * @param patient - the saved {@link Patient}
+	 */
+	public void indexAfterCommit(Patient patient) {
+		final int code = patient.getCode();
+		final String[] tokens = _tokens(code, patient.getFirstName(), patient.getSecondName(), patient.getNote(), patient.getTaxCode());
+		_afterCommit(() -> {
+			lock.writeLock().lock();
+			try {
+				_put(code, tokens);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		});
+	}
+
+	/**
+	 * Removes the patient from the index once the current transaction, if any, has been committed.
+	 *
+	 * @param code - the code of the deleted {@link Patient}
+	 */
+	public void removeAfterCommit(final Integer code) {
+		_afterCommit(() -> {
+			lock.writeLock().lock();
+			try {
+				_remove(code);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		});
+	}
+
+	/**
+	 * Removes the patients found deleted (also by other clients) while loading a search result.
+	 *
+	 * @param codes - the codes of the deleted patients
+	 */
+	public void remove(List<Integer> codes) {
+		lock.writeLock().lock();
+		try {
+			for (Integer code : codes) {
+				_remove(code);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Builds the index, if not built at startup, and then loads the patients
+	 * inserted or modified (also by other clients) since the previous refresh.
+	 * Once built, the index is refreshed at most every {@link #refreshIntervalMillis}
+	 * and only by one thread at a time, while the others go on searching it as it is.
+	 */
+	void refresh() {
+		if (built) {
+			if (System.currentTimeMillis() - lastRefreshMillis < refreshIntervalMillis || !refreshLock.tryLock()) {
+				return;
+			}
+		} else {
+			refreshLock.lock();
+		}
+		try {
+			Date now = new Date();
+			if (!built) {
+				_build();
+			} else {
+				_apply(_loadChanges(maxCode, new Date(lastRefresh.getTime() - CLOCK_SKEW_MILLIS)));
+			}
+			lastRefresh = now;
+			lastRefreshMillis = now.getTime();
+		} finally {
+			refreshLock.unlock();
+		}
+	}
+
+	/**
+	 * Splits a text into lower-cased and distinct tokens of letters and digits, without accents.
+	 *
+	 * @param text - the text to split
+	 * @return the tokens
+	 */
+	public static String[] tokenize(String text) {
+		if (text == null) {
+			return NO_TOKENS;
+		}
+		Set<String> tokens = new LinkedHashSet<String>();
+		String normalized = Normalizer.normalize(text.toLowerCase(), Normalizer.Form.NFD).replaceAll("\\p{M}+", "");
+		for (String token : normalized.split("[^\\p{L}\\p{N}]+")) {
+			if (!token.isEmpty()) {
+				tokens.add(token);
+			}
+		}
+		return tokens.toArray(new String[tokens.size()]);
+	}
+
+	private void _build() {
+		int lastCode = 0;
+		List<Object[]> rows;
+		do {
+			rows = entityManager.createQuery(
+					"select p.code, p.firstName, p.secondName, p.note, p.taxCode, p.deleted from Patient p " +
+					"where p.code > :code order by p.code", Object[].class)
+					.setParameter("code", lastCode)
+					.setMaxResults(BUILD_BATCH_SIZE)
+					.getResultList();
+			_apply(rows);
+			if (!rows.isEmpty()) {
+				lastCode = (Integer) rows.get(rows.size() - 1)[0];
+			}
+		} while (rows.size() == BUILD_BATCH_SIZE);
+		synchronized (this) {
+			built = true;
+			building = false;
+		}
+	}
+
+	private List<Object[]> _loadChanges(int fromCode, Date since) {
+		return entityManager.createQuery(
+				"select p.code, p.firstName, p.secondName, p.note, p.taxCode, p.deleted from Patient p " +
+				"where p.code > :code or p.lastModifiedDate > :since", Object[].class)
+				.setParameter("code", fromCode)
+				.setParameter("since", since)
+				.getResultList();
+	}
+
+	private void _apply(List<Object[]> rows) {
+		if (rows.isEmpty()) {
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			for (Object[] row : rows) {
+				int code = (Integer) row[0];
+				maxCode = Math.max(maxCode, code);
+				if ("Y".equals(row[5])) {
+					_remove(code);
+				} else {
+					_put(code, _tokens(code, (String) row[1], (String) row[2], (String) row[3], (String) row[4]));
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private String[] _tokens(int code, String... fields) {
+		Set<String> tokens = new LinkedHashSet<String>();
+		tokens.add(String.valueOf(code));
+		for (String field : fields) {
+			tokens.addAll(Arrays.asList(tokenize(field)));
+		}
+		return tokens.toArray(new String[tokens.size()]);
+	}
+
+	private void _put(int code, String[] tokens) {
+		_remove(code);
+		for (String token : tokens) {
+			Postings tokenPostings = postings.get(token);
+			if (tokenPostings == null) {
+				tokenPostings = new Postings(_addToken(token));
+				postings.put(token, tokenPostings);
+			}
+			tokenPostings.add(code);
+		}
+		tokensByPatient.put(code, tokens);
+		maxCode = Math.max(maxCode, code);
+	}
+
+	private void _remove(int code) {
+		String[] tokens = tokensByPatient.remove(code);
+		if (tokens == null) {
+			return;
+		}
+		for (String token : tokens) {
+			Postings tokenPostings = postings.get(token);
+			if (tokenPostings != null && tokenPostings.remove(code)) {
+				postings.remove(token);
+				_removeToken(token, tokenPostings.tokenId);
+			}
+		}
+	}
+
+	/**
+	 * @return the id given to the token, also recorded under each of its n-grams
+	 */
+	private int _addToken(String token) {
+		int tokenId;
+		if (freeTokenIds.isEmpty()) {
+			if (tokenCount == tokensById.length) {
+				tokensById = Arrays.copyOf(tokensById, tokenCount * 2);
+			}
+			tokenId = tokenCount++;
+		} else {
+			tokenId = freeTokenIds.pop();
+		}
+		tokensById[tokenId] = token;
+		for (int i = 0; i + GRAM <= token.length(); i++) {
+			grams.computeIfAbsent(token.substring(i, i + GRAM), gram -> new Postings(-1)).add(tokenId);
+		}
+		return tokenId;
+	}
+
+	private void _removeToken(String token, int tokenId) {
+		for (int i = 0; i + GRAM <= token.length(); i++) {
+			String gram = token.substring(i, i + GRAM);
+			Postings gramPostings = grams.get(gram);
+			if (gramPostings != null && gramPostings.remove(tokenId)) {
+				grams.remove(gram);
+			}
+		}
+		tokensById[tokenId] = null;
+		freeTokenIds.push(tokenId);
+	}
+
+	private Map<Integer, Integer> _match(String word) {
+		Map<Integer, Integer> scores = new HashMap<Integer, Integer>();
+		for (Map.Entry<String, Postings> entry : postings.tailMap(word, true).entrySet()) {
+			if (!entry.getKey().startsWith(word)) {
+				break;
+			}
+			entry.getValue().score(scores, entry.getKey().length() == word.length() ? EXACT_SCORE : PREFIX_SCORE);
+		}
+		for (String token : _tokensContaining(word)) {
+			if (token.indexOf(word, 1) > 0) {
+				postings.get(token).score(scores, INFIX_SCORE);
+			}
+		}
+		return scores;
+	}
+
+	/**
+	 * @return the tokens having all the n-grams of the word, or all the tokens for a word shorter than an n-gram
+	 */
+	private List<String> _tokensContaining(String word) {
+		List<String> tokens = new ArrayList<String>();
+		if (word.length() < GRAM) {
+			for (int tokenId = 0; tokenId < tokenCount; tokenId++) {
+				if (tokensById[tokenId] != null) {
+					tokens.add(tokensById[tokenId]);
+				}
+			}
+			return tokens;
+		}
+		List<Postings> wordGrams = new ArrayList<Postings>();
+		for (int i = 0; i + GRAM <= word.length(); i++) {
+			Postings gramPostings = grams.get(word.substring(i, i + GRAM));
+			if (gramPostings == null) {
+				return tokens;
+			}
+			wordGrams.add(gramPostings);
+		}
+		Collections.sort(wordGrams, (a, b) -> Integer.compare(a.size, b.size));
+		Postings rarest = wordGrams.get(0);
+		candidates:
+		for (int i = 0; i < rarest.size; i++) {
+			int tokenId = rarest.codes[i];
+			for (int j = 1; j < wordGrams.size(); j++) {
+				if (!wordGrams.get(j).contains(tokenId)) {
+					continue candidates;
+				}
+			}
+			tokens.add(tokensById[tokenId]);
+		}
+		return tokens;
+	}
+
+	private Map<Integer, Integer> _intersect(Map<Integer, Integer> first, Map<Integer, Integer> second) {
+		Map<Integer, Integer> smaller = first.size() <= second.size() ? first : second;
+		Map<Integer, Integer> larger = smaller == first ? second : first;
+		Map<Integer, Integer> intersection = new HashMap<Integer, Integer>();
+		for (Map.Entry<Integer, Integer> entry : smaller.entrySet()) {
+			Integer score = larger.get(entry.getKey());
+			if (score != null) {
+				intersection.put(entry.getKey(), entry.getValue() + score);
+			}
+		}
+		return intersection;
+	}
+
+	private void _afterCommit(final Runnable action) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					action.run();
+				}
+			});
+		} else {
+			action.run();
+		}
+	}
+
+	/**
+	 * Sorted codes of the patients using a token, or ids of the tokens containing an n-gram.
+	 */
+	private static final class Postings {
+
+		/** the id of the token, <code>-1</code> for an n-gram */
+		private final int tokenId;
+
+		private int[] codes = new int[2];
+
+		private int size;
+
+		Postings(int tokenId) {
+			this.tokenId = tokenId;
+		}
+
+		boolean contains(int code) {
+			return Arrays.binarySearch(codes, 0, size, code) >= 0;
+		}
+
+		void add(int code) {
+			if (size > 0 && codes[size - 1] >= code) {
+				int position = Arrays.binarySearch(codes, 0, size, code);
+				if (position >= 0) {
+					return;
+				}
+				_insert(-position - 1, code);
+			} else {
+				_insert(size, code);
+			}
+		}
+
+		/**
+		 * @return <code>true</code> if no codes are left
+		 */
+		boolean remove(int code) {
+			int position = Arrays.binarySearch(codes, 0, size, code);
+			if (position >= 0) {
+				System.arraycopy(codes, position + 1, codes, position, size - position - 1);
+				size--;
+			}
+			return size == 0;
+		}
+
+		void score(Map<Integer, Integer> scores, int score) {
+			for (int i = 0; i < size; i++) {
+				scores.merge(codes[i], score, Math::max);
+			}
+		}
+
+		private void _insert(int position, int code) {
+			if (size == codes.length) {
+				codes = Arrays.copyOf(codes, size * 2);
+			}
+			System.arraycopy(codes, position, codes, position + 1, size - position);
+			codes[position] = code;
+			size++;
+		}
+	}
+}
@@ -36,6 +36,7 @@ import java.util.List;
 import org.isf.generaldata.MessageBundle;
 import org.isf.patvac.model.PatientVaccine;
 import org.isf.patvac.service.PatVacIoOperations;
+import org.isf.sequence.manager.SequenceManager;
 import org.isf.utils.exception.OHServiceException;
 import org.isf.utils.exception.OHDataValidationException;
 import org.isf.utils.exception.model.OHExceptionMessage;
@@ -49,6 +50,9 @@ public class PatVacManager {
 
 	@Autowired
 	private PatVacIoOperations ioOperations;
+
+	@Autowired
+	private SequenceManager sequenceManager;
 	
 	/**
 	 * returns all {@link PatientVaccine}s of today or one week ago
@@ -82,7 +86,8 @@ public class PatVacManager {
 	}
 
 	/**
-	 * inserts a {@link PatientVaccine} in the DB
+	 * inserts a {@link PatientVaccine} in the DB, with a new progressive number in the year of its vaccine date
+	 * if it has none (<code>0</code>)
 	 * 
 	 * @param patVac - the {@link PatientVaccine} to insert
 	 * @return <code>true</code> if the item has been inserted, <code>false</code> otherwise 
@@ -90,6 +95,9 @@ public class PatVacManager {
 	 */
 	public boolean newPatientVaccine(PatientVaccine patVac) throws OHServiceException {
         validatePatientVaccine(patVac);
+        if (patVac.getProgr() == 0) {
+            patVac.setProgr(getNextProgYear(patVac.getVaccineDate().get(GregorianCalendar.YEAR)));
+        }
         return ioOperations.newPatientVaccine(patVac);
 	}
 
@@ -122,11 +130,26 @@ public class PatVacManager {
 	 * @param year
 	 * @return <code>int</code> - the progressive number in the year
 	 * @throws OHServiceException 
+	 * @deprecated the number after it can be taken by another client before the {@link PatientVaccine} is saved:
+	 * leave the progressive number <code>0</code> and {@link #newPatientVaccine(PatientVaccine)} assigns it.
 	 */
+	@Deprecated
 	public int getProgYear(int year) throws OHServiceException {
         return ioOperations.getProgYear(year);
 	}
 
+	/**
+	 * Returns a new progressive number within specified year or, if <code>0</code>, a number never restarting,
+	 * following the max stored and never returned before.
+	 * 
+	 * @param year
+	 * @return <code>int</code> - the new progressive number in the year
+	 * @throws OHServiceException 
+	 */
+	public int getNextProgYear(int year) throws OHServiceException {
+        return sequenceManager.next(SequenceManager.PATIENT_VACCINE, SequenceManager.NO_WARD, year, () -> ioOperations.getProgYear(year));
+	}
+
 	/**
 	 * Verify if the object is valid for CRUD and return a list of errors, if any
 	 * @param patientVaccine
@@ -27,6 +27,8 @@ import org.isf.pregtreattype.model.PregnantTreatmentType;
 import org.isf.utils.db.TranslateOHServiceException;
 import org.isf.utils.exception.OHServiceException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -45,6 +47,7 @@ public class PregnantTreatmentTypeIoOperation {
 	 * @return the list of {@link PregnantTreatmentType}s
 	 * @throws OHServiceException 
 	 */
+	@Cacheable("pregnantTreatmentTypes")
 	public ArrayList<PregnantTreatmentType> getPregnantTreatmentType() throws OHServiceException 
 	{
 		return new ArrayList<PregnantTreatmentType>(repository.findAllByOrderByDescriptionAsc()); 
@@ -57,6 +60,7 @@ public class PregnantTreatmentTypeIoOperation {
 	 * @return <code>true</code> if the item has been inserted, <code>false</code> otherwise
 	 * @throws OHServiceException 
 	 */
+	@CacheEvict(cacheNames = "pregnantTreatmentTypes", allEntries = true)
 	public boolean newPregnantTreatmentType(
 			PregnantTreatmentType pregnantTreatmentType) throws OHServiceException 
 	{
@@ -76,6 +80,7 @@ public class PregnantTreatmentTypeIoOperation {
 	 * @return <code>true</code> if the item has been updated, <code>false</code> otherwise
 	 * @throws OHServiceException 
 	 */
+	@CacheEvict(cacheNames = "pregnantTreatmentTypes", allEntries = true)
 	public boolean updatePregnantTreatmentType(
 			PregnantTreatmentType pregnantTreatmentType) throws OHServiceException 
 	{
@@ -95,6 +100,7 @@ public class PregnantTreatmentTypeIoOperation {
 	 * @return <code>true</code> if the item has been deleted, <code>false</code> otherwise
 	 * @throws OHServiceException 
 	 */
+	@CacheEvict(cacheNames = "pregnantTreatmentTypes", allEntries = true)
 	public boolean deletePregnantTreatmentType(
 			PregnantTreatmentType pregnantTreatmentType) throws OHServiceException 
 	{
@@ -62,6 +62,28 @@ public class PriceListManager {
         return ioOperations.getPrices();
 	}
 
+	/**
+	 * return the list of {@link Price}s of a {@link List}
+	 * @param list - the {@link List}
+	 * @return the list of {@link Price}s
+	 * @throws OHServiceException
+	 */
+	public ArrayList<Price> getPrices(PriceList list) throws OHServiceException {
+        return ioOperations.getPrices(list);
+	}
+
+	/**
+	 * return the {@link Price} of an item in a {@link List}
+	 * @param list - the {@link List}
+	 * @param group - the group of the item
+	 * @param item - the code of the item in its group
+	 * @return the {@link Price}, or <code>null</code> if the item has no price in the {@link List}
+	 * @throws OHServiceException
+	 */
+	public Price getPrice(PriceList list, String group, String item) throws OHServiceException {
+        return ioOperations.getPrice(list, group, item);
+	}
+
 	/**
 	 * updates all {@link Price}s in the specified {@link List}
 	 * @param list - the {@link List}
@@ -35,7 +35,14 @@ import org.springframework.transaction.annotation.Transactional;
 public interface PriceIoOperationRepository extends JpaRepository<Price, Integer> {
     List<Price> findAllByOrderByDescriptionAsc();
 	
-    List<Price> findByList_id(Integer id);
+    @Query("select p from Price p join fetch p.list where p.list.id = :id")
+    List<Price> findByList_id(@Param("id") Integer id);
+
+    List<Price> findByList_idAndGroupAndItem(Integer id, String group, String item);
+
+    @Modifying
+    @Query("delete from Price p where p.id in (:ids)")
+	void deleteByIdIn(@Param("ids") List<Integer> ids);
 
     @Modifying
     @Transactional
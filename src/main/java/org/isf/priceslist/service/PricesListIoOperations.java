@@ -22,13 +22,19 @@
 package org.isf.priceslist.service;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 import org.isf.priceslist.model.Price;
 import org.isf.priceslist.model.PriceList;
 import org.isf.utils.db.TranslateOHServiceException;
 import org.isf.utils.exception.OHServiceException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -49,6 +55,7 @@ public class PricesListIoOperations {
 	 * @return the list of {@link List}s
 	 * @throws OHServiceException 
 	 */
+	@Cacheable("priceLists")
 	public ArrayList<PriceList> getLists() throws OHServiceException {
 		ArrayList<PriceList> pList = null;
 			
@@ -64,6 +71,7 @@ public class PricesListIoOperations {
 	 * @return the list of {@link Price}s
 	 * @throws OHServiceException 
 	 */
+	@Cacheable("prices")
 	public ArrayList<Price> getPrices() throws OHServiceException {
 		ArrayList<Price> pPrice = null;
 						
@@ -73,23 +81,80 @@ public class PricesListIoOperations {
 		return pPrice;
 	}
 
+	/**
+	 * return the {@link Price}s of a {@link List}
+	 * 
+	 * @param list - the {@link List}
+	 * @return the list of {@link Price}s
+	 * @throws OHServiceException 
+	 */
+	public ArrayList<Price> getPrices(PriceList list) throws OHServiceException {
+		return new ArrayList<Price>(priceRepository.findByList_id(list.getId()));
+	}
+
+	/**
+	 * return the {@link Price} of an item in a {@link List}
+	 * 
+	 * @param list - the {@link List}
+	 * @param group - the group of the item (e.g. "EXA", "OPE", "MED", "OTH")
+	 * @param item - the code of the item in its group
+	 * @return the {@link Price}, or <code>null</code> if the item has no price in the {@link List}
+	 * @throws OHServiceException 
+	 */
+	public Price getPrice(PriceList list, String group, String item) throws OHServiceException {
+		List<Price> prices = priceRepository.findByList_idAndGroupAndItem(list.getId(), group, item);
+		return prices.isEmpty() ? null : prices.get(0);
+	}
+
 	/**
 	 * updates all {@link Price}s in the specified {@link List}
+	 * <p>
+	 * The new prices are merged with the stored ones by group and item:
+	 * only the prices whose value or description changed are updated (in JDBC batches),
+	 * the missing ones are deleted with a single statement and the new ones are inserted.
 	 * 
 	 * @param list - the {@link List}
 	 * @param prices - the list of {@link Price}s
 	 * @return <code>true</code> if the list has been replaced, <code>false</code> otherwise
 	 * @throws OHServiceException 
 	 */
+	@CacheEvict(cacheNames = {"priceLists", "prices"}, allEntries = true)
 	public boolean updatePrices(PriceList list,	ArrayList<Price> prices) throws OHServiceException {
-		boolean result = true;
-
-
-		result = _deletePricesInsideList(list.getId());
+		Map<List<String>, Price> storedPrices = new HashMap<List<String>, Price>();
+		List<Integer> duplicatedIds = new ArrayList<Integer>();
+		for (Price stored : priceRepository.findByList_id(list.getId())) {
+			Price duplicated = storedPrices.put(_getKey(stored), stored);
+			if (duplicated != null) {
+				duplicatedIds.add(duplicated.getId());
+			}
+		}
 		
-		result &= _insertNewPricesInsideList(list, prices);
-
-		return result;
+		List<Price> newPrices = new ArrayList<Price>();
+		for (Price price : prices) {
+			Price stored = storedPrices.remove(_getKey(price));
+			if (stored == null) {
+				newPrices.add(price);
+			} else if (!Objects.equals(stored.getPrice(), price.getPrice()) 
+					|| !Objects.equals(stored.getDesc(), price.getDesc())) {
+				// managed: written at flush, batched with the other updates
+				stored.setPrice(price.getPrice());
+				stored.setDesc(price.getDesc());
+			}
+		}
+		
+		List<Integer> removedIds = new ArrayList<Integer>(duplicatedIds);
+		for (Price removed : storedPrices.values()) {
+			removedIds.add(removed.getId());
+		}
+		if (!removedIds.isEmpty()) {
+			priceRepository.deleteByIdIn(removedIds);
+		}
+		
+		return _insertNewPricesInsideList(list, newPrices);
+	}
+	
+	private static List<String> _getKey(Price price) {
+		return Arrays.asList(price.getGroup(), price.getItem());
 	}
 	
 	private boolean _deletePricesInsideList(
@@ -100,7 +165,7 @@ public class PricesListIoOperations {
         return true;
     }
 	
-	private boolean _insertNewPricesInsideList(PriceList list, ArrayList<Price> prices) throws OHServiceException {
+	private boolean _insertNewPricesInsideList(PriceList list, List<Price> prices) throws OHServiceException {
 		for (Price price : prices) {
 			price.setList(list);
 			priceRepository.save(price);
@@ -116,6 +181,7 @@ public class PricesListIoOperations {
 	 * @return <code>true</code> if the list has been inserted, <code>false</code> otherwise
 	 * @throws OHServiceException 
 	 */
+	@CacheEvict(cacheNames = {"priceLists", "prices"}, allEntries = true)
 	public boolean newList(PriceList list) throws OHServiceException {
 		return repository.save(list) != null;
 	}
@@ -127,6 +193,7 @@ public class PricesListIoOperations {
 	 * @return <code>true</code> if the list has been updated, <code>false</code> otherwise
 	 * @throws OHServiceException 
 	 */
+	@CacheEvict(cacheNames = {"priceLists", "prices"}, allEntries = true)
 	public boolean updateList(PriceList list) throws OHServiceException {
 		return repository.save(list) != null;
 	}
@@ -138,6 +205,7 @@ public class PricesListIoOperations {
 	 * @return <code>true</code> if the list has been deleted, <code>false</code> otherwise
 	 * @throws OHServiceException 
 	 */
+	@CacheEvict(cacheNames = {"priceLists", "prices"}, allEntries = true)
 	public boolean deleteList(
 			PriceList list) throws OHServiceException {
 		boolean result = true;
@@ -170,6 +238,7 @@ public class PricesListIoOperations {
 	 * @return <code>true</code> if the list has been duplicated, <code>false</code> otherwise
 	 * @throws OHServiceException 
 	 */
+	@CacheEvict(cacheNames = {"priceLists", "prices"}, allEntries = true)
 	public boolean copyList(
 			PriceList list, 
 			double factor, 
@@ -0,0 +1,150 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.sequence.manager;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.isf.sequence.model.SequenceId;
+import org.isf.sequence.service.SequenceIoOperations;
+import org.isf.utils.exception.OHServiceException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hands out the progressive numbers of the OPD visits, of the admissions and of the vaccinations,
+ * counted by domain, ward and year.
+ * <p>
+ * Numbers are handed out from blocks reserved in memory, without locking;
+ * reserving a block updates the row of its sequence in a transaction of its own,
+ * so that neither other threads nor other clients sharing the database can get the same number.
+ * The size of the blocks is set by <code>sequence.block.size</code> in <code>database.properties</code>,
+ * by default <code>1</code>, so that the numbers follow the order of the records of all the clients.
+ * With larger blocks, for busy clients, numbers left in a block when the application stops are never used,
+ * and with more clients each one hands out the numbers of its own block.
+ * A sequence starts after the last number already stored, given by a {@link Seed}.
+ */
+@Component
+public class SequenceManager {
+
+	public static final String OPD = "OPD";
+	public static final String ADMISSION = "ADMISSION";
+	public static final String PATIENT_VACCINE = "PATIENT_VACCINE";
+
+	/** the ward of the sequences not counted by ward */
+	public static final String NO_WARD = "";
+
+	@Autowired
+	private SequenceIoOperations ioOperations;
+
+	@Value("${sequence.block.size:1}")
+	private int blockSize;
+
+	private final ConcurrentMap<SequenceId, Block> blocks = new ConcurrentHashMap<SequenceId, Block>();
+	private final ConcurrentMap<SequenceId, Object> locks = new ConcurrentHashMap<SequenceId, Object>();
+
+	/**
+	 * Returns a new progressive number, never returned before for the same domain, ward and year
+	 * 
+	 * @param domain - the domain of the numbers
+	 * @param ward - the ward code, or {@link #NO_WARD}
+	 * @param year - the year, <code>0</code> if the numbers never restart
+	 * @param seed - the {@link Seed} of the last number stored before the sequence existed
+	 * @return the progressive number
+	 * @throws OHServiceException
+	 */
+	public int next(String domain, String ward, int year, Seed seed) throws OHServiceException {
+		SequenceId id = new SequenceId(domain, ward, year);
+		while (true) {
+			Block current = blocks.get(id);
+			if (current != null) {
+				int number = current.next.getAndIncrement();
+				if (number <= current.last) {
+					return number;
+				}
+			}
+			synchronized (locks.computeIfAbsent(id, key -> new Object())) {
+				if (blocks.get(id) == current) {
+					blocks.put(id, _reserveBlock(id, seed));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number {@link #next} would return now, without taking it, to be shown before a record is saved;
+	 * another thread or client can take it meanwhile
+	 * 
+	 * @param domain - the domain of the numbers
+	 * @param ward - the ward code, or {@link #NO_WARD}
+	 * @param year - the year, <code>0</code> if the numbers never restart
+	 * @param seed - the {@link Seed} of the last number stored before the sequence existed
+	 * @return the progressive number
+	 * @throws OHServiceException
+	 */
+	public int peek(String domain, String ward, int year, Seed seed) throws OHServiceException {
+		SequenceId id = new SequenceId(domain, ward, year);
+		Block current = blocks.get(id);
+		if (current != null) {
+			int number = current.next.get();
+			if (number <= current.last) {
+				return number;
+			}
+		}
+		Integer last = ioOperations.getLast(id);
+		return (last == null ? seed.getLast() : last) + 1;
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	private Block _reserveBlock(SequenceId id, Seed seed) throws OHServiceException {
+		Integer last = ioOperations.reserve(id, blockSize);
+		if (last == null) {
+			last = ioOperations.reserve(id, seed.getLast(), blockSize);
+		}
+		return new Block(last - blockSize + 1, last);
+	}
+
+	/**
+	 * The last number of a domain already stored, from which its sequence starts
+	 */
+	@FunctionalInterface
+	public interface Seed {
+
+		int getLast() throws OHServiceException;
+	}
+
+	private static final class Block {
+
+		private final AtomicInteger next;
+		private final int last;
+
+		Block(int first, int last) {
+			this.next = new AtomicInteger(first);
+			this.last = last;
+		}
+	}
+}
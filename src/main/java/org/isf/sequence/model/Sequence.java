@@ -0,0 +1,61 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.sequence.model;
+
+import javax.persistence.Column;
+import javax.persistence.EmbeddedId;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+/**
+ * Last progressive number reserved for a domain (OPD visits, admissions, vaccinations...),
+ * a ward and a year: the numbers are handed out by {@link org.isf.sequence.manager.SequenceManager}.
+ */
+@Entity
+@Table(name="SEQUENCES")
+public class Sequence 
+{
+	@EmbeddedId
+	private SequenceId id;
+	
+	@Column(name="SEQ_LAST")
+	private int last;
+
+	public Sequence() {
+	}
+
+	public SequenceId getId() {
+		return id;
+	}
+
+	public void setId(SequenceId id) {
+		this.id = id;
+	}
+
+	public int getLast() {
+		return last;
+	}
+
+	public void setLast(int last) {
+		this.last = last;
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.sequence.model;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+import javax.validation.constraints.NotNull;
+
+@SuppressWarnings("serial")
+@Embeddable
+public class SequenceId implements Serializable 
+{
+	@NotNull
+	@Column(name="SEQ_DOMAIN", length=20)
+	private String domain;
+	
+	@NotNull
+	@Column(name="SEQ_WRD_ID_A", length=1)
+	private String ward;
+	
+	@NotNull
+	@Column(name="SEQ_YEAR")
+	private int year;
+
+	public SequenceId() {
+	}
+
+	/**
+	 * @param domain - the domain of the numbers
+	 * @param ward - the ward code, empty if the numbers are not counted by ward
+	 * @param year - the year, <code>0</code> if the numbers never restart
+	 */
+	public SequenceId(String domain, String ward, int year) {
+		this.domain = domain;
+		this.ward = ward;
+		this.year = year;
+	}
+
+	public String getDomain() {
+		return domain;
+	}
+
+	public String getWard() {
+		return ward;
+	}
+
+	public int getYear() {
+		return year;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + (domain == null ? 0 : domain.hashCode());
+		result = prime * result + (ward == null ? 0 : ward.hashCode());
+		result = prime * result + year;
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof SequenceId)) {
+			return false;
+		}
+		SequenceId other = (SequenceId) obj;
+		return (domain == null ? other.domain == null : domain.equals(other.domain))
+				&& (ward == null ? other.ward == null : ward.equals(other.ward))
+				&& year == other.year;
+	}
+
+	@Override
+	public String toString() {
+		return domain + "/" + ward + "/" + year;
+	}
+}
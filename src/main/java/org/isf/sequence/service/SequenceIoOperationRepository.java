@@ -0,0 +1,48 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.sequence.service;
+
+import org.isf.sequence.model.Sequence;
+import org.isf.sequence.model.SequenceId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface SequenceIoOperationRepository extends JpaRepository<Sequence, SequenceId> {
+	
+	@Modifying
+	@Query(value = "UPDATE SEQUENCES SET SEQ_LAST = SEQ_LAST + :size " +
+			"WHERE SEQ_DOMAIN = :domain AND SEQ_WRD_ID_A = :ward AND SEQ_YEAR = :year", nativeQuery = true)
+	int updateLast(@Param("domain") String domain, @Param("ward") String ward, @Param("year") int year, @Param("size") int size);
+	
+	@Modifying
+	@Query(value = "INSERT INTO SEQUENCES (SEQ_DOMAIN, SEQ_WRD_ID_A, SEQ_YEAR, SEQ_LAST) " +
+			"VALUES (:domain, :ward, :year, :seed + :size) " +
+			"ON DUPLICATE KEY UPDATE SEQ_LAST = SEQ_LAST + :size", nativeQuery = true)
+	void insertLast(@Param("domain") String domain, @Param("ward") String ward, @Param("year") int year, 
+			@Param("seed") int seed, @Param("size") int size);
+	
+	@Query(value = "SELECT SEQ_LAST FROM SEQUENCES " +
+			"WHERE SEQ_DOMAIN = :domain AND SEQ_WRD_ID_A = :ward AND SEQ_YEAR = :year", nativeQuery = true)
+	Integer findLast(@Param("domain") String domain, @Param("ward") String ward, @Param("year") int year);
+}
@@ -0,0 +1,85 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.sequence.service;
+
+import org.isf.sequence.model.SequenceId;
+import org.isf.utils.db.TranslateOHServiceException;
+import org.isf.utils.exception.OHServiceException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Reserves blocks of progressive numbers, each in a transaction of its own:
+ * the row of the sequence stays locked only while reserving, and the numbers reserved
+ * are never handed out again, even if the transaction using them is rolled back.
+ */
+@Service
+@Transactional(propagation=Propagation.REQUIRES_NEW, rollbackFor=OHServiceException.class)
+@TranslateOHServiceException
+public class SequenceIoOperations {
+
+	@Autowired
+	private SequenceIoOperationRepository repository;
+
+	/**
+	 * Reserves the next numbers of a sequence
+	 * 
+	 * @param id - the {@link SequenceId}
+	 * @param size - how many numbers to reserve
+	 * @return the last number reserved, or <code>null</code> if the sequence does not exist yet
+	 * @throws OHServiceException
+	 */
+	public Integer reserve(SequenceId id, int size) throws OHServiceException {
+		if (repository.updateLast(id.getDomain(), id.getWard(), id.getYear(), size) == 0) {
+			return null;
+		}
+		return repository.findLast(id.getDomain(), id.getWard(), id.getYear());
+	}
+
+	/**
+	 * Returns the last number reserved of a sequence
+	 * 
+	 * @param id - the {@link SequenceId}
+	 * @return the last number reserved, or <code>null</code> if the sequence does not exist yet
+	 * @throws OHServiceException
+	 */
+	public Integer getLast(SequenceId id) throws OHServiceException {
+		return repository.findLast(id.getDomain(), id.getWard(), id.getYear());
+	}
+
+	/**
+	 * Reserves the first numbers of a sequence, after the last number used before the sequence existed;
+	 * if meanwhile the sequence has been created elsewhere, reserves its next numbers
+	 * 
+	 * @param id - the {@link SequenceId}
+	 * @param seed - the last number already used
+	 * @param size - how many numbers to reserve
+	 * @return the last number reserved
+	 * @throws OHServiceException
+	 */
+	public int reserve(SequenceId id, int seed, int size) throws OHServiceException {
+		repository.insertLast(id.getDomain(), id.getWard(), id.getYear(), seed, size);
+		return repository.findLast(id.getDomain(), id.getWard(), id.getYear());
+	}
+}
@@ -25,7 +25,7 @@ import java.io.File;
 import java.sql.Connection;
 import java.util.HashMap;
 
-import org.isf.utils.db.DbSingleJpaConn;
+import org.isf.utils.db.DbPooledQuery;
 import org.isf.utils.exception.OHServiceException;
 
 import net.sf.jasperreports.engine.JasperFillManager;
@@ -53,9 +53,11 @@ public class PrintLabels {
 		sbFilename.append(jasperFileName);
 		sbFilename.append(".jasper");
 		File jasperFile = new File(sbFilename.toString());
-		Connection conn = DbSingleJpaConn.getConnection();
 		JasperReport jasperReport = (JasperReport)JRLoader.loadObject(jasperFile);
-		JasperPrint jasperPrint = JasperFillManager.fillReport(jasperReport, parameters, conn);
+		JasperPrint jasperPrint;
+		try (Connection conn = DbPooledQuery.getInstance().getConnection()) {
+			jasperPrint = JasperFillManager.fillReport(jasperReport, parameters, conn);
+		}
 		JasperPrintManager.printReport(jasperPrint, true);
 
 	} catch (Exception e) {
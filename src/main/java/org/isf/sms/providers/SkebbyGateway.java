@@ -38,17 +38,15 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
-import org.apache.http.HttpVersion;
 import org.apache.http.NameValuePair;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicNameValuePair;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.HttpConnectionParams;
-import org.apache.http.params.HttpParams;
-import org.apache.http.params.HttpProtocolParamBean;
 import org.apache.http.util.EntityUtils;
 import org.isf.generaldata.SmsParameters;
 import org.isf.sms.model.Sms;
@@ -66,6 +64,38 @@ public class SkebbyGateway implements SmsSenderInterface {
 
 	private static Logger logger = LoggerFactory.getLogger(SkebbyGateway.class);
 	
+	private static final String ENDPOINT = "http://gateway.skebby.it/api/send/smseasy/advanced/http.php";
+	
+	/** connections kept open and shared by all the sendings, also concurrent */
+	private static final CloseableHttpClient httpclient = _createHttpClient();
+	
+	private final String endpoint;
+	
+	public SkebbyGateway() {
+		this(ENDPOINT);
+	}
+	
+	/**
+	 * @param endpoint - the URL of the HTTP API of the gateway
+	 */
+	public SkebbyGateway(String endpoint) {
+		this.endpoint = endpoint;
+	}
+	
+	private static CloseableHttpClient _createHttpClient() {
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(20);
+		connectionManager.setDefaultMaxPerRoute(20);
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(10*1000)
+				.setSocketTimeout(30*1000)
+				.build();
+		return HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.build();
+	}
+	
 	public static void main(String[] args) throws Exception {
 //      Single dispatch
 //      String [] recipients = new String[]{"391234567890"};
@@ -112,25 +142,16 @@ public class SkebbyGateway implements SmsSenderInterface {
      * @throws IOException
      */
     public static String skebbyGatewaySendSMS(String username, String password, String [] recipients, String text, String smsType, String senderNumber, String senderString) throws IOException{
-        return skebbyGatewaySendSMS(username, password, recipients, text, smsType,  senderNumber,  senderString, "UTF-8");
+        return skebbyGatewaySendSMS(ENDPOINT, username, password, recipients, text, smsType,  senderNumber,  senderString, "UTF-8");
     }
     
-    protected static String skebbyGatewaySendSMS(String username, String password, String [] recipients, String text, String smsType, String senderNumber, String senderString, String charset) throws IOException{
+    protected static String skebbyGatewaySendSMS(String endpoint, String username, String password, String [] recipients, String text, String smsType, String senderNumber, String senderString, String charset) throws IOException{
         
         if (!charset.equals("UTF-8") && !charset.equals("ISO-8859-1")) {
         
             throw new IllegalArgumentException("Charset not supported.");
         }
         
-        String endpoint = "http://gateway.skebby.it/api/send/smseasy/advanced/http.php";
-        HttpParams params = new BasicHttpParams();
-        HttpConnectionParams.setConnectionTimeout(params, 10*1000);
-        DefaultHttpClient httpclient = new DefaultHttpClient(params);
-        HttpProtocolParamBean paramsBean = new HttpProtocolParamBean(params);
-        paramsBean.setVersion(HttpVersion.HTTP_1_1);
-        paramsBean.setContentCharset(charset);
-        paramsBean.setHttpElementCharset(charset);
-        
         List<NameValuePair> formparams = new ArrayList<NameValuePair>();
         formparams.add(new BasicNameValuePair("method", smsType));
         formparams.add(new BasicNameValuePair("username", username));
@@ -151,12 +172,13 @@ public class SkebbyGateway implements SmsSenderInterface {
         HttpPost post = new HttpPost(endpoint);
         post.setEntity(entity);
         
-        HttpResponse response = httpclient.execute(post);
-        HttpEntity resultEntity = response.getEntity();
-        if(null != resultEntity){
-            return EntityUtils.toString(resultEntity);
+        try (CloseableHttpResponse response = httpclient.execute(post)) {
+            HttpEntity resultEntity = response.getEntity();
+            if(null != resultEntity){
+                return EntityUtils.toString(resultEntity);
+            }
+            return null;
         }
-        return null;
     }
 
 	@Override
@@ -171,12 +193,13 @@ public class SkebbyGateway implements SmsSenderInterface {
 		}
 		String result = null;
 		try {
-			result = skebbyGatewaySendSMS(username, password, new String[]{internationalNumberFormat}, sms.getSmsText(), SkebbyParameters.TYPE, sender_number, sender_string);
+			result = skebbyGatewaySendSMS(endpoint, username, password, new String[]{internationalNumberFormat}, sms.getSmsText(), SkebbyParameters.TYPE, sender_number, sender_string, "UTF-8");
 		} catch (IOException e) {
-			e.printStackTrace();
+			logger.error("Error sending SMS {}: {}", sms.getSmsId(), e.getMessage());
+			return false;
 		}
 		logger.debug(result);
-		return debug || result.contains("status=success");
+		return debug || (result != null && result.contains("status=success"));
 	}
 
 	@Override
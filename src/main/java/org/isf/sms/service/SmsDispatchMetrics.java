@@ -0,0 +1,129 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.sms.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a {@link SmsDispatcher}: sendings, retries, status updates and gateway latency.
+ */
+public class SmsDispatchMetrics {
+
+	private final LongAdder sent = new LongAdder();
+	private final LongAdder failedAttempts = new LongAdder();
+	private final LongAdder givenUp = new LongAdder();
+	private final LongAdder statusUpdates = new LongAdder();
+	private final LongAdder statusStatements = new LongAdder();
+	private final LongAdder latencyTotal = new LongAdder();
+	private final AtomicLong latencyMax = new AtomicLong();
+	private volatile long startTime = System.nanoTime();
+
+	void start() {
+		startTime = System.nanoTime();
+	}
+
+	void attempted(boolean success, long latencyNanos) {
+		if (success) {
+			sent.increment();
+		} else {
+			failedAttempts.increment();
+		}
+		latencyTotal.add(latencyNanos);
+		latencyMax.accumulateAndGet(latencyNanos, Math::max);
+	}
+
+	void givenUp() {
+		givenUp.increment();
+	}
+
+	void statusUpdated(int count, int statements) {
+		statusUpdates.add(count);
+		statusStatements.add(statements);
+	}
+
+	/**
+	 * @return the number of {@link org.isf.sms.model.Sms}s sent
+	 */
+	public long getSent() {
+		return sent.sum();
+	}
+
+	/**
+	 * @return the number of sendings refused by the gateway or failed
+	 */
+	public long getFailedAttempts() {
+		return failedAttempts.sum();
+	}
+
+	/**
+	 * @return the number of {@link org.isf.sms.model.Sms}s left to the next load after all the attempts failed
+	 */
+	public long getGivenUp() {
+		return givenUp.sum();
+	}
+
+	/**
+	 * @return the number of {@link org.isf.sms.model.Sms}s marked as sent in the database
+	 */
+	public long getStatusUpdates() {
+		return statusUpdates.sum();
+	}
+
+	/**
+	 * @return the number of statements used to mark the {@link org.isf.sms.model.Sms}s as sent
+	 */
+	public long getStatusStatements() {
+		return statusStatements.sum();
+	}
+
+	/**
+	 * @return the {@link org.isf.sms.model.Sms}s sent per second since the start
+	 */
+	public double getThroughput() {
+		double seconds = (System.nanoTime() - startTime) / (double) TimeUnit.SECONDS.toNanos(1);
+		return seconds > 0 ? getSent() / seconds : 0;
+	}
+
+	/**
+	 * @return the average time taken by the gateway for a sending, in milliseconds
+	 */
+	public double getAverageLatency() {
+		long attempts = getSent() + getFailedAttempts();
+		return attempts > 0 ? latencyTotal.sum() / (double) attempts / TimeUnit.MILLISECONDS.toNanos(1) : 0;
+	}
+
+	/**
+	 * @return the longest time taken by the gateway for a sending, in milliseconds
+	 */
+	public double getMaxLatency() {
+		return latencyMax.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("sent %d (%.1f/s), failed attempts %d, given up %d, status updates %d in %d statements, latency avg %.1f ms max %.1f ms",
+				getSent(), getThroughput(), getFailedAttempts(), getGivenUp(), getStatusUpdates(), getStatusStatements(),
+				getAverageLatency(), getMaxLatency());
+	}
+}
@@ -0,0 +1,401 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.sms.service;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.isf.sms.model.Sms;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends the {@link Sms}s through a gateway:
+ * <ul>
+ * <li>the not sent {@link Sms}s scheduled up to the next load are periodically loaded from the database
+ * into a queue ordered by due time;</li>
+ * <li>each {@link Sms} is sent when due by a bounded pool of workers, within the rate allowed to the gateway;</li>
+ * <li>a failed sending is retried with an exponential backoff, up to a number of attempts;
+ * after that the {@link Sms} is left to the next load;</li>
+ * <li>the {@link Sms}s sent are marked in the database in batches.</li>
+ * </ul>
+ * Throughput and latency are collected in {@link #getMetrics()}.
+ */
+public class SmsDispatcher {
+
+	private static final Logger logger = LoggerFactory.getLogger(SmsDispatcher.class);
+
+	private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+	private final SmsOperations smsOp;
+	private final SmsSenderInterface sender;
+	private final boolean debug;
+
+	private int workers = 4;
+	private double maxPerSecond = 10;
+	private int maxAttempts = 5;
+	private long backoff = 1000;
+	private long maxBackoff = 5 * 60 * 1000;
+	private long loadInterval = 60 * 1000;
+	private int statusBatchSize = 50;
+	private long statusInterval = 1000;
+
+	private final DelayQueue<SmsTask> queue = new DelayQueue<SmsTask>();
+	private final Set<Integer> queued = ConcurrentHashMap.newKeySet();
+	private final Queue<SentSms> sent = new ConcurrentLinkedQueue<SentSms>();
+	private final AtomicInteger sentCount = new AtomicInteger();
+	private final SmsDispatchMetrics metrics = new SmsDispatchMetrics();
+
+	private SmsRateLimiter rateLimiter;
+	private Semaphore idleWorkers;
+	private ExecutorService workerPool;
+	private ScheduledExecutorService scheduler;
+	private Thread dispatcher;
+	private volatile boolean running;
+
+	/**
+	 * @param smsOp - the {@link SmsOperations} to load and update the {@link Sms}s
+	 * @param sender - the gateway, already initialized
+	 * @param debug - if <code>true</code> the gateway should not really send the {@link Sms}s
+	 */
+	public SmsDispatcher(SmsOperations smsOp, SmsSenderInterface sender, boolean debug) {
+		this.smsOp = smsOp;
+		this.sender = sender;
+		this.debug = debug;
+	}
+
+	/**
+	 * @param workers - the number of sendings at the same time (default 4)
+	 */
+	public void setWorkers(int workers) {
+		this.workers = Math.max(1, workers);
+	}
+
+	/**
+	 * @param maxPerSecond - the maximum sendings per second allowed by the gateway, unlimited if not positive (default 10)
+	 */
+	public void setRateLimit(double maxPerSecond) {
+		this.maxPerSecond = maxPerSecond;
+	}
+
+	/**
+	 * @param maxAttempts - the attempts for each {@link Sms} before leaving it to the next load (default 5)
+	 * @param backoff - the wait before the first retry in milliseconds, doubled at each retry (default 1000)
+	 * @param maxBackoff - the longest wait between two attempts in milliseconds (default 5 minutes)
+	 */
+	public void setRetries(int maxAttempts, long backoff, long maxBackoff) {
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.backoff = backoff;
+		this.maxBackoff = maxBackoff;
+	}
+
+	/**
+	 * @param loadInterval - the interval between two loads from the database in milliseconds (default 1 minute)
+	 */
+	public void setLoadInterval(long loadInterval) {
+		this.loadInterval = loadInterval;
+	}
+
+	/**
+	 * @param statusBatchSize - the number of {@link Sms}s sent that triggers the update of the database (default 50)
+	 * @param statusInterval - the longest wait before the update of the database in milliseconds (default 1000)
+	 */
+	public void setStatusBatch(int statusBatchSize, long statusInterval) {
+		this.statusBatchSize = Math.max(1, statusBatchSize);
+		this.statusInterval = statusInterval;
+	}
+
+	/**
+	 * @return the metrics of the sendings
+	 */
+	public SmsDispatchMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return the number of {@link Sms}s waiting in the queue
+	 */
+	public int getPending() {
+		return queue.size();
+	}
+
+	/**
+	 * @return <code>true</code> if the dispatcher is running
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Starts loading and sending the {@link Sms}s
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		rateLimiter = new SmsRateLimiter(maxPerSecond);
+		idleWorkers = new Semaphore(workers);
+		workerPool = Executors.newFixedThreadPool(workers, _threadFactory("sms-sender"));
+		scheduler = Executors.newSingleThreadScheduledExecutor(_threadFactory("sms-scheduler"));
+		metrics.start();
+		scheduler.scheduleWithFixedDelay(this::load, 0, loadInterval, MILLISECONDS);
+		scheduler.scheduleWithFixedDelay(this::flush, statusInterval, statusInterval, MILLISECONDS);
+		dispatcher = _threadFactory("sms-dispatcher").newThread(this::_dispatch);
+		dispatcher.start();
+		logger.info("SMS dispatcher started with {} workers, {} SMS/s", workers, maxPerSecond);
+	}
+
+	/**
+	 * Stops the sendings, waiting for the ones in progress, and marks in the database the {@link Sms}s sent.
+	 * If the calling thread is interrupted, it still waits and the interrupt is restored before returning.
+	 */
+	public void stop() {
+		synchronized (this) {
+			if (!running) {
+				return;
+			}
+			running = false;
+		}
+		boolean interrupted = Thread.interrupted();
+		try {
+			dispatcher.interrupt();
+			while (true) {
+				try {
+					dispatcher.join();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			workerPool.shutdown();
+			interrupted |= _awaitTermination(workerPool);
+			scheduler.shutdown();
+			interrupted |= _awaitTermination(scheduler);
+			flush();
+			queue.clear();
+			queued.clear();
+			logger.info("SMS dispatcher stopped: {}", metrics);
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Loads into the queue the not sent {@link Sms}s scheduled up to the next load
+	 */
+	public void load() {
+		try {
+			Date until = new Date(System.currentTimeMillis() + loadInterval);
+			int loaded = 0;
+			for (Sms sms : smsOp.getList(new Date(0), until)) {
+				if (queued.add(sms.getSmsId())) {
+					queue.put(new SmsTask(sms, 0, sms.getSmsDateSched().getTime()));
+					loaded++;
+				}
+			}
+			if (loaded > 0) {
+				logger.info("Found {} SMS to send", loaded);
+			}
+		} catch (Exception e) {
+			logger.error("Error loading the SMS to send: {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * Marks in the database the {@link Sms}s sent so far, with one statement for each second of sending
+	 */
+	public synchronized void flush() {
+		List<SentSms> batch = new ArrayList<SentSms>();
+		for (SentSms sentSms = sent.poll(); sentSms != null; sentSms = sent.poll()) {
+			sentCount.decrementAndGet();
+			batch.add(sentSms);
+		}
+		if (batch.isEmpty()) {
+			return;
+		}
+		Map<Long, List<Integer>> idsBySecond = new LinkedHashMap<Long, List<Integer>>();
+		for (SentSms sentSms : batch) {
+			idsBySecond.computeIfAbsent(sentSms.dateSent / 1000 * 1000, second -> new ArrayList<Integer>()).add(sentSms.smsId);
+		}
+		try {
+			for (Map.Entry<Long, List<Integer>> ids : idsBySecond.entrySet()) {
+				smsOp.setSent(ids.getValue(), new Date(ids.getKey()));
+			}
+			metrics.statusUpdated(batch.size(), idsBySecond.size());
+			for (SentSms sentSms : batch) {
+				queued.remove(sentSms.smsId);
+			}
+		} catch (Exception e) {
+			logger.error("Error marking {} SMS as sent, retrying later: {}", batch.size(), e.getMessage());
+			sent.addAll(batch);
+			sentCount.addAndGet(batch.size());
+		}
+	}
+
+	private void _dispatch() {
+		try {
+			while (running) {
+				SmsTask task = queue.take();
+				try {
+					idleWorkers.acquire();
+					rateLimiter.acquire();
+					workerPool.execute(() -> _send(task));
+				} catch (InterruptedException | RejectedExecutionException e) {
+					queue.put(task);
+					throw new InterruptedException();
+				}
+			}
+		} catch (InterruptedException e) {
+			logger.debug("SMS dispatcher interrupted");
+		}
+	}
+
+	private void _send(SmsTask task) {
+		Sms sms = task.sms;
+		boolean result = false;
+		long start = System.nanoTime();
+		try {
+			result = sender.sendSMS(sms, debug);
+		} catch (RuntimeException e) {
+			logger.error("Error sending SMS {}: {}", sms.getSmsId(), e.getMessage());
+		} finally {
+			idleWorkers.release();
+		}
+		metrics.attempted(result, System.nanoTime() - start);
+		if (result) {
+			logger.debug("SMS {} sent", sms.getSmsId());
+			sent.add(new SentSms(sms.getSmsId(), System.currentTimeMillis()));
+			if (sentCount.incrementAndGet() >= statusBatchSize) {
+				_flushLater();
+			}
+		} else if (running && task.attempt + 1 < maxAttempts) {
+			long wait = _backoff(task.attempt);
+			logger.debug("SMS {} not sent, retrying in {} ms", sms.getSmsId(), wait);
+			queue.put(new SmsTask(sms, task.attempt + 1, System.currentTimeMillis() + wait));
+		} else {
+			if (running) {
+				metrics.givenUp();
+				logger.error("SMS {} not sent after {} attempts", sms.getSmsId(), maxAttempts);
+			}
+			queued.remove(sms.getSmsId());
+		}
+	}
+
+	/**
+	 * Waits up to one minute for the executor to terminate, also if interrupted
+	 * @return <code>true</code> if the thread was interrupted meanwhile
+	 */
+	private static boolean _awaitTermination(ExecutorService executor) {
+		boolean interrupted = false;
+		long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+		while (true) {
+			try {
+				executor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+				return interrupted;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+	}
+
+	private long _backoff(int attempt) {
+		return Math.min(maxBackoff, backoff << Math.min(attempt, 30));
+	}
+
+	private void _flushLater() {
+		try {
+			scheduler.execute(this::flush);
+		} catch (RejectedExecutionException e) {
+			// stopping: flushed by stop()
+		}
+	}
+
+	private static ThreadFactory _threadFactory(String name) {
+		return runnable -> {
+			Thread thread = new Thread(runnable, name + "-" + THREAD_NUMBER.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	/**
+	 * A {@link Sms} waiting for its attempt
+	 */
+	private static final class SmsTask implements Delayed {
+
+		private final Sms sms;
+		private final int attempt;
+		private final long due;
+
+		SmsTask(Sms sms, int attempt, long due) {
+			this.sms = sms;
+			this.attempt = attempt;
+			this.due = due;
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(due - System.currentTimeMillis(), MILLISECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed other) {
+			return Long.compare(due, ((SmsTask) other).due);
+		}
+	}
+
+	/**
+	 * A {@link Sms} sent, waiting to be marked in the database
+	 */
+	private static final class SentSms {
+
+		private final int smsId;
+		private final long dateSent;
+
+		SentSms(int smsId, long dateSent) {
+			this.smsId = smsId;
+			this.dateSent = dateSent;
+		}
+	}
+}
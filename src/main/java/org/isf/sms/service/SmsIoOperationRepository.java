@@ -21,12 +21,15 @@
  */
 package org.isf.sms.service;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
 import org.isf.sms.model.Sms;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface SmsIoOperationRepository extends JpaRepository<Sms, Integer> {
     List<Sms> findBySmsDateSchedBetweenOrderBySmsDateSchedAsc(Date start, Date stop);
@@ -34,4 +37,7 @@ public interface SmsIoOperationRepository extends JpaRepository<Sms, Integer> {
     List<Sms> findBySmsDateSentIsNullOrderBySmsDateSchedAsc();
     @Modifying
     void deleteByModuleAndModuleIDAndSmsDateSentIsNull(String mod, String id);
+    @Modifying
+    @Query(value = "update Sms set smsDateSent = :dateSent where smsId in (:ids) and smsDateSent is null")
+    int updateSmsDateSent(@Param("ids") Collection<Integer> ids, @Param("dateSent") Date dateSent);
 }
\ No newline at end of file
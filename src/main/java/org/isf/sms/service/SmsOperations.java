@@ -23,6 +23,7 @@ package org.isf.sms.service;
 
 // Generated 31-gen-2014 15.39.04 by Hibernate Tools 3.4.0.CR1
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -67,6 +68,17 @@ public class SmsOperations {
 		return repository.save(smsList) != null;
 	}
 	
+	/**
+	 * Marks as sent the specified {@link Sms}s, with a single statement
+	 * @param smsIds - the IDs of the {@link Sms}s sent
+	 * @param dateSent - the date of sending
+	 * @return the number of {@link Sms}s marked, the ones already sent or deleted are skipped
+	 * @throws OHServiceException 
+	 */
+	public int setSent(Collection<Integer> smsIds, Date dateSent) throws OHServiceException {
+		return repository.updateSmsDateSent(smsIds, dateSent);
+	}
+	
 	/**
 	 * Returns a {@link Sms} with specified ID
 	 * @param ID - sms ID
@@ -0,0 +1,63 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.sms.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the sending rate towards a gateway: up to one second of sendings can go out at once,
+ * then they are spaced evenly.
+ */
+class SmsRateLimiter {
+
+	private final long interval;
+	private final long burst;
+	private long nextFree;
+
+	/**
+	 * @param maxPerSecond - the maximum number of sendings per second, unlimited if not positive
+	 */
+	SmsRateLimiter(double maxPerSecond) {
+		this.interval = maxPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / maxPerSecond) : 0;
+		this.burst = Math.max(1, (long) maxPerSecond) * interval;
+		this.nextFree = System.nanoTime() - burst + interval;
+	}
+
+	/**
+	 * Waits until a sending is allowed
+	 * @throws InterruptedException
+	 */
+	void acquire() throws InterruptedException {
+		long wait = _reserve();
+		if (wait > 0) {
+			TimeUnit.NANOSECONDS.sleep(wait);
+		}
+	}
+
+	private synchronized long _reserve() {
+		long now = System.nanoTime();
+		nextFree = Math.max(nextFree, now - burst + interval);
+		long wait = nextFree - now;
+		nextFree += interval;
+		return wait;
+	}
+}
@@ -25,14 +25,10 @@ package org.isf.sms.service;
  * SmsThread.java - 31/gen/2014
  */
 
-import java.util.Date;
-import java.util.List;
-
 import org.isf.generaldata.GeneralData;
 import org.isf.generaldata.SmsParameters;
 import org.isf.menu.manager.Context;
 import org.isf.sms.model.Sms;
-import org.isf.utils.exception.OHServiceException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,81 +52,64 @@ public class SmsSender implements Runnable {
 		logger.info("SMS Sender loop set to {} seconds.", delay);
 	}
 
+	/**
+	 * Sends the {@link Sms}s through a {@link SmsDispatcher} until {@link #setRunning(boolean)} is called with <code>false</code>
+	 */
 	public void run() {
-		while (running) {
-			logger.info("SMS Sender running...");
-			SmsOperations smsOp = Context.getApplicationContext().getBean(SmsOperations.class);
-			List<Sms> smsList = null;
-			try {
-				smsList = smsOp.getList();
-			} catch (OHServiceException e1) {
-				// TODO Auto-generated catch block
-				e1.printStackTrace();
+		logger.info("SMS Sender running...");
+		SmsOperations smsOp = Context.getApplicationContext().getBean(SmsOperations.class);
+		SmsDispatcher dispatcher;
+		SmsSenderGSM gsmSender = null;
+		if (SmsParameters.MODE.equals("GSM")) {
+			
+			gsmSender = new SmsSenderGSM();
+			if (!gsmSender.initialize()) {
+				logger.error("SMS Sender GSM initialization error");
+				logger.error("Stopping SMS Sender...");
+				setRunning(false);
+				return;
 			}
-			if (!smsList.isEmpty()) {
-				logger.info("Found {} SMS to send", smsList.size());
-				if (SmsParameters.MODE.equals("GSM")) {
-					
-					SmsSenderGSM sender = new SmsSenderGSM();
-					if (sender.initialize()) {
-						for (Sms sms : smsList) {
-							if (sms.getSmsDateSched().before(new Date())) {
-								boolean result = sender.sendSMS(sms, GeneralData.DEBUG);
-								if (result) {
-									sms.setSmsDateSent(new Date());
-									try {
-										smsOp.saveOrUpdate(sms);
-									} catch (OHServiceException e) {
-										// TODO Auto-generated catch block
-										e.printStackTrace();
-									}
-									logger.debug("Sent");
-								} else {
-									logger.error("Not sent");
-								}
-							}
-						}
-						sender.terminate();
-					} else {
-						logger.error("SMS Sender GSM initialization error");
-						logger.error("Stopping SMS Sender...");
-						setRunning(false);
-					}
-					
-				} else if (SmsParameters.MODE.equals("HTTP")) {
-					
-					SmsSenderHTTP sender = new SmsSenderHTTP();
-					if (sender.initialize()) {
-						for (Sms sms : smsList) {
-							if (sms.getSmsDateSched().before(new Date())) {
-								boolean result = sender.sendSMS(sms, GeneralData.DEBUG);
-								if (result) {
-									sms.setSmsDateSent(new Date());
-									try {
-										smsOp.saveOrUpdate(sms);
-									} catch (OHServiceException e) {
-										// TODO Auto-generated catch block
-										e.printStackTrace();
-									}
-									logger.debug("Sent");
-								} else {
-									logger.error("Not sent");
-								}
-							}
-						}
-					} else {
-						logger.error("SMS Sender HTTP initialization error");
-						logger.error("Stopping HTTP Sender...");
-						setRunning(false);
-					}
+			dispatcher = new SmsDispatcher(smsOp, gsmSender, GeneralData.DEBUG);
+			dispatcher.setWorkers(1); // one device, one SMS at a time
+			
+		} else if (SmsParameters.MODE.equals("HTTP")) {
+			
+			SmsSenderHTTP sender = new SmsSenderHTTP();
+			if (!sender.initialize()) {
+				logger.error("SMS Sender HTTP initialization error");
+				logger.error("Stopping HTTP Sender...");
+				setRunning(false);
+				return;
+			}
+			dispatcher = new SmsDispatcher(smsOp, sender, GeneralData.DEBUG);
+			dispatcher.setWorkers(SmsParameters.WORKERS);
+			
+		} else {
+			logger.error("SMS Sender mode not found: {}. Please check sms.properties file", SmsParameters.MODE);
+			setRunning(false);
+			return;
+		}
+		dispatcher.setRateLimit(SmsParameters.RATE);
+		dispatcher.setRetries(SmsParameters.RETRIES, SmsParameters.BACKOFF, delay * 1000L);
+		dispatcher.setLoadInterval(delay * 1000L);
+		dispatcher.start();
+		boolean interrupted = false;
+		try {
+			synchronized (this) {
+				while (running) {
+					wait();
 				}
-			} else {
-				logger.debug("No SMS to send.");
 			}
-			try {
-				Thread.sleep(delay * 1000);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+		} catch (InterruptedException e) {
+			interrupted = true;
+		} finally {
+			// the interrupt is restored once the sendings are stopped and their dates stored
+			dispatcher.stop();
+			if (gsmSender != null) {
+				gsmSender.terminate();
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
 			}
 		}
 	}
@@ -138,7 +117,8 @@ public class SmsSender implements Runnable {
 	/**
 	 * @param running the running to set
 	 */
-	public void setRunning(boolean running) {
+	public synchronized void setRunning(boolean running) {
 		this.running = running;
+		notifyAll();
 	}
 }
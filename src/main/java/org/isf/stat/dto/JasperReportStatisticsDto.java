@@ -0,0 +1,67 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.stat.dto;
+
+import java.io.Serializable;
+
+/**
+ * Times spent by the reports in one of their phases (compile, fill or export).
+ */
+public class JasperReportStatisticsDto implements Serializable {
+
+    private String phase;
+    private long count;
+    private long totalMillis;
+    private long maxMillis;
+
+    public JasperReportStatisticsDto(String phase, long count, long totalMillis, long maxMillis) {
+        this.phase = phase;
+        this.count = count;
+        this.totalMillis = totalMillis;
+        this.maxMillis = maxMillis;
+    }
+
+    public String getPhase() {
+        return phase;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotalMillis() {
+        return totalMillis;
+    }
+
+    public long getMaxMillis() {
+        return maxMillis;
+    }
+
+    public long getAverageMillis() {
+        return count == 0 ? 0 : totalMillis / count;
+    }
+
+    @Override
+    public String toString() {
+        return phase + ": " + count + " in " + totalMillis + " ms (average " + getAverageMillis() + " ms, max " + maxMillis + " ms)";
+    }
+}
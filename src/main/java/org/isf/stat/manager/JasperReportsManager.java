@@ -22,19 +22,32 @@
 package org.isf.stat.manager;
 
 import java.io.File;
+import java.io.IOException;
 import java.sql.Connection;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.text.Format;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.sql.DataSource;
 
@@ -44,7 +57,8 @@ import org.isf.hospital.manager.HospitalBrowsingManager;
 import org.isf.hospital.model.Hospital;
 import org.isf.medicals.model.Medical;
 import org.isf.stat.dto.JasperReportResultDto;
-import org.isf.utils.db.DbQueryLogger;
+import org.isf.stat.dto.JasperReportStatisticsDto;
+import org.isf.utils.db.DbPooledQuery;
 import org.isf.utils.db.UTF8Control;
 import org.isf.utils.excel.ExcelExporter;
 import org.isf.utils.exception.OHException;
@@ -56,6 +70,7 @@ import org.isf.utils.time.TimeTools;
 import org.isf.ward.model.Ward;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -69,15 +84,32 @@ import net.sf.jasperreports.engine.JasperReport;
 import net.sf.jasperreports.engine.util.JRLoader;
 
 @Component
-public class JasperReportsManager {
+public class JasperReportsManager implements DisposableBean {
 
     private final Logger logger = LoggerFactory.getLogger(JasperReportsManager.class);
+
+    /** threads rendering the reports requested through the asynchronous methods */
+    private static final int RENDERING_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /** reports waiting for a rendering thread, beyond which they are rendered by the caller */
+    private static final int RENDERING_QUEUE_SIZE = 100;
+
+    private final ConcurrentMap<String, CompiledReport> compiledReports = new ConcurrentHashMap<String, CompiledReport>();
+
+    private final ReportStatistics compileStatistics = new ReportStatistics("compile");
+    private final ReportStatistics fillStatistics = new ReportStatistics("fill");
+    private final ReportStatistics exportStatistics = new ReportStatistics("export");
+
+    private final ThreadPoolExecutor renderingExecutor = createRenderingExecutor();
     
     @Autowired
     private HospitalBrowsingManager hospitalManager;
     
     @Autowired
     private DataSource dataSource;
+
+    @Autowired
+    private DbPooledQuery pooledQuery;
     
 
     public JasperReportResultDto getExamsListPdf() throws OHServiceException {
@@ -99,7 +131,7 @@ public class JasperReportsManager {
             pdfFilename.append(".pdf");
 
             JasperReportResultDto result = generateJasperReport(compileJasperFilename(jasperFileName), pdfFilename.toString(), parameters);
-            JasperExportManager.exportReportToPdfFile(result.getJasperPrint(), pdfFilename.toString());
+            exportReportToPdfFile(result, pdfFilename.toString());
             return result;
         } catch(Exception e){
             //Any exception
@@ -125,7 +157,7 @@ public class JasperReportsManager {
             pdfFilename.append(".pdf");
 
             JasperReportResultDto result = generateJasperReport(compileJasperFilename(jasperFileName), pdfFilename.toString(), parameters);
-            JasperExportManager.exportReportToPdfFile(result.getJasperPrint(), pdfFilename.toString());
+            exportReportToPdfFile(result, pdfFilename.toString());
             return result;
         } catch(Exception e){
             //Any exception
@@ -144,7 +176,7 @@ public class JasperReportsManager {
             String pdfFilename = "rpt/PDF/"+jasperFileName + "_" + admID +".pdf";
 
             JasperReportResultDto result = generateJasperReport(compileJasperFilename(jasperFileName), pdfFilename.toString(), parameters);
-            JasperExportManager.exportReportToPdfFile(result.getJasperPrint(), pdfFilename);
+            exportReportToPdfFile(result, pdfFilename);
             return result;
         } catch(Exception e){
             //Any exception
@@ -153,6 +185,13 @@ public class JasperReportsManager {
         }
     }
     
+    /**
+     * Asynchronous {@link #getGenericReportAdmissionPdf}, rendered in parallel with the other asynchronous reports.
+     */
+    public CompletableFuture<JasperReportResultDto> getGenericReportAdmissionPdfAsync(final int admID, final int patID, final String jasperFileName) {
+        return renderAsync(() -> getGenericReportAdmissionPdf(admID, patID, jasperFileName));
+    }
+
     public JasperReportResultDto getGenericReportBillZPL(Integer billID, String jasperFileName, boolean show, boolean askForPrint) throws OHServiceException {
 
         try{
@@ -210,7 +249,7 @@ public class JasperReportsManager {
             String pdfFilename = "rpt/PDF/" + jasperFileName + "_" + billID + ".pdf";
 
             JasperReportResultDto result = generateJasperReport(compileJasperFilename(jasperFileName), pdfFilename.toString(), parameters);
-            JasperExportManager.exportReportToPdfFile(result.getJasperPrint(), pdfFilename);
+            exportReportToPdfFile(result, pdfFilename);
             return result;
         } catch(Exception e){
             //Any exception
@@ -222,6 +261,13 @@ public class JasperReportsManager {
     
     
 
+    /**
+     * Asynchronous {@link #getGenericReportBillPdf}, rendered in parallel with the other asynchronous reports.
+     */
+    public CompletableFuture<JasperReportResultDto> getGenericReportBillPdfAsync(final Integer billID, final String jasperFileName, final boolean show, final boolean askForPrint) {
+        return renderAsync(() -> getGenericReportBillPdf(billID, jasperFileName, show, askForPrint));
+    }
+
     public JasperReportResultDto getGenericReportOpdPdf(int opdID, int patID, String jasperFileName) throws OHServiceException {
 
         try{
@@ -232,7 +278,7 @@ public class JasperReportsManager {
             String pdfFilename = "rpt/PDF/"+jasperFileName + "_" + opdID +".pdf";
 
             JasperReportResultDto result = generateJasperReport(compileJasperFilename(jasperFileName), pdfFilename.toString(), parameters);
-            JasperExportManager.exportReportToPdfFile(result.getJasperPrint(), pdfFilename);
+            exportReportToPdfFile(result, pdfFilename);
             return result;
         } catch(Exception e){
             //Any exception
@@ -242,6 +288,13 @@ public class JasperReportsManager {
     }
 
     
+    /**
+     * Asynchronous {@link #getGenericReportOpdPdf}, rendered in parallel with the other asynchronous reports.
+     */
+    public CompletableFuture<JasperReportResultDto> getGenericReportOpdPdfAsync(final int opdID, final int patID, final String jasperFileName) {
+        return renderAsync(() -> getGenericReportOpdPdf(opdID, patID, jasperFileName));
+    }
+
     public JasperReportResultDto getGenericReportPatientExaminationPdf(Integer patientID, Integer examId, String jasperFileName) throws OHServiceException {
 
         try{
@@ -251,7 +304,7 @@ public class JasperReportsManager {
             String pdfFilename = "rpt/PDF/"+jasperFileName + "_" + patientID +".pdf";
 
             JasperReportResultDto result = generateJasperReport(compileJasperFilename(jasperFileName), pdfFilename.toString(), parameters);
-            JasperExportManager.exportReportToPdfFile(result.getJasperPrint(), pdfFilename);
+            exportReportToPdfFile(result, pdfFilename);
             return result;
         } catch(Exception e){
             //Any exception
@@ -260,6 +313,13 @@ public class JasperReportsManager {
                     MessageBundle.getMessage("angal.stat.reporterror"), OHSeverityLevel.ERROR));
         }
     }
+    /**
+     * Asynchronous {@link #getGenericReportPatientExaminationPdf}, rendered in parallel with the other asynchronous reports.
+     */
+    public CompletableFuture<JasperReportResultDto> getGenericReportPatientExaminationPdfAsync(final Integer patientID, final Integer examId, final String jasperFileName) {
+        return renderAsync(() -> getGenericReportPatientExaminationPdf(patientID, examId, jasperFileName));
+    }
+
     public JasperReportResultDto getGenericReportPatientPdf(Integer patientID, String jasperFileName) throws OHServiceException {
 
         try{
@@ -269,7 +329,7 @@ public class JasperReportsManager {
             String pdfFilename = "rpt/PDF/"+jasperFileName + "_" + patientID +".pdf";
 
             JasperReportResultDto result = generateJasperReport(compileJasperFilename(jasperFileName), pdfFilename.toString(), parameters);
-            JasperExportManager.exportReportToPdfFile(result.getJasperPrint(), pdfFilename);
+            exportReportToPdfFile(result, pdfFilename);
             return result;
         } catch(Exception e){
             //Any exception
@@ -277,6 +337,13 @@ public class JasperReportsManager {
                     MessageBundle.getMessage("angal.stat.reporterror"), OHSeverityLevel.ERROR));
         }
     }
+    /**
+     * Asynchronous {@link #getGenericReportPatientPdf}, rendered in parallel with the other asynchronous reports.
+     */
+    public CompletableFuture<JasperReportResultDto> getGenericReportPatientPdfAsync(final Integer patientID, final String jasperFileName) {
+        return renderAsync(() -> getGenericReportPatientPdf(patientID, jasperFileName));
+    }
+
     public JasperReportResultDto getGenericReportWardVisitPdf(String wardID, Date date, String jasperFileName) throws OHServiceException {
 
         try{
@@ -286,7 +353,7 @@ public class JasperReportsManager {
             String pdfFilename = "rpt/PDF/"+jasperFileName + "_" + String.valueOf(wardID)+"_"+TimeTools.formatDateTime(date, "yyyyMMdd")+".pdf";
 
             JasperReportResultDto result = generateJasperReport(compileJasperFilename(jasperFileName), pdfFilename.toString(), parameters);
-            JasperExportManager.exportReportToPdfFile(result.getJasperPrint(), pdfFilename);
+            exportReportToPdfFile(result, pdfFilename);
             return result;
         } catch(OHServiceException e){
             //Already managed, ready to return OHServiceException
@@ -300,6 +367,13 @@ public class JasperReportsManager {
     }
     
     
+    /**
+     * Asynchronous {@link #getGenericReportWardVisitPdf}, rendered in parallel with the other asynchronous reports.
+     */
+    public CompletableFuture<JasperReportResultDto> getGenericReportWardVisitPdfAsync(final String wardID, final Date date, final String jasperFileName) {
+        return renderAsync(() -> getGenericReportWardVisitPdf(wardID, date, jasperFileName));
+    }
+
     public JasperReportResultDto getGenericReportPatientVersion2Pdf(Integer patientID, String parametersString, Date date_From, Date date_To, String jasperFileName) throws OHServiceException {
 
         try{
@@ -331,7 +405,7 @@ public class JasperReportsManager {
             String pdfFilename = "rpt/PDF/"+jasperFileName + "_" + String.valueOf(patientID)+".pdf";
 
             JasperReportResultDto result = generateJasperReport(compileJasperFilename(jasperFileName), pdfFilename.toString(), parameters);
-            JasperExportManager.exportReportToPdfFile(result.getJasperPrint(), pdfFilename);
+            exportReportToPdfFile(result, pdfFilename);
             return result;
         } catch(OHServiceException e){
             //Already managed, ready to return OHServiceException
@@ -344,6 +418,13 @@ public class JasperReportsManager {
         }
     }
     
+    /**
+     * Asynchronous {@link #getGenericReportPatientVersion2Pdf}, rendered in parallel with the other asynchronous reports.
+     */
+    public CompletableFuture<JasperReportResultDto> getGenericReportPatientVersion2PdfAsync(final Integer patientID, final String parametersString, final Date date_From, final Date date_To, final String jasperFileName) {
+        return renderAsync(() -> getGenericReportPatientVersion2Pdf(patientID, parametersString, date_From, date_To, jasperFileName));
+    }
+
     public JasperReportResultDto getGenericReportPharmaceuticalOrderPdf(String jasperFileName) throws OHServiceException {
 
         try{
@@ -359,7 +440,7 @@ public class JasperReportsManager {
             String pdfFilename = "rpt/PDF/"+jasperFileName + "_" + todayFile.toString()+".pdf";
 
             JasperReportResultDto result = generateJasperReport(compileJasperFilename(jasperFileName), pdfFilename, parameters);
-            JasperExportManager.exportReportToPdfFile(result.getJasperPrint(), pdfFilename);
+            exportReportToPdfFile(result, pdfFilename);
             return result;
         } catch(Exception e){
             //Any exception
@@ -390,7 +471,7 @@ public class JasperReportsManager {
             String pdfFilename = "rpt/PDF/"+jasperFileName + "_" + dateFile.toString()+".pdf";
 
             JasperReportResultDto result = generateJasperReport(compileJasperFilename(jasperFileName), pdfFilename, parameters);
-            JasperExportManager.exportReportToPdfFile(result.getJasperPrint(), pdfFilename);
+            exportReportToPdfFile(result, pdfFilename);
             return result;
     	} catch(Exception e){
             //Any exception
@@ -405,9 +486,7 @@ public class JasperReportsManager {
         	if (date == null)
 				date = new Date();
 		    String dateQuery = TimeTools.formatDateTime(date, "yyyy-MM-dd");
-            File jasperFile = new File(compileJasperFilename(jasperFileName));
-            
-            JasperReport jasperReport = (JasperReport)JRLoader.loadObject(jasperFile);
+            JasperReport jasperReport = loadJasperReport(compileJasperFilename(jasperFileName));
             JRQuery query = jasperReport.getMainDataset().getQuery();
             
             String queryString = query.getText();
@@ -416,15 +495,7 @@ public class JasperReportsManager {
 			if (sortBy != null) queryString = queryString.replace("$P!{sortBy}", "'" + sortBy + "'");
 			if (filter != null) queryString = queryString.replace("$P{filter}", "'" + filter + "'");
 
-            DbQueryLogger dbQuery = new DbQueryLogger();
-            ResultSet resultSet = dbQuery.getData(queryString, true);
-
-            File exportFile = new File(exportFilename);
-            ExcelExporter xlsExport = new ExcelExporter();
-			if (exportFile.getName().endsWith(".xls"))
-				xlsExport.exportResultsetToExcelOLD(resultSet, exportFile);
-			else
-				xlsExport.exportResultsetToExcel(resultSet, exportFile);
+            exportQueryToExcel(queryString, new File(exportFilename));
 
         } catch(Exception e){
             //Any exception
@@ -470,7 +541,7 @@ public class JasperReportsManager {
             String pdfFilename = "rpt/PDF/"+exportFileName.toString()+".pdf";
 
             JasperReportResultDto result = generateJasperReport(compileJasperFilename(jasperFileName), pdfFilename, parameters);
-            JasperExportManager.exportReportToPdfFile(result.getJasperPrint(), pdfFilename);
+            exportReportToPdfFile(result, pdfFilename);
             return result;
     	} catch(Exception e){
             //Any exception
@@ -491,9 +562,7 @@ public class JasperReportsManager {
 		    String dateFromQuery = TimeTools.formatDateTime(dateFrom, "yyyy-MM-dd");
 		    String dateToQuery = TimeTools.formatDateTime(dateTo, "yyyy-MM-dd");
 		    
-            File jasperFile = new File(compileJasperFilename(jasperFileName));
-            
-            JasperReport jasperReport = (JasperReport)JRLoader.loadObject(jasperFile);
+            JasperReport jasperReport = loadJasperReport(compileJasperFilename(jasperFileName));
             JRQuery query = jasperReport.getMainDataset().getQuery();
             
             String queryString = query.getText();
@@ -502,15 +571,7 @@ public class JasperReportsManager {
 			if (medical != null) queryString = queryString.replace("$P{productID}", "'" + medical.getCode() + "'");
 			if (ward != null) queryString = queryString.replace("$P{WardCode}", "'" + ward.getCode() + "'");
 
-            DbQueryLogger dbQuery = new DbQueryLogger();
-            ResultSet resultSet = dbQuery.getData(queryString, true);
-
-            File exportFile = new File(exportFileName);
-            ExcelExporter xlsExport = new ExcelExporter();
-			if (exportFile.getName().endsWith(".xls"))
-				xlsExport.exportResultsetToExcelOLD(resultSet, exportFile);
-			else
-				xlsExport.exportResultsetToExcel(resultSet, exportFile);
+            exportQueryToExcel(queryString, new File(exportFileName));
 
         } catch(Exception e){
             //Any exception
@@ -540,7 +601,7 @@ public class JasperReportsManager {
             String pdfFilename = "rpt/PDF/"+jasperFileName + "_" + dateFile.toString()+".pdf";
 
             JasperReportResultDto result = generateJasperReport(compileJasperFilename(jasperFileName), pdfFilename, parameters);
-            JasperExportManager.exportReportToPdfFile(result.getJasperPrint(), pdfFilename);
+            exportReportToPdfFile(result, pdfFilename);
             return result;
     	} catch(Exception e){
             //Any exception
@@ -557,7 +618,7 @@ public class JasperReportsManager {
             String pdfFilename =  "rpt/PDF/" + jasperFileName + "_" + aUser + "_" + date +".pdf";
 
             JasperReportResultDto result = generateJasperReport(compileJasperFilename(jasperFileName), pdfFilename, parameters);
-            JasperExportManager.exportReportToPdfFile(result.getJasperPrint(), pdfFilename);
+            exportReportToPdfFile(result, pdfFilename);
             return result;
         } catch(Exception e){
             //Any exception
@@ -598,7 +659,7 @@ public class JasperReportsManager {
             String pdfFilename = "rpt/PDF/"+jasperFileName + "_" + admID +".pdf";
 
             JasperReportResultDto result = generateJasperReport(compileJasperFilename(jasperFileName), pdfFilename, parameters);
-            JasperExportManager.exportReportToPdfFile(result.getJasperPrint(), pdfFilename);
+            exportReportToPdfFile(result, pdfFilename);
             return result;
         } catch(Exception e){
             //Any exception
@@ -607,6 +668,13 @@ public class JasperReportsManager {
         }
     }
 
+    /**
+     * Asynchronous {@link #getGenericReportDischargePdf}, rendered in parallel with the other asynchronous reports.
+     */
+    public CompletableFuture<JasperReportResultDto> getGenericReportDischargePdfAsync(final int admID, final int patID, final String jasperFileName) {
+        return renderAsync(() -> getGenericReportDischargePdf(admID, patID, jasperFileName));
+    }
+
     public JasperReportResultDto getGenericReportFromDateToDatePdf(String fromDate, String toDate, String jasperFileName) throws OHServiceException {
 
         try{
@@ -614,7 +682,7 @@ public class JasperReportsManager {
             String pdfFilename = "rpt/PDF/"+jasperFileName+".pdf";
 
             JasperReportResultDto result = generateJasperReport(compileJasperFilename(jasperFileName), pdfFilename, parameters);
-            JasperExportManager.exportReportToPdfFile(result.getJasperPrint(), pdfFilename);
+            exportReportToPdfFile(result, pdfFilename);
             return result;
         } catch(Exception e){
             //Any exception
@@ -626,8 +694,7 @@ public class JasperReportsManager {
     public void getGenericReportFromDateToDateExcel(String fromDate, String toDate, String jasperFileName, String exportFilename) throws OHServiceException {
 
         try{
-            File jasperFile = new File(compileJasperFilename(jasperFileName));
-            JasperReport jasperReport = (JasperReport)JRLoader.loadObject(jasperFile);
+            JasperReport jasperReport = loadJasperReport(compileJasperFilename(jasperFileName));
             JRQuery query = jasperReport.getMainDataset().getQuery();
             String queryString = query.getText();
             
@@ -637,15 +704,7 @@ public class JasperReportsManager {
             queryString = queryString.replace("$P{fromdate}", "'" + dateFromQuery + "'");
             queryString = queryString.replace("$P{todate}", "'" +  dateToQuery + "'");
 
-            DbQueryLogger dbQuery = new DbQueryLogger();
-            ResultSet resultSet = dbQuery.getData(queryString, true);
-
-            File exportFile = new File(exportFilename);
-            ExcelExporter xlsExport = new ExcelExporter();
-			if (exportFile.getName().endsWith(".xls"))
-				xlsExport.exportResultsetToExcelOLD(resultSet, exportFile);
-			else
-				xlsExport.exportResultsetToExcel(resultSet, exportFile);
+            exportQueryToExcel(queryString, new File(exportFilename));
 
         } catch (OHException e) {
         	throw new OHReportException(e, new OHExceptionMessage(MessageBundle.getMessage("angal.hospital"),
@@ -664,7 +723,7 @@ public class JasperReportsManager {
             String pdfFilename = "rpt/PDF/"+jasperFileName+"_"+year+"_"+month+".pdf";
 
             JasperReportResultDto result = generateJasperReport(compileJasperFilename(jasperFileName), pdfFilename, parameters);
-            JasperExportManager.exportReportToPdfFile(result.getJasperPrint(), pdfFilename);
+            exportReportToPdfFile(result, pdfFilename);
             return result;
         } catch(Exception e){
             //Any exception
@@ -676,22 +735,13 @@ public class JasperReportsManager {
     public void getGenericReportMYExcel(Integer month, Integer year, String jasperFileName, String exportFilename) throws OHServiceException {
 
         try{
-            File jasperFile = new File(compileJasperFilename(jasperFileName));
-            JasperReport jasperReport = (JasperReport)JRLoader.loadObject(jasperFile);
+            JasperReport jasperReport = loadJasperReport(compileJasperFilename(jasperFileName));
             JRQuery query = jasperReport.getMainDataset().getQuery();
             String queryString = query.getText();
             queryString = queryString.replace("$P{year}", "'" + year + "'");
             queryString = queryString.replace("$P{month}", "'" + month + "'");
 
-            DbQueryLogger dbQuery = new DbQueryLogger();
-            ResultSet resultSet = dbQuery.getData(queryString, true);
-
-            File exportFile = new File(exportFilename);
-            ExcelExporter xlsExport = new ExcelExporter();
-            if (exportFile.getName().endsWith(".xls"))
-				xlsExport.exportResultsetToExcelOLD(resultSet, exportFile);
-			else
-				xlsExport.exportResultsetToExcel(resultSet, exportFile);
+            exportQueryToExcel(queryString, new File(exportFilename));
 
         } catch(Exception e){
             //Any exception
@@ -775,14 +825,108 @@ public class JasperReportsManager {
     }
 
     private JasperReportResultDto generateJasperReport(String jasperFilename, String filename, Map parameters) throws JRException, SQLException {
-        File jasperFile = new File(jasperFilename);
-        final JasperReport jasperReport = (JasperReport) JRLoader.loadObject(jasperFile);
+        final JasperReport jasperReport = loadJasperReport(jasperFilename);
         final Map localParameters = parameters;
-        Connection connection = dataSource.getConnection();
-        JasperPrint jasperPrint = JasperFillManager.fillReport(jasperReport, localParameters, connection);
+        long start = System.nanoTime();
+        JasperPrint jasperPrint;
+        try (Connection connection = dataSource.getConnection()) {
+            jasperPrint = JasperFillManager.fillReport(jasperReport, localParameters, connection);
+        }
+        fillStatistics.add(jasperFilename, System.nanoTime() - start);
         return new JasperReportResultDto(jasperPrint, jasperFilename, filename);
     }
 
+    /**
+     * Returns the compiled report, loading it again only if the file changed since the last time.
+     */
+    private JasperReport loadJasperReport(String jasperFilename) throws JRException {
+        final File jasperFile = new File(jasperFilename);
+        final long lastModified = jasperFile.lastModified();
+        final long length = jasperFile.length();
+        CompiledReport compiledReport = compiledReports.get(jasperFilename);
+        if (compiledReport == null || !compiledReport.isCurrent(lastModified, length)) {
+            try {
+                // the same report requested concurrently is loaded only once
+                compiledReport = compiledReports.compute(jasperFilename, (filename, cached) -> {
+                    if (cached != null && cached.isCurrent(lastModified, length)) {
+                        return cached;
+                    }
+                    long start = System.nanoTime();
+                    try {
+                        return new CompiledReport((JasperReport) JRLoader.loadObject(jasperFile), lastModified, length);
+                    } catch (JRException e) {
+                        throw new IllegalStateException(e);
+                    } finally {
+                        compileStatistics.add(filename, System.nanoTime() - start);
+                    }
+                });
+            } catch (IllegalStateException e) {
+                if (e.getCause() instanceof JRException) {
+                    throw (JRException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return compiledReport.jasperReport;
+    }
+
+    private void exportReportToPdfFile(JasperReportResultDto result, String pdfFilename) throws JRException {
+        long start = System.nanoTime();
+        JasperExportManager.exportReportToPdfFile(result.getJasperPrint(), pdfFilename);
+        exportStatistics.add(pdfFilename, System.nanoTime() - start);
+    }
+
+    /**
+     * Renders the report on the rendering threads; when all of them are busy and
+     * {@link #RENDERING_QUEUE_SIZE} reports are already waiting, on the caller's thread.
+     * Once the manager is {@link #destroy() destroyed} the future completes with a {@link RejectedExecutionException}.
+     */
+    private CompletableFuture<JasperReportResultDto> renderAsync(final ReportRendering rendering) {
+        final CompletableFuture<JasperReportResultDto> future = new CompletableFuture<JasperReportResultDto>();
+        try {
+            renderingExecutor.execute(() -> {
+                try {
+                    future.complete(rendering.render());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Returns the times spent so far compiling (loading), filling and exporting the reports.
+     */
+    public List<JasperReportStatisticsDto> getStatistics() {
+        List<JasperReportStatisticsDto> statistics = new ArrayList<JasperReportStatisticsDto>();
+        statistics.add(compileStatistics.toDto());
+        statistics.add(fillStatistics.toDto());
+        statistics.add(exportStatistics.toDto());
+        return statistics;
+    }
+
+    @Override
+    public void destroy() {
+        renderingExecutor.shutdown();
+    }
+
+    /**
+     * Exports the rows of the query to the file (Excel 97-2003 if its name ends with .xls),
+     * streaming them from the database without keeping the whole result in memory.
+     */
+    private void exportQueryToExcel(String queryString, File exportFile) throws OHException, IOException, SQLException {
+        try (DbPooledQuery.Cursor cursor = pooledQuery.openCursor(queryString, Collections.emptyList())) {
+            ExcelExporter xlsExport = new ExcelExporter();
+            if (exportFile.getName().endsWith(".xls"))
+                xlsExport.exportResultsetToExcelOLD(cursor.getResultSet(), exportFile);
+            else
+                xlsExport.exportResultsetToExcel(cursor.getResultSet(), exportFile);
+        }
+    }
+
     private String compileJasperFilename(String jasperFileName) {
         StringBuilder sbFilename = new StringBuilder();
         sbFilename.append("rpt");
@@ -799,4 +943,70 @@ public class JasperReportsManager {
 		sbFilename.append(defaultFileName);
         return  sbFilename.toString();
     }
+
+    private static ThreadPoolExecutor createRenderingExecutor() {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(RENDERING_THREADS, RENDERING_THREADS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(RENDERING_QUEUE_SIZE), runnable -> {
+                    Thread thread = new Thread(runnable, "report-rendering-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, (runnable, rejectingExecutor) -> {
+                    // unlike CallerRunsPolicy, the reports submitted after the shutdown are not silently discarded
+                    if (rejectingExecutor.isShutdown()) {
+                        throw new RejectedExecutionException("The report rendering has been shut down");
+                    }
+                    runnable.run();
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @FunctionalInterface
+    private interface ReportRendering {
+        JasperReportResultDto render() throws OHServiceException;
+    }
+
+    private static class CompiledReport {
+
+        private final JasperReport jasperReport;
+        private final long lastModified;
+        private final long length;
+
+        CompiledReport(JasperReport jasperReport, long lastModified, long length) {
+            this.jasperReport = jasperReport;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+
+        boolean isCurrent(long lastModified, long length) {
+            return this.lastModified == lastModified && this.length == length;
+        }
+    }
+
+    private class ReportStatistics {
+
+        private final String phase;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        ReportStatistics(String phase) {
+            this.phase = phase;
+        }
+
+        void add(String filename, long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            if (logger.isDebugEnabled()) {
+                logger.debug("{} {} in {} ms", phase, filename, TimeUnit.NANOSECONDS.toMillis(nanos));
+            }
+        }
+
+        JasperReportStatisticsDto toDto() {
+            return new JasperReportStatisticsDto(phase, count.sum(), TimeUnit.NANOSECONDS.toMillis(totalNanos.sum()),
+                    TimeUnit.NANOSECONDS.toMillis(maxNanos.get()));
+        }
+    }
 }
@@ -21,9 +21,15 @@
  */
 package org.isf.therapy.manager;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.isf.generaldata.MessageBundle;
 import org.isf.medicals.manager.MedicalBrowsingManager;
@@ -35,12 +41,12 @@ import org.isf.patient.model.Patient;
 import org.isf.sms.manager.SmsManager;
 import org.isf.sms.model.Sms;
 import org.isf.sms.service.SmsOperations;
+import org.isf.therapy.model.StockShortfall;
 import org.isf.therapy.model.Therapy;
 import org.isf.therapy.model.TherapyRow;
 import org.isf.therapy.service.TherapyIoOperations;
 import org.isf.utils.exception.OHServiceException;
 import org.isf.utils.time.TimeTools;
-import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -66,6 +72,9 @@ public class TherapyManager {
 	@Autowired
 	private MedicalBrowsingManager medManager;
 	
+	@Autowired
+	private MovWardBrowserManager wardManager;
+	
 	/**
 	 * Returns a {@link Therapy} object from a {@link TherapyRow} (DB record)
 	 * @param th - the {@link TherapyRow}
@@ -73,17 +82,42 @@ public class TherapyManager {
 	 * @throws OHServiceException
 	 */
 	public Therapy createTherapy(TherapyRow th) throws OHServiceException {
-		return createTherapy(th.getTherapyID(), th.getPatient().getCode(), th.getMedical(), th.getQty(),
+		return createTherapy(th, medManager.getMedical(th.getMedical()));
+	}
+
+	/**
+	 * Returns a {@link Therapy} object from a {@link TherapyRow} (DB record) and its {@link Medical}
+	 * @param th - the {@link TherapyRow}
+	 * @param med - the {@link Medical} of the {@link TherapyRow}
+	 * @return the {@link Therapy}
+	 */
+	private Therapy createTherapy(TherapyRow th, Medical med) {
+		return createTherapy(th.getTherapyID(), th.getPatient().getCode(), med, th.getQty(),
 				th.getStartDate(), th.getEndDate(), th.getFreqInPeriod(), th.getFreqInDay(),
 				th.getNote(), th.isNotify(), th.isSms());
 	}
+
+	/**
+	 * Returns the {@link Medical} of a {@link TherapyRow}, fetching it only once
+	 * @param th - the {@link TherapyRow}
+	 * @param medicals - the {@link Medical}s already fetched, by code
+	 * @return the {@link Medical}
+	 * @throws OHServiceException
+	 */
+	private Medical getMedical(TherapyRow th, Map<Integer, Medical> medicals) throws OHServiceException {
+		Medical med = medicals.get(th.getMedical());
+		if (med == null) {
+			med = medManager.getMedical(th.getMedical());
+			medicals.put(th.getMedical(), med);
+		}
+		return med;
+	}
 	
 	/**
-	 * Creates a {@link Therapy} from its parameters, fetching the {@link Medical}
-	 * and building the array of Dates ({@link GregorianCalendar})
+	 * Creates a {@link Therapy} from its parameters, building the array of Dates ({@link GregorianCalendar})
 	 * @param therapyID
 	 * @param patID
-	 * @param medId
+	 * @param med
 	 * @param qty
 	 * @param startDate
 	 * @param endDate
@@ -94,9 +128,9 @@ public class TherapyManager {
 	 * @param sms
 	 * @return the {@link Therapy}
 	 */
-	private Therapy createTherapy(int therapyID, int patID, Integer medId, Double qty,
+	private Therapy createTherapy(int therapyID, int patID, Medical med, Double qty,
 			GregorianCalendar startDate, GregorianCalendar endDate, int freqInPeriod,
-			int freqInDay, String note, boolean notify, boolean sms) throws OHServiceException {
+			int freqInDay, String note, boolean notify, boolean sms) {
 
 		ArrayList<GregorianCalendar> datesArray = new ArrayList<GregorianCalendar>();
 
@@ -125,7 +159,6 @@ public class TherapyManager {
 			//System.out.println(formatDate(dates[i]));
 		}
 		
-		Medical med = medManager.getMedical(medId);
 		Therapy th = new Therapy(therapyID,	patID, dates, med, qty, "", freqInDay, note, notify, sms);
 		datesArray.clear();
 		dates = null;
@@ -143,10 +176,11 @@ public class TherapyManager {
 		
 		if (thRows != null) {
 			ArrayList<Therapy> therapies = new ArrayList<Therapy>();
+			Map<Integer, Medical> medicals = new HashMap<Integer, Medical>();
 
 			for (TherapyRow thRow : thRows) {
 
-				therapies.add(createTherapy(thRow));
+				therapies.add(createTherapy(thRow, getMedical(thRow, medicals)));
 			}
 			return therapies;
 		} else {
@@ -180,6 +214,7 @@ public class TherapyManager {
 	
 	/**
 	 * replace all {@link TherapyRow}s (therapies) for related Patient
+	 * The {@link Sms} reminders of the whole plan are built in memory and saved all together
 	 * 
 	 * @param thRows - the list of {@link TherapyRow}s (therapies)
 	 * @return <code>true</code> if the row has been inserted, <code>false</code> otherwise
@@ -188,36 +223,43 @@ public class TherapyManager {
 	@Transactional(rollbackFor=OHServiceException.class)
 	public boolean newTherapies(ArrayList<TherapyRow> thRows) throws OHServiceException {
 		if (!thRows.isEmpty()) {
-			DateTime now = new DateTime();
-
-
 			int patID = thRows.get(0).getPatient().getCode();
 			// FIXME FIXME			ioOperations.deleteAllTherapies(patID);
 			smsOp.deleteByModuleModuleID("therapy", String.valueOf(patID));
 
+			GregorianCalendar endOfToday = TimeTools.getDateToday24();
+			Map<Integer, Medical> medicals = new HashMap<Integer, Medical>();
+			Patient pat = null;
+			List<Sms> smsList = new ArrayList<Sms>();
 			for (TherapyRow thRow : thRows) {
 
 				ioOperations.newTherapy(thRow);
 				if (thRow.isSms()) {
-					Therapy th = createTherapy(thRow);
+					Therapy th = createTherapy(thRow, getMedical(thRow, medicals));
+					String smsText = prepareSmsFromTherapy(th);
 					GregorianCalendar[] dates = th.getDates();
 					for (GregorianCalendar date : dates) {
 						date.set(Calendar.HOUR_OF_DAY, 8);
-						if (date.after(TimeTools.getDateToday24())) {
-							Patient pat = patientManager.getPatientById(patID);
+						if (date.after(endOfToday)) {
+							if (pat == null) {
+								pat = patientManager.getPatientById(patID);
+							}
 
 							Sms sms = new Sms();
 							sms.setSmsDateSched(date.getTime());
 							sms.setSmsNumber(pat.getTelephone());
-							sms.setSmsText(prepareSmsFromTherapy(th));
+							sms.setSmsText(smsText);
 							sms.setSmsUser(UserBrowsingManager.getCurrentUser());
 							sms.setModule("therapy");
 							sms.setModuleID(String.valueOf(patID));
-							smsOp.saveOrUpdate(sms);
+							smsList.add(sms);
 						}
 					}
 				}
 			}
+			if (!smsList.isEmpty()) {
+				smsOp.saveOrUpdate(smsList);
+			}
 		}
 		return true;
 	}
@@ -268,51 +310,61 @@ public class TherapyManager {
 	 */
 	@Transactional(rollbackFor=OHServiceException.class)
 	public ArrayList<Medical> getMedicalsOutOfStock(ArrayList<Therapy> therapies) throws OHServiceException {
-		MovWardBrowserManager wardManager = new MovWardBrowserManager();
-		MedicalBrowsingManager medManager = new MedicalBrowsingManager();
 		ArrayList<Medical> medOutStock = new ArrayList<Medical>();
+		for (StockShortfall shortfall : getStockShortfalls(therapies)) {
+			medOutStock.add(shortfall.getMedical());
+		}
+		return medOutStock;
+	}
 
-		ArrayList<Medical> medArray = medManager.getMedicals();
-
-		Double neededQty = 0.;
-		Double actualQty = 0.;
+	/**
+	 * Returns the projected shortfalls of the {@link Medical}s needed by the specified {@link Therapy}s:
+	 * the quantity needed from today on by all the therapies of a medical is compared with
+	 * its quantity in the main store and in the wards, read for all the medicals at once.
+	 * @param therapies - the {@link Therapy}s
+	 * @return the {@link StockShortfall}s, in order of first therapy, one for each {@link Medical} not enough
+	 * @throws OHServiceException
+	 */
+	@Transactional(rollbackFor=OHServiceException.class)
+	public List<StockShortfall> getStockShortfalls(Collection<Therapy> therapies) throws OHServiceException {
+		long today = toEpochDay(new GregorianCalendar());
 
+		Map<Integer, Medical> medicals = new LinkedHashMap<Integer, Medical>();
+		Map<Integer, Double> neededQuantities = new HashMap<Integer, Double>();
 		for (Therapy th : therapies) {
-
-			// CALCULATING NEEDINGS
-			Double qty = th.getQty();
-			int freq = th.getFreqInDay();
-			GregorianCalendar now = new GregorianCalendar();
-			GregorianCalendar todayDate = new GregorianCalendar(now
-					.get(GregorianCalendar.YEAR), now
-					.get(GregorianCalendar.MONTH), now
-					.get(GregorianCalendar.DAY_OF_MONTH));
-
-			// todayDate.set(2010, 0, 1);
 			int dayCount = 0;
 			for (GregorianCalendar date : th.getDates()) {
-				if (date.after(todayDate) || date.equals(todayDate))
+				if (toEpochDay(date) >= today)
 					dayCount++;
 			}
-
 			if (dayCount != 0) {
+				Integer medId = th.getMedical().getCode();
+				medicals.putIfAbsent(medId, th.getMedical());
+				neededQuantities.merge(medId, th.getQty() * th.getFreqInDay() * dayCount, Double::sum);
+			}
+		}
 
-				neededQty = qty * freq * dayCount;
-
-				// CALCULATING STOCK QUANTITIES
-				Medical med = medArray.get(medArray.indexOf(th.getMedical()));
-				actualQty = med.getInitialqty() + med.getInqty() - med.getOutqty(); // MAIN STORE
-				int currentQuantity = wardManager.getCurrentQuantityInWard(null, med);
-				actualQty += currentQuantity;
-
-				if (neededQty > actualQty) {
-					if(!medOutStock.contains(med)){
-						medOutStock.add(med);
-					}
-				}
+		List<StockShortfall> shortfalls = new ArrayList<StockShortfall>();
+		if (medicals.isEmpty())
+			return shortfalls;
+		Map<Integer, Double> actualQuantities = wardManager.getStockQuantities(medicals.keySet());
+		for (Medical med : medicals.values()) {
+			double neededQty = neededQuantities.get(med.getCode());
+			Double actualQty = actualQuantities.get(med.getCode());
+			double availableQty = actualQty != null ? actualQty : 0.;
+			if (neededQty > availableQty) {
+				shortfalls.add(new StockShortfall(med, neededQty, availableQty));
 			}
 		}
-		return medOutStock;
+		return shortfalls;
+	}
+
+	/**
+	 * @param date - a date
+	 * @return the number of days from the epoch to the day of the date, regardless the time
+	 */
+	private static long toEpochDay(GregorianCalendar date) {
+		return LocalDate.of(date.get(GregorianCalendar.YEAR), date.get(GregorianCalendar.MONTH) + 1, date.get(GregorianCalendar.DAY_OF_MONTH)).toEpochDay();
 	}
 
 	public TherapyRow newTherapy(int therapyID, int patID, GregorianCalendar startDate, GregorianCalendar endDate,
@@ -0,0 +1,68 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.therapy.model;
+
+import org.isf.medicals.model.Medical;
+
+/**
+ * Bean to host the projected shortage of a {@link Medical}:
+ * the quantity needed by a set of {@link Therapy}s from today on
+ * and the quantity available in the main store and in the wards.
+ */
+public class StockShortfall {
+
+	private Medical medical;
+	private double neededQty;
+	private double availableQty;
+
+	/**
+	 * 
+	 * @param medical
+	 * @param neededQty
+	 * @param availableQty
+	 */
+	public StockShortfall(Medical medical, double neededQty, double availableQty) {
+		super();
+		this.medical = medical;
+		this.neededQty = neededQty;
+		this.availableQty = availableQty;
+	}
+
+	public Medical getMedical() {
+		return medical;
+	}
+
+	public double getNeededQty() {
+		return neededQty;
+	}
+
+	public double getAvailableQty() {
+		return availableQty;
+	}
+
+	/**
+	 * @return the quantity missing to complete the therapies
+	 */
+	public double getShortfall() {
+		return neededQty - availableQty;
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.utils.db;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * Caching of the reference data (<code>@Cacheable</code> methods of the <code>IoOperations</code> classes).
+ * <p>
+ * The cache is checked inside the exception translation and outside the transactions of the <code>IoOperations</code>;
+ * the entries are evicted again once the outer transaction has been committed (see {@link ReferenceDataCache}).
+ * The maximum number of entries of each cache is set by <code>cache.referencedata.size</code>
+ * and the seconds an entry is kept for, to read again the changes of the other clients,
+ * by <code>cache.referencedata.expireAfterWrite</code> in <code>database.properties</code>.
+ */
+@Configuration
+@EnableCaching(proxyTargetClass = true, order = Ordered.HIGHEST_PRECEDENCE + 1)
+public class CacheConfig {
+
+	@Bean
+	public ReferenceDataCacheManager cacheManager(
+			@Value("${cache.referencedata.size:100}") int maxEntries,
+			@Value("${cache.referencedata.expireAfterWrite:300}") long expireAfterWriteSeconds) {
+		return new ReferenceDataCacheManager(maxEntries, expireAfterWriteSeconds);
+	}
+}
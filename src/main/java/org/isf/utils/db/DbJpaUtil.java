@@ -96,6 +96,13 @@ public class DbJpaUtil
 		return;
 	}
 	
+	/**
+	 * @return the application context of the persistence unit
+	 */
+	public ApplicationContext getApplicationContext() {
+		return context;
+	}
+
 	/**
 	 * @return the entityManager
 	 */
@@ -0,0 +1,408 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.utils.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.isf.generaldata.MessageBundle;
+import org.isf.menu.manager.Context;
+import org.isf.utils.exception.OHException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+/**
+ * Executes raw SQL on the connections of the pool of the persistence unit ({@code springDataSource}).
+ * <p>
+ * Each call borrows a connection and gives it back before returning, so that calls from different threads
+ * run in parallel, each statement commits on its own and no statement or result set is left open;
+ * the rows are read through a {@link RowMapper}. Large results are read through a {@link Cursor},
+ * which keeps its connection until closed and fetches the rows from the server by blocks.
+ * <p>
+ * Classes outside of Spring get the pool of the application through {@link #getInstance()}.
+ */
+@Component
+public class DbPooledQuery implements InitializingBean, DisposableBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(DbPooledQuery.class);
+
+	/** rows fetched at a time by a {@link Cursor}, unless given */
+	public static final int DEFAULT_FETCH_SIZE = 1000;
+
+	private static volatile DbPooledQuery instance;
+
+	@Autowired
+	private DataSource dataSource;
+
+	private int fetchSize = DEFAULT_FETCH_SIZE;
+
+	/**
+	 * Returns the instance of the application context, or, out of it, the one of the persistence unit of {@link DbJpaUtil}
+	 *
+	 * @return the {@link DbPooledQuery}
+	 */
+	public static DbPooledQuery getInstance() {
+		DbPooledQuery pooledQuery = instance;
+		if (pooledQuery != null) {
+			return pooledQuery;
+		}
+		ApplicationContext context = Context.getApplicationContext();
+		if (context == null) {
+			context = new DbJpaUtil().getApplicationContext();
+		}
+		return context.getBean(DbPooledQuery.class);
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		synchronized (DbPooledQuery.class) {
+			if (instance == null) {
+				instance = this;
+			}
+		}
+	}
+
+	@Override
+	public void destroy() {
+		synchronized (DbPooledQuery.class) {
+			if (instance == this) {
+				instance = null;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of rows fetched at a time by the {@link Cursor}s opened without a fetch size
+	 */
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+
+	/**
+	 * Borrows a connection from the pool, for the APIs needing one (e.g. JasperReports);
+	 * the caller must close it, which gives it back to the pool
+	 *
+	 * @return the {@link Connection}
+	 * @throws OHException
+	 */
+	public Connection getConnection() throws OHException {
+		try {
+			return dataSource.getConnection();
+		} catch (SQLException e) {
+			throw new OHException(MessageBundle.getMessage("angal.sql.problemsoccurredwithserverconnection"), e);
+		}
+	}
+
+	/**
+	 * Executes a query and maps its rows
+	 *
+	 * @param aQuery - the query, with a <code>?</code> for each parameter
+	 * @param params - the parameters
+	 * @param mapper - the {@link RowMapper} of the rows
+	 * @return the list of the rows mapped
+	 * @throws OHException
+	 */
+	public <T> List<T> query(String aQuery, List<?> params, RowMapper<T> mapper) throws OHException {
+		_log(aQuery, params);
+		try (Connection conn = getConnection();
+				PreparedStatement pstmt = _prepare(conn, aQuery, params);
+				ResultSet resultSet = pstmt.executeQuery()) {
+			List<T> rows = new ArrayList<T>();
+			while (resultSet.next()) {
+				rows.add(mapper.mapRow(resultSet, rows.size()));
+			}
+			return rows;
+		} catch (SQLException e) {
+			throw SQLExceptions.translate(e, false);
+		}
+	}
+
+	/**
+	 * Executes a query and maps its first row
+	 *
+	 * @param aQuery - the query, with a <code>?</code> for each parameter
+	 * @param params - the parameters
+	 * @param mapper - the {@link RowMapper} of the row
+	 * @return the first row mapped, or <code>null</code> if there are no rows
+	 * @throws OHException
+	 */
+	public <T> T queryForObject(String aQuery, List<?> params, RowMapper<T> mapper) throws OHException {
+		_log(aQuery, params);
+		try (Connection conn = getConnection();
+				PreparedStatement pstmt = _prepare(conn, aQuery, params)) {
+			pstmt.setMaxRows(1);
+			try (ResultSet resultSet = pstmt.executeQuery()) {
+				return resultSet.next() ? mapper.mapRow(resultSet, 0) : null;
+			}
+		} catch (SQLException e) {
+			throw SQLExceptions.translate(e, false);
+		}
+	}
+
+	/**
+	 * Executes a query and tells if it returns any row
+	 *
+	 * @param aQuery - the query, with a <code>?</code> for each parameter
+	 * @param params - the parameters
+	 * @return <code>true</code> if the query returns at least one row
+	 * @throws OHException
+	 */
+	public boolean exists(String aQuery, List<?> params) throws OHException {
+		return queryForObject(aQuery, params, (resultSet, rowNum) -> Boolean.TRUE) != null;
+	}
+
+	/**
+	 * Executes an insert-update-delete statement
+	 *
+	 * @param aQuery - the statement, with a <code>?</code> for each parameter
+	 * @param params - the parameters
+	 * @return the number of rows changed
+	 * @throws OHException
+	 */
+	public int update(String aQuery, List<?> params) throws OHException {
+		_log(aQuery, params);
+		try (Connection conn = getConnection();
+				PreparedStatement pstmt = _prepare(conn, aQuery, params)) {
+			return pstmt.executeUpdate();
+		} catch (SQLException e) {
+			throw SQLExceptions.translate(e, true);
+		}
+	}
+
+	/**
+	 * Executes an insert statement and maps the keys generated
+	 *
+	 * @param aQuery - the statement, with a <code>?</code> for each parameter
+	 * @param params - the parameters
+	 * @param keyMapper - the {@link RowMapper} of the keys
+	 * @return the list of the keys mapped, empty if no key has been generated
+	 * @throws OHException
+	 */
+	public <T> List<T> updateReturningKeys(String aQuery, List<?> params, RowMapper<T> keyMapper) throws OHException {
+		_log(aQuery, params);
+		try (Connection conn = getConnection();
+				PreparedStatement pstmt = conn.prepareStatement(aQuery, Statement.RETURN_GENERATED_KEYS)) {
+			_setParameters(pstmt, params);
+			pstmt.executeUpdate();
+			try (ResultSet keys = pstmt.getGeneratedKeys()) {
+				List<T> mapped = new ArrayList<T>();
+				while (keys.next()) {
+					mapped.add(keyMapper.mapRow(keys, mapped.size()));
+				}
+				return mapped;
+			}
+		} catch (SQLException e) {
+			throw SQLExceptions.translate(e, true);
+		}
+	}
+
+	/**
+	 * Opens a forward-only, read-only {@link Cursor} on a query, fetching {@link #getFetchSize()} rows at a time
+	 *
+	 * @param aQuery - the query, with a <code>?</code> for each parameter
+	 * @param params - the parameters
+	 * @return the {@link Cursor}, to be closed by the caller
+	 * @throws OHException
+	 */
+	public Cursor openCursor(String aQuery, List<?> params) throws OHException {
+		return openCursor(aQuery, params, fetchSize);
+	}
+
+	/**
+	 * Opens a forward-only, read-only {@link Cursor} on a query
+	 *
+	 * @param aQuery - the query, with a <code>?</code> for each parameter
+	 * @param params - the parameters
+	 * @param fetchSize - the number of rows fetched at a time
+	 * @return the {@link Cursor}, to be closed by the caller
+	 * @throws OHException
+	 */
+	public Cursor openCursor(String aQuery, List<?> params, int fetchSize) throws OHException {
+		_log(aQuery, params);
+		Connection conn = getConnection();
+		PreparedStatement pstmt = null;
+		try {
+			pstmt = conn.prepareStatement(aQuery, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			pstmt.setFetchSize(_getStreamingFetchSize(conn, fetchSize));
+			_setParameters(pstmt, params);
+			return new Cursor(conn, pstmt, pstmt.executeQuery());
+		} catch (SQLException e) {
+			_closeQuietly(pstmt);
+			_closeQuietly(conn);
+			throw SQLExceptions.translate(e, false);
+		}
+	}
+
+	/**
+	 * MySQL Connector/J reads the whole result in memory unless the fetch size is
+	 * Integer.MIN_VALUE (row by row) or the url enables useCursorFetch (by blocks)
+	 */
+	private static int _getStreamingFetchSize(Connection conn, int fetchSize) throws SQLException {
+		String url = conn.getMetaData().getURL();
+		if (url != null && url.startsWith("jdbc:mysql:") && !url.contains("useCursorFetch=true")) {
+			return Integer.MIN_VALUE;
+		}
+		return fetchSize;
+	}
+
+	private static PreparedStatement _prepare(Connection conn, String aQuery, List<?> params) throws SQLException {
+		PreparedStatement pstmt = conn.prepareStatement(aQuery);
+		try {
+			_setParameters(pstmt, params);
+		} catch (SQLException e) {
+			pstmt.close();
+			throw e;
+		}
+		return pstmt;
+	}
+
+	private static void _setParameters(PreparedStatement pstmt, List<?> params) throws SQLException {
+		for (int i = 0; i < params.size(); i++) {
+			pstmt.setObject(i + 1, params.get(i));
+		}
+	}
+
+	private static void _closeQuietly(AutoCloseable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (Exception e) {
+				logger.warn("Closing {}: {}", closeable, e.getMessage());
+			}
+		}
+	}
+
+	private static void _log(String aQuery, List<?> params) {
+		if (logger.isDebugEnabled()) {
+			logger.debug("Query {}", aQuery.replace("'", "\\'"));
+			if (!params.isEmpty()) {
+				logger.trace("	parameters : {}", params);
+			}
+		}
+	}
+
+	/**
+	 * Maps a row of a {@link ResultSet}
+	 */
+	@FunctionalInterface
+	public interface RowMapper<T> {
+
+		/**
+		 * @param resultSet - the {@link ResultSet}, on the row to map
+		 * @param rowNum - the number of the row, starting from 0
+		 * @return the row mapped
+		 * @throws SQLException
+		 */
+		T mapRow(ResultSet resultSet, int rowNum) throws SQLException;
+	}
+
+	/**
+	 * A query whose rows are read while fetched from the server, holding a connection of the pool until closed
+	 */
+	public static final class Cursor implements AutoCloseable {
+
+		private final Connection connection;
+		private final Statement statement;
+		private final ResultSet resultSet;
+		private int rowNum = -1;
+		private boolean closed;
+
+		Cursor(Connection connection, Statement statement, ResultSet resultSet) {
+			this.connection = connection;
+			this.statement = statement;
+			this.resultSet = resultSet;
+		}
+
+		/**
+		 * Moves to the next row
+		 *
+		 * @return <code>false</code> if there are no more rows
+		 * @throws OHException
+		 */
+		public boolean next() throws OHException {
+			try {
+				if (resultSet.next()) {
+					rowNum++;
+					return true;
+				}
+				return false;
+			} catch (SQLException e) {
+				throw SQLExceptions.translate(e, false);
+			}
+		}
+
+		/**
+		 * Maps the current row
+		 *
+		 * @param mapper - the {@link RowMapper} of the row
+		 * @return the row mapped
+		 * @throws OHException
+		 */
+		public <T> T get(RowMapper<T> mapper) throws OHException {
+			try {
+				return mapper.mapRow(resultSet, rowNum);
+			} catch (SQLException e) {
+				throw SQLExceptions.translate(e, false);
+			}
+		}
+
+		/**
+		 * @return the {@link ResultSet} read, valid until the cursor is closed
+		 */
+		public ResultSet getResultSet() {
+			return resultSet;
+		}
+
+		public boolean isClosed() {
+			return closed;
+		}
+
+		/**
+		 * Closes the result and gives the connection back to the pool
+		 */
+		@Override
+		public void close() {
+			if (!closed) {
+				closed = true;
+				_closeQuietly(resultSet);
+				_closeQuietly(statement);
+				_closeQuietly(connection);
+			}
+		}
+	}
+}
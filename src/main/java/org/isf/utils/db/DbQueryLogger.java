@@ -21,57 +21,84 @@
  */
 package org.isf.utils.db;
 
-import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.SQLIntegrityConstraintViolationException;
 import java.sql.Statement;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-import org.isf.generaldata.MessageBundle;
+import javax.sql.RowSetMetaData;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetProvider;
+
 import org.isf.utils.exception.OHException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Class that executes a query using the connection DbSingleJpaConn
- * The various methods that open a connection with the 
- * autocommit flag set to false have the responsibility
- * of doing the commit/rollback operation
+ * Class that executes a query on a connection borrowed from the pool of {@link DbPooledQuery},
+ * given back before returning: the ResultSets returned are disconnected copies of the rows,
+ * except the one of {@link #getStreamedData(String)}.
+ * The statements executed with the autocommit flag set to false keep their connection,
+ * and run in a single transaction with the following ones of the same instance, until
+ * {@link #commit()} or {@link #rollback()}, or until a statement with the autocommit flag set to true commits them;
+ * an instance holding a transaction must not be shared between threads.
+ * New code should use {@link DbPooledQuery} directly
  */
 public class DbQueryLogger {
 	
 	protected Logger logger = LoggerFactory.getLogger(DbQueryLogger.class);
+
+	private final DbPooledQuery pooledQuery;
+
+	/** the connection of the statements not committed yet, <code>null</code> if none */
+	private Connection transaction;
+
+	public DbQueryLogger() {
+		this(DbPooledQuery.getInstance());
+	}
+
+	public DbQueryLogger(DbPooledQuery pooledQuery) {
+		this.pooledQuery = pooledQuery;
+	}
     
 	/**
      * method that executes a query and returns a resultset
      * @param aQuery
      * @param autocommit
      * @return "ResultSet"
-     * @throws SQLException
-     * @throws IOException
+     * @throws OHException
      */
     public ResultSet getData(String aQuery, boolean autocommit) throws OHException {
-    	if (logger.isDebugEnabled()) {
-		    logger.debug("Query {}", sanitize(aQuery));
-		}
-    	try{
-	        Connection conn = DbSingleJpaConn.getConnection();
-	        conn.setAutoCommit(autocommit);
-	        Statement stat = conn.createStatement();
-	        return stat.executeQuery(aQuery);
-        }catch (OHException e){
-            throw e;
+    	return getDataWithParams(aQuery, Collections.emptyList(), autocommit);
+    }
+    
+    /**
+     * method that executes a query and returns a forward-only, read-only resultset
+     * whose rows are fetched from the server while reading it, for exports of large results;
+     * the caller must close it, or its statement, once done, which gives the connection back to the pool
+     * @param aQuery
+     * @return "ResultSet"
+     * @throws OHException
+     * @deprecated use {@link DbPooledQuery#openCursor(String, List)} instead
+     */
+    @Deprecated
+    public ResultSet getStreamedData(String aQuery) throws OHException {
+    	DbPooledQuery.Cursor cursor = pooledQuery.openCursor(aQuery, Collections.emptyList());
+    	try {
+    		return _closingCursor(cursor);
     	} catch (SQLException e) {
-    		throw new OHException(MessageBundle.getMessage("angal.sql.problemsoccurredwiththesqlistruction"), e); //, e); // + ": " + aQuery, e);
-    	} catch (Exception e) {
-    		throw new OHException(MessageBundle.getMessage("angal.sql.problemsoccurredwithserverconnection"), e); 
+    		cursor.close();
+    		throw SQLExceptions.translate(e, false);
     	}
     }
-    
+
     /**
      * method that executes a PreparedStatement with params and returns a resultset
      * @param aQuery
@@ -81,29 +108,12 @@ public class DbQueryLogger {
      * @throws OHException
      */
     public ResultSet getDataWithParams(String aQuery, List<?> params, boolean autocommit) throws OHException {
-    	if (logger.isDebugEnabled()) {
-		    logger.debug("Query {}", sanitize(aQuery));
-			if (!params.isEmpty())
-				logger.trace("	parameters : {}", sanitize(params));
-		}
-    	ResultSet results = null;
-    	Connection conn = null;
-    	try {
-    		conn = DbSingleJpaConn.getConnection();
-    		conn.setAutoCommit(autocommit);
-    		PreparedStatement pstmt = conn.prepareStatement(aQuery);
-    		for (int i = 0; i < params.size(); i++) {
-    			pstmt.setObject(i + 1, params.get(i));
+    	return _execute(autocommit, false, conn -> {
+    		try (PreparedStatement pstmt = _prepare(conn, aQuery, params, Statement.NO_GENERATED_KEYS);
+    				ResultSet results = pstmt.executeQuery()) {
+    			return _disconnect(results);
     		}
-    		results = pstmt.executeQuery();
-        }catch (OHException e){
-            throw e;
-    	} catch (SQLException e) {
-    		throw new OHException(MessageBundle.getMessage("angal.sql.problemsoccurredwiththesqlistruction"), e); // + ": " + aQuery, e);
-    	} catch (Exception e) {
-    		throw new OHException(MessageBundle.getMessage("angal.sql.problemsoccurredwithserverconnection"), e); 
-    	}
-    	return results;
+    	});
     }
 
     /**
@@ -112,27 +122,10 @@ public class DbQueryLogger {
      * @param aQuery
      * @param autocommit
      * @return Boolean True/False
-     * @throws SQLException
-     * @throws IOException
+     * @throws OHException
      */
     public boolean setData(String aQuery, boolean autocommit) throws OHException {
-    	if (logger.isDebugEnabled()) {
-		    logger.debug("Query {}", sanitize(aQuery));
-		}
-    	try{
-	        Connection conn = DbSingleJpaConn.getConnection();
-	        conn.setAutoCommit(autocommit);
-	        Statement stat = conn.createStatement();
-	        return stat.executeUpdate(aQuery) > 0;
-        }catch (OHException e){
-            throw e;
-    	} catch (SQLIntegrityConstraintViolationException e) {
-    		throw new OHException(MessageBundle.getMessage("angal.sql.theselecteditemisstillusedsomewhere"), e); // + ": " + aQuery, e);
-    	} catch (SQLException e) {
-    		throw new OHException(MessageBundle.getMessage("angal.sql.problemsoccurredwiththesqlistruction"), e); // + ": " + aQuery, e);
-    	} catch (Exception e) {
-    		throw new OHException(MessageBundle.getMessage("angal.sql.problemsoccurredwithserverconnection"), e); 
-    	}
+    	return setDataWithParams(aQuery, Collections.emptyList(), autocommit);
     }
     
     /**
@@ -145,29 +138,11 @@ public class DbQueryLogger {
      * @throws OHException
      */
     public boolean setDataWithParams(String aQuery, List<?> params, boolean autocommit) throws OHException {
-    	if (logger.isDebugEnabled()) {
-		    logger.debug("Query {}", sanitize(aQuery));
-			if (!params.isEmpty())
-				logger.trace("	parameters : {}", sanitize(params));
-		}
-    	Connection conn = null;
-    	try {
-    		conn = DbSingleJpaConn.getConnection();
-    		conn.setAutoCommit(autocommit);
-    		PreparedStatement pstmt = conn.prepareStatement(aQuery);
-    		for (int i = 0; i < params.size(); i++) {
-    			pstmt.setObject(i+1, params.get(i));
+    	return _execute(autocommit, true, conn -> {
+    		try (PreparedStatement pstmt = _prepare(conn, aQuery, params, Statement.NO_GENERATED_KEYS)) {
+    			return pstmt.executeUpdate() > 0;
     		}
-    		return pstmt.executeUpdate() > 0;
-        }catch (OHException e){
-            throw e;
-    	} catch (SQLIntegrityConstraintViolationException e) {
-    		throw new OHException(MessageBundle.getMessage("angal.sql.theselecteditemisstillusedsomewhere"), e); // + ": " + aQuery, e);
-    	} catch (SQLException e) {
-    		throw new OHException(MessageBundle.getMessage("angal.sql.problemsoccurredwiththesqlistruction"), e); // + ": " + aQuery, e);
-    	} catch (Exception e) {
-    		throw new OHException(MessageBundle.getMessage("angal.sql.problemsoccurredwithserverconnection"), e); 
-    	}
+    	});
     }
     
 	/**
@@ -177,26 +152,10 @@ public class DbQueryLogger {
      * @param aQuery
      * @param autocommit
      * @return ResultSet
-     * @throws SQLException
-     * @throws IOException
+     * @throws OHException
      */
     public ResultSet setDataReturnGeneratedKey(String aQuery, boolean autocommit) throws OHException {
-    	if (logger.isDebugEnabled()) {
-		    logger.debug("Query {}", sanitize(aQuery));
-		}
-    	try{
-	        Connection conn = DbSingleJpaConn.getConnection();
-	        conn.setAutoCommit(autocommit);
-	        Statement stat = conn.createStatement();
-	        stat.execute(aQuery,Statement.RETURN_GENERATED_KEYS);
-	        return stat.getGeneratedKeys();
-        }catch (OHException e){
-            throw e;
-    	} catch (SQLException e) {
-    		throw new OHException(MessageBundle.getMessage("angal.sql.problemsoccurredwiththesqlistruction"), e); // + ": " + aQuery, e);
-    	} catch (Exception e) {
-    		throw new OHException(MessageBundle.getMessage("angal.sql.problemsoccurredwithserverconnection"), e); 
-    	}
+    	return setDataReturnGeneratedKeyWithParams(aQuery, Collections.emptyList(), autocommit);
     }
     
     /**
@@ -210,27 +169,14 @@ public class DbQueryLogger {
      * @throws OHException
      */
     public ResultSet setDataReturnGeneratedKeyWithParams(String aQuery, List<?> params, boolean autocommit) throws OHException {
-    	if (logger.isDebugEnabled()) {
-		    logger.debug("Query {}", sanitize(aQuery));
-			if (!params.isEmpty())
-				logger.trace("	parameters : {}", sanitize(params));
-		}
-    	try{
-	        Connection conn = DbSingleJpaConn.getConnection();
-	        conn.setAutoCommit(autocommit);
-	        PreparedStatement pstmt = conn.prepareStatement(aQuery, Statement.RETURN_GENERATED_KEYS);
-    		for (int i = 0; i < params.size(); i++) {
-    			pstmt.setObject(i+1, params.get(i));
+    	return _execute(autocommit, true, conn -> {
+    		try (PreparedStatement pstmt = _prepare(conn, aQuery, params, Statement.RETURN_GENERATED_KEYS)) {
+    			pstmt.execute();
+    			try (ResultSet keys = pstmt.getGeneratedKeys()) {
+    				return _disconnect(keys);
+    			}
     		}
-    		pstmt.execute();
-	        return pstmt.getGeneratedKeys();
-        }catch (OHException e){
-            throw e;
-    	} catch (SQLException e) {
-    		throw new OHException(MessageBundle.getMessage("angal.sql.problemsoccurredwiththesqlistruction"), e); // + ": " + aQuery, e);
-    	} catch (Exception e) {
-    		throw new OHException(MessageBundle.getMessage("angal.sql.problemsoccurredwithserverconnection"), e); 
-    	}
+    	});
     }
     
     /**
@@ -239,50 +185,170 @@ public class DbQueryLogger {
      * the Recordset
      * @param aQuery
      * @return Boolean True/False
-     * @throws SQLException
-     * @throws IOException
+     * @throws OHException
      */
     public boolean isData(String aQuery) throws OHException {
-    	if (logger.isDebugEnabled()) {
-		    logger.debug("Query {}", sanitize(aQuery));
-		}
+    	// within the transaction, if any, so that its statements not committed are seen
+    	return _execute(transaction == null, false, conn -> {
+    		try (PreparedStatement pstmt = _prepare(conn, aQuery, Collections.emptyList(), Statement.NO_GENERATED_KEYS);
+    				ResultSet results = pstmt.executeQuery()) {
+    			return results.next();
+    		}
+    	});
+    }
+
+    /**
+     * method that commits the statements executed with the autocommit flag set to false,
+     * giving their connection back to the pool
+     * @throws OHException
+     */
+    public void commit() throws OHException {
+    	Connection conn = transaction;
+    	transaction = null;
+    	if (conn != null) {
+    		try {
+    			conn.commit();
+    		} catch (SQLException e) {
+    			_rollbackQuietly(conn);
+    			throw SQLExceptions.translate(e, true);
+    		} finally {
+    			_release(conn);
+    		}
+    	}
+    }
+
+    /**
+     * method that rolls back the statements executed with the autocommit flag set to false,
+     * giving their connection back to the pool
+     * @throws OHException
+     */
+    public void rollback() throws OHException {
+    	Connection conn = transaction;
+    	transaction = null;
+    	if (conn != null) {
+    		try {
+    			conn.rollback();
+    		} catch (SQLException e) {
+    			throw SQLExceptions.translate(e, false);
+    		} finally {
+    			_release(conn);
+    		}
+    	}
+    }
+
+    /**
+     * Executes a statement on the connection of the transaction, if any, or on one borrowed from the pool,
+     * kept as the connection of the transaction when not in autocommit
+     */
+    private <T> T _execute(boolean autocommit, boolean update, ConnectionWork<T> work) throws OHException {
+    	Connection conn = transaction != null ? transaction : pooledQuery.getConnection();
+    	transaction = autocommit ? null : conn;
+    	try {
+    		// as on a single connection, switching to autocommit commits the statements before
+    		conn.setAutoCommit(autocommit);
+    		return work.execute(conn);
+    	} catch (SQLException e) {
+    		throw SQLExceptions.translate(e, update);
+    	} finally {
+    		if (transaction == null) {
+    			_release(conn);
+    		}
+    	}
+    }
+
+    private void _rollbackQuietly(Connection conn) {
     	try {
-            Connection conn = DbSingleJpaConn.getConnection();
-            Statement stat = conn.createStatement();
-            ResultSet set = stat.executeQuery(aQuery);
-            return set.first();
-        }catch (OHException e){
-    	    throw e;
+    		conn.rollback();
     	} catch (SQLException e) {
-    		throw new OHException(MessageBundle.getMessage("angal.sql.problemsoccurredwiththesqlistruction"), e); // + ": " + aQuery, e);
-    	} catch (Exception e) {
-    		throw new OHException(MessageBundle.getMessage("angal.sql.problemsoccurredwithserverconnection"), e); 
+    		logger.warn("Rolling back: {}", e.getMessage());
     	}
     }
-    
+
     /**
-     * method for sanitize every String object in the list for logging purpose
-     * @param params - the list of objects
-     * @return the list sanitized
+     * Gives a connection back to the pool, in autocommit as borrowed
      */
-    private List<?> sanitize(List<?> params) {
-    	List<Object> saneParams = new ArrayList<Object>();
-    	for (Object param : params) {
-    		if (param instanceof String) {
-    			saneParams.add(sanitize((String) param));
-			} else {
-				saneParams.add(param);
-			}
-    	} 
-		return saneParams;
-	}
-    
+    private void _release(Connection conn) {
+    	try {
+    		if (!conn.getAutoCommit()) {
+    			conn.setAutoCommit(true);
+    		}
+    	} catch (SQLException e) {
+    		logger.warn("Restoring autocommit: {}", e.getMessage());
+    	}
+    	try {
+    		conn.close();
+    	} catch (SQLException e) {
+    		logger.warn("Closing {}: {}", conn, e.getMessage());
+    	}
+    }
+
+    private PreparedStatement _prepare(Connection conn, String aQuery, List<?> params, int autoGeneratedKeys) throws SQLException {
+    	if (logger.isDebugEnabled()) {
+		    logger.debug("Query {}", aQuery.replace("'", "\\'"));
+		}
+    	PreparedStatement pstmt = conn.prepareStatement(aQuery, autoGeneratedKeys);
+    	for (int i = 0; i < params.size(); i++) {
+    		pstmt.setObject(i + 1, params.get(i));
+    	}
+    	return pstmt;
+    }
+
     /**
-     * method for sanitize a String object for logging purpose
-     * @param aString - the String object
-     * @return the string sanitized
+     * Copies the rows, so that they can be read once the connection is back to the pool;
+     * the columns are found by their labels, as in the ResultSet copied
      */
-    private String sanitize(String aString) {
-    	return aString.replace("'", "\\'");
-	}
+    private static ResultSet _disconnect(ResultSet resultSet) throws SQLException {
+    	CachedRowSet rowSet = RowSetProvider.newFactory().createCachedRowSet();
+    	rowSet.populate(resultSet);
+    	RowSetMetaData metaData = (RowSetMetaData) rowSet.getMetaData();
+    	for (int i = 1; i <= metaData.getColumnCount(); i++) {
+    		metaData.setColumnName(i, metaData.getColumnLabel(i));
+    	}
+    	return rowSet;
+    }
+
+    /**
+     * Returns the ResultSet of the cursor, closing the cursor when either it or its statement is closed
+     */
+    private static ResultSet _closingCursor(DbPooledQuery.Cursor cursor) throws SQLException {
+    	ResultSet resultSet = cursor.getResultSet();
+    	Statement statement = (Statement) _closing(cursor, resultSet.getStatement(), PreparedStatement.class, null);
+    	return (ResultSet) _closing(cursor, resultSet, ResultSet.class, statement);
+    }
+
+    private static Object _closing(final DbPooledQuery.Cursor cursor, final Object target, Class<?> type, final Statement statement) {
+    	InvocationHandler handler = (proxy, method, args) -> {
+    		switch (method.getName()) {
+    			case "close":
+    				cursor.close();
+    				return null;
+    			case "isClosed":
+    				return cursor.isClosed();
+    			case "getStatement":
+    				if (statement != null) {
+    					return statement;
+    				}
+    				break;
+    		}
+    		return _invoke(method, target, args);
+    	};
+    	return Proxy.newProxyInstance(DbQueryLogger.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    private static Object _invoke(Method method, Object target, Object[] args) throws Throwable {
+    	try {
+    		return method.invoke(target, args);
+    	} catch (InvocationTargetException e) {
+    		throw e.getCause();
+    	}
+    }
+
+    /**
+     * A statement executed on a connection
+     */
+    @FunctionalInterface
+    private interface ConnectionWork<T> {
+
+    	T execute(Connection conn) throws SQLException;
+    }
 }
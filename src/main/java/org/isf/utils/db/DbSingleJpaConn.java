@@ -34,7 +34,10 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Singleton, provide db connection used on persistence unit
+ * @deprecated the connection is shared by all threads and never given back to the pool:
+ * use {@link DbPooledQuery} instead
  */
+@Deprecated
 public class DbSingleJpaConn {
 
 	protected static Logger logger = LoggerFactory.getLogger(DbSingleJpaConn.class);
@@ -49,6 +49,9 @@ public class OHServiceExceptionTranslator {
 	public Object translateSqlExceptionToOHServiceException(ProceedingJoinPoint pjp) throws OHServiceException {
 		try {
 			return pjp.proceed();
+		} catch (OHServiceException e) {
+			// already explained by the service
+			throw e;
 		} catch (DataIntegrityViolationException e) {
 			throw new OHDataIntegrityViolationException(e, new OHExceptionMessage(null, MessageBundle.getMessage("angal.sql.theselecteditemisstillusedsomewhere"), OHSeverityLevel.ERROR));
 		} catch (InvalidDataAccessResourceUsageException e) {
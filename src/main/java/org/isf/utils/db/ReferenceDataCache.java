@@ -0,0 +1,358 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.utils.db;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.persistence.Entity;
+
+import org.hibernate.Hibernate;
+import org.hibernate.proxy.HibernateProxy;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Cache of reference data read through the <code>IoOperations</code> classes,
+ * holding at most a given number of entries and dropping the least recently used ones.
+ * <p>
+ * The values are copied once, when stored, so that the caller that read them from the database
+ * can keep on changing them without changing the cached data.
+ * The entities read from the cache are shared by all the callers and must be taken as read-only:
+ * an entity to be edited is to be read again from its repository.
+ * The {@link ArrayList}s read from the cache are new lists of the cached entities,
+ * so that the callers can still add the "all" items of the combo boxes, or sort them.
+ * <p>
+ * Each client has its own cache, which sees only its own changes: the entries expire
+ * a given time after being stored, so that the changes made by the other clients are read again.
+ * The evictions are repeated once the current transaction, if any, has ended,
+ * so that the data read again before the commit, or before the rollback, is not kept.
+ */
+public class ReferenceDataCache extends AbstractValueAdaptingCache {
+
+	private final String name;
+	private final int maxEntries;
+	private final long expireAfterWriteNanos;
+	private final Map<Object, CacheEntry> store;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * @param name - the cache name
+	 * @param maxEntries - the maximum number of entries
+	 * @param expireAfterWriteSeconds - the seconds an entry is kept for, <code>0</code> to keep it until evicted
+	 */
+	public ReferenceDataCache(String name, final int maxEntries, long expireAfterWriteSeconds) {
+		super(true);
+		this.name = name;
+		this.maxEntries = maxEntries;
+		this.expireAfterWriteNanos = TimeUnit.SECONDS.toNanos(expireAfterWriteSeconds);
+		this.store = new LinkedHashMap<Object, CacheEntry>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Object, CacheEntry> eldest) {
+				if (size() > ReferenceDataCache.this.maxEntries) {
+					evictions.increment();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public Object getNativeCache() {
+		return store;
+	}
+
+	@Override
+	protected Object lookup(Object key) {
+		CacheEntry entry;
+		synchronized (store) {
+			entry = store.get(key);
+			if (entry != null && entry.isExpired()) {
+				store.remove(key);
+				entry = null;
+			}
+		}
+		if (entry == null) {
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		return _read(entry.value);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> T get(Object key, Callable<T> valueLoader) {
+		ValueWrapper value = get(key);
+		if (value != null) {
+			return (T) value.get();
+		}
+		T loaded;
+		try {
+			loaded = valueLoader.call();
+		} catch (Exception e) {
+			throw new ValueRetrievalException(key, valueLoader, e);
+		}
+		put(key, loaded);
+		return loaded;
+	}
+
+	@Override
+	public void put(Object key, Object value) {
+		CacheEntry entry = new CacheEntry(_copy(toStoreValue(value)));
+		synchronized (store) {
+			store.put(key, entry);
+		}
+	}
+
+	@Override
+	public ValueWrapper putIfAbsent(Object key, Object value) {
+		synchronized (store) {
+			CacheEntry existing = store.get(key);
+			if (existing == null || existing.isExpired()) {
+				store.put(key, new CacheEntry(_copy(toStoreValue(value))));
+				return null;
+			}
+			return toValueWrapper(_read(existing.value));
+		}
+	}
+
+	@Override
+	public void evict(final Object key) {
+		_removeNowAndAfterCompletion(() -> {
+			synchronized (store) {
+				store.remove(key);
+			}
+		});
+	}
+
+	@Override
+	public void clear() {
+		_removeNowAndAfterCompletion(() -> {
+			synchronized (store) {
+				store.clear();
+			}
+		});
+	}
+
+	/**
+	 * @return the number of entries
+	 */
+	public int getSize() {
+		synchronized (store) {
+			return store.size();
+		}
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * @return the seconds an entry is kept for, <code>0</code> if kept until evicted
+	 */
+	public long getExpireAfterWriteSeconds() {
+		return TimeUnit.NANOSECONDS.toSeconds(expireAfterWriteNanos);
+	}
+
+	/**
+	 * @return the number of reads answered by the cache
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return the number of reads that went to the database
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return the number of entries dropped to stay within the maximum size
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * @return the ratio of the reads answered by the cache, <code>0</code> before any read
+	 */
+	public double getHitRatio() {
+		long hits = getHits();
+		long reads = hits + getMisses();
+		return reads == 0 ? 0 : (double) hits / reads;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %d/%d entries, expiring after %ds, %d hits, %d misses, %d evictions", 
+				name, getSize(), maxEntries, getExpireAfterWriteSeconds(), getHits(), getMisses(), getEvictions());
+	}
+
+	/**
+	 * Removes the entries now, for the reads of the current transaction,
+	 * and again when it ends, for the entries read meanwhile from the data not yet committed or rolled back
+	 */
+	private static void _removeNowAndAfterCompletion(final Runnable remove) {
+		remove.run();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					remove.run();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Gives a new list of the cached entities, the other values as they are
+	 */
+	private static Object _read(Object value) {
+		if (value instanceof ArrayList) {
+			return new ArrayList<Object>((ArrayList<?>) value);
+		}
+		return value;
+	}
+
+	private static Object _copy(Object value) {
+		return _copy(value, new IdentityHashMap<Object, Object>());
+	}
+
+	/**
+	 * Copies the collections, the entities, also behind their Hibernate proxies, and their dates, keeping the other values;
+	 * the proxies and the collections not yet loaded are kept as they are
+	 *
+	 * @param copies - the copies already made, so that an entity referenced twice is copied once
+	 */
+	private static Object _copy(Object value, Map<Object, Object> copies) {
+		if (value == null) {
+			return null;
+		}
+		Object copy = copies.get(value);
+		if (copy != null) {
+			return copy;
+		}
+		if (!Hibernate.isInitialized(value)) {
+			return value;
+		}
+		if (value instanceof HibernateProxy) {
+			copy = _copy(((HibernateProxy) value).getHibernateLazyInitializer().getImplementation(), copies);
+			copies.put(value, copy);
+			return copy;
+		}
+		if (value instanceof List) {
+			List<Object> list = new ArrayList<Object>(((List<?>) value).size());
+			copies.put(value, list);
+			for (Object element : (List<?>) value) {
+				list.add(_copy(element, copies));
+			}
+			return list;
+		}
+		if (value instanceof Set) {
+			Set<Object> set = new LinkedHashSet<Object>();
+			copies.put(value, set);
+			for (Object element : (Set<?>) value) {
+				set.add(_copy(element, copies));
+			}
+			return set;
+		}
+		if (value instanceof Map) {
+			Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+			copies.put(value, map);
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				map.put(_copy(entry.getKey(), copies), _copy(entry.getValue(), copies));
+			}
+			return map;
+		}
+		if (value instanceof Date) {
+			return ((Date) value).clone();
+		}
+		if (value instanceof Calendar) {
+			return ((Calendar) value).clone();
+		}
+		Class<?> type = value.getClass();
+		if (!type.isAnnotationPresent(Entity.class)) {
+			return value;
+		}
+		try {
+			Constructor<?> constructor = type.getDeclaredConstructor();
+			constructor.setAccessible(true);
+			copy = constructor.newInstance();
+			copies.put(value, copy);
+			for (Class<?> declaring = type; declaring != Object.class; declaring = declaring.getSuperclass()) {
+				for (Field field : declaring.getDeclaredFields()) {
+					if (Modifier.isStatic(field.getModifiers())) {
+						continue;
+					}
+					field.setAccessible(true);
+					field.set(copy, _copy(field.get(value), copies));
+				}
+			}
+			return copy;
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Cannot copy " + type.getName() + " for the cache", e);
+		}
+	}
+
+	private final class CacheEntry {
+
+		private final Object value;
+		private final long written = System.nanoTime();
+
+		private CacheEntry(Object value) {
+			this.value = value;
+		}
+
+		private boolean isExpired() {
+			return expireAfterWriteNanos > 0 && System.nanoTime() - written >= expireAfterWriteNanos;
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.utils.db;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+/**
+ * Creates a {@link ReferenceDataCache} for each cache name met in the <code>@Cacheable</code> annotations.
+ */
+public class ReferenceDataCacheManager implements CacheManager {
+
+	private final ConcurrentMap<String, ReferenceDataCache> caches = new ConcurrentHashMap<String, ReferenceDataCache>();
+	private final int maxEntries;
+	private final long expireAfterWriteSeconds;
+
+	/**
+	 * @param maxEntries - the maximum number of entries of each cache
+	 * @param expireAfterWriteSeconds - the seconds an entry is kept for, <code>0</code> to keep it until evicted
+	 */
+	public ReferenceDataCacheManager(int maxEntries, long expireAfterWriteSeconds) {
+		this.maxEntries = maxEntries;
+		this.expireAfterWriteSeconds = expireAfterWriteSeconds;
+	}
+
+	@Override
+	public Cache getCache(String name) {
+		return caches.computeIfAbsent(name, cacheName -> new ReferenceDataCache(cacheName, maxEntries, expireAfterWriteSeconds));
+	}
+
+	@Override
+	public Collection<String> getCacheNames() {
+		return Collections.unmodifiableSet(caches.keySet());
+	}
+
+	/**
+	 * @return the caches created so far, with their statistics
+	 */
+	public List<ReferenceDataCache> getCaches() {
+		return new ArrayList<ReferenceDataCache>(caches.values());
+	}
+
+	/**
+	 * Empties all the caches, for changes made to the reference data outside of the application
+	 */
+	public void clearAll() {
+		for (ReferenceDataCache cache : caches.values()) {
+			cache.clear();
+		}
+	}
+}
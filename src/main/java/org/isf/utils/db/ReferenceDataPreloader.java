@@ -0,0 +1,85 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.utils.db;
+
+import java.lang.reflect.Method;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.stereotype.Service;
+
+/**
+ * Loads at startup the reference data read by the <code>@Cacheable</code> methods without parameters,
+ * when <code>cache.referencedata.preload</code> is set in <code>database.properties</code>.
+ */
+@Component
+public class ReferenceDataPreloader implements ApplicationListener<ContextRefreshedEvent> {
+
+	private final Logger logger = LoggerFactory.getLogger(ReferenceDataPreloader.class);
+
+	@Value("${cache.referencedata.preload:false}")
+	private boolean preload;
+
+	@Autowired
+	private ReferenceDataCacheManager cacheManager;
+
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		if (preload) {
+			preload(event.getApplicationContext());
+		}
+	}
+
+	/**
+	 * Calls all the <code>@Cacheable</code> methods without parameters of the services
+	 *
+	 * @param context - the context of the services
+	 * @return the number of methods called
+	 */
+	public int preload(ApplicationContext context) {
+		int preloaded = 0;
+		long start = System.currentTimeMillis();
+		for (Object service : context.getBeansWithAnnotation(Service.class).values()) {
+			for (Method method : AopUtils.getTargetClass(service).getMethods()) {
+				if (method.getParameterTypes().length == 0 && AnnotationUtils.findAnnotation(method, Cacheable.class) != null) {
+					try {
+						method.invoke(service);
+						preloaded++;
+					} catch (Exception e) {
+						logger.warn("Cannot preload {}.{}: {}", method.getDeclaringClass().getSimpleName(), method.getName(), e.getMessage());
+					}
+				}
+			}
+		}
+		logger.info("{} reference data lists preloaded in {} ms: {}", preloaded, System.currentTimeMillis() - start, cacheManager.getCaches());
+		return preloaded;
+	}
+}
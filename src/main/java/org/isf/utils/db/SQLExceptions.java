@@ -0,0 +1,50 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.utils.db;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+
+import org.isf.generaldata.MessageBundle;
+import org.isf.utils.exception.OHException;
+
+/**
+ * Translates the {@link SQLException}s of the raw SQL of {@link DbPooledQuery} and {@link DbQueryLogger}
+ * into the {@link OHException}s shown to the user
+ */
+final class SQLExceptions {
+
+	private SQLExceptions() {
+	}
+
+	/**
+	 * @param e - the {@link SQLException} thrown
+	 * @param update - <code>true</code> if thrown by an insert-update-delete statement
+	 * @return the {@link OHException} to throw
+	 */
+	static OHException translate(SQLException e, boolean update) {
+		if (update && e instanceof SQLIntegrityConstraintViolationException) {
+			return new OHException(MessageBundle.getMessage("angal.sql.theselecteditemisstillusedsomewhere"), e);
+		}
+		return new OHException(MessageBundle.getMessage("angal.sql.problemsoccurredwiththesqlistruction"), e);
+	}
+}
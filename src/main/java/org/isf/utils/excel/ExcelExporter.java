@@ -54,6 +54,7 @@ import org.apache.poi.hssf.usermodel.HSSFRichTextString;
 import org.apache.poi.hssf.usermodel.HSSFRow;
 import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.CreationHelper;
@@ -62,12 +63,15 @@ import org.apache.poi.ss.usermodel.RichTextString;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.isf.generaldata.MessageBundle;
 import org.isf.utils.exception.OHException;
 
 public class ExcelExporter {
 
+	/** rows kept in memory while exporting to .xlsx */
+	private static final int ROW_ACCESS_WINDOW = 100;
+
 	private CharsetEncoder encoder;
 	private Locale currentLocale;
 	private Workbook workbook;
@@ -77,12 +81,16 @@ public class ExcelExporter {
 	private CellStyle bigDecimalStyle;
 	private CellStyle headerStyle;
 	private CreationHelper createHelper;
+	private SimpleDateFormat csvDateFormat;
+	private NumberFormat csvNumberFormat;
 
 	public ExcelExporter() {
 		encoder = Charset.forName("UTF-8").newEncoder();
 		encoder.onMalformedInput(CodingErrorAction.REPORT);
 		encoder.onUnmappableCharacter(CodingErrorAction.REPORT);
 		currentLocale = Locale.getDefault();
+		csvDateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
+		csvNumberFormat = NumberFormat.getInstance(currentLocale);
 	}
 
 	private void initStyles() {
@@ -294,7 +302,7 @@ public class ExcelExporter {
 	@Deprecated
 	public void exportDataToCSV(Collection data, File exportFile) throws IOException, OHException {
 
-		try (FileWriter outFile = new FileWriter(exportFile)) {
+		try (BufferedWriter outFile = new BufferedWriter(new FileWriter(exportFile))) {
 			boolean header = false;
 			for (Object map : data) {
 				Map thisMap = ((Map) map);
@@ -320,24 +328,19 @@ public class ExcelExporter {
 
 	private String convertValue(Object value) {
 		String strVal = "";
-		SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
 		if (value != null) {
 			if (value instanceof BigDecimal) {
 
 				BigDecimal val = (BigDecimal) value;
-				NumberFormat format = NumberFormat.getInstance(Locale
-						.getDefault());
-				strVal = format.format(val);
+				strVal = csvNumberFormat.format(val);
 			} else if (value instanceof Double) {
 
 				Double val = (Double) value;
-				NumberFormat format = NumberFormat.getInstance(Locale
-						.getDefault());
-				strVal = format.format(val);
+				strVal = csvNumberFormat.format(val);
 			} else if (value instanceof Timestamp) {
 
 				Timestamp val = (Timestamp) value;
-				strVal = sdf.format(val);
+				strVal = csvDateFormat.format(val);
 			} else {
 
 				strVal = value.toString();
@@ -359,35 +362,36 @@ public class ExcelExporter {
 		TableModel model = jtable.getModel();
 		FileOutputStream fileStream = new FileOutputStream(file);
 
-		workbook = new XSSFWorkbook();
-		createHelper = workbook.getCreationHelper();
-
-		Sheet worksheet = workbook.createSheet();
-		initStyles();
+		SXSSFWorkbook streamingWorkbook = createStreamingWorkbook();
+		try {
+			Sheet worksheet = workbook.createSheet();
+			initStyles();
 
-		Row headers = worksheet.createRow((short) 0);
-		int colCount = model.getColumnCount();
-		for (int i = 0; i < colCount; i++) {
-			Cell cell = headers.createCell((short) i);
-			RichTextString value = createHelper.createRichTextString(model.getColumnName(i));
-			cell.setCellStyle(headerStyle);
-			cell.setCellValue(value);
-		}
+			Row headers = worksheet.createRow((short) 0);
+			int colCount = model.getColumnCount();
+			for (int i = 0; i < colCount; i++) {
+				Cell cell = headers.createCell((short) i);
+				RichTextString value = createHelper.createRichTextString(model.getColumnName(i));
+				cell.setCellStyle(headerStyle);
+				cell.setCellValue(value);
+			}
 
-		int rowCount = model.getRowCount();
-		for (int i = 0; i < rowCount; i++) {
-			int index = i + 1;
-			Row row = worksheet.createRow(index);
+			int rowCount = model.getRowCount();
+			for (int i = 0; i < rowCount; i++) {
+				int index = i + 1;
+				Row row = worksheet.createRow(index);
 
-			for (int j = 0; j < colCount; j++) {
-				Cell cell = row.createCell((short) j);
-				Object value = model.getValueAt(i, j);
-				setValueForExcel(cell, value);
+				for (int j = 0; j < colCount; j++) {
+					Cell cell = row.createCell((short) j);
+					Object value = model.getValueAt(i, j);
+					setValueForExcel(cell, value);
+				}
 			}
+			writeStreamingWorkbook(streamingWorkbook, fileStream);
+		} finally {
+			fileStream.close();
+			streamingWorkbook.dispose();
 		}
-		workbook.write(fileStream);
-		fileStream.flush();
-		fileStream.close();
 	}
 
 	/**
@@ -406,26 +410,20 @@ public class ExcelExporter {
 			throw new OHException(e.getLocalizedMessage());
 		}
 
-		workbook = new XSSFWorkbook();
-		createHelper = workbook.getCreationHelper();
-
-		Sheet worksheet = workbook.createSheet();
-		initStyles();
-
-		Row headers = worksheet.createRow((short) 0);
+		SXSSFWorkbook streamingWorkbook = createStreamingWorkbook();
 		try {
+			initStyles();
 			ResultSetMetaData rsmd = resultSet.getMetaData();
-
 			int colCount = rsmd.getColumnCount();
-			for (int i = 0; i < colCount; i++) {
-				Cell cell = headers.createCell((short) i);
-				RichTextString value = createHelper.createRichTextString(rsmd.getColumnName(i + 1));
-				cell.setCellStyle(headerStyle);
-				cell.setCellValue(value);
-			}
+			Sheet worksheet = createResultsetSheet(rsmd);
 
 			int index = 1;
 			while (resultSet.next()) {
+				if (index > SpreadsheetVersion.EXCEL2007.getLastRowIndex()) {
+					// the rows exceeding the sheet limit go on in a new sheet
+					worksheet = createResultsetSheet(rsmd);
+					index = 1;
+				}
 				Row row = worksheet.createRow(index);
 
 				for (int j = 0; j < colCount; j++) {
@@ -435,14 +433,14 @@ public class ExcelExporter {
 				}
 				index++;
 			}
-			workbook.write(fileStream);
-			fileStream.flush();
-			fileStream.close();
-
+			writeStreamingWorkbook(streamingWorkbook, fileStream);
 		} catch (SQLException e) {
 			throw new OHException(MessageBundle.getMessage("angal.sql.problemsoccurredwiththesqlistruction"), e);
+		} finally {
+			// also on runtime exceptions, not to leave the temporary files behind
+			fileStream.close();
+			streamingWorkbook.dispose();
 		}
-
 	}
 
 	/**
@@ -456,43 +454,92 @@ public class ExcelExporter {
 	public void exportDataToExcel(Collection data, File exportFile) throws IOException, OHException {
 		FileOutputStream fileStream = new FileOutputStream(exportFile);
 
-		workbook = new XSSFWorkbook();
-		createHelper = workbook.getCreationHelper();
-		Sheet worksheet = workbook.createSheet();
-		initStyles();
+		SXSSFWorkbook streamingWorkbook = createStreamingWorkbook();
+		try {
+			Sheet worksheet = workbook.createSheet();
+			initStyles();
 
-		Row headers = worksheet.createRow((short) 0);
-		boolean header = false;
-		int index = 1;
-		for (Object map : data) {
-			Map thisMap = ((Map) map);
-			if (!header) {
-				Set columns = thisMap.keySet();
-				int h = 0;
-				for (Object column : columns) {
-					Cell cell = headers.createCell((short) h);
-					RichTextString value = createHelper.createRichTextString(column.toString());
-					cell.setCellStyle(headerStyle);
-					cell.setCellValue(value);
-					h++;
+			Row headers = worksheet.createRow((short) 0);
+			boolean header = false;
+			int index = 1;
+			for (Object map : data) {
+				Map thisMap = ((Map) map);
+				if (!header) {
+					Set columns = thisMap.keySet();
+					int h = 0;
+					for (Object column : columns) {
+						Cell cell = headers.createCell((short) h);
+						RichTextString value = createHelper.createRichTextString(column.toString());
+						cell.setCellStyle(headerStyle);
+						cell.setCellValue(value);
+						h++;
+					}
+					header = true;
+					continue;
 				}
-				header = true;
-				continue;
-			}
 
-			Row row = worksheet.createRow(index);
-			Collection values = thisMap.values();
-			int j = 0;
-			for (Object value : values) {
-				Cell cell = row.createCell((short) j);
-				setValueForExcel(cell, value);
-				j++;
+				Row row = worksheet.createRow(index);
+				Collection values = thisMap.values();
+				int j = 0;
+				for (Object value : values) {
+					Cell cell = row.createCell((short) j);
+					setValueForExcel(cell, value);
+					j++;
+				}
+				index++;
 			}
-			index++;
+			writeStreamingWorkbook(streamingWorkbook, fileStream);
+		} finally {
+			fileStream.close();
+			streamingWorkbook.dispose();
 		}
-		workbook.write(fileStream);
+	}
+
+	/**
+	 * Creates a new sheet with the column names of the {@link ResultSet} as headers
+	 *
+	 * @param rsmd
+	 * @return the sheet
+	 * @throws SQLException
+	 */
+	private Sheet createResultsetSheet(ResultSetMetaData rsmd) throws SQLException {
+		Sheet worksheet = workbook.createSheet();
+		Row headers = worksheet.createRow((short) 0);
+		int colCount = rsmd.getColumnCount();
+		for (int i = 0; i < colCount; i++) {
+			Cell cell = headers.createCell((short) i);
+			RichTextString value = createHelper.createRichTextString(rsmd.getColumnName(i + 1));
+			cell.setCellStyle(headerStyle);
+			cell.setCellValue(value);
+		}
+		return worksheet;
+	}
+
+	/**
+	 * Creates the .xlsx workbook keeping in memory only the last {@link #ROW_ACCESS_WINDOW} rows,
+	 * the previous ones being flushed to a (compressed) temporary file
+	 *
+	 * @return the workbook, also set as current one
+	 */
+	private SXSSFWorkbook createStreamingWorkbook() {
+		SXSSFWorkbook streamingWorkbook = new SXSSFWorkbook(ROW_ACCESS_WINDOW);
+		streamingWorkbook.setCompressTempFiles(true);
+		workbook = streamingWorkbook;
+		createHelper = workbook.getCreationHelper();
+		return streamingWorkbook;
+	}
+
+	/**
+	 * Writes the workbook to the stream; the callers close the stream and
+	 * {@link SXSSFWorkbook#dispose() dispose} the workbook, deleting its temporary files, in a <code>finally</code> block
+	 *
+	 * @param streamingWorkbook
+	 * @param fileStream
+	 * @throws IOException
+	 */
+	private void writeStreamingWorkbook(SXSSFWorkbook streamingWorkbook, FileOutputStream fileStream) throws IOException {
+		streamingWorkbook.write(fileStream);
 		fileStream.flush();
-		fileStream.close();
 	}
 
 	private void setValueForExcel(Cell cell, Object value) {
@@ -21,18 +21,18 @@
  */
 package org.isf.utils.time;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.text.MessageFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.GregorianCalendar;
 
 import org.isf.generaldata.GeneralData;
 import org.isf.generaldata.MessageBundle;
-import org.isf.utils.db.DbQueryLogger;
+import org.isf.utils.db.DbPooledQuery;
 import org.isf.utils.exception.OHException;
 import org.joda.time.DateTime;
 import org.joda.time.Period;
@@ -407,28 +407,19 @@ public class TimeTools {
 	 * @author hadesthanos
 	 * @return DateTime
 	 * @throws OHException
-	 * @throws ParseException
 	 */
 	public static GregorianCalendar getServerDateTime()  {
 		GregorianCalendar serverDate=new GregorianCalendar();
 		String query = " SELECT NOW( ) as time ";
 
-		DbQueryLogger dbQuery = new DbQueryLogger();
 		try {
-			ResultSet resultSet = dbQuery.getData(query, true);
-			while (resultSet.next()) {
-				String date = resultSet.getString("time");
-				SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-				java.util.Date utilDate = new java.util.Date();
-				utilDate = sdf.parse(date);
-				serverDate.setTime(utilDate);
+			Timestamp time = DbPooledQuery.getInstance().queryForObject(query, Collections.emptyList(),
+					(resultSet, rowNum) -> resultSet.getTimestamp("time"));
+			if (time != null) {
+				serverDate.setTime(time);
 			}
-		} catch (SQLException e) {
-			e.printStackTrace();
 		} catch (OHException e) {
 			e.printStackTrace();
-		} catch (ParseException e) {
-			e.printStackTrace();
 		}
 		return serverDate;
 	}
@@ -35,6 +35,8 @@ import org.isf.utils.exception.OHServiceException;
 import org.isf.vaccine.model.Vaccine;
 import org.isf.vactype.model.VaccineType;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -52,6 +54,7 @@ public class VacTypeIoOperation {
 	 * @return the list of {@link VaccineType}s
 	 * @throws OHServiceException 
 	 */
+	@Cacheable("vaccineTypes")
 	public ArrayList<VaccineType> getVaccineType() throws OHServiceException {
 		return new ArrayList<VaccineType>(repository.findAllByOrderByDescriptionAsc()); 
 	}
@@ -63,6 +66,7 @@ public class VacTypeIoOperation {
 	 * @return <code>true</code> if the item has been inserted, <code>false</code> otherwise
 	 * @throws OHServiceException 
 	 */
+	@CacheEvict(cacheNames = "vaccineTypes", allEntries = true)
 	public boolean newVaccineType(VaccineType vaccineType) throws OHServiceException {
 		return repository.save(vaccineType) != null;
 	}
@@ -74,6 +78,7 @@ public class VacTypeIoOperation {
 	 * @return <code>true</code> if the item has been updated, <code>false</code> otherwise
 	 * @throws OHServiceException 
 	 */
+	@CacheEvict(cacheNames = "vaccineTypes", allEntries = true)
 	public boolean updateVaccineType(VaccineType vaccineType) throws OHServiceException	{
 		return repository.save(vaccineType) != null;
 	}
@@ -85,6 +90,7 @@ public class VacTypeIoOperation {
 	 * @return <code>true</code> if the item has been deleted, <code>false</code> otherwise
 	 * @throws OHServiceException 
 	 */
+	@CacheEvict(cacheNames = "vaccineTypes", allEntries = true)
 	public boolean deleteVaccineType(VaccineType vaccineType) throws OHServiceException {
 		repository.delete(vaccineType);
 		return true;
@@ -110,6 +116,7 @@ public class VacTypeIoOperation {
 	 * @throws OHServiceException 
 	 * @throws IllegalArgumentException if {@code code} is {@literal null}
 	 */
+	@Cacheable(cacheNames = "vaccineTypes", key = "{#root.methodName, #p0}", unless = "#result == null")
 	public VaccineType findVaccineType(String code) throws OHServiceException 
 	{
 		if (code != null) {
@@ -29,6 +29,8 @@ import org.isf.utils.db.TranslateOHServiceException;
 import org.isf.utils.exception.OHServiceException;
 import org.isf.ward.model.Ward;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -67,6 +69,7 @@ public class WardIoOperations {
 	 * @return the retrieved wards.
 	 * @throws OHServiceException if an error occurs retrieving the diseases.
 	 */
+	@Cacheable(cacheNames = "wards", key = "#root.methodName")
 	public ArrayList<Ward> getWardsNoMaternity() throws OHServiceException 
 	{		
 		ArrayList<Ward> wards = new ArrayList<Ward>(repository.findByCodeNot("M"));
@@ -80,6 +83,7 @@ public class WardIoOperations {
 	 * @return the retrieved wards.
 	 * @throws OHServiceException if an error occurs retrieving the wards.
 	 */
+	@Cacheable(cacheNames = "wards", key = "{#root.methodName, #p0}")
 	public ArrayList<Ward> getWards(
 			String wardID) throws OHServiceException 
 	{ 
@@ -104,6 +108,7 @@ public class WardIoOperations {
 	 * @return <code>true</code> if the ward has been stored, <code>false</code> otherwise.
 	 * @throws OHServiceException if an error occurs storing the ward.
 	 */
+	@CacheEvict(cacheNames = "wards", allEntries = true)
 	public boolean newWard(Ward ward) throws OHServiceException {
 		return repository.save(ward) != null;
 	}
@@ -114,6 +119,7 @@ public class WardIoOperations {
 	 * @return <code>true</code> if the ward has been updated, <code>false</code> otherwise.
 	 * @throws OHServiceException if an error occurs during the update.
 	 */
+	@CacheEvict(cacheNames = "wards", allEntries = true)
 	public boolean updateWard(Ward ward) throws OHServiceException {
 		return repository.save(ward) != null;
 	}
@@ -124,6 +130,7 @@ public class WardIoOperations {
 	 * @return <code>true</code> if the ward has been marked, <code>false</code> otherwise.
 	 * @throws OHServiceException if an error occurred during the delete operation.
 	 */
+	@CacheEvict(cacheNames = "wards", allEntries = true)
 	public boolean deleteWard(Ward ward) throws OHServiceException {
 		repository.delete(ward);
 		return true;
@@ -157,6 +164,7 @@ public class WardIoOperations {
 	 * @throws OHServiceException
 	 * @throws IllegalArgumentException if {@code code} is {@literal null}
 	 */
+	@Cacheable(cacheNames = "wards", key = "{#root.methodName, #p0}", unless = "#result == null")
 	public Ward findWard(String code) throws OHServiceException
 	{
 		if (code != null) {
@@ -30,6 +30,10 @@ import java.util.ArrayList;
 import java.util.GregorianCalendar;
 import java.util.List;
 
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.ejb.HibernateEntityManagerFactory;
+import org.hibernate.stat.Statistics;
 import org.isf.accounting.manager.BillBrowserManager;
 import org.isf.accounting.model.Bill;
 import org.isf.accounting.model.BillItems;
@@ -78,6 +82,8 @@ public class Tests
     AccountingIoOperations accountingIoOperation;
     @Autowired
     ApplicationEventPublisher applicationEventPublisher;
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
 
 	@BeforeClass
     public static void setUpClass()  
@@ -585,6 +591,58 @@ public class Tests
 		}
 	}
 
+	@Test
+	public void testIoNewBillItemsWritesOnlyChanges()
+	{
+		ArrayList<BillItems> billItems = new ArrayList<>();
+			
+
+		try 
+		{
+			int id = _setupTestBillItems(false);
+			Bill bill = ((BillItems)jpa.find(BillItems.class, id)).getBill();
+			for (int i = 0; i < 10; i++) 
+			{
+				billItems.add(testBillItems.setup(null, false));
+			}
+			accountingIoOperation.newBillItems(bill, billItems);
+			billItems = accountingIoOperation.getItems(bill.getId());
+			assertThat(billItems).hasSize(10);
+
+			Statistics statistics = ((HibernateEntityManagerFactory)entityManagerFactory).getSessionFactory().getStatistics();
+			statistics.setStatisticsEnabled(true);
+			statistics.clear();
+			accountingIoOperation.newBillItems(bill, billItems);
+			long unchangedStatements = statistics.getPrepareStatementCount();
+			long unchangedUpdates = statistics.getEntityUpdateCount();
+			
+			billItems.get(0).setItemAmount(99.99);
+			billItems.remove(1);
+			billItems.add(testBillItems.setup(null, false));
+			statistics.clear();
+			accountingIoOperation.newBillItems(bill, billItems);
+			long changedStatements = statistics.getPrepareStatementCount();
+			long changedUpdates = statistics.getEntityUpdateCount();
+			long changedInserts = statistics.getEntityInsertCount();
+			statistics.setStatisticsEnabled(false);
+			
+			// stored items and their bill are read once, then one statement per kind of change, whatever the bill size
+			assertThat(unchangedStatements).isEqualTo(2);
+			assertThat(changedStatements).isEqualTo(5);
+			assertThat(unchangedUpdates).isZero();
+			assertThat(changedUpdates).isEqualTo(1);
+			assertThat(changedInserts).isEqualTo(1);
+			billItems = accountingIoOperation.getItems(bill.getId());
+			assertThat(billItems).hasSize(10);
+			assertThat(billItems.get(0).getItemAmount()).isCloseTo(99.99, offset(0.001));
+		} 
+		catch (Exception e) 
+		{
+			e.printStackTrace();		
+			fail();
+		}
+	}
+
 	@Test
 	public void testIoNewBillPayments() 
 	{
@@ -28,7 +28,12 @@ import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.List;
 
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.ejb.HibernateEntityManagerFactory;
+import org.hibernate.stat.Statistics;
 import org.isf.admission.model.Admission;
+import org.isf.admission.manager.AdmissionBrowserManager;
 import org.isf.admission.model.AdmittedPatient;
 import org.isf.admission.service.AdmissionIoOperations;
 import org.isf.admtype.model.AdmissionType;
@@ -49,6 +54,7 @@ import org.isf.dlvrrestype.test.TestDeliveryResultTypeContext;
 import org.isf.dlvrtype.model.DeliveryType;
 import org.isf.dlvrtype.test.TestDeliveryType;
 import org.isf.dlvrtype.test.TestDeliveryTypeContext;
+import org.isf.generaldata.GeneralData;
 import org.isf.operation.model.Operation;
 import org.isf.operation.test.TestOperation;
 import org.isf.operation.test.TestOperationContext;
@@ -75,6 +81,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringRunner;
 
@@ -110,6 +117,10 @@ public class Tests
 
     @Autowired
     AdmissionIoOperations admissionIoOperation;
+    @Autowired
+    AdmissionBrowserManager admissionBrowserManager;
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
 
 	@BeforeClass
     public static void setUpClass()  
@@ -401,6 +412,38 @@ public class Tests
 		assertThat(patients).isEmpty();
 	}
 
+	@Test
+	public void testIoGetAdmittedPatientsShouldNotFindAnythingWhenOnlyPunctuationProvided() throws OHException, InterruptedException, OHServiceException {
+		// given:
+		_setupTestAdmission(false);
+
+		// when:
+		List<AdmittedPatient> patients = admissionIoOperation.getAdmittedPatients("#", null, null);
+
+		// then:
+		assertThat(patients).isEmpty();
+	}
+
+	@Test
+	public void testIoGetAdmittedPatientsWhenManyPatientsMatch() throws OHException, InterruptedException, OHServiceException {
+		// given:
+		int id = _setupTestAdmission(false);
+		Admission foundAdmission = (Admission)jpa.find(Admission.class, id);
+		jpa.beginTransaction();
+		for (int i = 0; i < 1000; i++) {
+			jpa.persist(testPatient.setup(true));
+		}
+		jpa.commitTransaction();
+
+		// when:
+		List<AdmittedPatient> patients = admissionIoOperation.getAdmittedPatients(foundAdmission.getPatient().getFirstName(), null, null);
+		List<AdmittedPatient> page = admissionIoOperation.getAdmittedPatients(foundAdmission.getPatient().getFirstName(), null, null, new PageRequest(0, 1));
+
+		// then:
+		assertThat(patients).extracting("admission.id").containsExactly(id);
+		assertThat(page).extracting("admission.id").containsExactly(id);
+	}
+
 	@Test
 	public void testIoGetAdmittedPatientsShouldNotFindWhenAdmissionOutsideOfDateRange() throws OHException, InterruptedException, OHServiceException {
 		// given:
@@ -446,6 +489,43 @@ public class Tests
 	}
 
 
+	@Test
+	public void testIoGetAdmittedPatientsStatementCountDoesNotGrowWithPatients() throws Exception {
+		int id = _setupTestAdmission(false);
+		Statistics statistics = ((HibernateEntityManagerFactory) entityManagerFactory).getSessionFactory().getStatistics();
+		statistics.setStatisticsEnabled(true);
+		try {
+			statistics.clear();
+			List<AdmittedPatient> patients = admissionIoOperation.getAdmittedPatients(null);
+			long patientsStatements = statistics.getPrepareStatementCount();
+			statistics.clear();
+			List<AdmittedPatient> admittedPatients = admissionIoOperation.getAdmittedPatients(null, null, null);
+			long admittedPatientsStatements = statistics.getPrepareStatementCount();
+
+			jpa.beginTransaction();
+			for (int i = 0; i < 3; i++) {
+				jpa.persist(testPatient.setup(true));
+			}
+			jpa.commitTransaction();
+
+			statistics.clear();
+			assertThat(admissionIoOperation.getAdmittedPatients(null)).hasSize(patients.size() + 3);
+			assertThat(statistics.getPrepareStatementCount()).isEqualTo(patientsStatements);
+			statistics.clear();
+			assertThat(admissionIoOperation.getAdmittedPatients(null, null, null)).hasSameSizeAs(admittedPatients);
+			assertThat(statistics.getPrepareStatementCount()).isEqualTo(admittedPatientsStatements);
+
+			List<AdmittedPatient> page = admissionIoOperation.getAdmittedPatients(null, new PageRequest(0, 1));
+			assertThat(page).hasSize(1);
+			assertThat(page.get(0).getAdmission()).isNull();
+			page = admissionIoOperation.getAdmittedPatients(null, null, null, new PageRequest(0, 1));
+			assertThat(page).hasSize(1);
+			assertThat(page.get(0).getAdmission().getId()).isEqualTo(id);
+		} finally {
+			statistics.setStatisticsEnabled(false);
+		}
+	}
+
 	@Test
 	public void testIoGetCurrentAdmission() 
 	{
@@ -719,6 +799,46 @@ public class Tests
 		}
 	}
 	
+	@Test
+	public void testMgrGetNextYProg() 
+	{
+		try 
+		{		
+			int id = _setupTestAdmission(false);
+			Admission foundAdmission = (Admission)jpa.find(Admission.class, id);  
+			int first = admissionBrowserManager.getNextYProg(foundAdmission.getWard().getCode());
+			int second = admissionBrowserManager.getNextYProg(foundAdmission.getWard().getCode());
+			
+			assertThat(first).isGreaterThan(foundAdmission.getYProg());
+			assertThat(second).isEqualTo(first);
+		} 
+		catch (Exception e) 
+		{
+			e.printStackTrace();		
+			fail();
+		}
+	}
+	
+	@Test
+	public void testIoGetYProgYear() 
+	{
+		boolean restartInJune = GeneralData.MATERNITYRESTARTINJUNE;
+		try 
+		{
+			GeneralData.MATERNITYRESTARTINJUNE = true;
+			assertThat(AdmissionIoOperations.getYProgYear("M", new GregorianCalendar(2020, Calendar.JUNE, 30))).isEqualTo(2019);
+			assertThat(AdmissionIoOperations.getYProgYear("M", new GregorianCalendar(2020, Calendar.JULY, 1))).isEqualTo(2020);
+			assertThat(AdmissionIoOperations.getYProgYear("I", new GregorianCalendar(2020, Calendar.JUNE, 30))).isEqualTo(2020);
+			
+			GeneralData.MATERNITYRESTARTINJUNE = false;
+			assertThat(AdmissionIoOperations.getYProgYear("M", new GregorianCalendar(2020, Calendar.JUNE, 30))).isEqualTo(2020);
+		} 
+		finally 
+		{
+			GeneralData.MATERNITYRESTARTINJUNE = restartInJune;
+		}
+	}
+	
 	@Test
 	public void testIoSetDeleted() 
 	{
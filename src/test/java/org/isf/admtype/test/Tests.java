@@ -26,9 +26,16 @@ import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
 
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.ejb.HibernateEntityManagerFactory;
+import org.hibernate.stat.Statistics;
 import org.isf.admtype.model.AdmissionType;
 import org.isf.admtype.service.AdmissionTypeIoOperation;
 import org.isf.utils.db.DbJpaUtil;
+import org.isf.utils.db.ReferenceDataCache;
+import org.isf.utils.db.ReferenceDataCacheManager;
+import org.isf.utils.db.ReferenceDataPreloader;
 import org.isf.utils.exception.OHException;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -37,6 +44,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringRunner;
 
@@ -50,6 +58,14 @@ public class Tests
 
     @Autowired
     AdmissionTypeIoOperation admissionTypeIoOperation;
+    @Autowired
+    ReferenceDataCacheManager cacheManager;
+    @Autowired
+    ReferenceDataPreloader preloader;
+    @Autowired
+    ApplicationContext applicationContext;
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
     
 	
 	@BeforeClass
@@ -139,6 +155,93 @@ public class Tests
 		}
 	}
 	
+	@Test
+	public void testIoGetAdmissionTypeFromCache() throws Exception
+	{
+		Statistics statistics = ((HibernateEntityManagerFactory)entityManagerFactory).getSessionFactory().getStatistics();
+		
+		
+		cacheManager.clearAll();
+		try 
+		{
+			ReferenceDataCache cache = (ReferenceDataCache) cacheManager.getCache("admissionTypes");
+			long hits = cache.getHits();
+			long misses = cache.getMisses();
+			statistics.setStatisticsEnabled(true);
+			statistics.clear();
+			ArrayList<AdmissionType> admissionTypes = admissionTypeIoOperation.getAdmissionType();
+			int size = admissionTypes.size();
+			admissionTypes.add(new AdmissionType("XX", "Added by the caller"));
+			ArrayList<AdmissionType> cachedAdmissionTypes = admissionTypeIoOperation.getAdmissionType();
+			long statements = statistics.getPrepareStatementCount();
+			statistics.setStatisticsEnabled(false);
+			
+			// read once, then answered by the cache with a list of its own
+			assertThat(statements).isEqualTo(1);
+			assertThat(cachedAdmissionTypes).hasSize(size);
+			assertThat(cache.getMisses() - misses).isEqualTo(1);
+			assertThat(cache.getHits() - hits).isEqualTo(1);
+			
+			AdmissionType admissionType = testAdmissionType.setup(true);
+			admissionTypeIoOperation.newAdmissionType(admissionType);
+			assertThat(admissionTypeIoOperation.getAdmissionType()).hasSize(size + 1);
+			admissionTypeIoOperation.deleteAdmissionType(admissionType);
+			assertThat(admissionTypeIoOperation.getAdmissionType()).hasSize(size);
+			
+			cacheManager.clearAll();
+			assertThat(preloader.preload(applicationContext)).isGreaterThanOrEqualTo(10);
+			// also the unsorted admission types of the admission module
+			assertThat(cache.getSize()).isEqualTo(2);
+			assertThat(cacheManager.getCache("wards").get("getWardsNoMaternity")).isNotNull();
+		} 
+		finally 
+		{
+			statistics.setStatisticsEnabled(false);
+			cacheManager.clearAll();
+		}
+	}
+	
+	@Test
+	public void testReferenceDataCacheDropsLeastRecentlyUsed()
+	{
+		ReferenceDataCache cache = new ReferenceDataCache("test", 2, 0);
+		
+		
+		cache.put("a", 1);
+		cache.put("b", 2);
+		assertThat(cache.get("a").get()).isEqualTo(1);
+		cache.put("c", 3);
+		
+		assertThat(cache.get("b")).isNull();
+		assertThat(cache.get("a").get()).isEqualTo(1);
+		assertThat(cache.get("c").get()).isEqualTo(3);
+		assertThat(cache.getSize()).isEqualTo(2);
+		assertThat(cache.getEvictions()).isEqualTo(1);
+		assertThat(cache.getHits()).isEqualTo(3);
+		assertThat(cache.getMisses()).isEqualTo(1);
+		assertThat(cache.getHitRatio()).isEqualTo(0.75);
+		
+		cache.put("d", null);
+		assertThat(cache.get("d")).isNotNull();
+		assertThat(cache.get("d").get()).isNull();
+	}
+	
+	@Test
+	public void testReferenceDataCacheExpiresAfterWrite() throws Exception
+	{
+		ReferenceDataCache cache = new ReferenceDataCache("test", 2, 1);
+		
+		
+		cache.put("a", 1);
+		assertThat(cache.get("a").get()).isEqualTo(1);
+		Thread.sleep(1100);
+		
+		assertThat(cache.get("a")).isNull();
+		assertThat(cache.getSize()).isZero();
+		assertThat(cache.putIfAbsent("a", 2)).isNull();
+		assertThat(cache.get("a").get()).isEqualTo(2);
+	}
+	
 	@Test
 	public void testIoUpdateAdmissionType() 
 	{
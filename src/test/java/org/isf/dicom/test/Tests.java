@@ -23,27 +23,55 @@ package org.isf.dicom.test;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.sql.Blob;
 import java.text.ParseException;
 import java.util.Date;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.imageio.ImageIO;
 import javax.imageio.ImageReader;
 import javax.imageio.stream.ImageInputStream;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.rowset.serial.SerialBlob;
 
 import org.aspectj.util.FileUtil;
 import org.dcm4che2.data.DicomObject;
 import org.dcm4che2.data.Tag;
 import org.dcm4che2.imageio.plugins.dcm.DicomStreamMetaData;
+import org.hibernate.ejb.HibernateEntityManagerFactory;
+import org.hibernate.stat.Statistics;
+import org.isf.dicom.manager.DicomImportPipeline;
 import org.isf.dicom.manager.DicomManagerFactory;
 import org.isf.dicom.manager.DicomManagerInterface;
+import org.isf.dicom.manager.DicomThumbnailCache;
+import org.isf.dicom.manager.FileSystemDicomIdAllocator;
 import org.isf.dicom.manager.FileSystemDicomManager;
+import org.isf.dicom.manager.FileSystemDicomSeriesIndex;
 import org.isf.dicom.manager.SourceFiles;
+import org.isf.dicom.manager.SqlDicomManager;
 import org.isf.dicom.model.FileDicom;
 import org.isf.dicom.service.DicomIoOperations;
 import org.isf.dicomtype.model.DicomType;
@@ -58,7 +86,9 @@ import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
@@ -85,9 +115,15 @@ public class Tests
 	@Autowired
 	private ApplicationContext applicationContext;
 
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
 	private DicomManagerInterface fileSystemDicomManager;
 	private FileDicom dicomFile;
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	@BeforeClass
     public static void setUpClass() throws ParseException {
     	jpa = new DbJpaUtil();
@@ -134,7 +170,9 @@ public class Tests
 
 	private static void _deleteSavedDicomFile() {
 		FileUtil.deleteContents(new File("rsc-test/dicom/0"));
+		FileUtil.deleteContents(new File("rsc-test/dicom/2"));
 		FileUtil.deleteContents(new File("rsc-test/dicom/dicom.storage"));
+		FileUtil.deleteContents(new File("rsc-test/dicom/dicom.storage.lock"));
 	}
 
 
@@ -278,6 +316,16 @@ public class Tests
 			fail();
 		}
 	}
+
+	@Test
+	public void testIoIsSeriePresent() throws Exception
+	{
+		long code = _setupTestFileDicom(false);
+		FileDicom foundFileDicom = (FileDicom)jpa.find(FileDicom.class, code); 
+
+		assertThat(dicomIoOperation.isSeriePresent(foundFileDicom.getDicomSeriesNumber())).isTrue();
+		assertThat(dicomIoOperation.isSeriePresent(foundFileDicom.getDicomSeriesNumber() + "-missing")).isFalse();
+	}
 	
 		
 	@Test
@@ -306,6 +354,215 @@ public class Tests
 
 
 
+	@Test
+	public void testIoSaveFileStreamsDataAndThumbnail() throws Exception {
+		File data = folder.newFile("data.dcm");
+		byte[] dataBytes = new byte[2500000]; // read in chunks of 1 MB
+		new Random().nextBytes(dataBytes);
+		Files.write(data.toPath(), dataBytes);
+		DicomType dicomType = testDicomType.setup(false);
+		jpa.beginTransaction();
+		jpa.persist(dicomType);
+		jpa.commitTransaction();
+		FileDicom dicom = testFileDicom.setup(dicomType, true);
+		dicom.setDicomData(data);
+		byte[] thumbnailBytes = dicom.getDicomThumbnail().getBytes(1, (int) dicom.getDicomThumbnail().length());
+
+		dicomIoOperation.saveFile(dicom);
+
+		FileDicom foundFileDicom = (FileDicom) jpa.find(FileDicom.class, dicom.getIdFile());
+		assertThat(foundFileDicom.getDicomData()).isNull();
+		assertThat(foundFileDicom.getDicomThumbnail()).isNull();
+		FileDicom details = dicomIoOperation.loadDetails(dicom.getIdFile(), dicom.getPatId(), dicom.getDicomSeriesNumber());
+		assertThat(details.getDicomData().length()).isEqualTo(dataBytes.length);
+		try (InputStream stream = details.getDicomData().getBinaryStream()) {
+			assertThat(stream).hasSameContentAs(new ByteArrayInputStream(dataBytes));
+		}
+		assertThat(details.getDicomData().getBytes(2000001, 10)).isEqualTo(Arrays.copyOfRange(dataBytes, 2000000, 2000010));
+		assertThat(details.getDicomThumbnail().getBytes(1, thumbnailBytes.length)).isEqualTo(thumbnailBytes);
+		FileDicom[] dicoms = dicomIoOperation.loadPatientFiles(dicom.getPatId());
+		assertThat(dicoms[0].getDicomThumbnail().getBytes(1, thumbnailBytes.length)).isEqualTo(thumbnailBytes);
+
+		details.setDicomSeriesDescription("Update");
+		dicomIoOperation.saveFile(details);
+		try (InputStream stream = dicomIoOperation.loadDetails(dicom.getIdFile(), dicom.getPatId(), dicom.getDicomSeriesNumber())
+				.getDicomData().getBinaryStream()) {
+			assertThat(stream).hasSameContentAs(new ByteArrayInputStream(dataBytes));
+		}
+	}
+
+	@Test
+	public void testIoLoadPatientFilesListsSeriesWithOneQuery() throws Exception {
+		DicomType dicomType = testDicomType.setup(false);
+		jpa.beginTransaction();
+		jpa.persist(dicomType);
+		_setupTestSeries(dicomType, PATIENT_ID + 1, dicom -> jpa.persist(dicom));
+		jpa.commitTransaction();
+
+		Statistics statistics = ((HibernateEntityManagerFactory)entityManagerFactory).getSessionFactory().getStatistics();
+		statistics.setStatisticsEnabled(true);
+		statistics.clear();
+		FileDicom[] dicoms = dicomIoOperation.loadPatientFiles(PATIENT_ID + 1);
+		long statements = statistics.getPrepareStatementCount();
+		statistics.setStatisticsEnabled(false);
+
+		// one grouped select for all the series, where each series took its own count
+		assertThat(statements).isEqualTo(1);
+		_checkSeries(dicoms, "S0", 3, "S1", 2, "S2", 1);
+		Long[] firstSerie = dicomIoOperation.getSerieDetail(PATIENT_ID + 1, "S0");
+		assertThat(dicoms[0].getIdFile()).isEqualTo(firstSerie[0]);
+		assertThat(dicoms[0].getDicomType().getDicomTypeID()).isEqualTo(dicomType.getDicomTypeID());
+	}
+
+	@Test
+	public void testLoadPatientFilesFromSeriesIndex() throws Exception {
+		File storage = folder.newFolder("storage");
+		Properties properties = new Properties();
+		properties.setProperty("dicom.storage.filesystem", storage.getPath());
+		FileSystemDicomManager manager = new FileSystemDicomManager(properties);
+		int patientId = 5;
+		_setupTestSeries(testDicomType.setup(true), patientId, manager::saveFile);
+		File index = new File(new File(storage, String.valueOf(patientId)), "series.index");
+		assertThat(index).exists();
+
+		FileDicom[] dicoms = manager.loadPatientFiles(patientId);
+		_checkSeries(dicoms, "S0", 3, "S1", 2, "S2", 1);
+		// same study date: the series stored last comes first
+		assertThat(dicoms[2].getDicomSeriesNumber()).isEqualTo("S0");
+		assertThat(dicoms[2].getIdFile()).isEqualTo(manager.getSerieDetail(patientId, "S0")[0]);
+		assertThat(dicoms[2].getDicomThumbnail().length()).isEqualTo(testFileDicom.setup(null, true).getDicomThumbnail().length());
+		assertThat(dicoms[0].getDicomSeriesDescription()).isEqualTo(dicomFile.getDicomSeriesDescription());
+		assertThat(dicoms[0].getDicomStudyDate()).isEqualTo(dicomFile.getDicomStudyDate());
+
+		manager.deleteSerie(patientId, "S1");
+		_checkSeries(manager.loadPatientFiles(patientId), "S0", 3, "S2", 1);
+
+		// a missing index (as in a storage written by a previous version) is rebuilt from the folders
+		assertThat(index.delete()).isTrue();
+		_checkSeries(manager.loadPatientFiles(patientId), "S0", 3, "S2", 1);
+		assertThat(index).exists();
+
+		// the metadata come from the index, not from the files of the series
+		assertThat(new File(new File(new File(storage, String.valueOf(patientId)), "S0"), dicoms[2].getIdFile() + ".properties").delete()).isTrue();
+		assertThat(manager.loadPatientFiles(patientId)[1].getDicomSeriesDescription()).isEqualTo(dicomFile.getDicomSeriesDescription());
+		assertThat(index).exists();
+	}
+
+	@Test
+	public void testSeriesIndexRecordsMetadataOfFirstFileStoredOutOfOrder() throws Exception {
+		File patientDir = folder.newFolder("patient");
+		FileSystemDicomSeriesIndex seriesIndex = new FileSystemDicomSeriesIndex(patientDir);
+		assertThat(seriesIndex.getSeries()).isEmpty();
+		File serieDir = new File(patientDir, "S0");
+		assertThat(serieDir.mkdirs()).isTrue();
+
+		// the file with the higher id is written and recorded first, as by a concurrent import
+		_writeStoredFile(serieDir, 2, "Second");
+		seriesIndex.addFile("S0", 2);
+		_writeStoredFile(serieDir, 1, "First");
+		seriesIndex.addFile("S0", 1);
+
+		FileSystemDicomSeriesIndex.Serie serie = seriesIndex.getSeries().iterator().next();
+		assertThat(serie.getFirstFile()).isEqualTo(1);
+		assertThat(serie.getFrameCount()).isEqualTo(2);
+		assertThat(serie.getMetadata().getProperty("dicomSeriesDescription")).isEqualTo("First");
+
+		// storing many files keeps the index short
+		for (int idFile = 3; idFile <= 40; idFile++) {
+			_writeStoredFile(serieDir, idFile, "Next");
+			seriesIndex.addFile("S0", idFile);
+		}
+		assertThat(Files.readAllLines(new File(patientDir, "series.index").toPath()).size()).isLessThanOrEqualTo(18);
+		serie = seriesIndex.getSeries().iterator().next();
+		assertThat(serie.getFirstFile()).isEqualTo(1);
+		assertThat(serie.getFrameCount()).isEqualTo(40);
+		assertThat(serie.getMetadata().getProperty("dicomSeriesDescription")).isEqualTo("First");
+	}
+
+	@Test
+	public void testSeriesIndexIsRebuiltAfterCutLine() throws Exception {
+		File patientDir = folder.newFolder("patient");
+		FileSystemDicomSeriesIndex seriesIndex = new FileSystemDicomSeriesIndex(patientDir);
+		assertThat(seriesIndex.getSeries()).isEmpty();
+		File serieDir = new File(patientDir, "S0");
+		assertThat(serieDir.mkdirs()).isTrue();
+		_writeStoredFile(serieDir, 1, "First");
+		seriesIndex.addFile("S0", 1);
+		_writeStoredFile(serieDir, 2, "Second");
+
+		// the line of the second file is cut, as by a crash while appending it
+		Files.write(new File(patientDir, "series.index").toPath(), "F\tS0\t".getBytes("UTF-8"), StandardOpenOption.APPEND);
+
+		FileSystemDicomSeriesIndex.Serie serie = seriesIndex.getSeries().iterator().next();
+		assertThat(serie.getFirstFile()).isEqualTo(1);
+		assertThat(serie.getFrameCount()).isEqualTo(2);
+		assertThat(serie.getMetadata().getProperty("dicomSeriesDescription")).isEqualTo("First");
+		assertThat(seriesIndex.getSeries()).hasSize(1);
+	}
+
+	@Test
+	public void testDicomThumbnailCacheDropsLeastRecentlyUsed() throws Exception {
+		DicomThumbnailCache cache = new DicomThumbnailCache(250, false);
+		Blob first = cache.cached(PATIENT_ID, "S0", 1, new SerialBlob(new byte[100]));
+		Blob second = cache.cached(PATIENT_ID, "S0", 2, new SerialBlob(new byte[100]));
+		Blob third = cache.cached(PATIENT_ID, "S1", 3, new SerialBlob(new byte[100]));
+
+		assertThat(first.length()).isEqualTo(100);
+		assertThat(second.length()).isEqualTo(100);
+		assertThat(first.getBytes(1, 100)).hasSize(100);
+		assertThat(cache.getMisses()).isEqualTo(2);
+		assertThat(cache.getHits()).isEqualTo(1);
+
+		// the second thumbnail is the least recently used
+		third.getBinaryStream().close();
+		assertThat(cache.getEvictions()).isEqualTo(1);
+		assertThat(cache.getBytes()).isEqualTo(200);
+		first.length();
+		assertThat(cache.getHits()).isEqualTo(2);
+		assertThat(cache.getHitRatio()).isEqualTo(2. / 5);
+
+		cache.evictSerie(PATIENT_ID, "S0");
+		assertThat(cache.getSize()).isEqualTo(1);
+		assertThat(cache.getBytes()).isEqualTo(100);
+	}
+
+	@Test
+	public void testLoadPatientFilesCachesAndPrefetchesThumbnails() throws Exception {
+		File storage = folder.newFolder("storage");
+		Properties properties = new Properties();
+		properties.setProperty("dicom.storage.filesystem", storage.getPath());
+		FileSystemDicomManager manager = new FileSystemDicomManager(properties);
+		int patientId = 6;
+		_setupTestSeries(testDicomType.setup(true), patientId, manager::saveFile);
+		DicomThumbnailCache cache = DicomManagerFactory.getThumbnailCache();
+		cache.clear();
+		long prefetched = cache.getPrefetched();
+		long misses = cache.getMisses();
+		long hits = cache.getHits();
+
+		// opening the patient reads its thumbnails in the background
+		FileDicom[] dicoms = manager.loadPatientFiles(patientId);
+		long timeout = System.currentTimeMillis() + 10000;
+		while (cache.getPrefetched() < prefetched + 3 && System.currentTimeMillis() < timeout) {
+			Thread.sleep(10);
+		}
+		assertThat(cache.getPrefetched()).isEqualTo(prefetched + 3);
+		for (FileDicom dicom : dicoms) {
+			dicom.getDicomThumbnail().getBinaryStream().close();
+		}
+		// and reopening it reads them from memory
+		long length = testFileDicom.setup(null, true).getDicomThumbnail().length();
+		for (FileDicom dicom : manager.loadPatientFiles(patientId)) {
+			assertThat(dicom.getDicomThumbnail().length()).isEqualTo(length);
+		}
+		assertThat(cache.getMisses()).isEqualTo(misses);
+		assertThat(cache.getHits()).isEqualTo(hits + 6);
+
+		manager.deleteSerie(patientId, "S1");
+		assertThat(cache.getSize()).isEqualTo(2);
+		cache.clear();
+	}
+
 	@Test
 	public void testSaveFile() throws OHServiceException, IOException {
 		fileSystemDicomManager.saveFile(dicomFile);
@@ -377,6 +634,37 @@ public class Tests
 	}
 
 
+	@Test
+	public void testFileSystemDicomIdAllocatorConcurrentAndRestarted() throws Exception {
+		File storage = folder.newFolder("storage");
+		FileSystemDicomIdAllocator allocator = new FileSystemDicomIdAllocator(storage);
+		Set<Long> ids = ConcurrentHashMap.newKeySet();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<?>> importers = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			importers.add(executor.submit(() -> {
+				for (int j = 0; j < 1000; j++) {
+					assertThat(ids.add(allocator.nextId())).isTrue();
+				}
+				return null;
+			}));
+		}
+		for (Future<?> importer : importers) {
+			importer.get();
+		}
+		executor.shutdown();
+
+		assertThat(ids).hasSize(8000);
+		assertThat(Collections.min(ids)).isEqualTo(1L);
+		assertThat(Collections.max(ids)).isEqualTo(8000L);
+		assertThat(new File(storage, "dicom.storage.tmp")).doesNotExist();
+
+		// after a restart the allocation goes on from the persisted high-water mark
+		FileSystemDicomIdAllocator restarted = new FileSystemDicomIdAllocator(storage);
+		assertThat(restarted.nextId()).isEqualTo(8001L);
+		assertThat(allocator.nextId()).isEqualTo(8000L + FileSystemDicomIdAllocator.BLOCK_SIZE + 1);
+	}
+
 	@Test
 	public void testDicomManagerFactoryGetManager() throws OHDicomException {
 		DicomManagerInterface manager = DicomManagerFactory.getManager();
@@ -462,6 +750,105 @@ public class Tests
 	}
 
 
+	@Test
+	public void testDicomImportPipeline() throws Exception {
+		File study = folder.newFolder("study");
+		_createSlices(study, 6, 64);
+		new File(study, ".DS_Store").createNewFile();
+		FileDicom series = new FileDicom();
+		series.setDicomSeriesNumber("TestPipelineSeries");
+		DicomImportPipeline pipeline = new DicomImportPipeline(series, PATIENT_ID, fileSystemDicomManager, 3, null);
+
+		int loaded = pipeline.importFiles(study);
+
+		assertThat(loaded).isEqualTo(7);
+		assertThat(pipeline.getLoaded()).isEqualTo(7);
+		Long[] idFiles = fileSystemDicomManager.getSerieDetail(PATIENT_ID, "TestPipelineSeries");
+		List<String> fileNames = new ArrayList<>();
+		for (Long idFile : idFiles) {
+			FileDicom slice = fileSystemDicomManager.loadDetails(idFile, PATIENT_ID, "TestPipelineSeries");
+			fileNames.add(slice.getFileName());
+		}
+		assertThat(fileNames).containsExactly("slice-0000.jpg", "slice-0001.jpg", "slice-0002.jpg",
+				"slice-0003.jpg", "slice-0004.jpg", "slice-0005.jpg");
+		assertThat(series.getFileName()).isEmpty();
+	}
+
+	@Test
+	public void testDicomImportPipelineFailure() throws Exception {
+		File study = folder.newFolder("unsupported");
+		_createSlices(study, 3, 64);
+		new File(study, "report.txt").createNewFile();
+		FileDicom series = new FileDicom();
+		series.setDicomSeriesNumber("TestPipelineFailure");
+		DicomImportPipeline pipeline = new DicomImportPipeline(series, PATIENT_ID, fileSystemDicomManager, 2, null);
+
+		try {
+			pipeline.importFiles(study);
+			fail("the unsupported file should stop the import");
+		} catch (OHDicomException e) {
+			assertThat(pipeline.getLoaded()).isLessThan(4);
+		}
+	}
+
+	/**
+	 * Benchmark of the import of a synthetic study of 512x512 slices (-Dbenchmark.slices, 2000 by default)
+	 * into the database, file by file and through the pipeline, run with -Dbenchmark=true
+	 */
+	@Test
+	public void benchmarkDicomImportPipeline() throws Exception {
+		assumeTrue(Boolean.getBoolean("benchmark"));
+
+		int slices = Integer.getInteger("benchmark.slices", 2000);
+		File study = folder.newFolder("benchmark");
+		_createSlices(study, slices, 512);
+		DicomManagerInterface manager = applicationContext.getBean(SqlDicomManager.class);
+
+		File[] files = study.listFiles();
+		long start = System.currentTimeMillis();
+		for (File file : files) {
+			FileDicom slice = new FileDicom();
+			slice.setDicomSeriesNumber("BenchmarkSequential");
+			SourceFiles.loadDicom(slice, file, PATIENT_ID, manager);
+		}
+		long sequential = System.currentTimeMillis() - start;
+		System.out.printf("file by file: %,6d ms, %,6.1f files/s%n", sequential, slices * 1000.0 / sequential);
+		assertThat(manager.getSerieDetail(PATIENT_ID, "BenchmarkSequential")).hasSize(slices);
+		manager.deleteSerie(PATIENT_ID, "BenchmarkSequential");
+
+		for (int workers = 1; workers <= 2 * Runtime.getRuntime().availableProcessors(); workers *= 2) {
+			FileDicom series = new FileDicom();
+			series.setDicomSeriesNumber("BenchmarkPipeline" + workers);
+			start = System.currentTimeMillis();
+			new DicomImportPipeline(series, PATIENT_ID, manager, workers, null).importFiles(study);
+			long pipelined = System.currentTimeMillis() - start;
+			System.out.printf("%2d workers:   %,6d ms, %,6.1f files/s, speedup %.1fx%n", workers, pipelined,
+					slices * 1000.0 / pipelined, (double) sequential / pipelined);
+			assertThat(manager.getSerieDetail(PATIENT_ID, series.getDicomSeriesNumber())).hasSize(slices);
+			manager.deleteSerie(PATIENT_ID, series.getDicomSeriesNumber());
+		}
+	}
+
+	/**
+	 * Writes count synthetic slices (a disc with some noise) as jpeg files
+	 */
+	private void _createSlices(File study, int count, int size) throws IOException {
+		Random random = new Random(count);
+		for (int i = 0; i < count; i++) {
+			BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_BYTE_GRAY);
+			int radius = size / 3 + i % (size / 8);
+			for (int y = 0; y < size; y++) {
+				for (int x = 0; x < size; x++) {
+					int dx = x - size / 2;
+					int dy = y - size / 2;
+					int value = dx * dx + dy * dy < radius * radius ? 160 : 20;
+					image.getRaster().setSample(x, y, 0, value + random.nextInt(32));
+				}
+			}
+			ImageIO.write(image, "jpg", new File(study, String.format("slice-%04d.jpg", i)));
+		}
+	}
+
 	private File _getFile(String fileName){
 		return new File(getClass().getResource(fileName).getFile());
 	}
@@ -482,6 +869,48 @@ public class Tests
 		testDicomTypeContext.deleteNews(jpa);
     }
         
+	private void _writeStoredFile(File serieDir, long idFile, String seriesDescription) throws IOException {
+		Files.write(new File(serieDir, idFile + ".properties").toPath(),
+				("idFile =" + idFile + "\ndicomSeriesDescription =" + seriesDescription + "\n").getBytes("UTF-8"));
+		Files.write(new File(serieDir, idFile + ".data").toPath(), new byte[1]);
+		Files.write(new File(serieDir, idFile + ".thumn").toPath(), new byte[1]);
+	}
+
+	/**
+	 * Stores 3 series (S0, S1, S2) of 3, 2 and 1 files for a patient, in this order
+	 */
+	private void _setupTestSeries(DicomType dicomType, int patientId, DicomStore store) throws Exception {
+		int[] frames = { 3, 2, 1 };
+		for (int s = 0; s < frames.length; s++) {
+			for (int f = 0; f < frames[s]; f++) {
+				FileDicom dicom = testFileDicom.setup(dicomType, true);
+				dicom.setPatId(patientId);
+				dicom.setDicomSeriesNumber("S" + s);
+				dicom.setDicomSeriesInstanceUID("TestSeriesInstanceUid" + s);
+				dicom.setDicomInstanceUID("TestInstanceUid" + s + "." + f);
+				store.save(dicom);
+			}
+		}
+	}
+
+	private void _checkSeries(FileDicom[] dicoms, Object... seriesAndFrames) {
+		Map<String, Integer> series = new LinkedHashMap<>();
+		for (FileDicom dicom : dicoms) {
+			series.put(dicom.getDicomSeriesNumber(), dicom.getFrameCount());
+		}
+		Map<String, Integer> expected = new LinkedHashMap<>();
+		for (int i = 0; i < seriesAndFrames.length; i += 2) {
+			expected.put((String) seriesAndFrames[i], (Integer) seriesAndFrames[i + 1]);
+		}
+		assertThat(series).isEqualTo(expected);
+	}
+
+	@FunctionalInterface
+	private interface DicomStore {
+
+		void save(FileDicom dicom) throws Exception;
+	}
+
 	private long _setupTestFileDicom(
 			boolean usingSet) throws OHException 
 	{
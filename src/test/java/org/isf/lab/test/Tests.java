@@ -25,13 +25,19 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
+import java.util.GregorianCalendar;
 
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.ejb.HibernateEntityManagerFactory;
+import org.hibernate.stat.Statistics;
 import org.isf.exa.model.Exam;
 import org.isf.exa.test.TestExam;
 import org.isf.exa.test.TestExamContext;
 import org.isf.exatype.model.ExamType;
 import org.isf.exatype.test.TestExamType;
 import org.isf.exatype.test.TestExamTypeContext;
+import org.isf.generaldata.MessageBundle;
 import org.isf.lab.manager.LabManager;
 import org.isf.lab.model.Laboratory;
 import org.isf.lab.model.LaboratoryForPrint;
@@ -85,6 +91,9 @@ public class Tests {
 	@Autowired
 	private ApplicationEventPublisher applicationEventPublisher;
 
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
 	@BeforeClass
 	public static void setUpClass() {
 		jpa = new DbJpaUtil();
@@ -441,6 +450,108 @@ public class Tests {
 		}
 	}
 
+	@Test
+	public void testIoGetLaboratoryFetchesExamAndPatient() {
+		try {
+			jpa.beginTransaction();
+			ExamType examType = testExamType.setup(false);
+			Exam exam = testExam.setup(examType, 2, false);
+			jpa.persist(examType);
+			jpa.persist(exam);
+			ArrayList<Laboratory> laboratories = new ArrayList<>();
+			for (int i = 0; i < 5; i++) {
+				Patient patient = testPatient.setup(false);
+				jpa.persist(patient);
+				Laboratory laboratory = testLaboratory.setup(exam, patient, false);
+				laboratory.setResult(MessageBundle.getMessage("angal.lab.multipleresults"));
+				jpa.persist(laboratory);
+				laboratories.add(laboratory);
+			}
+			jpa.commitTransaction();
+			jpa.beginTransaction();
+			for (Laboratory laboratory : laboratories) {
+				jpa.persist(testLaboratoryRow.setup(laboratory, false));
+			}
+			jpa.commitTransaction();
+			GregorianCalendar examDate = laboratories.get(0).getExamDate();
+			Statistics statistics = ((HibernateEntityManagerFactory) entityManagerFactory).getSessionFactory().getStatistics();
+			statistics.setStatisticsEnabled(true);
+
+			try {
+				// the exams, their types and the patients come with the laboratories
+				statistics.clear();
+				ArrayList<Laboratory> found = labIoOperation.getLaboratory(null, examDate, examDate);
+				for (Laboratory laboratory : found) {
+					assertThat(laboratory.getExam().getExamtype().getDescription()).isNotNull();
+					assertThat(laboratory.getPatient().getName()).isNotNull();
+				}
+				assertThat(found).hasSize(5);
+				assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+
+				// the results of all the laboratories at once
+				statistics.clear();
+				ArrayList<LaboratoryForPrint> forPrint = labManager.getLaboratoryForPrint(null, examDate, examDate);
+				assertThat(forPrint).hasSize(5);
+				for (LaboratoryForPrint laboratory : forPrint) {
+					assertThat(laboratory.getResult()).endsWith("," + testLaboratoryRow.setup(null, false).getDescription());
+				}
+				assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+			} finally {
+				statistics.setStatisticsEnabled(false);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	@Test
+	public void testMgrNewLaboratoriesBatchesRows() {
+		try {
+			jpa.beginTransaction();
+			ExamType examType = testExamType.setup(false);
+			Exam exam = testExam.setup(examType, 2, false);
+			Patient patient = testPatient.setup(false);
+			jpa.persist(examType);
+			jpa.persist(exam);
+			jpa.persist(patient);
+			jpa.commitTransaction();
+
+			ArrayList<Laboratory> laboratories = new ArrayList<>();
+			ArrayList<ArrayList<String>> labRowList = new ArrayList<>();
+			for (int i = 0; i < 3; i++) {
+				laboratories.add(testLaboratory.setup(exam, patient, false));
+				ArrayList<String> labRow = new ArrayList<>();
+				for (int j = 0; j < 4; j++) {
+					labRow.add("Row" + i + j);
+				}
+				labRowList.add(labRow);
+			}
+			Statistics statistics = ((HibernateEntityManagerFactory) entityManagerFactory).getSessionFactory().getStatistics();
+			statistics.setStatisticsEnabled(true);
+			statistics.clear();
+			boolean result;
+			try {
+				labManager.setIoOperations(labIoOperation);
+				result = labManager.newLaboratory(laboratories, labRowList);
+				// one insert for each laboratory, the rows go in a single JDBC batch
+				assertThat(statistics.getEntityInsertCount()).isEqualTo(3);
+			} finally {
+				statistics.setStatisticsEnabled(false);
+			}
+
+			assertThat(result).isTrue();
+			for (int i = 0; i < 3; i++) {
+				ArrayList<LaboratoryRow> rows = labIoOperation.getLabRow(laboratories.get(i).getCode());
+				assertThat(rows).extracting(LaboratoryRow::getDescription).containsExactly("Row" + i + "0", "Row" + i + "1", "Row" + i + "2", "Row" + i + "3");
+				assertThat(rows.get(0).getLabId().getCode()).isEqualTo(laboratories.get(i).getCode());
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail();
+		}
+	}
+
 	@Test
 	public void testIoUpdateLaboratory() {
 		Integer code = 0;
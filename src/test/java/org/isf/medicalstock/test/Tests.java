@@ -22,18 +22,32 @@
 package org.isf.medicalstock.test;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
 import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.ejb.HibernateEntityManagerFactory;
+import org.hibernate.stat.Statistics;
+import org.isf.generaldata.GeneralData;
 import org.isf.medicals.model.Medical;
 import org.isf.medicals.test.TestMedical;
 import org.isf.medicals.test.TestMedicalContext;
 import org.isf.medicalstock.model.Lot;
+import org.isf.medicalstock.manager.MovStockInsertingManager;
 import org.isf.medicalstock.model.Movement;
+import org.isf.medicalstock.model.MovementPostingResult;
 import org.isf.medicalstock.service.MedicalStockIoOperations;
 import org.isf.medicalstock.service.MedicalStockIoOperations.MovementOrder;
 import org.isf.medstockmovtype.model.MovementType;
@@ -47,6 +61,8 @@ import org.isf.supplier.test.TestSupplier;
 import org.isf.supplier.test.TestSupplierContext;
 import org.isf.utils.db.DbJpaUtil;
 import org.isf.utils.exception.OHException;
+import org.isf.utils.exception.OHServiceException;
+import org.isf.utils.exception.model.OHExceptionMessage;
 import org.isf.ward.model.Ward;
 import org.isf.ward.test.TestWard;
 import org.isf.ward.test.TestWardContext;
@@ -82,6 +98,10 @@ public class Tests
 
     @Autowired
     MedicalStockIoOperations medicalStockIoOperation;
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+    @Autowired
+    MovStockInsertingManager movStockInsertingManager;
 	
 	@BeforeClass
     public static void setUpClass()  
@@ -326,6 +346,330 @@ public class Tests
 		}
 	}
 	
+	@Test
+	public void testIoLotQuantityFollowsMovements() 
+	{
+		int code = 0;
+		
+		try 
+		{	
+			code = _setupTestMovement(false);
+			Movement foundMovement = (Movement)jpa.find(Movement.class, code);
+			Medical medical = foundMovement.getMedical();
+			Lot lot = foundMovement.getLot();
+			MovementType dischargeType = new MovementType("ZZDSCH", "TestDischarge", "-");
+			jpa.beginTransaction();
+			jpa.persist(dischargeType);
+			jpa.commitTransaction();
+			
+			Movement chargeMovement = new Movement(medical, foundMovement.getType(), null, lot,
+					new GregorianCalendar(), 5, foundMovement.getSupplier(), "chargeReference");
+			medicalStockIoOperation.newMovement(chargeMovement);
+			assertThat(medicalStockIoOperation.getLotsByMedical(medical).get(0).getQuantity()).isEqualTo(15);
+			
+			Movement dischargeMovement = new Movement(medical, dischargeType, null, null,
+					new GregorianCalendar(), 12, null, "dischargeReference");
+			medicalStockIoOperation.newAutomaticDischargingMovement(dischargeMovement);
+			assertThat(medicalStockIoOperation.getLotsByMedical(medical).get(0).getQuantity()).isEqualTo(3);
+			
+			dischargeMovement = new Movement(medical, dischargeType, null, null,
+					new GregorianCalendar(), 3, null, "dischargeReference2");
+			medicalStockIoOperation.newAutomaticDischargingMovement(dischargeMovement);
+			assertThat(medicalStockIoOperation.getLotsByMedical(medical)).isEmpty();
+		} 
+		catch (Exception e) 
+		{
+			e.printStackTrace();		
+			fail();
+		}
+	}
+	
+	@Test
+	public void testIoStockQuantitiesUnderConcurrentMovements() throws Exception
+	{
+		int code = _setupTestMovement(false);
+		Movement foundMovement = (Movement)jpa.find(Movement.class, code);
+		Medical medical = foundMovement.getMedical();
+		Lot lot = foundMovement.getLot();
+		Ward ward = foundMovement.getWard();
+		MovementType dischargeType = new MovementType("ZZDSCH", "TestDischarge", "-");
+		jpa.beginTransaction();
+		jpa.persist(dischargeType);
+		jpa.commitTransaction();
+		
+		int threads = 8;
+		int movements = 25;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try 
+		{
+			// the main store charges and discharges to the ward the same medical at once
+			List<Future<?>> pharmacies = new ArrayList<>();
+			for (int i = 0; i < threads; i++) 
+			{
+				pharmacies.add(executor.submit(() -> {
+					for (int j = 0; j < movements; j++) 
+					{
+						assertThat(medicalStockIoOperation.newMovement(new Movement(medical, foundMovement.getType(), null, lot,
+								new GregorianCalendar(), 3, foundMovement.getSupplier(), "chargeReference"))).isTrue();
+						assertThat(medicalStockIoOperation.prepareDischargingMovement(new Movement(medical, dischargeType, ward, lot,
+								new GregorianCalendar(), 2, null, "dischargeReference"))).isTrue();
+					}
+					return null;
+				}));
+			}
+			for (Future<?> pharmacy : pharmacies) 
+			{
+				pharmacy.get();
+			}
+			
+			EntityManager entityManager = entityManagerFactory.createEntityManager();
+			try 
+			{
+				Medical updatedMedical = entityManager.find(Medical.class, medical.getCode());
+				assertThat(updatedMedical.getInqty()).isCloseTo(medical.getInqty() + threads * movements * 3, offset(0.001));
+				assertThat(updatedMedical.getOutqty()).isCloseTo(medical.getOutqty() + threads * movements * 2, offset(0.001));
+				assertThat(entityManager.find(Lot.class, lot.getCode()).getQuantity()).isEqualTo(lot.getQuantity() + threads * movements);
+				Number wardQuantity = (Number) entityManager.createQuery("select w.in_quantity from MedicalWard w where w.id.ward.code = :ward and w.id.medical.code = :medical")
+						.setParameter("ward", ward.getCode())
+						.setParameter("medical", medical.getCode())
+						.getSingleResult();
+				assertThat(wardQuantity.intValue()).isEqualTo(threads * movements * 2);
+			} 
+			finally 
+			{
+				entityManager.close();
+			}
+		} 
+		finally 
+		{
+			executor.shutdown();
+			_deleteMedicalWards(medical);
+		}
+	}
+	
+	@Test
+	public void testMgrPostMultipleChargingMovements() throws Exception
+	{
+		int code = _setupTestMovement(false);
+		Movement foundMovement = (Movement)jpa.find(Movement.class, code);
+		Medical medical = foundMovement.getMedical();
+		Lot lot = foundMovement.getLot();
+		boolean automaticLotIn = GeneralData.AUTOMATICLOT_IN;
+		boolean automaticLotOut = GeneralData.AUTOMATICLOT_OUT;
+		GeneralData.AUTOMATICLOT_IN = false;
+		GeneralData.AUTOMATICLOT_OUT = false;
+		Statistics statistics = ((HibernateEntityManagerFactory) entityManagerFactory).getSessionFactory().getStatistics();
+		statistics.setStatisticsEnabled(true);
+		try 
+		{
+			// the statements do not grow with the lines
+			long[] statements = new long[2];
+			int[] lines = { 5, 25 };
+			for (int i = 0; i < lines.length; i++) 
+			{
+				ArrayList<Movement> movements = new ArrayList<>();
+				for (int j = 0; j < lines[i]; j++) 
+				{
+					Lot newLot = testLot.setup(false);
+					newLot.setCode("POST" + i + "-" + j);
+					movements.add(new Movement(medical, foundMovement.getType(), null, newLot, new GregorianCalendar(), 2, 
+							foundMovement.getSupplier(), "postReference" + i));
+				}
+				// a line charging the existing lot
+				movements.add(new Movement(medical, foundMovement.getType(), null, lot, new GregorianCalendar(), 3, 
+						foundMovement.getSupplier(), "postReference" + i));
+				statistics.clear();
+				List<MovementPostingResult> results = movStockInsertingManager.postMultipleChargingMovements(movements, "postReference" + i);
+				statements[i] = statistics.getPrepareStatementCount();
+				
+				assertThat(results).hasSize(lines[i] + 1);
+				for (MovementPostingResult result : results) 
+				{
+					assertThat(result.isPosted()).isTrue();
+					assertThat(result.getErrors()).isEmpty();
+					assertThat(result.getPostedMovements().get(0).getCode()).isPositive();
+				}
+			}
+			assertThat(statements[1]).isEqualTo(statements[0]);
+			
+			EntityManager entityManager = entityManagerFactory.createEntityManager();
+			try 
+			{
+				Medical updatedMedical = entityManager.find(Medical.class, medical.getCode());
+				assertThat(updatedMedical.getInqty()).isCloseTo(medical.getInqty() + 30 * 2 + 2 * 3, offset(0.001));
+				assertThat(entityManager.find(Lot.class, lot.getCode()).getQuantity()).isEqualTo(lot.getQuantity() + 2 * 3);
+				Lot newLot = entityManager.find(Lot.class, "POST1-7");
+				assertThat(newLot.getQuantity()).isEqualTo(2);
+				assertThat(newLot.getMedical().getCode()).isEqualTo(medical.getCode());
+			} 
+			finally 
+			{
+				entityManager.close();
+			}
+			assertThat(medicalStockIoOperation.getMovementsByReference("postReference1")).hasSize(26);
+		} 
+		finally 
+		{
+			statistics.setStatisticsEnabled(false);
+			GeneralData.AUTOMATICLOT_IN = automaticLotIn;
+			GeneralData.AUTOMATICLOT_OUT = automaticLotOut;
+		}
+	}
+	
+	@Test
+	public void testMgrPostMultipleDischargingMovements() throws Exception
+	{
+		int code = _setupTestMovement(false);
+		Movement foundMovement = (Movement)jpa.find(Movement.class, code);
+		Medical medical = foundMovement.getMedical();
+		Lot lot = foundMovement.getLot();
+		Ward ward = foundMovement.getWard();
+		MovementType dischargeType = new MovementType("ZZDSCH", "TestDischarge", "-");
+		Lot secondLot = testLot.setup(false);
+		secondLot.setCode("POSTLOT");
+		secondLot.getDueDate().add(Calendar.YEAR, 1);
+		jpa.beginTransaction();
+		jpa.persist(dischargeType);
+		jpa.commitTransaction();
+		boolean automaticLotIn = GeneralData.AUTOMATICLOT_IN;
+		boolean automaticLotOut = GeneralData.AUTOMATICLOT_OUT;
+		GeneralData.AUTOMATICLOT_IN = false;
+		GeneralData.AUTOMATICLOT_OUT = false;
+		try 
+		{
+			ArrayList<Movement> charges = new ArrayList<>();
+			charges.add(new Movement(medical, foundMovement.getType(), null, secondLot, new GregorianCalendar(), 5, 
+					foundMovement.getSupplier(), "chargeReference"));
+			movStockInsertingManager.postMultipleChargingMovements(charges, "chargeReference");
+			
+			// the second line exceeds what the first one leaves in the lot: nothing is stored
+			ArrayList<Movement> movements = new ArrayList<>();
+			movements.add(new Movement(medical, dischargeType, ward, lot, new GregorianCalendar(), 6, null, "dischargeReference"));
+			movements.add(new Movement(medical, dischargeType, ward, lot, new GregorianCalendar(), 5, null, "dischargeReference"));
+			List<MovementPostingResult> results = movStockInsertingManager.postMultipleDischargingMovements(movements, "dischargeReference");
+			assertThat(results.get(0).getErrors()).isEmpty();
+			assertThat(results.get(1).getErrors()).extracting(OHExceptionMessage::getTitle).contains("quantityGreaterThanLotError");
+			assertThat(results).extracting(MovementPostingResult::isPosted).containsOnly(false);
+			assertThat(medicalStockIoOperation.getMovementsByReference("dischargeReference")).isEmpty();
+			
+			// the oldest lots are used first
+			GeneralData.AUTOMATICLOT_OUT = true;
+			movements = new ArrayList<>();
+			movements.add(new Movement(medical, dischargeType, ward, null, new GregorianCalendar(), 8, null, "dischargeReference"));
+			movements.add(new Movement(medical, dischargeType, ward, null, new GregorianCalendar(), 4, null, "dischargeReference"));
+			results = movStockInsertingManager.postMultipleDischargingMovements(movements, "dischargeReference");
+			assertThat(results.get(0).getPostedMovements()).extracting(Movement::getQuantity).containsExactly(8);
+			assertThat(results.get(1).getPostedMovements()).extracting(Movement::getQuantity).containsExactly(2, 2);
+			assertThat(results.get(1).getPostedMovements().get(1).getLot().getCode()).isEqualTo("POSTLOT");
+			
+			EntityManager entityManager = entityManagerFactory.createEntityManager();
+			try 
+			{
+				Medical updatedMedical = entityManager.find(Medical.class, medical.getCode());
+				assertThat(updatedMedical.getInqty()).isCloseTo(medical.getInqty() + 5, offset(0.001));
+				assertThat(updatedMedical.getOutqty()).isCloseTo(medical.getOutqty() + 12, offset(0.001));
+				assertThat(entityManager.find(Lot.class, lot.getCode()).getQuantity()).isEqualTo(0);
+				assertThat(entityManager.find(Lot.class, "POSTLOT").getQuantity()).isEqualTo(3);
+				Number wardQuantity = (Number) entityManager.createQuery("select sum(w.in_quantity) from MedicalWard w where w.id.ward.code = :ward and w.id.medical.code = :medical")
+						.setParameter("ward", ward.getCode())
+						.setParameter("medical", medical.getCode())
+						.getSingleResult();
+				assertThat(wardQuantity.intValue()).isEqualTo(12);
+			} 
+			finally 
+			{
+				entityManager.close();
+			}
+		} 
+		finally 
+		{
+			GeneralData.AUTOMATICLOT_IN = automaticLotIn;
+			GeneralData.AUTOMATICLOT_OUT = automaticLotOut;
+			_deleteMedicalWards(medical);
+		}
+	}
+	
+	@Test
+	public void testIoNewMovementsDoesNotOverdrawLot() throws Exception
+	{
+		int code = _setupTestMovement(false);
+		Movement foundMovement = (Movement)jpa.find(Movement.class, code);
+		Medical medical = foundMovement.getMedical();
+		Lot lot = foundMovement.getLot();
+		Ward ward = foundMovement.getWard();
+		MovementType dischargeType = new MovementType("ZZDSCH", "TestDischarge", "-");
+		jpa.beginTransaction();
+		jpa.persist(dischargeType);
+		jpa.commitTransaction();
+		try 
+		{
+			// validated against a balance already taken by a concurrent discharge
+			List<Movement> movements = new ArrayList<>();
+			movements.add(new Movement(medical, dischargeType, ward, lot, new GregorianCalendar(), lot.getQuantity() + 1, null, "dischargeReference"));
+			try 
+			{
+				medicalStockIoOperation.newMovements(movements, new ArrayList<Lot>());
+				fail();
+			} 
+			catch (OHServiceException e) 
+			{
+				assertThat(e.getMessages()).extracting(OHExceptionMessage::getTitle).containsExactly("quantityGreaterThanLotError");
+			}
+			
+			EntityManager entityManager = entityManagerFactory.createEntityManager();
+			try 
+			{
+				assertThat(entityManager.find(Lot.class, lot.getCode()).getQuantity()).isEqualTo(lot.getQuantity());
+				assertThat(entityManager.find(Medical.class, medical.getCode()).getOutqty()).isCloseTo(medical.getOutqty(), offset(0.001));
+				assertThat(medicalStockIoOperation.getMovementsByReference("dischargeReference")).isEmpty();
+			} 
+			finally 
+			{
+				entityManager.close();
+			}
+		} 
+		finally 
+		{
+			_deleteMedicalWards(medical);
+		}
+	}
+	
+	/**
+	 * Benchmark of the posting of a delivery note of 1000 lines (-Dbenchmark.lines), 
+	 * line by line and as a whole, run with -Dbenchmark=true
+	 */
+	@Test
+	public void benchmarkPostMultipleChargingMovements() throws Exception
+	{
+		assumeTrue(Boolean.getBoolean("benchmark"));
+		
+		int lines = Integer.getInteger("benchmark.lines", 1000);
+		int code = _setupTestMovement(false);
+		Movement foundMovement = (Movement)jpa.find(Movement.class, code);
+		boolean automaticLotIn = GeneralData.AUTOMATICLOT_IN;
+		boolean automaticLotOut = GeneralData.AUTOMATICLOT_OUT;
+		GeneralData.AUTOMATICLOT_IN = false;
+		GeneralData.AUTOMATICLOT_OUT = false;
+		try 
+		{
+			long start = System.currentTimeMillis();
+			movStockInsertingManager.newMultipleChargingMovements(_benchmarkDeliveryNote(foundMovement, "BENCHA", lines), "benchmarkReferenceA");
+			long lineByLine = System.currentTimeMillis() - start;
+			System.out.printf("line by line: %,6d ms, %,7.1f lines/s%n", lineByLine, lines * 1000.0 / lineByLine);
+			
+			start = System.currentTimeMillis();
+			List<MovementPostingResult> results = movStockInsertingManager.postMultipleChargingMovements(_benchmarkDeliveryNote(foundMovement, "BENCHB", lines), "benchmarkReferenceB");
+			long posted = System.currentTimeMillis() - start;
+			System.out.printf("as a whole:   %,6d ms, %,7.1f lines/s, speedup %.1fx%n", posted, lines * 1000.0 / posted, (double) lineByLine / posted);
+			assertThat(results).extracting(MovementPostingResult::isPosted).containsOnly(true);
+		} 
+		finally 
+		{
+			GeneralData.AUTOMATICLOT_IN = automaticLotIn;
+			GeneralData.AUTOMATICLOT_OUT = automaticLotOut;
+		}
+	}
+	
 	@Test
 	public void testIoNewMovement() 
 	{
@@ -493,6 +837,59 @@ public class Tests
 		}
 	}
 	
+	@Test
+	public void testIoGetMovementsStatementCount() 
+	{
+		int code = 0;
+		
+		
+		try 
+		{		
+			code = _setupTestMovement(false);
+			Movement foundMovement = (Movement)jpa.find(Movement.class, code); 
+			jpa.beginTransaction();	
+			for (int i = 0; i < 3; i++) 
+			{
+				Lot lot = new Lot("STMLOT" + i, foundMovement.getLot().getPreparationDate(), foundMovement.getLot().getDueDate(), new BigDecimal(i));
+				Movement movement = new Movement(
+						foundMovement.getMedical(),
+						foundMovement.getType(),
+						foundMovement.getWard(),
+						lot,
+						new GregorianCalendar(),
+						10,
+						foundMovement.getSupplier(),
+						"STMREF" + i);
+				jpa.persist(lot);
+				jpa.persist(movement);
+			}
+			jpa.commitTransaction();
+			
+			Statistics statistics = ((HibernateEntityManagerFactory)entityManagerFactory).getSessionFactory().getStatistics();
+			statistics.setStatisticsEnabled(true);
+			statistics.clear();
+			ArrayList<Movement> movements = medicalStockIoOperation.getMovements();
+			long movementStatements = statistics.getPrepareStatementCount();
+			statistics.clear();
+			ArrayList<Movement> printMovements = medicalStockIoOperation.getMovementForPrint(
+					null, null, null, null, null, null, null, MovementOrder.DATE);
+			long printStatements = statistics.getPrepareStatementCount();
+			statistics.setStatisticsEnabled(false);
+
+			assertThat(movements).hasSize(4);
+			assertThat(printMovements).hasSize(4);
+			// the whole movement graph must be loaded by a single select, whatever the number of rows
+			assertThat(movementStatements).isEqualTo(1);
+			assertThat(printStatements).isEqualTo(1);
+			assertThat(movements.get(0).getLot().getCode()).startsWith("STMLOT");
+		} 
+		catch (Exception e) 
+		{
+			e.printStackTrace();		
+			fail();
+		}
+	}
+	
 	@Test
 	public void testIoGetMovementForPrint() 
 	{
@@ -606,8 +1003,8 @@ public class Tests
     private void _restoreContext() throws OHException 
     {
 		testMovementContext.deleteNews(jpa);
-		testMedicalContext.deleteNews(jpa);
 		testLotContext.deleteNews(jpa);
+		testMedicalContext.deleteNews(jpa);
     	testMedicalTypeContext.deleteNews(jpa);
     	testMovementTypeContext.deleteNews(jpa);
     	testWardContext.deleteNews(jpa);
@@ -652,11 +1049,14 @@ public class Tests
 	
 		jpa.beginTransaction();	
 		movement = testMovement.setup(medical, movementType, ward, lot, supplier, usingSet);
+		// the lot balance is the one the charging movement would have left
+		lot.setMedical(medical);
+		lot.setQuantity(movement.getQuantity());
 		jpa.persist(supplier);
-		jpa.persist(lot);
 		jpa.persist(ward);
 		jpa.persist(medicalType);
 		jpa.persist(medical);
+		jpa.persist(lot);
 		jpa.persist(movementType);
 		jpa.persist(movement);
 		jpa.commitTransaction();
@@ -664,6 +1064,34 @@ public class Tests
 		return movement.getCode();
 	}
 		
+	private ArrayList<Movement> _benchmarkDeliveryNote(
+			Movement foundMovement, 
+			String lotPrefix,
+			int lines) throws OHException 
+	{
+		ArrayList<Movement> movements = new ArrayList<>();
+		for (int i = 0; i < lines; i++) 
+		{
+			Lot lot = testLot.setup(false);
+			lot.setCode(lotPrefix + i);
+			movements.add(new Movement(foundMovement.getMedical(), foundMovement.getType(), null, lot, new GregorianCalendar(), 1 + i % 10, 
+					foundMovement.getSupplier(), lotPrefix));
+		}
+		return movements;
+	}
+	
+	private void _deleteMedicalWards(
+			Medical medical) 
+	{
+		EntityManager entityManager = entityManagerFactory.createEntityManager();
+		entityManager.getTransaction().begin();
+		entityManager.createQuery("delete from MedicalWard w where w.id.medical.code = :medical")
+				.setParameter("medical", medical.getCode())
+				.executeUpdate();
+		entityManager.getTransaction().commit();
+		entityManager.close();
+	}
+	
 	private void  _checkMovementIntoDb(
 			int code) throws OHException 
 	{
@@ -29,6 +29,10 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.ejb.HibernateEntityManagerFactory;
+import org.hibernate.stat.Statistics;
 import org.isf.medicals.model.Medical;
 import org.isf.medicals.test.TestMedical;
 import org.isf.medicals.test.TestMedicalContext;
@@ -100,6 +104,8 @@ public class Tests
     MedicalStockWardIoOperations medicalIoOperation;
     @Autowired
     ApplicationEventPublisher applicationEventPublisher;
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
 
 	@BeforeClass
     public static void setUpClass()  
@@ -436,6 +442,83 @@ public class Tests
 		}
 	}
 
+	@Test
+	public void testIoGetMedicalsWardTotalQuantity()
+	{
+		MedicalWardId code = new MedicalWardId();
+		
+		
+		try 
+		{		
+			code = _setupTestMedicalWard(false);
+			MedicalWard foundMedicalWard = (MedicalWard)jpa.find(MedicalWard.class, code); 
+			Lot lot = foundMedicalWard.getLot();
+			Lot otherLot = new Lot("TOTLOT1", lot.getPreparationDate(), lot.getDueDate(), lot.getCost());
+			Lot emptyLot = new Lot("TOTLOT2", lot.getPreparationDate(), lot.getDueDate(), lot.getCost());
+			jpa.beginTransaction();	
+			jpa.persist(otherLot);
+			jpa.persist(emptyLot);
+			jpa.persist(new MedicalWard(foundMedicalWard.getWard(), foundMedicalWard.getMedical(), 10, 4, otherLot));
+			jpa.persist(new MedicalWard(foundMedicalWard.getWard(), foundMedicalWard.getMedical(), 5, 5, emptyLot));
+			jpa.commitTransaction();
+			
+			Statistics statistics = ((HibernateEntityManagerFactory)entityManagerFactory).getSessionFactory().getStatistics();
+			statistics.setStatisticsEnabled(true);
+			statistics.clear();
+			ArrayList<MedicalWard> medicalWards = medicalIoOperation.getMedicalsWardTotalQuantity(foundMedicalWard.getWard().getCode().charAt(0));
+			long statements = statistics.getPrepareStatementCount();
+			statistics.setStatisticsEnabled(false);
+			
+			// one row per medical, already summed over its lots by a single select
+			assertThat(statements).isEqualTo(1);
+			assertThat(medicalWards).hasSize(1);
+			assertThat(medicalWards.get(0).getMedical().getCode()).isEqualTo(foundMedicalWard.getMedical().getCode());
+			assertThat(medicalWards.get(0).getMedical().getType().getCode()).isEqualTo(foundMedicalWard.getMedical().getType().getCode());
+			assertThat(medicalWards.get(0).getQty()).isCloseTo((double) (foundMedicalWard.getInQuantity() - foundMedicalWard.getOutQuantity() + 6), offset(0.1));
+		} 
+		catch (Exception e) 
+		{
+			e.printStackTrace();		
+			fail();
+		}
+	}
+	
+	@Test
+	public void testIoGetWardMovementsStatementCount()
+	{
+		try 
+		{		
+			int code = _setupTestMovementWard(false);
+			MovementWard foundMovement = (MovementWard)jpa.find(MovementWard.class, code); 
+			jpa.beginTransaction();	
+			for (int i = 0; i < 3; i++) 
+			{
+				MovementWard movementWard = testMovementWard.setup(foundMovement.getWard(), foundMovement.getPatient(), foundMovement.getMedical(), 
+						foundMovement.getWardTo(), foundMovement.getWardFrom(), foundMovement.getLot(), false);
+				jpa.persist(movementWard);
+			}
+			jpa.commitTransaction();
+			
+			Statistics statistics = ((HibernateEntityManagerFactory)entityManagerFactory).getSessionFactory().getStatistics();
+			statistics.setStatisticsEnabled(true);
+			statistics.clear();
+			ArrayList<MovementWard> movements = medicalIoOperation.getWardMovements(foundMovement.getWard().getCode(), null, null);
+			long statements = statistics.getPrepareStatementCount();
+			statistics.setStatisticsEnabled(false);
+
+			assertThat(movements).hasSize(4);
+			// the whole movement graph must be loaded by a single select, whatever the number of rows
+			assertThat(statements).isEqualTo(1);
+			assertThat(movements.get(0).getMedical().getType().getCode()).isEqualTo(foundMovement.getMedical().getType().getCode());
+			assertThat(movements.get(0).getPatient().getCode()).isEqualTo(foundMovement.getPatient().getCode());
+		} 
+		catch (Exception e) 
+		{
+			e.printStackTrace();		
+			fail();
+		}
+	}
+
 	@Test
 	public void testListenerShouldUpdatePatientToMergedWhenPatientMergedEventArrive() {
 		try {
@@ -25,16 +25,33 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.EnumSet;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.ejb.HibernateEntityManagerFactory;
+import org.hibernate.stat.Statistics;
+import org.isf.agetype.model.AgeType;
 import org.isf.disease.model.Disease;
 import org.isf.disease.test.TestDisease;
 import org.isf.disease.test.TestDiseaseContext;
 import org.isf.distype.model.DiseaseType;
 import org.isf.distype.test.TestDiseaseType;
 import org.isf.distype.test.TestDiseaseTypeContext;
+import org.isf.generaldata.GeneralData;
+import org.isf.generaldata.MessageBundle;
+import org.isf.opd.manager.OpdBrowserManager;
 import org.isf.opd.model.Opd;
+import org.isf.opd.model.OpdCount;
+import org.isf.opd.model.OpdGrouping;
+import org.isf.opd.service.OpdIoOperationRepository;
 import org.isf.opd.service.OpdIoOperations;
 import org.isf.patient.model.Patient;
 import org.isf.patient.model.PatientMergedEvent;
@@ -52,6 +69,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @RunWith(SpringRunner.class)
 @ContextConfiguration(locations = { "classpath:applicationContext.xml" })
@@ -70,7 +89,15 @@ public class Tests
     @Autowired
     OpdIoOperations opdIoOperation;
     @Autowired
+    OpdIoOperationRepository opdIoOperationRepository;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    OpdBrowserManager opdBrowserManager;
+    @Autowired
     ApplicationEventPublisher applicationEventPublisher;
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
 	
 	@BeforeClass
     public static void setUpClass()  
@@ -287,6 +314,58 @@ public class Tests
 		}
 	}
 
+	@Test
+	public void testMgrGetNextProgYear() 
+	{
+		try 
+		{		
+			int code = _setupTestOpd(false);
+			Opd foundOpd = (Opd)jpa.find(Opd.class, code); 
+			int first = opdBrowserManager.getNextProgYear(0);
+			int second = opdBrowserManager.getNextProgYear(0);
+
+			assertThat(first).isGreaterThan(foundOpd.getProgYear());
+			assertThat(second).isGreaterThan(first);
+		} 
+		catch (Exception e) 
+		{
+			e.printStackTrace();		
+			fail();
+		}
+	}
+
+	@Test
+	public void testMgrNewOpdAssignsProgYear() 
+	{
+		try 
+		{		
+			int code = _setupTestOpd(false);
+			Opd foundOpd = (Opd)jpa.find(Opd.class, code); 
+			int year = foundOpd.getVisitDate().get(GregorianCalendar.YEAR);
+			Opd first = testOpd.setup(foundOpd.getPatient(), foundOpd.getDisease(), false);
+			first.setProgYear(0);
+			first.setDisease2(null);
+			first.setDisease3(null);
+			Opd second = testOpd.setup(foundOpd.getPatient(), foundOpd.getDisease(), false);
+			second.setProgYear(0);
+			second.setDisease2(null);
+			second.setDisease3(null);
+
+			assertThat(opdBrowserManager.newOpd(first)).isTrue();
+			assertThat(opdBrowserManager.newOpd(second)).isTrue();
+			
+			assertThat(first.getProgYear()).isGreaterThan(foundOpd.getProgYear());
+			assertThat(second.getProgYear()).isEqualTo(first.getProgYear() + 1);
+			assertThat(opdIoOperation.getProgYear(year)).isEqualTo(second.getProgYear());
+			assertThat(((Opd)jpa.find(Opd.class, second.getCode())).getProgYear()).isEqualTo(second.getProgYear());
+		} 
+		catch (Exception e) 
+		{
+			e.printStackTrace();		
+			fail();
+		}
+	}
+
 	@Test
 	public void testIoIsExistsOpdNumShouldReturnTrueWhenOpdWithGivenOPDProgressiveYearAndVisitYearExists() {
 		try	{
@@ -388,6 +467,257 @@ public class Tests
 		}
 	}
 
+	@Test
+	public void testIoGetOpdCounts() throws Exception
+	{
+		List<Disease> diseases = _setupTestOpds();
+		GregorianCalendar dateFrom = new GregorianCalendar(1984, Calendar.AUGUST, 14);
+		GregorianCalendar dateTo = new GregorianCalendar(1984, Calendar.AUGUST, 15, 23, 59, 59);
+		String allTypes = MessageBundle.getMessage("angal.opd.alltype");
+		String allDiseases = MessageBundle.getMessage("angal.opd.alldisease");
+		
+		Statistics statistics = ((HibernateEntityManagerFactory)entityManagerFactory).getSessionFactory().getStatistics();
+		statistics.setStatisticsEnabled(true);
+		statistics.clear();
+		List<OpdCount> counts = opdIoOperation.getOpdCounts(allTypes, allDiseases, dateFrom, dateTo, 0, 0, 'A', 'A', 
+				null, EnumSet.of(OpdGrouping.DISEASE, OpdGrouping.SEX, OpdGrouping.NEW_PATIENT));
+		long statements = statistics.getPrepareStatementCount();
+		statistics.setStatisticsEnabled(false);
+
+		// counted by a single grouped select, as the visits would be counted in memory
+		assertThat(statements).isEqualTo(1);
+		Map<List<Object>, Long> expected = new LinkedHashMap<List<Object>, Long>();
+		for (Opd opd : opdIoOperation.getOpdList(allTypes, allDiseases, dateFrom, dateTo, 0, 0, 'A', 'A')) 
+		{
+			List<Object> key = Arrays.<Object>asList(opd.getDisease().getCode(), opd.getSex(), opd.getNewPatient());
+			expected.put(key, expected.containsKey(key) ? expected.get(key) + 1 : 1L);
+		}
+		Map<List<Object>, Long> found = new LinkedHashMap<List<Object>, Long>();
+		for (OpdCount count : counts) 
+		{
+			assertThat(count.getDate()).isNull();
+			assertThat(count.getAge()).isNull();
+			found.put(Arrays.<Object>asList(count.getDiseaseCode(), count.getSex(), count.getNewPatient()), count.getCount());
+		}
+		assertThat(found).isEqualTo(expected);
+		
+		counts = opdIoOperation.getOpdCounts(diseases.get(0).getType().getCode(), diseases.get(0).getCode(), dateFrom, dateTo, 0, 0, 'A', 'A', 
+				Arrays.asList(new AgeType("d0", 0, 9, "TestDescription"), new AgeType("d1", 10, 99, "TestDescription")), 
+				EnumSet.of(OpdGrouping.DAY, OpdGrouping.AGE));
+		assertThat(counts).hasSize(3);
+		_checkOpdCount(counts.get(0), 14, "d0", 2);
+		_checkOpdCount(counts.get(1), 14, "d1", 1);
+		_checkOpdCount(counts.get(2), 15, "d1", 1);
+	}
+	
+	@Test
+	public void testIoGetDailyOpdCountsFromRollup() throws Exception
+	{
+		List<Disease> diseases = _setupTestOpds();
+		String diseaseTypeCode = diseases.get(0).getType().getCode();
+		String allDiseases = MessageBundle.getMessage("angal.opd.alldisease");
+		GregorianCalendar day = new GregorianCalendar(1984, Calendar.AUGUST, 14);
+		GregorianCalendar nextDay = new GregorianCalendar(1984, Calendar.AUGUST, 15);
+		EnumSet<OpdGrouping> groupBy = EnumSet.of(OpdGrouping.DAY, OpdGrouping.DISEASE, OpdGrouping.AGE, OpdGrouping.SEX, OpdGrouping.NEW_PATIENT);
+		
+		GeneralData.OPDROLLUP = true;
+		try 
+		{
+			assertThat(opdIoOperation.rebuildDailyOpdCounts()).isPositive();
+			
+			Opd opd = testOpd.setup(null, diseases.get(1), true);
+			opd.setDate(new Date());
+			opd.setVisitDate(new GregorianCalendar(1984, Calendar.AUGUST, 15, 18, 30));
+			assertThat(opdIoOperation.newOpd(opd)).isTrue();
+			opd.setSex('M');
+			opd.setAge(40);
+			opd.setNewPatient('R');
+			opd = opdIoOperation.updateOpd(opd);
+			List<Opd> opds = opdIoOperation.getOpdList(diseaseTypeCode, allDiseases, day, new GregorianCalendar(1984, Calendar.AUGUST, 15, 23, 59), 0, 0, 'A', 'A');
+			for (Opd visit : opds) 
+			{
+				if (visit.getCode() != opd.getCode() && visit.getDisease().getCode().equals(diseases.get(0).getCode())) 
+				{
+					opdIoOperation.deleteOpd(visit);
+					break;
+				}
+			}
+			
+			// maintained at each change as if counted again from the visits
+			List<OpdCount> rollup = opdIoOperation.getDailyOpdCounts(diseaseTypeCode, allDiseases, day, nextDay, 0, 0, 'A', 'A', null, groupBy);
+			GeneralData.OPDROLLUP = false;
+			List<OpdCount> visits = opdIoOperation.getDailyOpdCounts(diseaseTypeCode, allDiseases, day, nextDay, 0, 0, 'A', 'A', null, groupBy);
+			assertThat(rollup.toString()).isEqualTo(visits.toString());
+			assertThat(_total(rollup)).isEqualTo(opds.size() - 1);
+			
+			GeneralData.OPDROLLUP = true;
+			opdIoOperation.rebuildDailyOpdCounts();
+			rollup = opdIoOperation.getDailyOpdCounts(diseaseTypeCode, allDiseases, day, nextDay, 0, 0, 'A', 'A', null, groupBy);
+			assertThat(rollup.toString()).isEqualTo(visits.toString());
+			
+			rollup = opdIoOperation.getDailyOpdCounts(diseaseTypeCode, diseases.get(1).getCode(), day, nextDay, 0, 0, 'M', 'A', null, EnumSet.of(OpdGrouping.NEW_PATIENT));
+			assertThat(rollup).hasSize(1);
+			assertThat(rollup.get(0).getNewPatient()).isEqualTo('R');
+			assertThat(rollup.get(0).getCount()).isEqualTo(2);
+		} 
+		finally 
+		{
+			GeneralData.OPDROLLUP = false;
+			jpa.beginTransaction();
+			jpa.createQuery("DELETE FROM OpdDailyCount", null, true);
+			jpa.executeUpdate();
+			jpa.commitTransaction();
+		}
+	}
+	
+	@Test
+	public void testIoUpdateManagedOpdMovesDailyCount() throws Exception
+	{
+		List<Disease> diseases = _setupTestOpds();
+		String diseaseTypeCode = diseases.get(0).getType().getCode();
+		String allDiseases = MessageBundle.getMessage("angal.opd.alldisease");
+		GregorianCalendar day = new GregorianCalendar(1984, Calendar.AUGUST, 14);
+		GregorianCalendar nextDay = new GregorianCalendar(1984, Calendar.AUGUST, 15);
+		EnumSet<OpdGrouping> groupBy = EnumSet.of(OpdGrouping.DAY, OpdGrouping.DISEASE, OpdGrouping.AGE, OpdGrouping.SEX, OpdGrouping.NEW_PATIENT);
+		TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+		GeneralData.OPDROLLUP = true;
+		try 
+		{
+			opdIoOperation.rebuildDailyOpdCounts();
+			int code = opdIoOperation.getOpdList(diseaseTypeCode, allDiseases, day, new GregorianCalendar(1984, Calendar.AUGUST, 14, 23, 59), 9, 9, 'F', 'A').get(0).getCode();
+
+			// the instance changed is the one the previous values would be read from
+			transaction.execute(status -> {
+				try {
+					Opd opd = opdIoOperationRepository.findOne(code);
+					opd.setVisitDate(new GregorianCalendar(1984, Calendar.AUGUST, 15, 11, 0));
+					opdIoOperation.updateOpd(opd);
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+				return null;
+			});
+
+			List<OpdCount> rollup = opdIoOperation.getDailyOpdCounts(diseaseTypeCode, allDiseases, day, nextDay, 0, 0, 'A', 'A', null, groupBy);
+			GeneralData.OPDROLLUP = false;
+			List<OpdCount> visits = opdIoOperation.getDailyOpdCounts(diseaseTypeCode, allDiseases, day, nextDay, 0, 0, 'A', 'A', null, groupBy);
+			assertThat(rollup.toString()).isEqualTo(visits.toString());
+			assertThat(_total(rollup)).isEqualTo(5);
+		} 
+		finally 
+		{
+			GeneralData.OPDROLLUP = false;
+			jpa.beginTransaction();
+			jpa.createQuery("DELETE FROM OpdDailyCount", null, true);
+			jpa.executeUpdate();
+			jpa.commitTransaction();
+		}
+	}
+	
+	@Test
+	public void testIoGetDailyOpdCountsSameWithAndWithoutRollup() throws Exception
+	{
+		_setupTestOpds();
+		String allTypes = MessageBundle.getMessage("angal.opd.alltype");
+		String allDiseases = MessageBundle.getMessage("angal.opd.alldisease");
+		GregorianCalendar day = new GregorianCalendar(1984, Calendar.AUGUST, 14);
+		GregorianCalendar nextDay = new GregorianCalendar(1984, Calendar.AUGUST, 15);
+		EnumSet<OpdGrouping> groupBy = EnumSet.of(OpdGrouping.DAY, OpdGrouping.DISEASE, OpdGrouping.AGE, OpdGrouping.SEX, OpdGrouping.NEW_PATIENT);
+
+		jpa.beginTransaction();
+		Opd withoutDisease = testOpd.setup(null, null, true);
+		withoutDisease.setDate(new Date());
+		withoutDisease.setVisitDate(new GregorianCalendar(1984, Calendar.AUGUST, 14, 11, 0));
+		jpa.persist(withoutDisease);
+		jpa.commitTransaction();
+
+		GeneralData.OPDROLLUP = true;
+		try
+		{
+			opdIoOperation.rebuildDailyOpdCounts();
+			List<OpdCount> rollup = opdIoOperation.getDailyOpdCounts(allTypes, allDiseases, day, nextDay, 0, 0, 'A', 'A', null, groupBy);
+			List<OpdCount> rollupTotal = opdIoOperation.getDailyOpdCounts(allTypes, allDiseases, day, nextDay, 0, 0, 'A', 'A', null, EnumSet.noneOf(OpdGrouping.class));
+			GeneralData.OPDROLLUP = false;
+			List<OpdCount> visits = opdIoOperation.getDailyOpdCounts(allTypes, allDiseases, day, nextDay, 0, 0, 'A', 'A', null, groupBy);
+			List<OpdCount> visitsTotal = opdIoOperation.getDailyOpdCounts(allTypes, allDiseases, day, nextDay, 0, 0, 'A', 'A', null, EnumSet.noneOf(OpdGrouping.class));
+
+			assertThat(rollup.toString()).isEqualTo(visits.toString());
+			assertThat(_total(rollupTotal)).isEqualTo(5);
+			assertThat(_total(visitsTotal)).isEqualTo(5);
+		}
+		finally
+		{
+			GeneralData.OPDROLLUP = false;
+			jpa.beginTransaction();
+			jpa.createQuery("DELETE FROM OpdDailyCount", null, true);
+			jpa.executeUpdate();
+			jpa.commitTransaction();
+		}
+	}
+
+	/**
+	 * Five visits on two days for two diseases of the same type
+	 */
+	private List<Disease> _setupTestOpds() throws OHException 
+	{
+		DiseaseType diseaseType = testDiseaseType.setup(false);
+		Disease disease = testDisease.setup(diseaseType, false);
+		Disease otherDisease = testDisease.setup(diseaseType, false);
+		otherDisease.setCode("998");
+		Object[][] visits = {
+			{ disease, 14, 'F', 9, 'N' },
+			{ disease, 14, 'M', 4, 'R' },
+			{ disease, 14, 'F', 30, 'N' },
+			{ disease, 15, 'M', 50, 'N' },
+			{ otherDisease, 15, 'M', 40, 'R' }
+		};
+		
+		
+		jpa.beginTransaction();
+		jpa.persist(diseaseType);
+		jpa.persist(disease);
+		jpa.persist(otherDisease);
+		for (Object[] visit : visits) 
+		{
+			Opd opd = testOpd.setup(null, (Disease) visit[0], true);
+			opd.setDate(new Date());
+			opd.setVisitDate(new GregorianCalendar(1984, Calendar.AUGUST, (Integer) visit[1], 10, 0));
+			opd.setSex((Character) visit[2]);
+			opd.setAge((Integer) visit[3]);
+			opd.setNewPatient((Character) visit[4]);
+			jpa.persist(opd);
+		}
+		jpa.commitTransaction();
+		
+		return Arrays.asList(disease, otherDisease);
+	}
+	
+	private void _checkOpdCount(
+			OpdCount count,
+			int dayOfMonth,
+			String ageTypeCode,
+			long expected) 
+	{
+		GregorianCalendar day = new GregorianCalendar();
+		day.setTime(count.getDate());
+		assertThat(day.get(Calendar.DAY_OF_MONTH)).isEqualTo(dayOfMonth);
+		assertThat(count.getAgeTypeCode()).isEqualTo(ageTypeCode);
+		assertThat(count.getAge()).isNull();
+		assertThat(count.getCount()).isEqualTo(expected);
+	}
+	
+	private long _total(
+			List<OpdCount> counts) 
+	{
+		long total = 0;
+		for (OpdCount count : counts) 
+		{
+			total += count.getCount();
+		}
+		return total;
+	}
+	
 	private Patient _setupTestPatient(boolean usingSet) throws OHException	{
 		jpa.beginTransaction();
 		Patient patient = testPatient.setup(usingSet);
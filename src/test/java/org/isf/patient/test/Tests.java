@@ -39,6 +39,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringRunner;
 
@@ -271,6 +272,89 @@ public class Tests
 		return;
 	}
 
+	@Test
+	public void testIoGetPatientsByOneOfFieldsLikeRankedAndPaged() {
+		try {
+			// given:
+			Integer code = _setupTestPatient(false);
+			jpa.beginTransaction();
+			Patient juniorPatient = testPatient.setup(false);
+			juniorPatient.setFirstName(juniorPatient.getFirstName() + "Junior");
+			jpa.persist(juniorPatient);
+			jpa.commitTransaction();
+
+			// then: whole words before word beginnings, accents ignored
+			assertThat(patientIoOperation.getPatientsByOneOfFieldsLike("T\u00E9stFirstName", new PageRequest(0, 1)))
+					.extracting("code").containsExactly(code);
+			assertThat(patientIoOperation.getPatientsByOneOfFieldsLike("TestFirstName", new PageRequest(1, 1)))
+					.extracting("code").containsExactly(juniorPatient.getCode());
+
+			// when:
+			Patient patient = patientIoOperation.getPatient(code);
+			patient.setFirstName("Renamed");
+			patientIoOperation.updatePatient(patient);
+
+			// then:
+			assertThat(patientIoOperation.getPatientsByOneOfFieldsLike("renamed"))
+					.extracting("code").containsExactly(code);
+
+			// when:
+			patientIoOperation.deletePatient(patient);
+
+			// then:
+			assertThat(patientIoOperation.getPatientsByOneOfFieldsLike("renamed")).isEmpty();
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	@Test
+	public void testIoGetPatientsByOneOfFieldsLikeMoreThanOneQueryOfCodes() {
+		try {
+			// given: more matches than codes read by a single query
+			jpa.beginTransaction();
+			for (int i = 0; i < 1005; i++) {
+				Patient patient = testPatient.setup(false);
+				patient.setSecondName("Manymatches");
+				jpa.persist(patient);
+			}
+			jpa.commitTransaction();
+
+			// then: whole words, and inside the words
+			assertThat(patientIoOperation.getPatientsByOneOfFieldsLike("manymatches")).hasSize(1005);
+			assertThat(patientIoOperation.getPatientsByOneOfFieldsLike("ymatch")).hasSize(1005);
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	@Test
+	public void testIoGetPatientsByOneOfFieldsLikeAccentsAndInfixes() {
+		try {
+			// given:
+			Integer code = _setupTestPatient(false);
+			Patient patient = patientIoOperation.getPatient(code);
+			patient.setFirstName("Jos\u00E9");
+			patient.setSecondName("\u0418\u0432\u0430\u043D\u043E\u0432");
+			patientIoOperation.updatePatient(patient);
+
+			// then: accents ignored, other alphabets kept
+			assertThat(patientIoOperation.getPatientsByOneOfFieldsLike("jose")).extracting("code").contains(code);
+			assertThat(patientIoOperation.getPatientsByOneOfFieldsLike("JOS\u00C9")).extracting("code").contains(code);
+			assertThat(patientIoOperation.getPatientsByOneOfFieldsLike("\u0438\u0432\u0430\u043D")).extracting("code").contains(code);
+
+			// then: short words also inside the tokens
+			assertThat(patientIoOperation.getPatientsByOneOfFieldsLike("se")).extracting("code").contains(code);
+			assertThat(patientIoOperation.getPatientsByOneOfFieldsLike("\u043D\u043E")).extracting("code").contains(code);
+			assertThat(patientIoOperation.getPatientsByOneOfFieldsLike("os xy")).extracting("code").doesNotContain(code);
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail();
+		}
+	}
+
 	@Test
 	public void testIoGetPatientFromName() 
 	{	
@@ -26,12 +26,17 @@ import static org.assertj.core.api.Assertions.within;
 
 import java.util.ArrayList;
 
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.ejb.HibernateEntityManagerFactory;
+import org.hibernate.stat.Statistics;
 import org.isf.priceslist.model.Price;
 import org.isf.priceslist.model.PriceList;
 import org.isf.priceslist.service.PriceIoOperationRepository;
 import org.isf.priceslist.service.PriceListIoOperationRepository;
 import org.isf.priceslist.service.PricesListIoOperations;
 import org.isf.utils.db.DbJpaUtil;
+import org.isf.utils.db.ReferenceDataCacheManager;
 import org.isf.utils.exception.OHException;
 import org.isf.utils.exception.OHServiceException;
 import org.junit.After;
@@ -60,6 +65,10 @@ public class Tests
     PriceListIoOperationRepository priceListIoOperationRepository;
     @Autowired
     PriceIoOperationRepository priceIoOperationRepository;
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+    @Autowired
+    ReferenceDataCacheManager cacheManager;
 		
 	@BeforeClass
     public static void setUpClass()  
@@ -159,6 +168,7 @@ public class Tests
 		// when:
 		PriceList priceList = deletePrice.getList();
 		Price insertPrice = testPrice.setup(null, false);
+		insertPrice.setItem("NewItem");
 		int insertId = deleteId + 1;
 		prices.add(insertPrice);
 		boolean result = priceListIoOperation.updatePrices(priceList, prices);
@@ -167,6 +177,108 @@ public class Tests
 		Price foundPrice = priceIoOperationRepository.findOne(insertId);
 		assertThat(result).isTrue();
 		assertThat(foundPrice.getList().getId()).isEqualTo(priceList.getId());
+		assertThat(priceIoOperationRepository.findOne(deleteId)).isNull();
+	}
+	
+	@Test
+	public void testIoUpdatePricesWritesChangedPricesOnly() throws OHException, OHServiceException {
+		// given:
+		PriceList priceList = testPriceList.setup(false);
+		priceListIoOperationRepository.save(priceList);
+		ArrayList<Price> prices = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			prices.add(new Price(priceList, "EXA", "E" + i, "Exam " + i, (double) i));
+		}
+		priceListIoOperation.updatePrices(priceList, prices);
+		int keptId = priceListIoOperation.getPrice(priceList, "EXA", "E50").getId();
+		
+		// when: 10 prices changed, 1 removed, 1 added
+		ArrayList<Price> newPrices = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			newPrices.add(new Price(priceList, "EXA", "E" + i, "Exam " + i, i % 10 == 0 ? i + 0.5 : i));
+		}
+		newPrices.remove(99);
+		newPrices.add(new Price(priceList, "OPE", "O1", "Operation 1", 1.));
+		newPrices.get(1).setDesc("Exam one");
+		Statistics statistics = ((HibernateEntityManagerFactory)entityManagerFactory).getSessionFactory().getStatistics();
+		statistics.setStatisticsEnabled(true);
+		statistics.clear();
+		boolean result = priceListIoOperation.updatePrices(priceList, newPrices);
+		long statements = statistics.getPrepareStatementCount();
+		statistics.setStatisticsEnabled(false);
+
+		// then: 1 select, 1 batch of updates, 1 delete and 1 insert, where replacing the list took 1 delete and 100 inserts
+		assertThat(result).isTrue();
+		assertThat(statements).isEqualTo(4);
+		assertThat(priceListIoOperation.getPrices(priceList)).hasSize(100);
+		assertThat(priceListIoOperation.getPrice(priceList, "EXA", "E50").getId()).isEqualTo(keptId);
+		assertThat(priceListIoOperation.getPrice(priceList, "EXA", "E50").getPrice()).isEqualTo(50.5);
+		assertThat(priceListIoOperation.getPrice(priceList, "EXA", "E51").getPrice()).isEqualTo(51.);
+		assertThat(priceListIoOperation.getPrice(priceList, "EXA", "E1").getDesc()).isEqualTo("Exam one");
+		assertThat(priceListIoOperation.getPrice(priceList, "EXA", "E99")).isNull();
+		assertThat(priceListIoOperation.getPrice(priceList, "OPE", "O1").getPrice()).isEqualTo(1.);
+	}
+	
+	@Test
+	public void testIoGetPricesFromCache() throws OHException, OHServiceException {
+		// given:
+		PriceList priceList = testPriceList.setup(false);
+		priceListIoOperationRepository.save(priceList);
+		ArrayList<Price> newPrices = new ArrayList<>();
+		newPrices.add(new Price(priceList, "EXA", "E1", "Exam 1", 1.));
+		newPrices.add(new Price(priceList, "EXA", "E2", "Exam 2", 2.));
+		priceListIoOperation.updatePrices(priceList, newPrices);
+		String name = priceList.getName();
+		cacheManager.clearAll();
+
+		try {
+			// when: the caller changes the prices and the list they got
+			ArrayList<Price> prices = priceListIoOperation.getPrices();
+			prices.get(0).setPrice(99.);
+			prices.get(0).getList().setName("Changed by the caller");
+			ArrayList<Price> cachedPrices = priceListIoOperation.getPrices();
+
+			// then: the prices were copied when cached, sharing a copy of their list
+			assertThat(prices).hasSize(2);
+			assertThat(cachedPrices.get(1).getList()).isSameAs(cachedPrices.get(0).getList());
+			assertThat(cachedPrices.get(0)).isNotSameAs(prices.get(0));
+			assertThat(cachedPrices.get(0).getPrice()).isEqualTo(1.);
+			assertThat(cachedPrices.get(0).getList().getName()).isEqualTo(name);
+			assertThat(priceListIoOperation.getLists().get(0).getName()).isEqualTo(name);
+
+			// when: the cached prices are read again
+			ArrayList<Price> readAgain = priceListIoOperation.getPrices();
+			readAgain.clear();
+
+			// then: the same cached prices, in a new list
+			assertThat(priceListIoOperation.getPrices()).hasSize(2);
+			assertThat(priceListIoOperation.getPrices().get(0)).isSameAs(cachedPrices.get(0));
+
+			// when: the list is changed through the service
+			priceList.setName("Updated");
+			priceListIoOperation.updateList(priceList);
+
+			// then: read again
+			assertThat(priceListIoOperation.getLists().get(0).getName()).isEqualTo("Updated");
+			assertThat(priceListIoOperation.getPrices().get(0).getList().getName()).isEqualTo("Updated");
+		} finally {
+			cacheManager.clearAll();
+		}
+	}
+
+	@Test
+	public void testIoGetPrice() throws OHException, OHServiceException {
+		// given:
+		int id = _setupTestPrice(false);
+		Price price = priceIoOperationRepository.findOne(id);
+
+		// when:
+		Price foundPrice = priceListIoOperation.getPrice(price.getList(), price.getGroup(), price.getItem());
+
+		// then:
+		assertThat(foundPrice.getId()).isEqualTo(id);
+		testPrice.check(foundPrice);
+		assertThat(priceListIoOperation.getPrice(price.getList(), price.getGroup(), "Other")).isNull();
 	}
 		
 	@Test
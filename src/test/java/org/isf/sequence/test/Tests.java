@@ -0,0 +1,205 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.sequence.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.isf.sequence.manager.SequenceManager;
+import org.isf.sequence.model.SequenceId;
+import org.isf.sequence.service.SequenceIoOperationRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(locations = { "classpath:applicationContext.xml" })
+public class Tests {
+
+	private static final int CLIENTS = 2;
+	private static final int THREADS = 8;
+	private static final int NUMBERS_PER_THREAD = 200;
+
+	@Autowired
+	private ApplicationContext applicationContext;
+
+	@Autowired
+	private SequenceIoOperationRepository repository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Before
+	public void setUp() {
+		repository.deleteAll();
+	}
+
+	@Test
+	public void testNextStartsAfterSeed() throws Exception
+	{
+		SequenceManager sequenceManager = _newSequenceManager(10);
+		AtomicInteger seedCalls = new AtomicInteger();
+
+		assertThat(sequenceManager.next("TEST", "A", 2020, () -> seedCalls.incrementAndGet() + 40)).isEqualTo(42);
+		assertThat(sequenceManager.next("TEST", "A", 2020, () -> seedCalls.incrementAndGet() + 40)).isEqualTo(43);
+		assertThat(seedCalls.get()).isEqualTo(1);
+		assertThat(repository.findLast("TEST", "A", 2020)).isEqualTo(41 + sequenceManager.getBlockSize());
+	}
+
+	@Test
+	public void testNextByWardAndYear() throws Exception
+	{
+		SequenceManager sequenceManager = _newSequenceManager();
+
+		assertThat(sequenceManager.next("TEST", "A", 2020, () -> 0)).isEqualTo(1);
+		assertThat(sequenceManager.next("TEST", "B", 2020, () -> 0)).isEqualTo(1);
+		assertThat(sequenceManager.next("TEST", "A", 2021, () -> 0)).isEqualTo(1);
+		assertThat(sequenceManager.next("TEST", SequenceManager.NO_WARD, 0, () -> 0)).isEqualTo(1);
+		assertThat(sequenceManager.next("TEST", "A", 2020, () -> 0)).isEqualTo(2);
+	}
+
+	@Test
+	public void testNextFromAnotherClientFollowsByDefault() throws Exception
+	{
+		SequenceManager first = _newSequenceManager();
+		SequenceManager second = _newSequenceManager();
+
+		assertThat(first.getBlockSize()).isEqualTo(1);
+		assertThat(first.next("TEST", "A", 2020, () -> 0)).isEqualTo(1);
+		assertThat(second.next("TEST", "A", 2020, () -> 0)).isEqualTo(2);
+		assertThat(first.next("TEST", "A", 2020, () -> 0)).isEqualTo(3);
+	}
+
+	@Test
+	public void testNextFromAnotherClientSkipsItsBlock() throws Exception
+	{
+		SequenceManager first = _newSequenceManager(10);
+		SequenceManager second = _newSequenceManager(10);
+
+		assertThat(first.next("TEST", "A", 2020, () -> 0)).isEqualTo(1);
+		assertThat(second.next("TEST", "A", 2020, () -> 0)).isEqualTo(11);
+		assertThat(first.next("TEST", "A", 2020, () -> 0)).isEqualTo(2);
+	}
+
+	@Test
+	public void testPeekDoesNotTakeTheNumber() throws Exception
+	{
+		SequenceManager first = _newSequenceManager();
+		SequenceManager second = _newSequenceManager(10);
+
+		assertThat(first.peek("TEST", "A", 2020, () -> 40)).isEqualTo(41);
+		assertThat(first.peek("TEST", "A", 2020, () -> 40)).isEqualTo(41);
+		assertThat(repository.findLast("TEST", "A", 2020)).isNull();
+		assertThat(first.next("TEST", "A", 2020, () -> 40)).isEqualTo(41);
+		assertThat(first.peek("TEST", "A", 2020, () -> 40)).isEqualTo(42);
+		assertThat(second.next("TEST", "A", 2020, () -> 40)).isEqualTo(42);
+		assertThat(second.peek("TEST", "A", 2020, () -> 40)).isEqualTo(43);
+		assertThat(first.peek("TEST", "A", 2020, () -> 40)).isEqualTo(52);
+		assertThat(first.next("TEST", "A", 2020, () -> 40)).isEqualTo(52);
+	}
+
+	@Test
+	public void testReservationSurvivesRollback() throws Exception
+	{
+		SequenceManager sequenceManager = _newSequenceManager();
+		TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+		Integer number = transaction.execute(status -> {
+			status.setRollbackOnly();
+			try {
+				return sequenceManager.next("TEST", "A", 2020, () -> 0);
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		});
+
+		assertThat(number).isEqualTo(1);
+		assertThat(repository.findLast("TEST", "A", 2020)).isEqualTo(sequenceManager.getBlockSize());
+		assertThat(_newSequenceManager().next("TEST", "A", 2020, () -> 0)).isEqualTo(sequenceManager.getBlockSize() + 1);
+	}
+
+	@Test
+	public void testConcurrentNextIsUnique() throws Exception
+	{
+		List<SequenceManager> clients = new ArrayList<SequenceManager>();
+		for (int i = 0; i < CLIENTS; i++) {
+			clients.add(_newSequenceManager(i == 0 ? 1 : 10));
+		}
+		AtomicInteger seedCalls = new AtomicInteger();
+		List<Callable<List<Integer>>> tasks = new ArrayList<Callable<List<Integer>>>();
+		for (int i = 0; i < THREADS; i++) {
+			SequenceManager sequenceManager = clients.get(i % CLIENTS);
+			tasks.add(() -> {
+				List<Integer> numbers = new ArrayList<Integer>();
+				for (int j = 0; j < NUMBERS_PER_THREAD; j++) {
+					numbers.add(sequenceManager.next("TEST", "M", 2020, () -> {
+						seedCalls.incrementAndGet();
+						return 100;
+					}));
+				}
+				return numbers;
+			});
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		Set<Integer> numbers = new HashSet<Integer>();
+		try {
+			for (Future<List<Integer>> future : executor.invokeAll(tasks)) {
+				numbers.addAll(future.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		assertThat(numbers).hasSize(THREADS * NUMBERS_PER_THREAD);
+		assertThat(numbers.stream().mapToInt(Integer::intValue).min().getAsInt()).isGreaterThan(100);
+		assertThat(repository.findLast("TEST", "M", 2020)).isGreaterThanOrEqualTo(numbers.stream().mapToInt(Integer::intValue).max().getAsInt());
+		assertThat(seedCalls.get()).isBetween(1, CLIENTS);
+		assertThat(repository.findOne(new SequenceId("TEST", "M", 2020))).isNotNull();
+	}
+
+	private SequenceManager _newSequenceManager() {
+		return applicationContext.getAutowireCapableBeanFactory().createBean(SequenceManager.class);
+	}
+
+	private SequenceManager _newSequenceManager(int blockSize) {
+		SequenceManager sequenceManager = _newSequenceManager();
+		ReflectionTestUtils.setField(sequenceManager, "blockSize", blockSize);
+		return sequenceManager;
+	}
+}
@@ -24,11 +24,32 @@ package org.isf.sms.test;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
 
 import org.isf.sms.model.Sms;
+import org.isf.sms.providers.SkebbyGateway;
+import org.isf.sms.providers.SkebbyParameters;
+import org.isf.sms.service.SmsDispatchMetrics;
+import org.isf.sms.service.SmsDispatcher;
 import org.isf.sms.service.SmsOperations;
 import org.isf.utils.db.DbJpaUtil;
 import org.isf.utils.exception.OHException;
@@ -42,6 +63,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
 @RunWith(SpringRunner.class)
 @ContextConfiguration(locations = { "classpath:applicationContext.xml" })
 public class Tests  
@@ -255,6 +279,131 @@ public class Tests
 	
 		
 	
+	@Test
+	public void testSmsDispatcherSendsThroughHttpGateway() throws Exception
+	{
+		List<Integer> dueIds = _setupDueSms(40, -60);
+		int futureId = _setupDueSms(1, 3600).get(0);
+		StubGateway gateway = new StubGateway(request -> request % 4 != 0); // one request out of four refused
+		SmsDispatcher dispatcher = new SmsDispatcher(smsIoOperation, gateway.sender(), false);
+		dispatcher.setWorkers(4);
+		dispatcher.setRateLimit(0);
+		dispatcher.setRetries(5, 10, 100);
+		dispatcher.setStatusBatch(10, 100);
+		try 
+		{
+			dispatcher.start();
+			_awaitStatusUpdates(dispatcher, 40);
+		} 
+		finally 
+		{
+			dispatcher.stop();
+			gateway.stop();
+		}
+
+		SmsDispatchMetrics metrics = dispatcher.getMetrics();
+		assertThat(metrics.getSent()).isEqualTo(40);
+		assertThat(metrics.getFailedAttempts()).isEqualTo(gateway.requests.size() - 40).isPositive();
+		assertThat(metrics.getGivenUp()).isZero();
+		assertThat(metrics.getStatusStatements()).isLessThan(40);
+		assertThat(metrics.getAverageLatency()).isPositive();
+		assertThat(metrics.getThroughput()).isPositive();
+		assertThat(gateway.texts).hasSize(40);
+		assertThat(gateway.maxInFlight.get()).isLessThanOrEqualTo(4);
+		for (Integer id : dueIds) 
+		{
+			assertThat(smsIoOperation.getByID(id).getSmsDateSent()).isNotNull();
+		}
+		assertThat(smsIoOperation.getByID(futureId).getSmsDateSent()).isNull();
+	}
+	
+	@Test
+	public void testSmsDispatcherRateLimitAndBackoff() throws Exception
+	{
+		_setupDueSms(15, -60);
+		StubGateway gateway = new StubGateway(request -> true);
+		SmsDispatcher dispatcher = new SmsDispatcher(smsIoOperation, gateway.sender(), false);
+		dispatcher.setRateLimit(10);
+		dispatcher.setStatusBatch(50, 100);
+		long start = System.nanoTime();
+		try 
+		{
+			dispatcher.start();
+			_awaitStatusUpdates(dispatcher, 15);
+		} 
+		finally 
+		{
+			dispatcher.stop();
+			gateway.stop();
+		}
+		// ten at once, then one every 100 ms
+		List<Long> times = new ArrayList<Long>(gateway.requests);
+		assertThat(times).hasSize(15);
+		assertThat(times.get(14) - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(500));
+
+		int refusedId = _setupDueSms(1, -60).get(0);
+		gateway = new StubGateway(request -> false);
+		dispatcher = new SmsDispatcher(smsIoOperation, gateway.sender(), false);
+		dispatcher.setRetries(4, 50, 1000);
+		try 
+		{
+			dispatcher.start();
+			long timeout = System.currentTimeMillis() + 10000;
+			while (dispatcher.getMetrics().getGivenUp() == 0 && System.currentTimeMillis() < timeout) 
+			{
+				Thread.sleep(20);
+			}
+		} 
+		finally 
+		{
+			dispatcher.stop();
+			gateway.stop();
+		}
+		// retried after 50, 100 and 200 ms
+		times = new ArrayList<Long>(gateway.requests);
+		assertThat(times).hasSize(4);
+		for (int i = 1; i < 4; i++) 
+		{
+			assertThat(times.get(i) - times.get(i - 1)).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50L << (i - 1)));
+		}
+		assertThat(dispatcher.getMetrics().getGivenUp()).isEqualTo(1);
+		assertThat(smsIoOperation.getByID(refusedId).getSmsDateSent()).isNull();
+	}
+	
+	@Test
+	public void testSmsDispatcherStopFromInterruptedThreadStoresSentDates() throws Exception
+	{
+		List<Integer> dueIds = _setupDueSms(5, -60);
+		StubGateway gateway = new StubGateway(request -> true);
+		SmsDispatcher dispatcher = new SmsDispatcher(smsIoOperation, gateway.sender(), false);
+		dispatcher.setRateLimit(0);
+		dispatcher.setStatusBatch(50, 60000); // marked in the database only when stopping
+		try 
+		{
+			dispatcher.start();
+			long timeout = System.currentTimeMillis() + 10000;
+			while (dispatcher.getMetrics().getSent() < 5 && System.currentTimeMillis() < timeout) 
+			{
+				Thread.sleep(20);
+			}
+			
+			// as SmsSender, interrupted while waiting
+			Thread.currentThread().interrupt();
+			dispatcher.stop();
+			assertThat(Thread.interrupted()).isTrue();
+		} 
+		finally 
+		{
+			dispatcher.stop();
+			gateway.stop();
+		}
+		assertThat(dispatcher.isRunning()).isFalse();
+		for (Integer id : dueIds) 
+		{
+			assertThat(smsIoOperation.getByID(id).getSmsDateSent()).isNotNull();
+		}
+	}
+	
 	private void _saveContext() throws OHException 
     {	
 		testSmsContext.saveAll(jpa);
@@ -288,4 +437,127 @@ public class Tests
 		foundSms = (Sms)jpa.find(Sms.class, code); 
 		testSms.check(foundSms);
 	}	
-}
\ No newline at end of file
+
+	private List<Integer> _setupDueSms(
+			int count,
+			int secondsFromNow) throws OHException 
+	{
+		List<Integer> ids = new ArrayList<Integer>();
+		
+		
+		jpa.beginTransaction();	
+		for (int i = 0; i < count; i++) 
+		{
+			Sms sms = testSms.setup(true);
+			sms.setSmsDateSched(new Date(System.currentTimeMillis() + secondsFromNow * 1000L));
+			sms.setSmsText("TestText" + secondsFromNow + "_" + i);
+			jpa.persist(sms);
+			ids.add(sms.getSmsId());
+		}
+		jpa.commitTransaction();
+		
+		return ids;
+	}
+	
+	private void _awaitStatusUpdates(
+			SmsDispatcher dispatcher,
+			int count) throws InterruptedException 
+	{
+		long timeout = System.currentTimeMillis() + 30000;
+		while (dispatcher.getMetrics().getStatusUpdates() < count && System.currentTimeMillis() < timeout) 
+		{
+			Thread.sleep(20);
+		}
+	}
+	
+	/**
+	 * Local HTTP server answering as the Skebby gateway
+	 */
+	private static class StubGateway 
+	{
+		private final HttpServer server;
+		private final ExecutorService executor = Executors.newFixedThreadPool(16);
+		private final IntPredicate accept;
+		private final AtomicInteger requestCount = new AtomicInteger();
+		private final AtomicInteger inFlight = new AtomicInteger();
+		private final AtomicInteger maxInFlight = new AtomicInteger();
+		private final Queue<Long> requests = new ConcurrentLinkedQueue<Long>();
+		private final Set<String> texts = ConcurrentHashMap.newKeySet();
+		
+		StubGateway(
+				IntPredicate accept) throws IOException 
+		{
+			this.accept = accept;
+			SkebbyParameters.USR = "TestUser";
+			SkebbyParameters.PWD = "TestPassword";
+			SkebbyParameters.TYPE = "send_sms_basic";
+			SkebbyParameters.SENDER_NUMBER = "";
+			SkebbyParameters.SENDER_STRING = "";
+			server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+			server.createContext("/send", this::_handle);
+			server.setExecutor(executor);
+			server.start();
+		}
+		
+		SkebbyGateway sender() 
+		{
+			return new SkebbyGateway("http://127.0.0.1:" + server.getAddress().getPort() + "/send");
+		}
+		
+		void stop() 
+		{
+			server.stop(0);
+			executor.shutdownNow();
+		}
+		
+		private void _handle(
+				HttpExchange exchange) throws IOException 
+		{
+			requests.add(System.nanoTime());
+			maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+			try 
+			{
+				String body = _read(exchange.getRequestBody());
+				Thread.sleep(20);
+				boolean accepted = accept.test(requestCount.incrementAndGet());
+				if (accepted) 
+				{
+					for (String param : body.split("&")) 
+					{
+						if (param.startsWith("text=")) 
+						{
+							texts.add(URLDecoder.decode(param.substring(5), "UTF-8"));
+						}
+					}
+				}
+				byte[] response = (accepted ? "status=success" : "status=failed&code=11").getBytes(StandardCharsets.UTF_8);
+				exchange.sendResponseHeaders(accepted ? 200 : 503, response.length);
+				try (OutputStream out = exchange.getResponseBody()) 
+				{
+					out.write(response);
+				}
+			} 
+			catch (InterruptedException e) 
+			{
+				exchange.sendResponseHeaders(500, -1);
+			} 
+			finally 
+			{
+				inFlight.decrementAndGet();
+				exchange.close();
+			}
+		}
+		
+		private static String _read(
+				InputStream in) throws IOException 
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1024];
+			for (int count; (count = in.read(buffer)) > 0;) 
+			{
+				bytes.write(buffer, 0, count);
+			}
+			return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+}
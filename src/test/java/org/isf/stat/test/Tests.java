@@ -0,0 +1,257 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.stat.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.isf.hospital.test.TestHospital;
+import org.isf.hospital.test.TestHospitalContext;
+import org.isf.stat.dto.JasperReportResultDto;
+import org.isf.stat.dto.JasperReportStatisticsDto;
+import org.isf.stat.manager.JasperReportsManager;
+import org.isf.utils.db.DbJpaUtil;
+import org.isf.utils.exception.OHException;
+import org.isf.utils.exception.OHReportException;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import net.sf.jasperreports.engine.JasperCompileManager;
+import net.sf.jasperreports.engine.design.JRDesignBand;
+import net.sf.jasperreports.engine.design.JRDesignParameter;
+import net.sf.jasperreports.engine.design.JRDesignStaticText;
+import net.sf.jasperreports.engine.design.JasperDesign;
+import net.sf.jasperreports.engine.type.WhenNoDataTypeEnum;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(locations = { "classpath:applicationContext.xml" })
+public class Tests
+{
+	private static final String REPORT = "stat_test_report";
+	private static final int PATIENT_ID = 1;
+	private static final long TIMEOUT_SECONDS = 60;
+
+	private static DbJpaUtil jpa;
+	private static TestHospital testHospital;
+	private static TestHospitalContext testHospitalContext;
+
+	@Autowired
+	private JasperReportsManager jasperReportsManager;
+
+	@Autowired
+	private ApplicationContext applicationContext;
+
+	private final List<File> createdFiles = new ArrayList<File>();
+
+	@BeforeClass
+	public static void setUpClass()
+	{
+		jpa = new DbJpaUtil();
+		testHospital = new TestHospital();
+		testHospitalContext = new TestHospitalContext();
+	}
+
+	@Before
+	public void setUp() throws Exception
+	{
+		jpa.open();
+		testHospitalContext.saveAll(jpa);
+		jpa.beginTransaction();
+		jpa.persist(testHospital.setup(false));
+		jpa.commitTransaction();
+
+		_mkdir(new File("rpt"));
+		_mkdir(new File("rpt", "PDF"));
+		createdFiles.add(0, new File("rpt", REPORT + ".jasper"));
+		createdFiles.add(0, new File("rpt/PDF/" + REPORT + "_" + PATIENT_ID + ".pdf"));
+		_compileReport("Report");
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		for (File file : createdFiles) {
+			file.delete();
+		}
+		createdFiles.clear();
+
+		testHospitalContext.deleteNews(jpa);
+		jpa.flush();
+		jpa.close();
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws OHException
+	{
+		testHospital = null;
+		testHospitalContext = null;
+	}
+
+	@Test
+	public void testCompiledReportIsCachedUntilChanged() throws Exception
+	{
+		long compiled = _getCount("compile");
+		long filled = _getCount("fill");
+		long exported = _getCount("export");
+
+		JasperReportResultDto first = jasperReportsManager.getGenericReportPatientPdf(PATIENT_ID, REPORT);
+		jasperReportsManager.getGenericReportPatientPdf(PATIENT_ID, REPORT);
+
+		assertThat(first.getJasperPrint()).isNotNull();
+		assertThat(new File(first.getFilename())).exists();
+		assertThat(_getCount("compile")).isEqualTo(compiled + 1);
+		assertThat(_getCount("fill")).isEqualTo(filled + 2);
+		assertThat(_getCount("export")).isEqualTo(exported + 2);
+
+		// when: the report is replaced
+		File jasperFile = _compileReport("Changed report");
+		jasperFile.setLastModified(jasperFile.lastModified() + 2000);
+		jasperReportsManager.getGenericReportPatientPdf(PATIENT_ID, REPORT);
+
+		// then:
+		assertThat(_getCount("compile")).isEqualTo(compiled + 2);
+	}
+
+	@Test
+	public void testStatistics() throws Exception
+	{
+		jasperReportsManager.getGenericReportPatientPdf(PATIENT_ID, REPORT);
+
+		assertThat(jasperReportsManager.getStatistics()).extracting("phase").containsExactly("compile", "fill", "export");
+		for (JasperReportStatisticsDto statistics : jasperReportsManager.getStatistics()) {
+			assertThat(statistics.getCount()).isPositive();
+			assertThat(statistics.getMaxMillis()).isLessThanOrEqualTo(statistics.getTotalMillis());
+			assertThat(statistics.getAverageMillis()).isLessThanOrEqualTo(statistics.getMaxMillis());
+		}
+	}
+
+	@Test
+	public void testRenderAsync() throws Exception
+	{
+		long filled = _getCount("fill");
+		List<CompletableFuture<JasperReportResultDto>> futures = new ArrayList<CompletableFuture<JasperReportResultDto>>();
+		for (int i = 0; i < 4; i++) {
+			futures.add(jasperReportsManager.getGenericReportPatientPdfAsync(PATIENT_ID, REPORT));
+		}
+
+		for (CompletableFuture<JasperReportResultDto> future : futures) {
+			assertThat(future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).getJasperPrint()).isNotNull();
+		}
+		assertThat(_getCount("fill")).isEqualTo(filled + futures.size());
+	}
+
+	@Test
+	public void testRenderAsyncCompletesExceptionallyOnFailure() throws Exception
+	{
+		CompletableFuture<JasperReportResultDto> future = jasperReportsManager.getGenericReportPatientPdfAsync(PATIENT_ID, "stat_missing_report");
+
+		try {
+			future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertThat(e.getCause()).isInstanceOf(OHReportException.class);
+		}
+	}
+
+	@Test
+	public void testRenderAsyncAfterDestroyIsRejected() throws Exception
+	{
+		JasperReportsManager destroyedManager = applicationContext.getAutowireCapableBeanFactory().createBean(JasperReportsManager.class);
+		destroyedManager.destroy();
+
+		CompletableFuture<JasperReportResultDto> future = destroyedManager.getGenericReportPatientPdfAsync(PATIENT_ID, REPORT);
+
+		try {
+			future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertThat(e.getCause()).isInstanceOf(RejectedExecutionException.class);
+		}
+	}
+
+	private long _getCount(String phase)
+	{
+		for (JasperReportStatisticsDto statistics : jasperReportsManager.getStatistics()) {
+			if (statistics.getPhase().equals(phase)) {
+				return statistics.getCount();
+			}
+		}
+		throw new IllegalArgumentException(phase);
+	}
+
+	/**
+	 * Compiles to rpt/{@link #REPORT}.jasper a report with a title only
+	 */
+	private File _compileReport(String title) throws Exception
+	{
+		JasperDesign design = new JasperDesign();
+		design.setName(REPORT);
+		design.setPageWidth(595);
+		design.setPageHeight(842);
+		design.setColumnWidth(555);
+		design.setLeftMargin(20);
+		design.setRightMargin(20);
+		design.setWhenNoDataType(WhenNoDataTypeEnum.ALL_SECTIONS_NO_DETAIL);
+		JRDesignParameter parameter = new JRDesignParameter();
+		parameter.setName("patientID");
+		parameter.setValueClass(String.class);
+		design.addParameter(parameter);
+		JRDesignStaticText text = new JRDesignStaticText();
+		text.setText(title);
+		text.setWidth(555);
+		text.setHeight(20);
+		JRDesignBand band = new JRDesignBand();
+		band.setHeight(20);
+		band.addElement(text);
+		design.setTitle(band);
+
+		File jasperFile = new File("rpt", REPORT + ".jasper");
+		JasperCompileManager.compileReportToFile(design, jasperFile.getPath());
+		return jasperFile;
+	}
+
+	/**
+	 * Creates the folder, if missing, to be deleted after the test
+	 */
+	private void _mkdir(File folder)
+	{
+		if (folder.mkdir()) {
+			createdFiles.add(0, folder);
+		}
+	}
+}
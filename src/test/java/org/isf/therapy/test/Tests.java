@@ -22,13 +22,25 @@
 package org.isf.therapy.test;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
 import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
+import java.util.GregorianCalendar;
+import java.util.List;
 
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.ejb.HibernateEntityManagerFactory;
+import org.hibernate.stat.Statistics;
 import org.isf.medicals.model.Medical;
 import org.isf.medicals.test.TestMedical;
 import org.isf.medicals.test.TestMedicalContext;
+import org.isf.medicalstock.model.Lot;
+import org.isf.medicalstock.test.TestLot;
+import org.isf.medicalstock.test.TestLotContext;
+import org.isf.medicalstockward.model.MedicalWard;
+import org.isf.medicalstockward.test.TestMedicalWardContext;
 import org.isf.medtype.model.MedicalType;
 import org.isf.medtype.test.TestMedicalType;
 import org.isf.medtype.test.TestMedicalTypeContext;
@@ -36,10 +48,19 @@ import org.isf.patient.model.Patient;
 import org.isf.patient.model.PatientMergedEvent;
 import org.isf.patient.test.TestPatient;
 import org.isf.patient.test.TestPatientContext;
+import org.isf.sms.model.Sms;
+import org.isf.sms.service.SmsOperations;
+import org.isf.sms.test.TestSmsContext;
+import org.isf.therapy.manager.TherapyManager;
+import org.isf.therapy.model.StockShortfall;
+import org.isf.therapy.model.Therapy;
 import org.isf.therapy.model.TherapyRow;
 import org.isf.therapy.service.TherapyIoOperations;
 import org.isf.utils.db.DbJpaUtil;
 import org.isf.utils.exception.OHException;
+import org.isf.ward.model.Ward;
+import org.isf.ward.test.TestWard;
+import org.isf.ward.test.TestWardContext;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -64,10 +85,22 @@ public class Tests
 	private static TestMedicalTypeContext testMedicalTypeContext;
 	private static TestPatient testPatient;
 	private static TestPatientContext testPatientContext;
+	private static TestWard testWard;
+	private static TestWardContext testWardContext;
+	private static TestLot testLot;
+	private static TestLotContext testLotContext;
+	private static TestMedicalWardContext testMedicalWardContext;
+	private static TestSmsContext testSmsContext;
 
     @Autowired
     private TherapyIoOperations therapyIoOperation;
     @Autowired
+    private TherapyManager therapyManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private SmsOperations smsOperations;
+    @Autowired
     private ApplicationEventPublisher applicationEventPublisher;
 	
 	@BeforeClass
@@ -82,6 +115,12 @@ public class Tests
     	testMedicalContext = new TestMedicalContext();
     	testMedicalType = new TestMedicalType();
     	testMedicalTypeContext = new TestMedicalTypeContext();
+    	testWard = new TestWard();
+    	testWardContext = new TestWardContext();
+    	testLot = new TestLot();
+    	testLotContext = new TestLotContext();
+    	testMedicalWardContext = new TestMedicalWardContext();
+    	testSmsContext = new TestSmsContext();
     }
 
     @Before
@@ -112,6 +151,12 @@ public class Tests
     	testMedicalContext = null;
     	testMedicalType = null;
     	testMedicalTypeContext = null;
+    	testWard = null;
+    	testWardContext = null;
+    	testLot = null;
+    	testLotContext = null;
+    	testMedicalWardContext = null;
+    	testSmsContext = null;
     }
 	
 		
@@ -242,6 +287,115 @@ public class Tests
 		}
 	}
 
+	@Test
+	public void testNewTherapiesSmsStatementCount()
+	{
+		try
+		{
+			MedicalType medicalType = testMedicalType.setup(false);
+			Medical medical = testMedical.setup(medicalType, false);
+			Patient patient = testPatient.setup(false);
+			jpa.beginTransaction();
+			jpa.persist(medicalType);
+			jpa.persist(medical);
+			jpa.persist(patient);
+			jpa.commitTransaction();
+
+			GregorianCalendar startDate = new GregorianCalendar();
+			startDate.add(GregorianCalendar.DAY_OF_MONTH, -1);
+			GregorianCalendar endDate = new GregorianCalendar();
+			endDate.add(GregorianCalendar.DAY_OF_MONTH, 60);
+			ArrayList<TherapyRow> therapyRows = new ArrayList<TherapyRow>();
+			for (int i = 0; i < 3; i++) {
+				therapyRows.add(new TherapyRow(0, patient, startDate, endDate, medical, 1., 1, 2, 1, "", false, true));
+			}
+
+			Statistics statistics = ((HibernateEntityManagerFactory)entityManagerFactory).getSessionFactory().getStatistics();
+			statistics.setStatisticsEnabled(true);
+			statistics.clear();
+			therapyManager.newTherapies(therapyRows);
+			long statements = statistics.getPrepareStatementCount();
+			long smsInserts = statistics.getEntityStatistics(Sms.class.getName()).getInsertCount();
+			statistics.setStatisticsEnabled(false);
+
+			List<Sms> smsList = smsOperations.getList();
+			assertThat(smsList).hasSize(180); // 60 days ahead for each therapy
+			assertThat(smsInserts).isEqualTo(180);
+			assertThat(smsList.get(0).getSmsNumber()).isEqualTo(patient.getTelephone());
+			// patient and medical are read once for the whole plan, whatever the number of reminders
+			assertThat(statements - smsInserts - therapyRows.size()).isLessThanOrEqualTo(5);
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	@Test
+	public void testGetStockShortfalls()
+	{
+		try
+		{
+			MedicalType medicalType = testMedicalType.setup(false);
+			Medical medical = testMedical.setup(medicalType, false);
+			medical.setInqty(40.20); // 20 in the main store
+			Medical otherMedical = testMedical.setup(medicalType, false);
+			otherMedical.setProd_code("TP2"); // nothing in the main store
+			Ward ward = testWard.setup(false);
+			Lot lot = testLot.setup(false);
+			jpa.beginTransaction();
+			jpa.persist(medicalType);
+			jpa.persist(medical);
+			jpa.persist(otherMedical);
+			jpa.persist(ward);
+			jpa.persist(lot);
+			jpa.persist(new MedicalWard(ward, medical, 15, 5, lot)); // 10 in the ward
+			jpa.commitTransaction();
+
+			ArrayList<Therapy> therapies = new ArrayList<Therapy>();
+			therapies.add(_therapy(medical, 2., 3, -1, 0, 1)); // 12 from today
+			therapies.add(_therapy(medical, 3., 3, 1, 2)); // 18
+			therapies.add(_therapy(otherMedical, 1., 1, -2, -1)); // nothing from today
+			ArrayList<Therapy> moreTherapies = new ArrayList<Therapy>(therapies);
+			moreTherapies.add(_therapy(medical, 1., 1, 5)); // 1
+			moreTherapies.add(_therapy(otherMedical, 1., 1, 0)); // 1
+
+			assertThat(therapyManager.getStockShortfalls(therapies)).isEmpty();
+
+			Statistics statistics = ((HibernateEntityManagerFactory)entityManagerFactory).getSessionFactory().getStatistics();
+			statistics.setStatisticsEnabled(true);
+			statistics.clear();
+			List<StockShortfall> shortfalls = therapyManager.getStockShortfalls(moreTherapies);
+			long statements = statistics.getPrepareStatementCount();
+			statistics.setStatisticsEnabled(false);
+
+			// main store and ward quantities of all the medicals are read at once
+			assertThat(statements).isEqualTo(1);
+			assertThat(shortfalls).hasSize(2);
+			assertThat(shortfalls.get(0).getMedical().getCode()).isEqualTo(medical.getCode());
+			assertThat(shortfalls.get(0).getNeededQty()).isEqualTo(31.);
+			assertThat(shortfalls.get(0).getAvailableQty()).isCloseTo(30., within(0.001));
+			assertThat(shortfalls.get(1).getMedical().getCode()).isEqualTo(otherMedical.getCode());
+			assertThat(shortfalls.get(1).getShortfall()).isCloseTo(1., within(0.001));
+			assertThat(therapyManager.getMedicalsOutOfStock(moreTherapies)).containsExactly(medical, otherMedical);
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	private Therapy _therapy(Medical medical, Double qty, int freqInDay, int... daysFromToday) {
+		GregorianCalendar[] dates = new GregorianCalendar[daysFromToday.length];
+		for (int i = 0; i < daysFromToday.length; i++) {
+			dates[i] = new GregorianCalendar();
+			dates[i].add(GregorianCalendar.DAY_OF_MONTH, daysFromToday[i]);
+		}
+		return new Therapy(0, 0, dates, medical, qty, "", freqInDay, "", false, false);
+	}
+
 	@Test
 	public void testListenerShouldUpdatePatientToMergedWhenPatientMergedEventArrive() {
 		try {
@@ -279,11 +433,19 @@ public class Tests
 		testMedicalTypeContext.saveAll(jpa);
 		testPatientContext.saveAll(jpa);
 		testTherapyRowContext.saveAll(jpa);
+		testWardContext.saveAll(jpa);
+		testLotContext.saveAll(jpa);
+		testMedicalWardContext.saveAll(jpa);
+		testSmsContext.saveAll(jpa);
     }
 	
     private void _restoreContext() throws OHException 
     {
+		testSmsContext.deleteNews(jpa);
 		testTherapyRowContext.deleteNews(jpa);
+		testMedicalWardContext.deleteNews(jpa);
+		testLotContext.deleteNews(jpa);
+		testWardContext.deleteNews(jpa);
 		testPatientContext.deleteNews(jpa);
 		testMedicalContext.deleteNews(jpa);
 		testMedicalTypeContext.deleteNews(jpa);
@@ -0,0 +1,436 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.utils.db.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.hibernate.cfg.Settings;
+import org.hibernate.ejb.HibernateEntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.isf.patient.model.Patient;
+import org.isf.patient.service.PatientIoOperations;
+import org.isf.patient.test.TestPatient;
+import org.isf.priceslist.model.Price;
+import org.isf.priceslist.model.PriceList;
+import org.isf.priceslist.service.PricesListIoOperations;
+import org.isf.utils.db.DbPooledQuery;
+import org.isf.utils.db.DbQueryLogger;
+import org.isf.utils.exception.OHException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.mchange.v2.c3p0.ComboPooledDataSource;
+import com.mchange.v2.c3p0.PooledDataSource;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(locations = { "classpath:applicationContext.xml" })
+public class Tests {
+
+	private static final int REPORT_QUERIES = 4;
+	private static final long REPORT_QUERIES_TIMEOUT_MILLIS = 10000;
+	private static final long SERIALIZED_QUERIES_TIMEOUT_MILLIS = 300;
+	private static final int BENCHMARK_PRICES = 1000;
+	private static final int BENCHMARK_PATIENTS = 200;
+
+	private static volatile CountDownLatch runningQueries;
+
+	@Autowired
+	private DbPooledQuery pooledQuery;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Before
+	public void setUp() throws OHException {
+		pooledQuery.update("CREATE TABLE IF NOT EXISTS POOLEDQUERY_TEST (PQT_ID INT AUTO_INCREMENT PRIMARY KEY, PQT_NAME VARCHAR(20) NOT NULL UNIQUE)",
+				Collections.emptyList());
+		pooledQuery.update("CREATE ALIAS IF NOT EXISTS POOLEDQUERY_AWAIT FOR \"" + Tests.class.getName() + ".awaitOtherQueries\"", Collections.emptyList());
+	}
+
+	@After
+	public void tearDown() throws OHException {
+		pooledQuery.update("DROP TABLE POOLEDQUERY_TEST", Collections.emptyList());
+	}
+
+	@Test
+	public void testPooledQueryRowMappers() throws Exception
+	{
+		List<Integer> keys = new ArrayList<Integer>();
+		for (String name : Arrays.asList("first", "second", "third")) {
+			keys.addAll(pooledQuery.updateReturningKeys("INSERT INTO POOLEDQUERY_TEST (PQT_NAME) VALUES (?)", Collections.singletonList(name),
+					(resultSet, rowNum) -> resultSet.getInt(1)));
+		}
+
+		assertThat(keys).hasSize(3).doesNotHaveDuplicates();
+		assertThat(pooledQuery.query("SELECT PQT_NAME AS NAME FROM POOLEDQUERY_TEST WHERE PQT_ID >= ? ORDER BY PQT_ID", Collections.singletonList(keys.get(1)),
+				(resultSet, rowNum) -> rowNum + ":" + resultSet.getString("NAME"))).containsExactly("0:second", "1:third");
+		DbPooledQuery.RowMapper<Integer> idMapper = (resultSet, rowNum) -> resultSet.getInt(1);
+		assertThat(pooledQuery.queryForObject("SELECT PQT_ID FROM POOLEDQUERY_TEST WHERE PQT_NAME = ?", Collections.singletonList("third"), idMapper))
+				.isEqualTo(keys.get(2));
+		assertThat(pooledQuery.queryForObject("SELECT PQT_ID FROM POOLEDQUERY_TEST WHERE PQT_NAME = ?", Collections.singletonList("fourth"), idMapper))
+				.isNull();
+		assertThat(pooledQuery.update("UPDATE POOLEDQUERY_TEST SET PQT_NAME = CONCAT(PQT_NAME, '!') WHERE PQT_ID < ?", Collections.singletonList(keys.get(2))))
+				.isEqualTo(2);
+		assertThat(pooledQuery.exists("SELECT * FROM POOLEDQUERY_TEST WHERE PQT_NAME = ?", Collections.singletonList("first!"))).isTrue();
+		assertThat(pooledQuery.exists("SELECT * FROM POOLEDQUERY_TEST WHERE PQT_NAME = ?", Collections.singletonList("first"))).isFalse();
+		try {
+			pooledQuery.update("INSERT INTO POOLEDQUERY_TEST (PQT_NAME) VALUES (?)", Collections.singletonList("third"));
+			fail("the duplicated name should be rejected");
+		} catch (OHException e) {
+			assertThat(e.getMessage()).isEqualTo("angal.sql.theselecteditemisstillusedsomewhere");
+		}
+		assertThat(_getBusyConnections()).isZero();
+	}
+
+	@Test
+	public void testPooledQueryCursor() throws Exception
+	{
+		for (int i = 0; i < 50; i++) {
+			pooledQuery.update("INSERT INTO POOLEDQUERY_TEST (PQT_NAME) VALUES (?)", Collections.singletonList("name " + i));
+		}
+
+		List<String> names = new ArrayList<String>();
+		try (DbPooledQuery.Cursor cursor = pooledQuery.openCursor("SELECT PQT_NAME FROM POOLEDQUERY_TEST ORDER BY PQT_ID", Collections.emptyList(), 7)) {
+			assertThat(cursor.getResultSet().getStatement().getFetchSize()).isEqualTo(7);
+			assertThat(cursor.getResultSet().getType()).isEqualTo(ResultSet.TYPE_FORWARD_ONLY);
+			while (cursor.next()) {
+				names.add(cursor.get((resultSet, rowNum) -> rowNum + ":" + resultSet.getString(1)));
+			}
+			assertThat(_getBusyConnections()).isEqualTo(1);
+		}
+		assertThat(names).hasSize(50).startsWith("0:name 0").endsWith("49:name 49");
+		assertThat(_getBusyConnections()).isZero();
+
+		// the legacy streaming gives the connection back when its statement is closed
+		ResultSet resultSet = new DbQueryLogger(pooledQuery).getStreamedData("SELECT PQT_NAME FROM POOLEDQUERY_TEST ORDER BY PQT_ID");
+		assertThat(resultSet.next()).isTrue();
+		assertThat(resultSet.getString("PQT_NAME")).isEqualTo("name 0");
+		resultSet.getStatement().close();
+		assertThat(resultSet.isClosed()).isTrue();
+		assertThat(_getBusyConnections()).isZero();
+	}
+
+	@Test
+	public void testDbQueryLoggerReturnsDisconnectedResults() throws Exception
+	{
+		DbQueryLogger dbQuery = new DbQueryLogger(pooledQuery);
+
+		ResultSet keys = dbQuery.setDataReturnGeneratedKeyWithParams("INSERT INTO POOLEDQUERY_TEST (PQT_NAME) VALUES (?)", Collections.singletonList("first"), true);
+		assertThat(keys.next()).isTrue();
+		int key = keys.getInt(1);
+		assertThat(dbQuery.setData("INSERT INTO POOLEDQUERY_TEST (PQT_NAME) VALUES ('second')", false)).isTrue();
+		assertThat(_getBusyConnections()).isEqualTo(1);
+		dbQuery.commit();
+		assertThat(_getBusyConnections()).isZero();
+
+		ResultSet resultSet = dbQuery.getDataWithParams("SELECT PQT_ID AS ID, PQT_NAME AS NAME FROM POOLEDQUERY_TEST ORDER BY PQT_ID", Collections.emptyList(), true);
+		assertThat(_getBusyConnections()).isZero();
+		assertThat(resultSet.next()).isTrue();
+		assertThat(resultSet.getInt("ID")).isEqualTo(key);
+		assertThat(resultSet.getString("NAME")).isEqualTo("first");
+		assertThat(resultSet.next()).isTrue();
+		assertThat(resultSet.getString("NAME")).isEqualTo("second");
+		assertThat(resultSet.next()).isFalse();
+
+		assertThat(dbQuery.isData("SELECT * FROM POOLEDQUERY_TEST WHERE PQT_NAME = 'second'")).isTrue();
+		assertThat(dbQuery.setDataWithParams("DELETE FROM POOLEDQUERY_TEST WHERE PQT_NAME = ?", Collections.singletonList("second"), true)).isTrue();
+		assertThat(dbQuery.isData("SELECT * FROM POOLEDQUERY_TEST WHERE PQT_NAME = 'second'")).isFalse();
+		try {
+			dbQuery.getData("SELECT NOTHING FROM POOLEDQUERY_TEST", true);
+			fail("the wrong query should be rejected");
+		} catch (OHException e) {
+			assertThat(e.getMessage()).isEqualTo("angal.sql.problemsoccurredwiththesqlistruction");
+		}
+		assertThat(_getBusyConnections()).isZero();
+	}
+
+	@Test
+	public void testDbQueryLoggerGroupsStatementsWithoutAutocommit() throws Exception
+	{
+		DbQueryLogger dbQuery = new DbQueryLogger(pooledQuery);
+		String exists = "SELECT * FROM POOLEDQUERY_TEST WHERE PQT_NAME = ?";
+
+		// the statements not committed are seen only within their transaction
+		assertThat(dbQuery.setData("INSERT INTO POOLEDQUERY_TEST (PQT_NAME) VALUES ('first')", false)).isTrue();
+		assertThat(dbQuery.setDataWithParams("INSERT INTO POOLEDQUERY_TEST (PQT_NAME) VALUES (?)", Collections.singletonList("second"), false)).isTrue();
+		assertThat(dbQuery.isData("SELECT * FROM POOLEDQUERY_TEST WHERE PQT_NAME = 'second'")).isTrue();
+		assertThat(pooledQuery.exists(exists, Collections.singletonList("first"))).isFalse();
+		assertThat(_getBusyConnections()).isEqualTo(1);
+		dbQuery.rollback();
+		assertThat(_getBusyConnections()).isZero();
+		assertThat(pooledQuery.exists(exists, Collections.singletonList("first"))).isFalse();
+		assertThat(pooledQuery.exists(exists, Collections.singletonList("second"))).isFalse();
+
+		assertThat(dbQuery.setData("INSERT INTO POOLEDQUERY_TEST (PQT_NAME) VALUES ('first')", false)).isTrue();
+		assertThat(dbQuery.setData("INSERT INTO POOLEDQUERY_TEST (PQT_NAME) VALUES ('second')", false)).isTrue();
+		dbQuery.commit();
+		assertThat(_getBusyConnections()).isZero();
+		assertThat(pooledQuery.exists(exists, Collections.singletonList("first"))).isTrue();
+		assertThat(pooledQuery.exists(exists, Collections.singletonList("second"))).isTrue();
+
+		// as on a single connection, a statement in autocommit commits the ones before it
+		assertThat(dbQuery.setData("INSERT INTO POOLEDQUERY_TEST (PQT_NAME) VALUES ('third')", false)).isTrue();
+		assertThat(dbQuery.setData("DELETE FROM POOLEDQUERY_TEST WHERE PQT_NAME = 'first'", true)).isTrue();
+		assertThat(_getBusyConnections()).isZero();
+		dbQuery.rollback();
+		assertThat(pooledQuery.exists(exists, Collections.singletonList("third"))).isTrue();
+	}
+
+	@Test
+	public void testParallelReportQueriesDoNotSerialize() throws Exception
+	{
+		// each query waits, inside the database, for all the others to be running
+		final DbQueryLogger dbQuery = new DbQueryLogger(pooledQuery);
+		List<Boolean> pooled = _runInParallel(() -> {
+			ResultSet resultSet = dbQuery.getDataWithParams("SELECT POOLEDQUERY_AWAIT(?)", Collections.singletonList(REPORT_QUERIES_TIMEOUT_MILLIS), true);
+			resultSet.next();
+			return resultSet.getBoolean(1);
+		});
+
+		// the same queries sharing a single connection, as with DbSingleJpaConn, run one at a time
+		List<Boolean> singleConnection;
+		try (Connection connection = dataSource.getConnection()) {
+			singleConnection = _runInParallel(() -> {
+				try (Statement statement = connection.createStatement();
+						ResultSet resultSet = statement.executeQuery("SELECT POOLEDQUERY_AWAIT(" + SERIALIZED_QUERIES_TIMEOUT_MILLIS + ")")) {
+					resultSet.next();
+					return resultSet.getBoolean(1);
+				}
+			});
+		}
+
+		assertThat(pooled).containsOnly(true);
+		assertThat(singleConnection).contains(false);
+		assertThat(_getBusyConnections()).isZero();
+	}
+
+	/**
+	 * Called by the queries of {@link #testParallelReportQueriesDoNotSerialize()} (alias <code>POOLEDQUERY_AWAIT</code>)
+	 *
+	 * @return <code>true</code> if all the queries have been running at the same time within the timeout
+	 */
+	public static boolean awaitOtherQueries(long timeoutMillis) throws InterruptedException {
+		runningQueries.countDown();
+		return runningQueries.await(timeoutMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@Test
+	public void testDefaultDatabaseProfile() throws Exception
+	{
+		ComboPooledDataSource pool = (ComboPooledDataSource) dataSource;
+		assertThat(pool.getMinPoolSize()).isZero();
+		assertThat(pool.getMaxPoolSize()).isEqualTo(10);
+		assertThat(pool.getMaxStatementsPerConnection()).isZero();
+		assertThat(pool.getProperties().getProperty("rewriteBatchedStatements")).isEqualTo("false");
+		assertThat(_getSettings(entityManagerFactory).getJdbcBatchSize()).isEqualTo(30);
+	}
+
+	@Test
+	public void testPerformanceDatabaseProfile() throws Exception
+	{
+		try (ClassPathXmlApplicationContext context = _openContext("performance")) {
+			ComboPooledDataSource pool = context.getBean(ComboPooledDataSource.class);
+			assertThat(pool.getMinPoolSize()).isEqualTo(5);
+			assertThat(pool.getMaxStatementsPerConnection()).isEqualTo(100);
+			assertThat(pool.getNumConnectionsDefaultUser()).isGreaterThanOrEqualTo(5);
+			assertThat(pool.getProperties().getProperty("cachePrepStmts")).isEqualTo("true");
+			assertThat(pool.getProperties().getProperty("rewriteBatchedStatements")).isEqualTo("true");
+			assertThat(pool.getUser()).isEqualTo("root");
+			Settings settings = _getSettings(context.getBean(EntityManagerFactory.class));
+			assertThat(settings.getJdbcBatchSize()).isEqualTo(50);
+			assertThat(settings.getJdbcFetchSize()).isEqualTo(100);
+			assertThat(context.getBean(DbPooledQuery.class).exists("SELECT 1", Collections.emptyList())).isTrue();
+		}
+	}
+
+	/**
+	 * Benchmark of the default and performance profiles on the heaviest IoOperations:
+	 * writing and rewriting a price list, saving, reading and searching patients,
+	 * run with -Dbenchmark=true
+	 */
+	@Test
+	public void benchmarkDatabaseProfiles() throws Exception
+	{
+		assumeTrue(Boolean.getBoolean("benchmark"));
+
+		String[] profiles = { "default", "performance" };
+		long[][] millis = new long[profiles.length][];
+		// the first round warms up the JVM
+		for (int round = 0; round < 2; round++) {
+			for (int i = 0; i < profiles.length; i++) {
+				try (ClassPathXmlApplicationContext context = _openContext(profiles[i])) {
+					millis[i] = _runWorkload(context, profiles[i]);
+				}
+			}
+		}
+		System.out.printf("%-12s %10s %10s %10s %10s %10s %10s%n", "profile", "prices", "reprices", "patients", "lookups", "searches", "total");
+		for (int i = 0; i < profiles.length; i++) {
+			System.out.printf("%-12s %,7d ms %,7d ms %,7d ms %,7d ms %,7d ms %,7d ms%n", profiles[i],
+					millis[i][0], millis[i][1], millis[i][2], millis[i][3], millis[i][4], millis[i][5]);
+		}
+		assertThat(millis[1][5]).isLessThan(millis[0][5]);
+	}
+
+	/**
+	 * Runs the workload of {@link #benchmarkDatabaseProfiles()}, returning the time taken by each step and in total
+	 */
+	private long[] _runWorkload(ApplicationContext context, String profile) throws Exception {
+		PricesListIoOperations priceIoOperation = context.getBean(PricesListIoOperations.class);
+		PatientIoOperations patientIoOperation = context.getBean(PatientIoOperations.class);
+		long[] millis = new long[6];
+
+		long start = System.currentTimeMillis();
+		PriceList list = new PriceList(0, "BENCH", profile, profile, "USD");
+		priceIoOperation.newList(list);
+		ArrayList<Price> prices = new ArrayList<Price>();
+		for (int i = 0; i < BENCHMARK_PRICES; i++) {
+			prices.add(new Price(list, "OTH", String.valueOf(i), "Price " + i, (double) i));
+		}
+		priceIoOperation.updatePrices(list, prices);
+		millis[0] = System.currentTimeMillis() - start;
+
+		start = System.currentTimeMillis();
+		for (int round = 1; round <= 10; round++) {
+			for (Price price : prices) {
+				price.setPrice(price.getPrice() + round);
+			}
+			priceIoOperation.updatePrices(list, prices);
+		}
+		millis[1] = System.currentTimeMillis() - start;
+
+		start = System.currentTimeMillis();
+		List<Integer> codes = new ArrayList<Integer>();
+		for (int i = 0; i < BENCHMARK_PATIENTS; i++) {
+			Patient patient = new TestPatient().setup(false);
+			patient.setFirstName(profile + " " + i);
+			codes.add(patientIoOperation.savePatient(patient).getCode());
+		}
+		millis[2] = System.currentTimeMillis() - start;
+
+		start = System.currentTimeMillis();
+		for (int round = 0; round < 20; round++) {
+			for (Integer code : codes) {
+				assertThat(patientIoOperation.getPatient(code)).isNotNull();
+			}
+		}
+		millis[3] = System.currentTimeMillis() - start;
+
+		start = System.currentTimeMillis();
+		for (int round = 0; round < 50; round++) {
+			assertThat(patientIoOperation.getPatientsByOneOfFieldsLike(profile + " " + round)).isNotEmpty();
+		}
+		millis[4] = System.currentTimeMillis() - start;
+		millis[5] = millis[0] + millis[1] + millis[2] + millis[3] + millis[4];
+
+		priceIoOperation.deleteList(list);
+		DbPooledQuery pooledQuery = context.getBean(DbPooledQuery.class);
+		List<Object> photos = pooledQuery.query("SELECT PROFILE_PHOTO_ID FROM PATIENT WHERE PAT_FNAME LIKE ?", Collections.singletonList(profile + " %"),
+				(resultSet, rowNum) -> resultSet.getObject(1));
+		pooledQuery.update("DELETE FROM PATIENT WHERE PAT_FNAME LIKE ?", Collections.singletonList(profile + " %"));
+		for (Object photo : photos) {
+			pooledQuery.update("DELETE FROM PATIENT_PROFILE_PHOTO WHERE PAT_PROFILE_PHOTO_ID = ?", Collections.singletonList(photo));
+		}
+		return millis;
+	}
+
+	/**
+	 * Opens an application context with the given profile of <code>database-profiles.properties</code>
+	 */
+	private static ClassPathXmlApplicationContext _openContext(String profile) {
+		String previous = System.setProperty("db.profile", profile);
+		try {
+			return new ClassPathXmlApplicationContext("applicationContext.xml");
+		} finally {
+			if (previous == null) {
+				System.clearProperty("db.profile");
+			} else {
+				System.setProperty("db.profile", previous);
+			}
+		}
+	}
+
+	private static Settings _getSettings(EntityManagerFactory entityManagerFactory) {
+		return ((SessionFactoryImplementor) ((HibernateEntityManagerFactory) entityManagerFactory).getSessionFactory()).getSettings();
+	}
+
+	/**
+	 * Runs {@link #REPORT_QUERIES} times the query, each in its own thread, and returns the time taken
+	 */
+	private List<Boolean> _runInParallel(Callable<Boolean> query) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(REPORT_QUERIES);
+		runningQueries = new CountDownLatch(REPORT_QUERIES);
+		try {
+			List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+			for (int i = 0; i < REPORT_QUERIES; i++) {
+				futures.add(executor.submit(query));
+			}
+			List<Boolean> results = new ArrayList<Boolean>();
+			for (Future<Boolean> future : futures) {
+				results.add(future.get());
+			}
+			return results;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Returns the connections in use, waiting for those being given back to the pool
+	 */
+	private int _getBusyConnections() throws SQLException, InterruptedException {
+		PooledDataSource pool = (PooledDataSource) dataSource;
+		for (int i = 0; i < 20 && pool.getNumBusyConnectionsDefaultUser() > 0; i++) {
+			Thread.sleep(50);
+		}
+		return pool.getNumBusyConnectionsDefaultUser();
+	}
+}
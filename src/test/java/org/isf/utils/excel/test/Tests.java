@@ -0,0 +1,210 @@
+/*
+ * Open Hospital (www.open-hospital.org)
+ * Copyright © 2006-2020 Informatici Senza Frontiere (info@informaticisenzafrontiere.org)
+ *
+ * Open Hospital is a free and open source software for healthcare data management.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * https://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.isf.utils.excel.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipFile;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.isf.utils.excel.ExcelExporter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class Tests
+{
+	private static final String[] COLUMNS = { "CODE", "DESCRIPTION", "QUANTITY", "COST", "DATE" };
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testExportResultsetToExcel() throws Exception
+	{
+		File exportFile = folder.newFile("export.xlsx");
+
+		new ExcelExporter().exportResultsetToExcel(_getResultSet(1000, null, 0), exportFile);
+
+		try (FileInputStream input = new FileInputStream(exportFile)) {
+			Sheet sheet = new XSSFWorkbook(input).getSheetAt(0);
+			assertThat(sheet.getLastRowNum()).isEqualTo(1000);
+			assertThat(sheet.getRow(0).getCell(1).getStringCellValue()).isEqualTo("DESCRIPTION");
+			assertThat(sheet.getRow(1000).getCell(0).getNumericCellValue()).isEqualTo(1000);
+			assertThat(sheet.getRow(1000).getCell(1).getStringCellValue()).isEqualTo("Medical 1000");
+			assertThat(sheet.getRow(1000).getCell(3).getNumericCellValue()).isEqualTo(10.5);
+		}
+	}
+
+	@Test
+	public void testExportResultsetToExcelDeletesTemporaryFilesOnFailure() throws Exception
+	{
+		File exportFile = folder.newFile("failed.xlsx");
+		final ResultSet resultSet = _getResultSet(1000, null, 0);
+		final int[] rows = { 0 };
+		ResultSet failingResultSet = (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { ResultSet.class }, (proxy, method, args) -> {
+					if (method.getName().equals("next") && ++rows[0] > 500) {
+						throw new IllegalStateException("connection lost");
+					}
+					return method.invoke(resultSet, args);
+				});
+		int temporaryFiles = _countTemporaryFiles();
+
+		try {
+			new ExcelExporter().exportResultsetToExcel(failingResultSet, exportFile);
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		assertThat(_countTemporaryFiles()).isEqualTo(temporaryFiles);
+	}
+
+	@Test
+	public void testExportDataToCSV() throws Exception
+	{
+		File exportFile = folder.newFile("export.csv");
+		List<Map<String, Object>> data = new ArrayList<>();
+		for (int i = 1; i <= 3; i++) {
+			Map<String, Object> row = new LinkedHashMap<>();
+			row.put("CODE", i);
+			row.put("DESCRIPTION", "Medical " + i);
+			data.add(row);
+		}
+
+		new ExcelExporter().exportDataToCSV(data, exportFile);
+
+		List<String> lines = Files.readAllLines(exportFile.toPath(), StandardCharsets.UTF_8);
+		assertThat(lines).containsExactly("CODE;DESCRIPTION;", "1;Medical 1;", "2;Medical 2;", "3;Medical 3;");
+	}
+
+	/**
+	 * Benchmark of the heap retained while exporting from 10k to 5M rows to .xlsx,
+	 * run with -Dbenchmark=true
+	 */
+	@Test
+	public void benchmarkExportResultsetToExcel() throws Exception
+	{
+		assumeTrue(Boolean.getBoolean("benchmark"));
+
+		long retainedFirst = 0;
+		for (int rows : new int[] { 10000, 100000, 1000000, 5000000 }) {
+			File exportFile = folder.newFile("benchmark-" + rows + ".xlsx");
+			long[] retained = new long[1];
+			long start = System.currentTimeMillis();
+
+			new ExcelExporter().exportResultsetToExcel(_getResultSet(rows, retained, rows / 10), exportFile);
+
+			System.out.printf("%,10d rows: %,7d ms, max retained heap %,5d MB, file %,7d KB%n", rows,
+					System.currentTimeMillis() - start, retained[0] >> 20, exportFile.length() >> 10);
+			if (retainedFirst == 0) {
+				retainedFirst = retained[0];
+			}
+			assertThat(retained[0]).isLessThan(retainedFirst + (64 << 20));
+			try (ZipFile xlsx = new ZipFile(exportFile)) {
+				// 1048575 rows per sheet besides the headers
+				int sheets = (rows + 1048574) / 1048575;
+				assertThat(xlsx.getEntry("xl/worksheets/sheet" + sheets + ".xml")).isNotNull();
+				assertThat(xlsx.getEntry("xl/worksheets/sheet" + (sheets + 1) + ".xml")).isNull();
+			}
+			exportFile.delete();
+		}
+	}
+
+	/**
+	 * The number of temporary files of the streaming workbooks
+	 */
+	private int _countTemporaryFiles()
+	{
+		File[] files = new File(System.getProperty("java.io.tmpdir")).listFiles((dir, name) -> name.startsWith("poi-sxssf"));
+		return files == null ? 0 : files.length;
+	}
+
+	/**
+	 * A forward-only {@link ResultSet} generating the rows, optionally sampling
+	 * the heap retained (after a garbage collection) every samplingInterval rows
+	 */
+	private ResultSet _getResultSet(final int rows, final long[] retained, final long samplingInterval)
+	{
+		final ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { ResultSetMetaData.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+						case "getColumnCount":
+							return COLUMNS.length;
+						case "getColumnName":
+							return COLUMNS[(Integer) args[0] - 1];
+						default:
+							throw new UnsupportedOperationException(method.getName());
+					}
+				});
+		final int[] row = { 0 };
+		final Timestamp date = new Timestamp(System.currentTimeMillis());
+		return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { ResultSet.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+						case "getMetaData":
+							return metaData;
+						case "next":
+							if (retained != null && row[0] % samplingInterval == 0) {
+								Runtime runtime = Runtime.getRuntime();
+								System.gc();
+								retained[0] = Math.max(retained[0], runtime.totalMemory() - runtime.freeMemory());
+							}
+							return ++row[0] <= rows;
+						case "getObject":
+							switch ((Integer) args[0]) {
+								case 1:
+									return row[0];
+								case 2:
+									return "Medical " + row[0];
+								case 3:
+									return new BigDecimal(row[0] % 100);
+								case 4:
+									return 10.5;
+								default:
+									return date;
+							}
+						case "close":
+							return null;
+						default:
+							throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+}
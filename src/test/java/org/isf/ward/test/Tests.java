@@ -25,8 +25,11 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.isf.utils.db.DbJpaUtil;
+import org.isf.utils.db.ReferenceDataCacheManager;
 import org.isf.utils.exception.OHException;
 import org.isf.ward.model.Ward;
 import org.isf.ward.service.WardIoOperationRepository;
@@ -40,6 +43,8 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @RunWith(SpringRunner.class)
 @ContextConfiguration(locations = { "classpath:applicationContext.xml" })
@@ -53,6 +58,10 @@ public class Tests
     WardIoOperations wardIoOperation;
     @Autowired
     WardIoOperationRepository wardIoOperationRepository;
+    @Autowired
+    ReferenceDataCacheManager cacheManager;
+    @Autowired
+    PlatformTransactionManager transactionManager;
 	
 	@BeforeClass
     public static void setUpClass() {
@@ -279,6 +288,73 @@ public class Tests
 		}
 	}
 
+	@Test
+	public void testIoGetWardsFromCache() throws Exception
+	{
+		String code = _setupTestWard(false);
+		TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+		ExecutorService otherClient = Executors.newSingleThreadExecutor();
+
+
+		cacheManager.clearAll();
+		try
+		{
+			// the cached wards are copies of the wards read from the database, shared by the readers of the cache
+			_findWard(wardIoOperation.getWardsNoMaternity(), code).setDescription("Changed by the caller");
+			ArrayList<Ward> cached = wardIoOperation.getWardsNoMaternity();
+			assertThat(_findWard(cached, code).getDescription()).isEqualTo("TestDescription");
+			cached.clear();
+			assertThat(_findWard(wardIoOperation.getWardsNoMaternity(), code)).isSameAs(_findWard(wardIoOperation.getWardsNoMaternity(), code));
+
+			// the wards read in a transaction rolled back are not kept
+			transaction.execute(status -> {
+				try {
+					Ward ward = wardIoOperationRepository.findOne(code);
+					ward.setDescription("Rolled back");
+					wardIoOperation.updateWard(ward);
+					assertThat(_findWard(wardIoOperation.getWardsNoMaternity(), code).getDescription()).isEqualTo("Rolled back");
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+				status.setRollbackOnly();
+				return null;
+			});
+			assertThat(_findWard(wardIoOperation.getWardsNoMaternity(), code).getDescription()).isEqualTo("TestDescription");
+
+			// the wards read by another thread before the commit are not kept
+			transaction.execute(status -> {
+				try {
+					Ward ward = wardIoOperationRepository.findOne(code);
+					ward.setDescription("Committed");
+					wardIoOperation.updateWard(ward);
+					String read = otherClient.submit(() -> _findWard(wardIoOperation.getWardsNoMaternity(), code).getDescription()).get();
+					assertThat(read).isEqualTo("TestDescription");
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+				return null;
+			});
+			assertThat(_findWard(wardIoOperation.getWardsNoMaternity(), code).getDescription()).isEqualTo("Committed");
+		}
+		finally
+		{
+			otherClient.shutdown();
+			cacheManager.clearAll();
+		}
+	}
+
+	private Ward _findWard(ArrayList<Ward> wards, String code)
+	{
+		for (Ward ward : wards)
+		{
+			if (ward.getCode().equals(code))
+			{
+				return ward;
+			}
+		}
+		return null;
+	}
+
 	private void _saveContext() throws OHException
     {
 		testWardContext.saveAll(jpa);